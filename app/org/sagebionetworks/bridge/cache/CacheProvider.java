@@ -2,26 +2,49 @@ package org.sagebionetworks.bridge.cache;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import javax.annotation.Resource;
 
 import org.sagebionetworks.bridge.BridgeConstants;
+import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.config.BridgeConfig;
 import org.sagebionetworks.bridge.config.BridgeConfigFactory;
+import org.sagebionetworks.bridge.dynamodb.DynamoStudy;
 import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
 import org.sagebionetworks.bridge.models.RequestInfo;
-import org.sagebionetworks.bridge.models.accounts.StudyParticipant;
 import org.sagebionetworks.bridge.models.accounts.UserSession;
 import org.sagebionetworks.bridge.models.studies.Study;
 import org.sagebionetworks.bridge.redis.JedisOps;
-import org.sagebionetworks.bridge.redis.JedisTransaction;
 import org.sagebionetworks.bridge.redis.RedisKey;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisException;
+
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableSet;
 
 /**
  * A wrapper around whatever cache provider we ultimately decide to go with (probably Redis). 
@@ -29,10 +52,73 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  */
 @Component
 public class CacheProvider {
-    
+    private static final Logger LOG = LoggerFactory.getLogger(CacheProvider.class);
+
+    /** Redis pub/sub channel used to tell other nodes to drop a study from their near cache. */
+    public static final String STUDY_INVALIDATION_CHANNEL = "study-invalidation";
+
+    /** Separates the publishing node's ID from the study identifier in an invalidation message. */
+    static final String INVALIDATION_MESSAGE_SEPARATOR = "|";
+
+    /**
+     * Studies are cached in-process for at most this long. Invalidation messages are the primary mechanism for 
+     * keeping nodes in sync; this bounds staleness if a message is ever missed.
+     */
+    static final int STUDY_NEAR_CACHE_EXPIRE_IN_SECONDS = 60;
+
+    /** There are only a few hundred studies, so this comfortably holds every study on a node. */
+    static final long STUDY_NEAR_CACHE_MAX_SIZE = 1000L;
+
+    /** Prefix of the error Redis returns when a command is used against a key holding the wrong kind of value. */
+    private static final String WRONG_TYPE_ERROR = "WRONGTYPE";
+
+    private static final String TYPE_PROPERTY = "type";
+
+    /**
+     * Request info properties that describe the user's latest request. Every update sets these, so one that is null 
+     * in an update is removed. The other properties are timestamps that each come from a different kind of request, 
+     * and are kept until a request of that kind replaces them.
+     */
+    private static final Set<String> LATEST_REQUEST_PROPERTIES = ImmutableSet.of("clientInfo", "userAgent",
+            "languages", "userDataGroups", "timeZone", "studyIdentifier");
+
+    /**
+     * Request info written as JSON by earlier versions is converted to a hash on update, and another node can convert 
+     * or rewrite it at the same time. Reads and updates that race with that are tried again this many times.
+     */
+    static final int REQUEST_INFO_MAX_ATTEMPTS = 3;
+
+    /**
+     * Activity events are cached for at most this long. Publishing an event drops the user's cached events, so this 
+     * only bounds how long an idle user's events take up memory.
+     */
+    static final int ACTIVITY_EVENTS_EXPIRE_IN_SECONDS = 6 * 60 * 60;
+
+    /**
+     * Marks a user's activity event hash as holding all of their events. Hashes without it were written through by
+     * earlier versions and may be missing events.
+     */
+    static final String ACTIVITY_EVENTS_COMPLETE_FIELD = "*";
+
+    static final String SESSION_CODEC_BINARY_ENABLED_PROPERTY = "session.codec.binary.enabled";
+
+    /** Identifies this node in invalidation messages, so a node can ignore the messages it publishes itself. */
+    private final String nodeId = BridgeUtils.generateGuid();
+
+    /**
+     * In-process cache of studies in front of Redis. Only instances deserialized by this class are put into this 
+     * cache, and callers should treat the returned studies as read-only snapshots.
+     */
+    private final com.google.common.cache.Cache<String, Study> studyNearCache = CacheBuilder.newBuilder()
+            .maximumSize(STUDY_NEAR_CACHE_MAX_SIZE)
+            .expireAfterWrite(STUDY_NEAR_CACHE_EXPIRE_IN_SECONDS, TimeUnit.SECONDS)
+            .recordStats().build();
+
     private ObjectMapper bridgeObjectMapper;
     private JedisOps jedisOps;
+    private JedisPool jedisPool;
     private int sessionExpireInSeconds;
+    private boolean binarySessionCodecEnabled;
 
     @Autowired
     final void setBridgeObjectMapper(BridgeObjectMapper bridgeObjectMapper) {
@@ -43,6 +129,16 @@ public class CacheProvider {
     final void setJedisOps(JedisOps jedisOps) {
         this.jedisOps = jedisOps;
     }
+
+    @Autowired
+    final void setJedisPool(JedisPool jedisPool) {
+        this.jedisPool = jedisPool;
+    }
+    
+    @Autowired
+    final void setBridgeConfig(BridgeConfig bridgeConfig) {
+        this.binarySessionCodecEnabled = Boolean.valueOf(bridgeConfig.get(SESSION_CODEC_BINARY_ENABLED_PROPERTY));
+    }
     
     @Resource(name = "sessionExpireInSeconds")
     final void setSessionExpireInSeconds(int sessionExpireInSeconds) {
@@ -50,25 +146,55 @@ public class CacheProvider {
     }
     
     /**
-     * Take existing data in the request info object and augment with any new information 
-     * in the request info object passed as a parameter, then persist that. Different calls
-     * contribute some different fields to the total RequestInfo object.
+     * Merge the fields in the request info object into the request info persisted for the user. Request info is 
+     * stored as a Redis hash with one field per property, and only the non-null properties of the request info 
+     * passed as a parameter are written, so different calls can contribute different fields to the total 
+     * RequestInfo object in a single write, without reading it first or overwriting each other's timestamps. 
+     * Properties of the latest request that are null are removed.
      */
     public void updateRequestInfo(RequestInfo requestInfo) {
         checkNotNull(requestInfo, "requestInfo is required");
         checkNotNull(requestInfo.getUserId(), "requestInfo.userId is required");
-     
-        RequestInfo existingRequestInfo = getRequestInfo(requestInfo.getUserId());
-        if (existingRequestInfo != null) {
-            RequestInfo.Builder builder = new RequestInfo.Builder();    
-            builder.copyOf(existingRequestInfo);
-            builder.copyOf(requestInfo);
-            setRequestInfo(builder.build());
-        } else {
-            setRequestInfo(requestInfo);
+        
+        String redisKey = RedisKey.REQUEST_INFO.getRedisKey(requestInfo.getUserId());
+        boolean updated = false;
+        try (Jedis jedis = jedisPool.getResource()) {
+            Map<String,String> fields = toHashFields(requestInfo);
+            String[] clearedFields = LATEST_REQUEST_PROPERTIES.stream()
+                    .filter(property -> !fields.containsKey(property)).toArray(String[]::new);
+            for (int i = 0; i < REQUEST_INFO_MAX_ATTEMPTS && !updated; i++) {
+                updated = writeRequestInfo(jedis, redisKey, fields, clearedFields);
+            }
+        } catch (Throwable e) {
+            promptToStartRedisIfLocal(e);
+            throw new BridgeServiceException(e);
+        }
+        if (!updated) {
+            throw new BridgeServiceException("Request info for user " + requestInfo.getUserId()
+                    + " was changed by other requests on every attempt to update it.");
         }
     }
     
+    /**
+     * Writes the fields into the request info hash and removes the cleared fields. Returns false if the key held 
+     * request info in the JSON format, and another update changed it before it could be converted. 
+     */
+    private boolean writeRequestInfo(Jedis jedis, String redisKey, Map<String,String> fields,
+            String[] clearedFields) throws IOException {
+        try {
+            jedis.hmset(redisKey, fields);
+            if (clearedFields.length > 0) {
+                jedis.hdel(redisKey, clearedFields);
+            }
+            return true;
+        } catch (JedisDataException e) {
+            if (!isWrongType(e)) {
+                throw e;
+            }
+        }
+        return migrateRequestInfo(jedis, redisKey, fields, clearedFields);
+    }
+    
     public void removeRequestInfo(String userId) {
         checkNotNull(userId);
         try {
@@ -80,30 +206,170 @@ public class CacheProvider {
         }
     }
     
-    private void setRequestInfo(RequestInfo requestInfo) {
-        try {
-            String ser = bridgeObjectMapper.writeValueAsString(requestInfo);
-            String redisKey = RedisKey.REQUEST_INFO.getRedisKey(requestInfo.getUserId());
-            jedisOps.set(redisKey, ser);
+    /**
+     * Request info is read as a hash, or as JSON if it hasn't been converted yet. If the key is converted between 
+     * the two reads, it is read again.
+     */
+    public RequestInfo getRequestInfo(String userId) {
+        String redisKey = RedisKey.REQUEST_INFO.getRedisKey(userId);
+        try (Jedis jedis = jedisPool.getResource()) {
+            for (int i = 0; i < REQUEST_INFO_MAX_ATTEMPTS; i++) {
+                try {
+                    Map<String,String> fields = jedis.hgetAll(redisKey);
+                    return (fields != null && !fields.isEmpty()) ? fromHashFields(fields) : null;
+                } catch (JedisDataException e) {
+                    if (!isWrongType(e)) {
+                        throw e;
+                    }
+                }
+                try {
+                    String ser = jedis.get(redisKey);
+                    return (ser != null) ? bridgeObjectMapper.readValue(ser, RequestInfo.class) : null;
+                } catch (JedisDataException e) {
+                    if (!isWrongType(e)) {
+                        throw e;
+                    }
+                }
+            }
         } catch (Throwable e) {
             promptToStartRedisIfLocal(e);
             throw new BridgeServiceException(e);
         }
-        
+        throw new BridgeServiceException("Request info for user " + userId
+                + " was changed by other requests on every attempt to read it.");
     }
     
-    public RequestInfo getRequestInfo(String userId) {
+    /**
+     * Request info used to be stored as a single JSON string. Merge an existing JSON request info with the new 
+     * fields and replace it with a hash. The key is watched from the read to the write, so this returns false 
+     * without writing if another update changes the key in between, including converting it first.
+     */
+    private boolean migrateRequestInfo(Jedis jedis, String redisKey, Map<String,String> fields,
+            String[] clearedFields) throws IOException {
+        jedis.watch(redisKey);
+        String ser;
         try {
-        String redisKey = RedisKey.REQUEST_INFO.getRedisKey(userId);
-            String ser = jedisOps.get(redisKey);
-            if (ser != null) {
-                return bridgeObjectMapper.readValue(ser, RequestInfo.class);
+            ser = jedis.get(redisKey);
+        } catch (JedisDataException e) {
+            jedis.unwatch();
+            if (!isWrongType(e)) {
+                throw e;
             }
-        } catch (Throwable e) {
+            // Another update converted the key to a hash after our write failed.
+            return false;
+        }
+        Map<String,String> mergedFields = new HashMap<>();
+        if (ser != null) {
+            mergedFields.putAll(toHashFields(bridgeObjectMapper.readValue(ser, RequestInfo.class)));
+        }
+        mergedFields.putAll(fields);
+        for (String clearedField : clearedFields) {
+            mergedFields.remove(clearedField);
+        }
+        
+        Transaction transaction = jedis.multi();
+        transaction.del(redisKey);
+        transaction.hmset(redisKey, mergedFields);
+        return transaction.exec() != null;
+    }
+    
+    /** Each non-null property is stored in its own hash field as a JSON value. */
+    private Map<String,String> toHashFields(RequestInfo requestInfo) {
+        ObjectNode node = bridgeObjectMapper.valueToTree(requestInfo);
+        node.remove(TYPE_PROPERTY);
+        
+        Map<String,String> fields = new HashMap<>();
+        Iterator<Map.Entry<String,JsonNode>> iterator = node.fields();
+        while (iterator.hasNext()) {
+            Map.Entry<String,JsonNode> entry = iterator.next();
+            if (!entry.getValue().isNull()) {
+                fields.put(entry.getKey(), entry.getValue().toString());
+            }
+        }
+        return fields;
+    }
+    
+    private RequestInfo fromHashFields(Map<String,String> fields) throws IOException {
+        ObjectNode node = bridgeObjectMapper.createObjectNode();
+        for (Map.Entry<String,String> entry : fields.entrySet()) {
+            node.set(entry.getKey(), bridgeObjectMapper.readTree(entry.getValue()));
+        }
+        return bridgeObjectMapper.treeToValue(node, RequestInfo.class);
+    }
+    
+    private boolean isWrongType(JedisDataException e) {
+        return e.getMessage() != null && e.getMessage().startsWith(WRONG_TYPE_ERROR);
+    }
+
+    /**
+     * Get a user's activity events, as a map of event ID to the event's cached value. If the user's events aren't 
+     * all cached, they are read with the loader and cached. The version of the user's events is read before the 
+     * load and watched while the load is cached, so if an event is published after the load started, the loaded 
+     * events (which may not include it) aren't cached. No Redis connection is held during the load.
+     */
+    public Map<String,String> getActivityEvents(String healthCode, Supplier<Map<String,String>> loader) {
+        checkNotNull(healthCode);
+        checkNotNull(loader);
+        
+        String redisKey = RedisKey.ACTIVITY_EVENTS.getRedisKey(healthCode);
+        String versionKey = RedisKey.ACTIVITY_EVENTS_VERSION.getRedisKey(healthCode);
+        String versionBeforeLoad;
+        try (Jedis jedis = jedisPool.getResource()) {
+            Map<String,String> fields = jedis.hgetAll(redisKey);
+            if (fields != null && fields.containsKey(ACTIVITY_EVENTS_COMPLETE_FIELD)) {
+                fields.remove(ACTIVITY_EVENTS_COMPLETE_FIELD);
+                return fields;
+            }
+            versionBeforeLoad = jedis.get(versionKey);
+        } catch (JedisException e) {
+            promptToStartRedisIfLocal(e);
+            throw new BridgeServiceException(e);
+        }
+        
+        // Errors from the loader are passed through as they are.
+        Map<String,String> events = loader.get();
+        
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.watch(versionKey);
+            if (!Objects.equals(versionBeforeLoad, jedis.get(versionKey))) {
+                // An event was published during the load.
+                jedis.unwatch();
+                return events;
+            }
+            Map<String,String> cachedFields = new HashMap<>(events);
+            cachedFields.put(ACTIVITY_EVENTS_COMPLETE_FIELD, "");
+            Transaction transaction = jedis.multi();
+            transaction.del(redisKey);
+            transaction.hmset(redisKey, cachedFields);
+            transaction.expire(redisKey, ACTIVITY_EVENTS_EXPIRE_IN_SECONDS);
+            // If an event is published between the version check and here, the watch aborts this.
+            transaction.exec();
+            return events;
+        } catch (JedisException e) {
+            promptToStartRedisIfLocal(e);
+            throw new BridgeServiceException(e);
+        }
+    }
+    
+    /**
+     * Drop a user's cached activity events, so the next read loads them all, and increment the version of the 
+     * user's events. This is called after an event is written. A read that read the old version loads and 
+     * caches its events after the write started, so it sees the new version and doesn't cache them. Unlike 
+     * deleting the events alone, this works when the user's events weren't cached.
+     */
+    public void removeActivityEvents(String healthCode) {
+        checkNotNull(healthCode);
+        String versionKey = RedisKey.ACTIVITY_EVENTS_VERSION.getRedisKey(healthCode);
+        try (Jedis jedis = jedisPool.getResource()) {
+            Transaction transaction = jedis.multi();
+            transaction.incr(versionKey);
+            transaction.expire(versionKey, ACTIVITY_EVENTS_EXPIRE_IN_SECONDS);
+            transaction.del(RedisKey.ACTIVITY_EVENTS.getRedisKey(healthCode));
+            transaction.exec();
+        } catch(Throwable e) {
             promptToStartRedisIfLocal(e);
             throw new BridgeServiceException(e);
         }
-        return null;
     }
 
     public void setUserSession(final UserSession session) {
@@ -117,21 +383,21 @@ public class CacheProvider {
         final String sessionToken = session.getSessionToken();
         final String userKey = RedisKey.USER_SESSION.getRedisKey(userId);
         
-        final String sessionKey = RedisKey.SESSION.getRedisKey(sessionToken);
-        try (JedisTransaction transaction = jedisOps.getTransaction()) {
+        final byte[] sessionKey = getSessionKey(sessionToken);
+        try (Jedis jedis = jedisPool.getResource()) {
             
             // If the key exists, get the remaining time to expiration. If it doesn't exist
             // then save with the full expiration period.
-            final Long ttl = jedisOps.ttl(userKey);
+            final Long ttl = jedis.ttl(userKey);
             final int expiration = (ttl != null && ttl > 0L) ? 
                     ttl.intValue() : sessionExpireInSeconds;
                    
-            String ser = StudyParticipant.CACHE_WRITER.writeValueAsString(session);
+            byte[] ser = SessionCodec.encode(session, binarySessionCodecEnabled);
             
-            List<Object> results = transaction
-                .setex(userKey, expiration, sessionToken)
-                .setex(sessionKey, expiration, ser)
-                .exec();
+            Transaction transaction = jedis.multi();
+            transaction.setex(userKey, expiration, sessionToken);
+            transaction.setex(sessionKey, expiration, ser);
+            List<Object> results = transaction.exec();
             if (results == null) {
                 throw new BridgeServiceException("Session storage error.");
             }
@@ -148,13 +414,12 @@ public class CacheProvider {
 
     public UserSession getUserSession(final String sessionToken) {
         checkNotNull(sessionToken);
-        try {
-            final String sessionKey = RedisKey.SESSION.getRedisKey(sessionToken);
-            final String ser = jedisOps.get(sessionKey);
+        try (Jedis jedis = jedisPool.getResource()) {
+            final byte[] ser = jedis.get(getSessionKey(sessionToken));
             if (ser == null) {
                 return null;
             }
-            return bridgeObjectMapper.readValue(ser, UserSession.class);
+            return SessionCodec.decode(ser);
         } catch (Throwable e) {
             promptToStartRedisIfLocal(e);
             throw new BridgeServiceException(e);
@@ -164,9 +429,9 @@ public class CacheProvider {
     public UserSession getUserSessionByUserId(final String userId) {
         checkNotNull(userId);
         String sessionToken = null;
-        try {
+        try (Jedis jedis = jedisPool.getResource()) {
             final String userKey = RedisKey.USER_SESSION.getRedisKey(userId);
-            sessionToken = jedisOps.get(userKey);
+            sessionToken = jedis.get(userKey);
         } catch(Throwable e) {
             promptToStartRedisIfLocal(e);
             throw new BridgeServiceException(e);
@@ -180,12 +445,13 @@ public class CacheProvider {
     public void removeSession(final UserSession session) {
         checkNotNull(session.getSessionToken());
         checkNotNull(session.getId());
-        try {
+        try (Jedis jedis = jedisPool.getResource()) {
             final String sessionKey = RedisKey.SESSION.getRedisKey(session.getSessionToken());
             final String userKey = RedisKey.USER_SESSION.getRedisKey(session.getId());
-            try (JedisTransaction transaction = jedisOps.getTransaction()) {
-                transaction.del(sessionKey).del(userKey).exec();
-            }
+            Transaction transaction = jedis.multi();
+            transaction.del(sessionKey);
+            transaction.del(userKey);
+            transaction.exec();
         } catch(Throwable e) {
             promptToStartRedisIfLocal(e);
             throw new BridgeServiceException(e);
@@ -193,14 +459,15 @@ public class CacheProvider {
     }
 
     public void removeSessionByUserId(final String userId) {
-        try {
+        try (Jedis jedis = jedisPool.getResource()) {
             final String userKey = RedisKey.USER_SESSION.getRedisKey(userId);
-            final String sessionToken = jedisOps.get(userKey);
+            final String sessionToken = jedis.get(userKey);
             if (sessionToken != null) {
                 final String sessionKey = RedisKey.SESSION.getRedisKey(sessionToken);
-                try (JedisTransaction transaction = jedisOps.getTransaction()) {
-                    transaction.del(sessionKey).del(userKey).exec();
-                }
+                Transaction transaction = jedis.multi();
+                transaction.del(sessionKey);
+                transaction.del(userKey);
+                transaction.exec();
             }
         } catch(Throwable e) {
             promptToStartRedisIfLocal(e);
@@ -216,19 +483,32 @@ public class CacheProvider {
             if (!"OK".equals(result)) {
                 throw new BridgeServiceException("Study storage error");
             }
+            // The caller retains a reference to this study, so don't put it in the near cache. The next read 
+            // deserializes a private copy from Redis.
+            studyNearCache.invalidate(study.getIdentifier());
         } catch (Throwable e) {
             promptToStartRedisIfLocal(e);
             throw new BridgeServiceException(e);
         }
     }
 
+    /**
+     * Callers get their own copy of the study, which they may modify (StudyService fills in default templates, for 
+     * example). The near cache keeps a snapshot that is never handed out.
+     */
     public Study getStudy(String identifier) {
+        Study study = studyNearCache.getIfPresent(identifier);
+        if (study != null) {
+            return new DynamoStudy((DynamoStudy)study);
+        }
         try {
             String redisKey = RedisKey.STUDY.getRedisKey(identifier);
             String ser = jedisOps.get(redisKey);
             if (ser != null) {
                 jedisOps.expire(redisKey, BridgeConstants.BRIDGE_SESSION_EXPIRE_IN_SECONDS);
-                return bridgeObjectMapper.readValue(ser, Study.class);
+                study = bridgeObjectMapper.readValue(ser, Study.class);
+                studyNearCache.put(identifier, study);
+                return new DynamoStudy((DynamoStudy)study);
             }
         } catch (Throwable e) {
             promptToStartRedisIfLocal(e);
@@ -237,6 +517,10 @@ public class CacheProvider {
         return null;
     }
 
+    /**
+     * Removes the study from Redis, and from the near cache of this and every other node. The study is always 
+     * removed from Redis before it is updated or deleted, so this covers both cases.
+     */
     public void removeStudy(String identifier) {
         try {
             String redisKey = RedisKey.STUDY.getRedisKey(identifier);
@@ -244,6 +528,57 @@ public class CacheProvider {
         } catch(Throwable e) {
             promptToStartRedisIfLocal(e);
             throw new BridgeServiceException(e);
+        } finally {
+            studyNearCache.invalidate(identifier);
+        }
+        publishStudyInvalidation(identifier);
+    }
+
+    /**
+     * Drop a study from this node's near cache. Called when another node publishes an invalidation message.
+     */
+    public void invalidateLocalStudy(String identifier) {
+        studyNearCache.invalidate(identifier);
+    }
+
+    /**
+     * Drop all studies from this node's near cache. Called when this node (re)subscribes to invalidation messages, 
+     * since messages published while it was not subscribed are lost.
+     */
+    public void invalidateAllLocalStudies() {
+        studyNearCache.invalidateAll();
+    }
+
+    /**
+     * Hit and miss counts for the study near cache. Every hit is a Redis round trip and a study deserialization 
+     * that did not happen.
+     */
+    public CacheStats getStudyCacheStats() {
+        return studyNearCache.stats();
+    }
+
+    /**
+     * Handle a message from the study invalidation channel. Messages that this node published are ignored, since 
+     * the local near cache was updated when the message was sent.
+     */
+    public void onStudyInvalidationMessage(String message) {
+        int index = (message == null) ? -1 : message.indexOf(INVALIDATION_MESSAGE_SEPARATOR);
+        if (index < 0) {
+            LOG.warn("Ignoring malformed study invalidation message: " + message);
+            return;
+        }
+        String publisherId = message.substring(0, index);
+        if (!nodeId.equals(publisherId)) {
+            invalidateLocalStudy(message.substring(index + 1));
+        }
+    }
+
+    private void publishStudyInvalidation(String identifier) {
+        // Failing to notify other nodes is not fatal; their copies expire shortly in any case.
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.publish(STUDY_INVALIDATION_CHANNEL, nodeId + INVALIDATION_MESSAGE_SEPARATOR + identifier);
+        } catch (Throwable e) {
+            LOG.warn("Could not publish invalidation of study " + identifier + ": " + e.getMessage());
         }
     }
 
@@ -277,6 +612,14 @@ public class CacheProvider {
         }
     }
     
+    /**
+     * Sessions are stored as bytes (the binary format isn't text), so the session key is read and written with the
+     * binary Redis commands. The other session commands use the same key as a string.
+     */
+    private static byte[] getSessionKey(String sessionToken) {
+        return RedisKey.SESSION.getRedisKey(sessionToken).getBytes(StandardCharsets.UTF_8);
+    }
+
     private void promptToStartRedisIfLocal(Throwable e) {
         if (BridgeConfigFactory.getConfig().isLocal()) {
             throw new BridgeServiceException(
@@ -0,0 +1,86 @@
+package org.sagebionetworks.bridge.cache;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.accounts.StudyParticipant;
+import org.sagebionetworks.bridge.models.accounts.UserSession;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * <p>Serializes user sessions for storage in Redis. Sessions are read on every authenticated request, so besides
+ * JSON, sessions can be written in a binary format (Smile, Jackson's binary JSON) which is cheaper to parse. The
+ * binary format uses the same Jackson annotations as the JSON format, so the health code is still only stored
+ * encrypted.</p>
+ *
+ * <p>Binary values are versioned with a prefix. Anything without a known prefix is treated as JSON, so sessions
+ * written before the binary format was enabled can still be read.</p>
+ */
+final class SessionCodec {
+
+    /** Prefix of a session in version 1 of the binary format. JSON sessions always start with "{". */
+    static final String BINARY_V1_PREFIX = "#1:";
+
+    private static final byte[] BINARY_V1_PREFIX_BYTES = BINARY_V1_PREFIX.getBytes(StandardCharsets.UTF_8);
+
+    /** Same filter as {@link StudyParticipant#CACHE_WRITER}. */
+    private static final SimpleFilterProvider CACHE_FILTER = new SimpleFilterProvider().addFilter("filter",
+            SimpleBeanPropertyFilter.serializeAllExcept("healthCode"));
+
+    private static final BridgeObjectMapper SMILE_MAPPER = new BridgeObjectMapper(new SmileFactory());
+
+    private static final ObjectWriter BINARY_WRITER = SMILE_MAPPER.writer(CACHE_FILTER);
+
+    private static final ObjectReader JSON_READER = BridgeObjectMapper.get().readerFor(UserSession.class);
+    private static final ObjectReader BINARY_READER = SMILE_MAPPER.readerFor(UserSession.class);
+
+    private SessionCodec() {
+    }
+
+    /**
+     * Serialize the session. The binary format is stored as is, using Redis' binary commands.
+     */
+    static byte[] encode(UserSession session, boolean binary) throws IOException {
+        checkNotNull(session);
+        if (binary) {
+            byte[] smile = BINARY_WRITER.writeValueAsBytes(session);
+            byte[] ser = new byte[BINARY_V1_PREFIX_BYTES.length + smile.length];
+            System.arraycopy(BINARY_V1_PREFIX_BYTES, 0, ser, 0, BINARY_V1_PREFIX_BYTES.length);
+            System.arraycopy(smile, 0, ser, BINARY_V1_PREFIX_BYTES.length, smile.length);
+            return ser;
+        }
+        return StudyParticipant.CACHE_WRITER.writeValueAsBytes(session);
+    }
+
+    /**
+     * Deserialize a session written in either format.
+     */
+    static UserSession decode(byte[] ser) throws IOException {
+        checkNotNull(ser);
+        if (hasBinaryPrefix(ser)) {
+            int offset = BINARY_V1_PREFIX_BYTES.length;
+            return BINARY_READER.readValue(ser, offset, ser.length - offset);
+        }
+        return JSON_READER.readValue(ser);
+    }
+
+    private static boolean hasBinaryPrefix(byte[] ser) {
+        if (ser.length < BINARY_V1_PREFIX_BYTES.length) {
+            return false;
+        }
+        for (int i=0; i < BINARY_V1_PREFIX_BYTES.length; i++) {
+            if (ser[i] != BINARY_V1_PREFIX_BYTES[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
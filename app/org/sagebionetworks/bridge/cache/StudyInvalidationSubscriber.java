@@ -0,0 +1,91 @@
+package org.sagebionetworks.bridge.cache;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPubSub;
+
+/**
+ * Listens on the study invalidation channel and drops studies from the {@link CacheProvider}'s near cache when
+ * another node updates or deletes them. Subscribing blocks a Redis connection, so this runs on its own daemon
+ * thread and re-subscribes if the connection is lost.
+ */
+public class StudyInvalidationSubscriber extends JedisPubSub {
+    private static final Logger LOG = LoggerFactory.getLogger(StudyInvalidationSubscriber.class);
+
+    static final long RESUBSCRIBE_DELAY_MILLIS = 5000L;
+
+    private final JedisPool jedisPool;
+    private final CacheProvider cacheProvider;
+    private volatile boolean stopped;
+
+    public StudyInvalidationSubscriber(JedisPool jedisPool, CacheProvider cacheProvider) {
+        this.jedisPool = checkNotNull(jedisPool);
+        this.cacheProvider = checkNotNull(cacheProvider);
+    }
+
+    /** Start listening on a daemon thread. */
+    public void start() {
+        Thread thread = new Thread(this::listen, "study-invalidation-subscriber");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Stop listening. Called on shutdown. */
+    public void stop() {
+        stopped = true;
+        if (isSubscribed()) {
+            unsubscribe();
+        }
+    }
+
+    private void listen() {
+        while (!stopped) {
+            try (Jedis jedis = jedisPool.getResource()) {
+                // Blocks until unsubscribed or the connection fails.
+                jedis.subscribe(this, CacheProvider.STUDY_INVALIDATION_CHANNEL);
+            } catch (Exception e) {
+                LOG.warn("Study invalidation subscription failed, re-subscribing: " + e.getMessage());
+            }
+            if (!stopped) {
+                try {
+                    Thread.sleep(RESUBSCRIBE_DELAY_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onMessage(String channel, String message) {
+        cacheProvider.onStudyInvalidationMessage(message);
+    }
+
+    @Override
+    public void onSubscribe(String channel, int subscribedChannels) {
+        // Anything published while we weren't listening was lost, so start from a clean near cache.
+        cacheProvider.invalidateAllLocalStudies();
+    }
+
+    @Override
+    public void onPMessage(String pattern, String channel, String message) {
+    }
+
+    @Override
+    public void onUnsubscribe(String channel, int subscribedChannels) {
+    }
+
+    @Override
+    public void onPUnsubscribe(String pattern, int subscribedChannels) {
+    }
+
+    @Override
+    public void onPSubscribe(String pattern, int subscribedChannels) {
+    }
+}
@@ -14,6 +14,8 @@ import org.springframework.context.annotation.Configuration;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
 
+import org.sagebionetworks.bridge.cache.CacheProvider;
+import org.sagebionetworks.bridge.cache.StudyInvalidationSubscriber;
 import org.sagebionetworks.bridge.redis.JedisOps;
 
 /**
@@ -58,6 +60,14 @@ public class BridgeProductionSpringConfig {
         return jedisPool;
     }
 
+    @Bean(name = "studyInvalidationSubscriber", destroyMethod = "stop")
+    @Autowired
+    public StudyInvalidationSubscriber studyInvalidationSubscriber(JedisPool jedisPool, CacheProvider cacheProvider) {
+        StudyInvalidationSubscriber subscriber = new StudyInvalidationSubscriber(jedisPool, cacheProvider);
+        subscriber.start();
+        return subscriber;
+    }
+
     /**
      * Try Redis providers to find one that is provisioned. Using this URL in the environment variables
      * is the documented way to interact with these services.
@@ -4,7 +4,9 @@ import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -18,6 +20,8 @@ import com.amazonaws.services.datapipeline.DataPipelineClient;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Table;
 import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.securitytoken.AWSSecurityTokenServiceClient;
 import com.amazonaws.services.simpleemail.AmazonSimpleEmailServiceClient;
@@ -27,6 +31,7 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import org.sagebionetworks.bridge.dynamodb.AnnotationBasedTableCreator;
 import org.sagebionetworks.bridge.dynamodb.DynamoCompoundActivityDefinition;
@@ -51,8 +56,8 @@ import org.springframework.context.annotation.FilterType;
 import org.sagebionetworks.bridge.BridgeConstants;
 import org.sagebionetworks.bridge.crypto.AesGcmEncryptor;
 import org.sagebionetworks.bridge.crypto.BridgeEncryptor;
-import org.sagebionetworks.bridge.crypto.CmsEncryptor;
 import org.sagebionetworks.bridge.crypto.CmsEncryptorCacheLoader;
+import org.sagebionetworks.bridge.crypto.StreamingCmsEncryptor;
 import org.sagebionetworks.bridge.dynamodb.DynamoHealthDataAttachment;
 import org.sagebionetworks.bridge.dynamodb.DynamoHealthDataRecord;
 import org.sagebionetworks.bridge.dynamodb.DynamoIndexHelper;
@@ -77,15 +82,15 @@ import org.sagebionetworks.bridge.hibernate.HibernateAccount;
 import org.sagebionetworks.bridge.hibernate.HibernateSharedModuleMetadata;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
 import org.sagebionetworks.bridge.s3.S3Helper;
-import org.sagebionetworks.bridge.upload.DecryptHandler;
 import org.sagebionetworks.bridge.upload.IosSchemaValidationHandler2;
 import org.sagebionetworks.bridge.upload.ParseJsonHandler;
-import org.sagebionetworks.bridge.upload.S3DownloadHandler;
+import org.sagebionetworks.bridge.upload.StreamingUnpackHandler;
 import org.sagebionetworks.bridge.upload.StrictValidationHandler;
 import org.sagebionetworks.bridge.upload.TranscribeConsentHandler;
-import org.sagebionetworks.bridge.upload.UnzipHandler;
 import org.sagebionetworks.bridge.upload.UploadArtifactsHandler;
 import org.sagebionetworks.bridge.upload.UploadValidationHandler;
+import org.sagebionetworks.bridge.upload.UploadValidationMetrics;
+import org.sagebionetworks.bridge.upload.UploadValidationScheduler;
 
 /**
  * Annotation-based Spring config. This class is shared between both production and (Spring-based) test configs. For
@@ -243,10 +248,43 @@ public class BridgeSpringConfig {
         return new AmazonSQSClient(awsCredentials);
     }
 
-    @Bean(name = "asyncExecutorService")
+    @Bean(destroyMethod = "shutdown")
+    @Autowired
+    public UploadValidationScheduler uploadValidationScheduler(BridgeConfig bridgeConfig,
+            UploadValidationMetrics uploadValidationMetrics) {
+        Map<UploadValidationScheduler.Lane, UploadValidationScheduler.LaneConfig> laneConfigs = new EnumMap<>(
+                UploadValidationScheduler.Lane.class);
+        for (UploadValidationScheduler.Lane lane : UploadValidationScheduler.Lane.values()) {
+            String prefix = "upload.validation." + lane.name().toLowerCase() + ".";
+            UploadValidationScheduler.RejectionPolicy rejectionPolicy = UploadValidationScheduler.RejectionPolicy
+                    .valueOf(bridgeConfig.getProperty(prefix + "rejection.policy"));
+            laneConfigs.put(lane, new UploadValidationScheduler.LaneConfig(
+                    bridgeConfig.getPropertyAsInt(prefix + "thread.count"),
+                    bridgeConfig.getPropertyAsInt(prefix + "queue.size"), rejectionPolicy,
+                    bridgeConfig.getPropertyAsInt(prefix + "block.timeout.millis")));
+        }
+        return new UploadValidationScheduler(laneConfigs, uploadValidationMetrics);
+    }
+
+    @Bean(name = "uploadAttachmentExecutorService", destroyMethod = "shutdown")
+    @Resource(name = "bridgeConfig")
+    public ExecutorService uploadAttachmentExecutorService(BridgeConfig bridgeConfig) {
+        return Executors.newFixedThreadPool(bridgeConfig.getPropertyAsInt("upload.attachment.thread.count"),
+                new ThreadFactoryBuilder().setNameFormat("upload-attachment-%d").build());
+    }
+
+    @Bean(name = "dynamoIndexBatchLoadExecutorService", destroyMethod = "shutdown")
     @Resource(name = "bridgeConfig")
-    public ExecutorService asyncExecutorService(BridgeConfig bridgeConfig) {
-        return Executors.newFixedThreadPool(bridgeConfig.getPropertyAsInt("async.worker.thread.count"));
+    public ExecutorService dynamoIndexBatchLoadExecutorService(BridgeConfig bridgeConfig) {
+        return Executors.newFixedThreadPool(bridgeConfig.getPropertyAsInt("dynamo.index.batch.load.thread.count"),
+                new ThreadFactoryBuilder().setNameFormat("dynamo-index-batch-load-%d").build());
+    }
+
+    @Bean(name = "participantOptionsScanExecutorService", destroyMethod = "shutdown")
+    @Resource(name = "bridgeConfig")
+    public ExecutorService participantOptionsScanExecutorService(BridgeConfig bridgeConfig) {
+        return Executors.newFixedThreadPool(bridgeConfig.getPropertyAsInt("participant.options.scan.thread.count"),
+                new ThreadFactoryBuilder().setNameFormat("participant-options-scan-%d").build());
     }
 
     @Bean(name = "supportEmail")
@@ -257,7 +295,7 @@ public class BridgeSpringConfig {
 
     @Bean(name = "cmsEncryptorCache")
     @Autowired
-    public LoadingCache<String, CmsEncryptor> cmsEncryptorCache(CmsEncryptorCacheLoader cacheLoader) {
+    public LoadingCache<String, StreamingCmsEncryptor> cmsEncryptorCache(CmsEncryptorCacheLoader cacheLoader) {
         return CacheBuilder.newBuilder().build(cacheLoader);
     }
 
@@ -446,16 +484,21 @@ public class BridgeSpringConfig {
         return dynamoUtils.getMapper(DynamoParticipantOptions.class);
     }
 
+    @Bean(name = "participantOptionsTable")
+    @Autowired
+    public Table participantOptionsTable(AmazonDynamoDBClient dynamoDBClient, DynamoNamingHelper dynamoNamingHelper) {
+        return new DynamoDB(dynamoDBClient).getTable(dynamoNamingHelper.getFullyQualifiedTableName(
+                DynamoParticipantOptions.class));
+    }
+
     @Bean(name = "uploadValidationHandlerList")
     @Autowired
-    public List<UploadValidationHandler> uploadValidationHandlerList(S3DownloadHandler s3DownloadHandler,
-            DecryptHandler decryptHandler, UnzipHandler unzipHandler, ParseJsonHandler parseJsonHandler,
-            IosSchemaValidationHandler2 iosSchemaValidationHandler2,
+    public List<UploadValidationHandler> uploadValidationHandlerList(StreamingUnpackHandler streamingUnpackHandler,
+            ParseJsonHandler parseJsonHandler, IosSchemaValidationHandler2 iosSchemaValidationHandler2,
             StrictValidationHandler strictValidationHandler, TranscribeConsentHandler transcribeConsentHandler,
             UploadArtifactsHandler uploadArtifactsHandler) {
-        return ImmutableList.of(s3DownloadHandler, decryptHandler, unzipHandler, parseJsonHandler,
-                iosSchemaValidationHandler2, strictValidationHandler, transcribeConsentHandler,
-                uploadArtifactsHandler);
+        return ImmutableList.of(streamingUnpackHandler, parseJsonHandler, iosSchemaValidationHandler2,
+                strictValidationHandler, transcribeConsentHandler, uploadArtifactsHandler);
     }
 
     @Bean(name = "uploadSchemaDdbMapper")
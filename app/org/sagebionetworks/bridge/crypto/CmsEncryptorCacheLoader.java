@@ -19,7 +19,7 @@ import org.sagebionetworks.bridge.s3.S3Helper;
  * the cert and private key from the configured S3 bucket and construct an encryptor using those encryption materials.
  */
 @Component
-public class CmsEncryptorCacheLoader extends CacheLoader<String, CmsEncryptor> {
+public class CmsEncryptorCacheLoader extends CacheLoader<String, StreamingCmsEncryptor> {
     private static final String PEM_FILENAME_FORMAT = "%s.pem";
 
     // These constants are package-scoped to make them accessible to unit tests.
@@ -38,7 +38,7 @@ public class CmsEncryptorCacheLoader extends CacheLoader<String, CmsEncryptor> {
 
     /** {@inheritDoc} */
     @Override
-    public CmsEncryptor load(@Nonnull String studyId) throws CertificateEncodingException, IOException {
+    public StreamingCmsEncryptor load(@Nonnull String studyId) throws CertificateEncodingException, IOException {
         String pemFileName = String.format(PEM_FILENAME_FORMAT, studyId);
 
         // download certificate
@@ -49,6 +49,6 @@ public class CmsEncryptorCacheLoader extends CacheLoader<String, CmsEncryptor> {
         String privKeyPem = s3CmsHelper.readS3FileAsString(PRIV_KEY_BUCKET, pemFileName);
         PrivateKey privKey = PemUtils.loadPrivateKeyFromPem(privKeyPem);
 
-        return new BcCmsEncryptor(cert, privKey);
+        return new StreamingCmsEncryptor(cert, privKey);
     }
 }
@@ -0,0 +1,54 @@
+package org.sagebionetworks.bridge.crypto;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.PrivateKey;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+
+import org.bouncycastle.cms.CMSEnvelopedDataParser;
+import org.bouncycastle.cms.CMSException;
+import org.bouncycastle.cms.RecipientId;
+import org.bouncycastle.cms.RecipientInformation;
+import org.bouncycastle.cms.bc.BcRSAKeyTransEnvelopedRecipient;
+import org.bouncycastle.cms.jcajce.JceKeyTransRecipientId;
+import org.bouncycastle.crypto.params.AsymmetricKeyParameter;
+import org.bouncycastle.crypto.util.PrivateKeyFactory;
+
+/**
+ * CMS encryptor that can also decrypt a stream. {@link BcCmsEncryptor} only decrypts whole byte arrays, so decrypting
+ * an upload needs the encrypted upload and the decrypted upload in memory at the same time. This decrypts the stream
+ * as it's read, using the same certificate and private key.
+ */
+public class StreamingCmsEncryptor extends BcCmsEncryptor {
+    private final RecipientId recipientId;
+    private final AsymmetricKeyParameter privateKeyParam;
+
+    public StreamingCmsEncryptor(@Nonnull X509Certificate cert, @Nonnull PrivateKey privateKey)
+            throws CertificateEncodingException, IOException {
+        super(cert, privateKey);
+        this.recipientId = new JceKeyTransRecipientId(cert);
+        this.privateKeyParam = PrivateKeyFactory.createKey(privateKey.getEncoded());
+    }
+
+    /**
+     * Returns a stream of the decrypted content of the given CMS enveloped data stream. Only the CMS headers are read
+     * before this returns. The content is decrypted as the returned stream is read. Closing the returned stream
+     * closes the source.
+     *
+     * @param source
+     *         CMS enveloped data stream, must be non-null
+     * @return decrypted content stream
+     * @throws CMSException
+     *         if the source isn't CMS enveloped data, or isn't encrypted for this encryptor's certificate
+     */
+    public InputStream decrypt(@Nonnull InputStream source) throws CMSException, IOException {
+        CMSEnvelopedDataParser parser = new CMSEnvelopedDataParser(source);
+        RecipientInformation recipient = parser.getRecipientInfos().get(recipientId);
+        if (recipient == null) {
+            throw new CMSException("Data isn't encrypted for this certificate");
+        }
+        return recipient.getContentStream(new BcRSAKeyTransEnvelopedRecipient(privateKeyParam)).getContentStream();
+    }
+}
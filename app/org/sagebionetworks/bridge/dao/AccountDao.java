@@ -103,13 +103,22 @@ public interface AccountDao {
      */
     Iterator<AccountSummary> getStudyAccounts(Study study);
     
+    /**
+     * Get the number of accounts in a study. Unlike the total returned with paged account summaries, this is always
+     * read from the database, so it can be used to enforce the study's account limit.
+     */
+    int getStudyAccountCount(Study study);
+    
     /**
      * Get a page of lightweight account summaries (most importantly, the email addresses of 
      * participants which are required for the rest of the participant APIs). 
      * @param study
      *      retrieve participants in this study
      * @param offsetBy
-     *      index to start the next page of records
+     *      index to start the next page of records. Ignored if there is an offsetKey.
+     * @param offsetKey
+     *      the offset key returned with the previous page, to start the next page right after it. This is faster than
+     *      an offsetBy index for deep pages. May be null.
      * @param pageSize
      *      number of records to return (or the number of remaining records if less than the pageSize).
      * @param emailFilter
@@ -120,10 +129,11 @@ public interface AccountDao {
      *      a date and time on or before which the account should have been created in order to match the query.
      * @return
      *      a paged resource list that includes the page of account summaries, as well as other information 
-     *      about the request and the total number of records.
+     *      about the request, the offset key of the next page (if the page is full), and the total number of 
+     *      records (which may be up to a minute out of date).
      */
-    PagedResourceList<AccountSummary> getPagedAccountSummaries(Study study, int offsetBy, int pageSize,
-            String emailFilter, DateTime startDate, DateTime endDate);
+    PagedResourceList<AccountSummary> getPagedAccountSummaries(Study study, int offsetBy, String offsetKey,
+            int pageSize, String emailFilter, DateTime startDate, DateTime endDate);
     
     /**
      * For MailChimp, and other external systems, we need a way to get a healthCode for a given email.
@@ -1,5 +1,6 @@
 package org.sagebionetworks.bridge.dao;
 
+import java.util.List;
 import java.util.Map;
 
 import org.joda.time.DateTime;
@@ -13,6 +14,13 @@ public interface ActivityEventDao {
      */
     void publishEvent(ActivityEvent event);
     
+    /**
+     * Publish several events into users' event streams. Each event is saved under the same rules as 
+     * {@link #publishEvent}, but the existing events are read, and the new events written, in batches. The events 
+     * must have distinct keys (health code and event ID).
+     */
+    void publishEvents(List<ActivityEvent> events);
+    
     /**
      * Get a map of events, where the string key is an event identifier, and the value 
      * is the timestamp of the event. This map will include calculated events like 
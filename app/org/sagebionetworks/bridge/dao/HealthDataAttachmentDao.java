@@ -1,5 +1,6 @@
 package org.sagebionetworks.bridge.dao;
 
+import java.util.List;
 import javax.annotation.Nonnull;
 
 import org.sagebionetworks.bridge.models.healthdata.HealthDataAttachment;
@@ -18,6 +19,16 @@ public interface HealthDataAttachmentDao {
      */
     String createOrUpdateAttachment(@Nonnull HealthDataAttachment attachment);
 
+    /**
+     * Creates or updates a list of health data attachments in a single batch. Attachments without IDs are assigned
+     * new IDs, which are set on the attachment objects. If any attachment fails to write, this throws a
+     * BridgeServiceException.
+     *
+     * @param attachmentList
+     *         attachments to create or update
+     */
+    void createOrUpdateAttachments(@Nonnull List<HealthDataAttachment> attachmentList);
+
     /** Gets a builder instance, used for building prototype health data records for create or update. */
     HealthDataAttachmentBuilder getRecordBuilder();
 }
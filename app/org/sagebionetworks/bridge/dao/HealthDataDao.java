@@ -1,8 +1,10 @@
 package org.sagebionetworks.bridge.dao;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.List;
 
+import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecord;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecordBuilder;
 
@@ -47,6 +49,23 @@ public interface HealthDataDao {
      */
     List<HealthDataRecord> getRecordsForUploadDate(@Nonnull String uploadDate);
 
+    /**
+     * DAO method used by worker apps to page through the health data records uploaded for a specific date, generally
+     * used for export. Records are returned in a stable order, and the ID of any record returned can be used as the
+     * offset key to continue after that record.
+     *
+     * @param uploadDate
+     *         upload date in YYYY-MM-DD format, must be non-null, non-empty, and must represent a valid date
+     * @param offsetKey
+     *         offset key returned with the previous page, or null for the first page
+     * @param pageSize
+     *         max number of records to return
+     * @return page of health records uploaded on that date, with the offset key for the next page if there may be
+     *         more records
+     */
+    ForwardCursorPagedResourceList<HealthDataRecord> getRecordsForUploadDate(@Nonnull String uploadDate,
+            @Nullable String offsetKey, int pageSize);
+
     /**
      * Gets a builder instance, used for building prototype health data records. This is generally used by worker apps
      * to unpack uploads.
@@ -1,6 +1,7 @@
 package org.sagebionetworks.bridge.dao;
 
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 import org.sagebionetworks.bridge.models.accounts.AllParticipantOptionsLookup;
 import org.sagebionetworks.bridge.models.accounts.ParticipantOptionsLookup;
@@ -20,14 +21,29 @@ public interface ParticipantOptionsDao {
     void setAllOptions(StudyIdentifier studyIdentifier, String healthCode, Map<ParticipantOption, String> options);
     
     /**
-     * Get all the options for a single participant. 
+     * Get all the options for a single participant. The result may be cached for a few seconds and shared between 
+     * callers, so it can lag behind writes made on other nodes. 
      */
     ParticipantOptionsLookup getOptions(String healthCode);
     
+    /**
+     * Get all the options for a single participant, always reading them from the database. Use this where a stale 
+     * value matters, such as the sharing scope of an upload's record.
+     */
+    ParticipantOptionsLookup getOptionsUncached(String healthCode);
+    
     /**
      * Get all the options for all participants in a study. 
      */
     AllParticipantOptionsLookup getOptionsForAllParticipants(StudyIdentifier studyIdentifier);
+    
+    /**
+     * Pass the health code and options of each participant in a study to the callback, without holding all of them 
+     * in memory. The table is scanned in parallel segments, so the callback may be called concurrently from 
+     * several threads, and in no particular order. Participants with no options saved are not included.
+     */
+    void forEachParticipantOptions(StudyIdentifier studyIdentifier,
+            BiConsumer<String, ParticipantOptionsLookup> callback);
    
     /**
      * Clear a single option for a participant.
@@ -1,8 +1,11 @@
 package org.sagebionetworks.bridge.dao;
 
+import java.util.List;
+
 import org.joda.time.LocalDate;
 
 import org.sagebionetworks.bridge.models.DateRangeResourceList;
+import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
 import org.sagebionetworks.bridge.models.reports.ReportData;
 import org.sagebionetworks.bridge.models.reports.ReportDataKey;
 
@@ -20,6 +23,26 @@ public interface ReportDataDao {
      */
     DateRangeResourceList<? extends ReportData> getReportData(ReportDataKey key, LocalDate startDate, LocalDate endDate);
 
+    /**
+     * Get one page of report data records for the given date range, in date order. Unlike 
+     * {@link #getReportData(ReportDataKey, LocalDate, LocalDate)}, the cost of this call is bounded by the 
+     * page size rather than by the size of the date range.
+     *
+     * @param key
+     *         the key for this report
+     * @param startDate
+     *         start date for report
+     * @param endDate
+     *         end date for report
+     * @param offsetKey
+     *         the offset key returned with the previous page, or null for the first page
+     * @param pageSize
+     *         the maximum number of records to return
+     * @return a page of report data records, with an offset key if there are more records
+     */
+    ForwardCursorPagedResourceList<ReportData> getReportDataV4(ReportDataKey key, LocalDate startDate,
+            LocalDate endDate, String offsetKey, int pageSize);
+    
     /**
      * Writes a report data record to the backing store. 
      *
@@ -28,9 +51,19 @@ public interface ReportDataDao {
      */
     void saveReportData(ReportData reportData);
     
+    /**
+     * Writes a list of report data records to the backing store in batches, retrying records that 
+     * could not be written on the first attempt. Records must already have their keys set.
+     * 
+     * @param reportDataList
+     *         report data objects
+     */
+    void saveReportDataBatch(List<? extends ReportData> reportDataList);
+    
     /***
      * Delete all records regardless of date for a report. This can be used as part of testing, 
-     * and in development, but there will be too many records in production to do a deletion.
+     * and in development, but there will be too many records in production to do a deletion. Records 
+     * are read and deleted a page at a time.
      *  
      * @param key
      *      report to delete
@@ -1,13 +1,17 @@
 package org.sagebionetworks.bridge.dao;
 
 import java.util.List;
+import java.util.Map;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDateTime;
 
 import org.sagebionetworks.bridge.models.schedules.ScheduledActivity;
 import org.sagebionetworks.bridge.models.schedules.ScheduledActivityList;
 
+import com.google.common.collect.Range;
+
 public interface ScheduledActivityDao {
     
     /**
@@ -27,6 +31,27 @@ public interface ScheduledActivityDao {
      */
     List<ScheduledActivity> getActivities(DateTimeZone timeZone, List<ScheduledActivity> activities);
     
+    /**
+     * Get the persisted activities of a user by their GUIDs, loading them in batches. Activities that don't exist are
+     * not included in the results, and duplicate GUIDs are only loaded once.
+     */
+    List<ScheduledActivity> getActivitiesByGuid(String healthCode, List<String> guids);
+    
+    /**
+     * Get all the persisted activities for one activity GUID of a user, scheduled between the two local date-times
+     * (inclusive). This reads a range of a user's activities in one query, rather than loading each one by key.
+     */
+    List<ScheduledActivity> getActivitiesInRange(DateTimeZone timeZone, String healthCode, String activityGuid,
+            LocalDateTime scheduledOnStart, LocalDateTime scheduledOnEnd);
+    
+    /**
+     * Get the persisted activities of a user for several activity GUIDs, each scheduled within its own closed range of
+     * local date-times. This is one range query per activity GUID, as in {@link #getActivitiesInRange}, but the
+     * queries are run concurrently.
+     */
+    List<ScheduledActivity> getActivitiesInRanges(DateTimeZone timeZone, String healthCode,
+            Map<String, Range<LocalDateTime>> scheduledOnRanges);
+    
     /**
      * Save activities (activities will only be saved if they are not in the database).
      */
@@ -82,6 +82,20 @@ public interface SurveyDao {
      */
     Survey getSurveyMostRecentlyPublishedVersion(StudyIdentifier studyIdentifier, String guid);
     
+    /**
+     * Same as {@link #getSurvey}, but published versions are served from an in-memory cache when possible. 
+     * Published versions never change, so this is for read-only callers like scheduling and upload 
+     * validation. The returned survey is shared, so callers must not modify it.
+     */
+    Survey getCachedSurvey(GuidCreatedOnVersionHolder keys);
+    
+    /**
+     * Same as {@link #getSurveyMostRecentlyPublishedVersion}, but served from an in-memory cache when possible. 
+     * A survey published on another server may take up to a minute to be returned. The returned survey is 
+     * shared, so callers must not modify it.
+     */
+    Survey getCachedSurveyMostRecentlyPublishedVersion(StudyIdentifier studyIdentifier, String guid);
+    
     /**
      * Get the most recent version of each survey in the study, that has been published. 
      */
@@ -5,8 +5,11 @@ import static org.sagebionetworks.bridge.models.activities.ActivityEventObjectTy
 import static org.sagebionetworks.bridge.models.activities.ActivityEventObjectType.TWO_WEEKS_BEFORE_ENROLLMENT;
 import static org.sagebionetworks.bridge.models.activities.ActivityEventObjectType.TWO_MONTHS_BEFORE_ENROLLMENT;
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.annotation.Resource;
 
@@ -14,17 +17,27 @@ import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 
 import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.cache.CacheProvider;
 import org.sagebionetworks.bridge.dao.ActivityEventDao;
 import org.sagebionetworks.bridge.models.activities.ActivityEvent;
 import org.sagebionetworks.bridge.models.activities.ActivityEventType;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBSaveExpression;
 import com.amazonaws.services.dynamodbv2.datamodeling.PaginatedQueryList;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.FailedBatch;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ConditionalOperator;
+import com.amazonaws.services.dynamodbv2.model.ExpectedAttributeValue;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMap.Builder;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 
 @Component
@@ -33,25 +46,78 @@ public class DynamoActivityEventDao implements ActivityEventDao {
     private static final String ANSWERED_EVENT_POSTFIX = ":"+ActivityEventType.ANSWERED.name().toLowerCase();
     private static final String TWO_WEEKS = TWO_WEEKS_BEFORE_ENROLLMENT.name().toLowerCase();
     private static final String TWO_MONTHS = TWO_MONTHS_BEFORE_ENROLLMENT.name().toLowerCase();
+    private static final String EVENT_ID = "eventId";
+    private static final String TIMESTAMP = "timestamp";
+    // Separates the timestamp from the answer value in a cached event. Timestamps never contain it.
+    private static final String CACHED_VALUE_SEPARATOR = ":";
     
     private DynamoDBMapper mapper;
+    private CacheProvider cacheProvider;
 
     @Resource(name = "activityEventDdbMapper")
     public final void setDdbMapper(DynamoDBMapper mapper) {
         this.mapper = mapper;
     }
     
+    /** Each user's events are cached, and dropped from the cache when an event is published. */
+    @Autowired
+    public final void setCacheProvider(CacheProvider cacheProvider) {
+        this.cacheProvider = cacheProvider;
+    }
+    
     @Override
     public void publishEvent(ActivityEvent event) {
         checkNotNull(event);
         
-        DynamoActivityEvent hashKey = new DynamoActivityEvent();
-        hashKey.setHealthCode(event.getHealthCode());
-        hashKey.setEventId(event.getEventId());
+        // A single conditional write, rather than reading the saved event to compare against.
+        try {
+            mapper.save(event, getLaterNonEnrollmentEventExpression(event));
+        } catch (ConditionalCheckFailedException e) {
+            // The saved event is later than this one, or is an enrollment, so it stays as it is.
+            return;
+        }
+        cacheProvider.removeActivityEvents(event.getHealthCode());
+    }
+
+    @Override
+    public void publishEvents(List<ActivityEvent> events) {
+        checkNotNull(events);
+        
+        if (events.isEmpty()) {
+            return;
+        }
+        List<Object> hashKeys = Lists.newArrayListWithCapacity(events.size());
+        for (ActivityEvent event : events) {
+            DynamoActivityEvent hashKey = new DynamoActivityEvent();
+            hashKey.setHealthCode(event.getHealthCode());
+            hashKey.setEventId(event.getEventId());
+            hashKeys.add(hashKey);
+        }
+        // there's only one table of results returned.
+        List<Object> savedEvents = Iterables.getFirst(mapper.batchLoad(hashKeys).values(), ImmutableList.of());
+        Map<String, ActivityEvent> savedEventMap = new HashMap<>();
+        for (Object object : savedEvents) {
+            ActivityEvent savedEvent = (ActivityEvent)object;
+            savedEventMap.put(getEventKey(savedEvent), savedEvent);
+        }
         
-        ActivityEvent savedEvent = mapper.load(hashKey);
-        if (isLaterNonEnrollmentEvent(savedEvent, event)) {
-            mapper.save(event);
+        List<ActivityEvent> eventsToSave = Lists.newArrayList();
+        for (ActivityEvent event : events) {
+            if (isLaterNonEnrollmentEvent(savedEventMap.get(getEventKey(event)), event)) {
+                eventsToSave.add(event);
+            }
+        }
+        if (!eventsToSave.isEmpty()) {
+            List<FailedBatch> failures = mapper.batchSave(eventsToSave);
+            BridgeUtils.ifFailuresThrowException(failures);
+            
+            Set<String> healthCodes = new HashSet<>();
+            for (ActivityEvent event : eventsToSave) {
+                healthCodes.add(event.getHealthCode());
+            }
+            for (String healthCode : healthCodes) {
+                cacheProvider.removeActivityEvents(healthCode);
+            }
         }
     }
 
@@ -59,15 +125,12 @@ public class DynamoActivityEventDao implements ActivityEventDao {
     public Map<String, DateTime> getActivityEventMap(String healthCode) {
         checkNotNull(healthCode);
         
-        DynamoActivityEvent hashKey = new DynamoActivityEvent();
-        hashKey.setHealthCode(healthCode);
-        DynamoDBQueryExpression<DynamoActivityEvent> query = new DynamoDBQueryExpression<DynamoActivityEvent>()
-            .withHashKeyValues(hashKey);
-
-        PaginatedQueryList<DynamoActivityEvent> queryResults = mapper.query(DynamoActivityEvent.class, query);
+        Map<String,String> cachedValues = cacheProvider.getActivityEvents(healthCode,
+                () -> loadCachedValues(healthCode));
         
         Builder<String,DateTime> builder = ImmutableMap.<String,DateTime>builder();
-        for (DynamoActivityEvent event : queryResults) {
+        for (Map.Entry<String,String> entry : cachedValues.entrySet()) {
+            DynamoActivityEvent event = fromCachedValue(healthCode, entry.getKey(), entry.getValue());
             builder.put(getEventMapKey(event), new DateTime(event.getTimestamp(), DateTimeZone.UTC));
             if (isEnrollment(event)) {
                 builder.put(TWO_WEEKS, new DateTime(event.getTimestamp(), DateTimeZone.UTC).minusWeeks(2));
@@ -77,6 +140,22 @@ public class DynamoActivityEventDao implements ActivityEventDao {
         return builder.build();
     }
     
+    // Query all of the user's events from the table, in the form they're cached.
+    private Map<String,String> loadCachedValues(String healthCode) {
+        DynamoActivityEvent hashKey = new DynamoActivityEvent();
+        hashKey.setHealthCode(healthCode);
+        DynamoDBQueryExpression<DynamoActivityEvent> query = new DynamoDBQueryExpression<DynamoActivityEvent>()
+            .withHashKeyValues(hashKey);
+
+        PaginatedQueryList<DynamoActivityEvent> queryResults = mapper.query(DynamoActivityEvent.class, query);
+        
+        Map<String,String> cachedValues = new HashMap<>();
+        for (DynamoActivityEvent event : queryResults) {
+            cachedValues.put(event.getEventId(), toCachedValue(event));
+        }
+        return cachedValues;
+    }
+    
     @Override
     public void deleteActivityEvents(String healthCode) {
         checkNotNull(healthCode);
@@ -95,12 +174,55 @@ public class DynamoActivityEventDao implements ActivityEventDao {
             List<FailedBatch> failures = mapper.batchDelete(objectsToDelete);
             BridgeUtils.ifFailuresThrowException(failures);
         }
+        cacheProvider.removeActivityEvents(healthCode);
+    }
+    
+    private String getEventKey(ActivityEvent event) {
+        return event.getHealthCode() + ":" + event.getEventId();
     }
     
     private boolean isEnrollment(ActivityEvent event) {
         return ENROLLMENT.name().toLowerCase().equals(event.getEventId());
     }
     
+    // The same rules as isLaterNonEnrollmentEvent, as a condition on the write. An enrollment is only saved if 
+    // there's no saved event. Any other event is saved if there's no saved event, or the saved event is earlier.
+    private DynamoDBSaveExpression getLaterNonEnrollmentEventExpression(ActivityEvent event) {
+        Map<String, ExpectedAttributeValue> map = new HashMap<>();
+        map.put(EVENT_ID, new ExpectedAttributeValue().withExists(false));
+        
+        DynamoDBSaveExpression saveExpression = new DynamoDBSaveExpression();
+        if (!isEnrollment(event)) {
+            AttributeValue timestamp = new AttributeValue().withN(Long.toString(event.getTimestamp()));
+            map.put(TIMESTAMP, new ExpectedAttributeValue().withValue(timestamp)
+                    .withComparisonOperator(ComparisonOperator.LT));
+            saveExpression.withConditionalOperator(ConditionalOperator.OR);
+        }
+        saveExpression.setExpected(map);
+        return saveExpression;
+    }
+    
+    // Events are cached as the timestamp, followed by the answer value if there is one.
+    private static String toCachedValue(ActivityEvent event) {
+        String value = Long.toString(event.getTimestamp());
+        if (event.getAnswerValue() != null) {
+            value += CACHED_VALUE_SEPARATOR + event.getAnswerValue();
+        }
+        return value;
+    }
+    
+    private static DynamoActivityEvent fromCachedValue(String healthCode, String eventId, String value) {
+        String[] parts = value.split(CACHED_VALUE_SEPARATOR, 2);
+        DynamoActivityEvent event = new DynamoActivityEvent();
+        event.setHealthCode(healthCode);
+        event.setEventId(eventId);
+        event.setTimestamp(Long.parseLong(parts[0]));
+        if (parts.length > 1) {
+            event.setAnswerValue(parts[1]);
+        }
+        return event;
+    }
+    
     // Enrollment can only be recorded once, even if user withdraws and re-enrolls. Tasks are 
     // not deleted and so one-time tasks are not re-scheduled against a new enrollment date.
     // Only save if the timestamp is later than the current timestamp in the table
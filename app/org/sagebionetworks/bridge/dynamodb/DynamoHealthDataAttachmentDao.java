@@ -1,9 +1,12 @@
 package org.sagebionetworks.bridge.dynamodb;
 
+import java.util.ArrayList;
+import java.util.List;
 import javax.annotation.Nonnull;
 import javax.annotation.Resource;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.FailedBatch;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Component;
 
@@ -39,6 +42,23 @@ public class DynamoHealthDataAttachmentDao implements HealthDataAttachmentDao {
         return dynamoAttachment.getId();
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void createOrUpdateAttachments(@Nonnull List<HealthDataAttachment> attachmentList) {
+        List<DynamoHealthDataAttachment> dynamoAttachmentList = new ArrayList<>();
+        for (HealthDataAttachment oneAttachment : attachmentList) {
+            DynamoHealthDataAttachment dynamoAttachment = (DynamoHealthDataAttachment) oneAttachment;
+            if (StringUtils.isBlank(dynamoAttachment.getId())) {
+                dynamoAttachment.setId(BridgeUtils.generateGuid());
+            }
+            dynamoAttachmentList.add(dynamoAttachment);
+        }
+
+        // persist to DDB
+        List<FailedBatch> failures = mapper.batchSave(dynamoAttachmentList);
+        BridgeUtils.ifFailuresThrowException(failures);
+    }
+
     /** {@inheritDoc} */
     @Override
     public HealthDataAttachmentBuilder getRecordBuilder() {
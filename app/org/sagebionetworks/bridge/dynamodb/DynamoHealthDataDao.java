@@ -1,20 +1,32 @@
 package org.sagebionetworks.bridge.dynamodb;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
 import com.amazonaws.services.dynamodbv2.datamodeling.QueryResultPage;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.QueryOutcome;
+import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
 import com.amazonaws.services.dynamodbv2.model.Condition;
+import com.google.common.collect.Iterators;
 
 import org.sagebionetworks.bridge.BridgeConstants;
 import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.dao.HealthDataDao;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecord;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecordBuilder;
 
@@ -27,6 +39,12 @@ import org.springframework.stereotype.Component;
 public class DynamoHealthDataDao implements HealthDataDao {
     private static final long CREATED_ON_OFFSET_MILLIS = TimeUnit.MILLISECONDS.convert(1, TimeUnit.HOURS);
 
+    private static final String ID = "id";
+    private static final String UPLOAD_DATE = "uploadDate";
+
+    /** Number of records deleted at a time when deleting a user's records. */
+    static final int DELETE_BATCH_SIZE = 100;
+
     private DynamoDBMapper mapper;
     private DynamoIndexHelper healthCodeIndex;
     private DynamoIndexHelper uploadDateIndex;
@@ -74,15 +92,18 @@ public class DynamoHealthDataDao implements HealthDataDao {
     /** {@inheritDoc} */
     @Override
     public int deleteRecordsForHealthCode(@Nonnull String healthCode) {
-        // query for the keys we need to delete
-        List<HealthDataRecord> keysToDelete = healthCodeIndex.queryKeys(HealthDataRecord.class, "healthCode",
-                healthCode, null);
-
-        // and then delete
-        List<DynamoDBMapper.FailedBatch> failureList = mapper.batchDelete(keysToDelete);
-        BridgeUtils.ifFailuresThrowException(failureList);
-
-        return keysToDelete.size();
+        // query for the keys we need to delete, and delete them a chunk at a time, so we never hold all of a user's
+        // records in memory
+        Iterator<List<HealthDataRecord>> keyChunkIter = Iterators.partition(healthCodeIndex.iterateKeys(
+                HealthDataRecord.class, "healthCode", healthCode, null), DELETE_BATCH_SIZE);
+        int numDeleted = 0;
+        while (keyChunkIter.hasNext()) {
+            List<HealthDataRecord> keysToDelete = keyChunkIter.next();
+            List<DynamoDBMapper.FailedBatch> failureList = mapper.batchDelete(keysToDelete);
+            BridgeUtils.ifFailuresThrowException(failureList);
+            numDeleted += keysToDelete.size();
+        }
+        return numDeleted;
     }
 
     /** {@inheritDoc} */
@@ -94,7 +115,44 @@ public class DynamoHealthDataDao implements HealthDataDao {
     /** {@inheritDoc} */
     @Override
     public List<HealthDataRecord> getRecordsForUploadDate(@Nonnull String uploadDate) {
-        return uploadDateIndex.query(HealthDataRecord.class, "uploadDate", uploadDate, null);
+        return uploadDateIndex.query(HealthDataRecord.class, UPLOAD_DATE, uploadDate, null);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public ForwardCursorPagedResourceList<HealthDataRecord> getRecordsForUploadDate(@Nonnull String uploadDate,
+            @Nullable String offsetKey, int pageSize) {
+        // Query one page of keys from the index. The index is keyed by upload date, and DynamoDB continues the query
+        // from the record after the exclusive start key, which for this index is upload date and record ID.
+        QuerySpec spec = new QuerySpec().withHashKey(UPLOAD_DATE, uploadDate).withMaxPageSize(pageSize);
+        if (offsetKey != null) {
+            spec.withExclusiveStartKey(UPLOAD_DATE, uploadDate, ID, offsetKey);
+        }
+        QueryOutcome outcome = uploadDateIndex.query(spec);
+
+        List<HealthDataRecord> keyList = new ArrayList<>();
+        for (Item item : outcome.getItems()) {
+            keyList.add(BridgeObjectMapper.get().convertValue(item.asMap(), HealthDataRecord.class));
+        }
+
+        // Load the full records, and put them back in index order, so that any record's ID can be used to continue
+        // after it.
+        Map<String, HealthDataRecord> recordsById = new HashMap<>();
+        for (HealthDataRecord record : uploadDateIndex.batchLoad(HealthDataRecord.class, keyList)) {
+            recordsById.put(record.getId(), record);
+        }
+        List<HealthDataRecord> recordList = keyList.stream().map(key -> recordsById.get(key.getId()))
+                .filter(Objects::nonNull).collect(Collectors.toList());
+
+        // No last evaluated key means there are no more records.
+        String nextOffsetKey = null;
+        Map<String, AttributeValue> lastEvaluatedKey = outcome.getQueryResult().getLastEvaluatedKey();
+        if (lastEvaluatedKey != null) {
+            nextOffsetKey = lastEvaluatedKey.get(ID).getS();
+        }
+
+        return new ForwardCursorPagedResourceList<>(recordList, nextOffsetKey, pageSize)
+                .withFilter(UPLOAD_DATE, uploadDate);
     }
 
     /** {@inheritDoc} */
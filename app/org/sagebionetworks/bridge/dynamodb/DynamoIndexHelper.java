@@ -4,8 +4,12 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.annotation.Resource;
 
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
@@ -17,6 +21,9 @@ import com.amazonaws.services.dynamodbv2.document.QueryOutcome;
 import com.amazonaws.services.dynamodbv2.document.RangeKeyCondition;
 import com.amazonaws.services.dynamodbv2.document.Table;
 import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
+import com.amazonaws.services.dynamodbv2.model.Select;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 
 import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
@@ -39,8 +46,15 @@ public class DynamoIndexHelper {
         return indexHelper;
     }
 
+    /**
+     * Max number of keys loaded from the table in one batch. This is the most DynamoDB allows in one BatchGetItem
+     * request.
+     */
+    static final int BATCH_LOAD_SIZE = 100;
+
     private Index index;
     private DynamoDBMapper mapper;
+    private ExecutorService batchLoadExecutorService;
 
     /** DynamoDB index. This is used to query the secondary index. This is configured by Spring. */
     final void setIndex(Index index) {
@@ -59,6 +73,15 @@ public class DynamoIndexHelper {
         this.mapper = mapper;
     }
     
+    /**
+     * Executor service used to load batches of full table entries in parallel. This is shared by all index helpers and
+     * configured by Spring.
+     */
+    @Resource(name = "dynamoIndexBatchLoadExecutorService")
+    public final void setBatchLoadExecutorService(ExecutorService batchLoadExecutorService) {
+        this.batchLoadExecutorService = batchLoadExecutorService;
+    }
+
     public QueryOutcome query(@Nonnull QuerySpec spec) {
         Page<Item,QueryOutcome> page = index.query(spec).firstPage();
         return page.getLowLevelResult();
@@ -81,19 +104,35 @@ public class DynamoIndexHelper {
      * @param <T>
      *         expected result type
      * @return list of key objects returned by the query
+     * @see #iterateKeys
      */
     public <T> List<T> queryKeys(@Nonnull Class<? extends T> clazz, @Nonnull String indexKeyName,
             @Nonnull Object indexKeyValue, RangeKeyCondition rangeKeyCondition) {
-        // query the index
-        Iterable<Item> itemIter = queryHelper(indexKeyName, indexKeyValue, rangeKeyCondition);
+        return Lists.newArrayList(iterateKeys(clazz, indexKeyName, indexKeyValue, rangeKeyCondition));
+    }
 
-        // convert items to the specified class
-        List<T> recordKeyList = new ArrayList<>();
-        for (Item oneItem : itemIter) {
-            T oneRecord = BridgeObjectMapper.get().convertValue(oneItem.asMap(), clazz);
-            recordKeyList.add(oneRecord);
-        }
-        return recordKeyList;
+    /**
+     * Same as {@link #queryKeys}, except the key objects are returned through an iterator, which queries the index a
+     * page at a time as it's iterated. Use this when there may be more keys than should be held in memory at once.
+     *
+     * @param clazz
+     *         expected result class
+     * @param indexKeyName
+     *         index key name to query on
+     * @param indexKeyValue
+     *         index key value to query on
+     * @param rangeKeyCondition
+     *         range condition for query on range portion of key (optional)
+     * @param <T>
+     *         expected result type
+     * @return iterator over the key objects returned by the query
+     */
+    public <T> Iterator<T> iterateKeys(@Nonnull Class<? extends T> clazz, @Nonnull String indexKeyName,
+            @Nonnull Object indexKeyValue, RangeKeyCondition rangeKeyCondition) {
+        // query the index, and convert items to the specified class as they're read
+        Iterable<Item> itemIter = queryHelper(indexKeyName, indexKeyValue, rangeKeyCondition);
+        return Iterators.transform(itemIter.iterator(),
+                oneItem -> BridgeObjectMapper.get().convertValue(oneItem.asMap(), clazz));
     }
     
     /**
@@ -109,10 +148,16 @@ public class DynamoIndexHelper {
      */
     public int queryKeyCount(@Nonnull String indexKeyName, @Nonnull Object indexKeyValue,
                     RangeKeyCondition rangeKeyCondition) {
+        // Select.COUNT makes DynamoDB count the items instead of returning them. Each page still covers up to 1MB of
+        // index data, so add up the counts from each page.
+        QuerySpec spec = new QuerySpec().withHashKey(indexKeyName, indexKeyValue).withSelect(Select.COUNT);
+        if (rangeKeyCondition != null) {
+            spec.withRangeKeyCondition(rangeKeyCondition);
+        }
+
         int count = 0;
-        Iterable<Item> itemIter = queryHelper(indexKeyName, indexKeyValue, rangeKeyCondition);
-        for(Iterator<Item> i = itemIter.iterator(); i.hasNext(); i.next()) {
-            count++;
+        for (Page<Item, QueryOutcome> page : index.query(spec).pages()) {
+            count += page.getLowLevelResult().getQueryResult().getCount();
         }
         return count;
     }
@@ -141,39 +186,81 @@ public class DynamoIndexHelper {
      *         expected result type
      * @return list of query results
      */
-    @SuppressWarnings("unchecked")
     public <T> List<T> query(@Nonnull Class<? extends T> clazz, @Nonnull String indexKeyName,
             @Nonnull Object indexKeyValue, RangeKeyCondition rangeKeyCondition) {
         // In general, we only project keys onto global secondary indices, to save storage space. This means the
         // objects we get back aren't full fledged objects. However, we can use them as "key objects" to re-query
         // the DDB table to get full results.
         //
-        // First step is to query the index to get these "key objects".
-        List<T> recordKeyList = queryKeys(clazz, indexKeyName, indexKeyValue, rangeKeyCondition);
+        // Read the "key objects" from the index a page at a time, and batch query DDB for the full records in chunks
+        // as we go.
+        return batchLoad(clazz, iterateKeys(clazz, indexKeyName, indexKeyValue, rangeKeyCondition));
+    }
 
-        // Using the "key objects", batch query DDB to get full records. For some reason, batchLoad() returns a map.
-        // Flatten that map into a list.
-        //
-        // Also, for some reason, batchLoad() takes a List<Object>, not a List<T> or List<?>. Fortunately, Java type
-        // erasure means we can safely cast this to a List<Object>.
-        Map<String, List<Object>> resultMap = mapper.batchLoad((List<Object>) recordKeyList);
+    /**
+     * Loads the full table entries for the given key objects, generally key objects returned by a query on the index.
+     * Keys are loaded in chunks of up to {@link #BATCH_LOAD_SIZE}, in parallel. Results are in no particular order.
+     *
+     * @param clazz
+     *         expected result class
+     * @param keyList
+     *         key objects to load
+     * @param <T>
+     *         expected result type
+     * @return list of full table entries
+     */
+    public <T> List<T> batchLoad(@Nonnull Class<? extends T> clazz, @Nonnull List<? extends T> keyList) {
+        return batchLoad(clazz, keyList.iterator());
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> List<T> batchLoad(Class<? extends T> clazz, Iterator<? extends T> keyIter) {
+        // For some reason, batchLoad() takes a List<Object>, not a List<T> or List<?>, so each chunk is copied into
+        // a List<Object>.
+        Iterator<? extends List<? extends T>> keyChunkIter = Iterators.partition(keyIter, BATCH_LOAD_SIZE);
+        List<Future<Map<String, List<Object>>>> resultMapFutureList = new ArrayList<>();
+        while (keyChunkIter.hasNext()) {
+            List<Object> keyChunk = new ArrayList<>(keyChunkIter.next());
+            resultMapFutureList.add(batchLoadExecutorService.submit(() -> mapper.batchLoad(keyChunk)));
+        }
+
+        // For some reason, batchLoad() returns a map. Flatten that map into a list.
         List<T> recordList = new ArrayList<>();
-        for (List<Object> resultList : resultMap.values()) {
-            for (Object oneResult : resultList) {
-                if (!clazz.isInstance(oneResult)) {
-                    // This should never happen, but just in case.
-                    throw new BridgeServiceException(String.format(
-                            "DynamoDB returned objects of type %s instead of %s",
-                            oneResult.getClass().getName(), clazz.getName()));
-                }
+        for (Future<Map<String, List<Object>>> oneResultMapFuture : resultMapFutureList) {
+            for (List<Object> resultList : getBatchLoadResult(oneResultMapFuture).values()) {
+                for (Object oneResult : resultList) {
+                    if (!clazz.isInstance(oneResult)) {
+                        // This should never happen, but just in case.
+                        throw new BridgeServiceException(String.format(
+                                "DynamoDB returned objects of type %s instead of %s",
+                                oneResult.getClass().getName(), clazz.getName()));
+                    }
 
-                recordList.add((T) oneResult);
+                    recordList.add((T) oneResult);
+                }
             }
         }
 
         return recordList;
     }
 
+    // Waits for a batch load and returns its result, re-throwing its exception if it failed.
+    private static Map<String, List<Object>> getBatchLoadResult(Future<Map<String, List<Object>>> resultMapFuture) {
+        try {
+            return resultMapFuture.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new BridgeServiceException(cause);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BridgeServiceException("Interrupted loading records from DynamoDB", ex);
+        }
+    }
+
     /**
      * This abstracts away the call to index.query(), which returns an ItemCollection. While ItemCollection implements
      * Iterable, it overrides iterator() to return an IteratorSupport, which is not publicly exposed. This makes
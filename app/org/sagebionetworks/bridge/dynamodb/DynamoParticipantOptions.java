@@ -21,6 +21,9 @@ public class DynamoParticipantOptions {
     
     private String healthCode; // hash
     private String studyKey; // range
+    // Options written as a map attribute, so each option can be updated on its own. Null for items that still have 
+    // their options only in the JSON data attribute.
+    private Map<String,String> optionsMap;
     private Map<String,String> options = Maps.newHashMap();
     
     @DynamoDBAttribute
@@ -37,12 +40,25 @@ public class DynamoParticipantOptions {
     public void setHealthCode(String healthCode) {
         this.healthCode = healthCode;
     }
+    /** The options from the map attribute if the item has one, otherwise from the JSON data attribute. */
     @DynamoDBIgnore
     public Map<String,String> getOptions() {
-        return options;
+        return (optionsMap != null) ? optionsMap : options;
     }
+    /**
+     * Sets the options written to the JSON data attribute. This clears the map attribute, so saving the item removes 
+     * it and the data attribute is the one all readers see.
+     */
     public void setOptions(Map<String,String> options) {
         this.options = options;
+        this.optionsMap = null;
+    }
+    @DynamoDBAttribute(attributeName="options")
+    public Map<String,String> getOptionsMap() {
+        return optionsMap;
+    }
+    public void setOptionsMap(Map<String,String> optionsMap) {
+        this.optionsMap = optionsMap;
     }
     @DynamoDBAttribute
     public String getData() {
@@ -4,53 +4,133 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 
 import javax.annotation.Resource;
 
+import org.sagebionetworks.bridge.config.Config;
 import org.sagebionetworks.bridge.dao.ParticipantOption;
 import org.sagebionetworks.bridge.dao.ParticipantOptionsDao;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.models.accounts.AllParticipantOptionsLookup;
 import org.sagebionetworks.bridge.models.accounts.ParticipantOptionsLookup;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBScanExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.ScanResultPage;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
+import com.amazonaws.services.dynamodbv2.document.utils.NameMap;
+import com.amazonaws.services.dynamodbv2.document.utils.ValueMap;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
 import com.amazonaws.services.dynamodbv2.model.Condition;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.RateLimiter;
 
 @Component
 public class DynamoParticipantOptionsDao implements ParticipantOptionsDao {
 
+    static final String SCAN_SEGMENT_COUNT = "participant.options.scan.segment.count";
+    static final String SCAN_READ_RATE = "participant.options.scan.read.rate";
+    static final String MAP_WRITES_ENABLED = "participant.options.map.writes.enabled";
+    static final int SCAN_PAGE_LIMIT = 100;
+    private static final String HEALTH_CODE = "healthDataCode";
+    private static final String STUDY_KEY = "studyKey";
+    private static final String OPTIONS = "options";
+
+    // A participant's options are read several times in one request or one upload validation (consent, sharing 
+    // scope, external ID, data groups), so we keep them in memory briefly. Writes through this DAO invalidate this 
+    // node's entry immediately. Other nodes see the change when their entry expires.
+    // Package-scoped to facilitate unit tests.
+    static final long OPTIONS_CACHE_EXPIRE_SECONDS = 10;
+    private static final long OPTIONS_CACHE_MAX_SIZE = 10000L;
+
+    private final Cache<String, ParticipantOptionsLookup> optionsCache = CacheBuilder.newBuilder()
+            .maximumSize(OPTIONS_CACHE_MAX_SIZE).expireAfterWrite(OPTIONS_CACHE_EXPIRE_SECONDS, TimeUnit.SECONDS)
+            .build();
+
+    // Counts writes on this node. A read that overlaps a write may have loaded the options from before the write, 
+    // so its lookup is dropped from the cache rather than left there until it expires.
+    private final AtomicLong writeCount = new AtomicLong();
+
     private DynamoDBMapper mapper;
+    private Table table;
+    private ExecutorService scanExecutorService;
+    private int scanSegmentCount;
+    private RateLimiter scanRateLimiter;
+    private boolean mapWritesEnabled;
     
     @Resource(name = "participantOptionsDbMapper")
     final void setDdbMapper(DynamoDBMapper mapper) {
         this.mapper = mapper;
     }
 
+    /** Options are updated through the document API, since the mapper can't write update expressions. */
+    @Resource(name = "participantOptionsTable")
+    final void setTable(Table table) {
+        this.table = table;
+    }
+
+    /** Threads the segments of a scan over all participants' options run on. */
+    @Resource(name = "participantOptionsScanExecutorService")
+    final void setScanExecutorService(ExecutorService scanExecutorService) {
+        this.scanExecutorService = scanExecutorService;
+    }
+
+    /**
+     * Gets the scan segment count, the read capacity per second that scans are limited to, and whether options are 
+     * written as a map attribute from Config.
+     */
+    @Autowired
+    final void setConfig(Config config) {
+        setScanSegmentCount(config.getInt(SCAN_SEGMENT_COUNT));
+        setScanRateLimiter(RateLimiter.create(config.getInt(SCAN_READ_RATE)));
+        setMapWritesEnabled(Boolean.valueOf(config.get(MAP_WRITES_ENABLED)));
+    }
+
+    // allow unit test to set these directly
+    void setScanSegmentCount(int scanSegmentCount) {
+        this.scanSegmentCount = scanSegmentCount;
+    }
+
+    // Shared by all scans on the node, so concurrent scans can't use up the table's read capacity between them.
+    void setScanRateLimiter(RateLimiter scanRateLimiter) {
+        this.scanRateLimiter = scanRateLimiter;
+    }
+
+    void setMapWritesEnabled(boolean mapWritesEnabled) {
+        this.mapWritesEnabled = mapWritesEnabled;
+    }
+
     @Override
     public void setOption(StudyIdentifier studyIdentifier, String healthCode, ParticipantOption option, String value) {
         checkNotNull(studyIdentifier);
         checkArgument(isNotBlank(healthCode));
         checkNotNull(option);
         
-        DynamoParticipantOptions keyObject = new DynamoParticipantOptions();
-        keyObject.setHealthCode(healthCode);
-        
-        DynamoParticipantOptions options = mapper.load(keyObject);
-        if (options == null) {
-            options = new DynamoParticipantOptions();
-        }
-        options.setStudyKey(studyIdentifier.getIdentifier());
-        options.setHealthCode(healthCode);
-        options.getOptions().put(option.name(), value);
-        mapper.save(options);
+        Map<String,String> updates = new HashMap<>();
+        updates.put(option.name(), value);
+        updateOptions(studyIdentifier, healthCode, updates);
     }
     
     @Override
@@ -64,25 +144,41 @@ public class DynamoParticipantOptionsDao implements ParticipantOptionsDao {
             return;
         }
         
-        DynamoParticipantOptions keyObject = new DynamoParticipantOptions();
-        keyObject.setHealthCode(healthCode);
-        
-        DynamoParticipantOptions dynamoOptions = mapper.load(keyObject);
-        if (dynamoOptions == null) {
-            dynamoOptions = new DynamoParticipantOptions();
-        }
-        dynamoOptions.setStudyKey(studyIdentifier.getIdentifier());
-        dynamoOptions.setHealthCode(healthCode);
+        Map<String,String> updates = new HashMap<>();
         for (ParticipantOption opt : options.keySet()) {
-            dynamoOptions.getOptions().put(opt.name(), options.get(opt));    
+            updates.put(opt.name(), options.get(opt));
         }
-        mapper.save(dynamoOptions);    
+        updateOptions(studyIdentifier, healthCode, updates);
     }
     
     @Override
     public ParticipantOptionsLookup getOptions(String healthCode) {
         checkArgument(isNotBlank(healthCode));
         
+        ParticipantOptionsLookup lookup = optionsCache.getIfPresent(healthCode);
+        if (lookup != null) {
+            return lookup;
+        }
+        
+        // Writes count first and invalidate second. So if a write happened since the load started, either it's 
+        // counted by the check after the put, or its invalidation comes after the put.
+        long writeCountBeforeLoad = writeCount.get();
+        lookup = loadOptions(healthCode);
+        optionsCache.put(healthCode, lookup);
+        if (writeCount.get() != writeCountBeforeLoad) {
+            optionsCache.invalidate(healthCode);
+        }
+        return lookup;
+    }
+    
+    @Override
+    public ParticipantOptionsLookup getOptionsUncached(String healthCode) {
+        checkArgument(isNotBlank(healthCode));
+        
+        return loadOptions(healthCode);
+    }
+    
+    private ParticipantOptionsLookup loadOptions(String healthCode) {
         DynamoParticipantOptions keyObject = new DynamoParticipantOptions();
         keyObject.setHealthCode(healthCode);
         
@@ -90,20 +186,19 @@ public class DynamoParticipantOptionsDao implements ParticipantOptionsDao {
         if (options == null) {
             return new ParticipantOptionsLookup(ImmutableMap.of());
         }
-        return new ParticipantOptionsLookup(options.getOptions());
+        // The lookup is shared by callers on this node. Options can be null, so this can't be an ImmutableMap.
+        return new ParticipantOptionsLookup(Collections.unmodifiableMap(options.getOptions()));
     }
     
     @Override
     public void deleteAllOptions(String healthCode) {
         checkArgument(isNotBlank(healthCode));
         
+        // Deleting by key is a no-op if there's no record, so there's no need to read it first.
         DynamoParticipantOptions keyObject = new DynamoParticipantOptions();
         keyObject.setHealthCode(healthCode);
-        
-        DynamoParticipantOptions options = mapper.load(keyObject);
-        if (options != null) {
-            mapper.delete(options);    
-        }
+        mapper.delete(keyObject);
+        invalidateOptions(healthCode);
     }
 
     @Override
@@ -111,14 +206,155 @@ public class DynamoParticipantOptionsDao implements ParticipantOptionsDao {
         checkArgument(isNotBlank(healthCode));
         checkNotNull(option);
         
+        Map<String,String> updates = new HashMap<>();
+        updates.put(option.name(), null);
+        updateOptions(null, healthCode, updates);
+    }
+
+    /**
+     * Sets each option in the updates to its value, or removes it if the value is null, and sets the study key if 
+     * there is one. Nodes that only read the JSON data attribute can't see options in the map attribute, so until 
+     * map writes are enabled, the record is read and saved back with its options in the data attribute. Once they 
+     * are, options are written with an update expression on their own key in the options map, without reading the 
+     * record, so concurrent updates of different options don't overwrite each other. That only works once the 
+     * options map exists. For a new participant or a record still in the JSON data format, the record is read and 
+     * written back with an options map first.
+     */
+    private void updateOptions(StudyIdentifier studyIdentifier, String healthCode, Map<String,String> updates) {
+        try {
+            if (mapWritesEnabled) {
+                writeOptions(studyIdentifier, healthCode, updates);
+            } else {
+                saveOptions(studyIdentifier, healthCode, updates);
+            }
+        } finally {
+            invalidateOptions(healthCode);
+        }
+    }
+
+    private void invalidateOptions(String healthCode) {
+        writeCount.incrementAndGet();
+        optionsCache.invalidate(healthCode);
+    }
+
+    // Reads the record and saves it back with the updates applied to its options in the JSON data attribute. If the 
+    // record has an options map, saving removes it, so it can't hide the options in the data attribute.
+    private void saveOptions(StudyIdentifier studyIdentifier, String healthCode, Map<String,String> updates) {
         DynamoParticipantOptions keyObject = new DynamoParticipantOptions();
         keyObject.setHealthCode(healthCode);
-        
         DynamoParticipantOptions options = mapper.load(keyObject);
-        if (options != null) {
-            options.getOptions().remove(option.name());
-            mapper.save(options);
+        if (options == null) {
+            // Removing options from a participant that has none is a no-op.
+            if (studyIdentifier == null) {
+                return;
+            }
+            options = new DynamoParticipantOptions();
+            options.setHealthCode(healthCode);
+        }
+        if (studyIdentifier != null) {
+            options.setStudyKey(studyIdentifier.getIdentifier());
+        }
+        options.setOptions(applyUpdates(options.getOptions(), updates));
+        mapper.save(options);
+    }
+
+    private void writeOptions(StudyIdentifier studyIdentifier, String healthCode, Map<String,String> updates) {
+        try {
+            table.updateItem(makeOptionsUpdate(studyIdentifier, healthCode, updates));
+            return;
+        } catch (ConditionalCheckFailedException e) {
+            // There's no options map yet.
+        }
+        try {
+            createOptionsMap(studyIdentifier, healthCode, updates);
+        } catch (ConditionalCheckFailedException e) {
+            // Another update created the options map after we checked, so it's there now.
+            table.updateItem(makeOptionsUpdate(studyIdentifier, healthCode, updates));
+        }
+    }
+
+    private static UpdateItemSpec makeOptionsUpdate(StudyIdentifier studyIdentifier, String healthCode,
+            Map<String,String> updates) {
+        NameMap nameMap = new NameMap().with("#options", OPTIONS);
+        ValueMap valueMap = new ValueMap();
+        List<String> setList = new ArrayList<>();
+        List<String> removeList = new ArrayList<>();
+        if (studyIdentifier != null) {
+            nameMap.with("#studyKey", STUDY_KEY);
+            valueMap.withString(":studyKey", studyIdentifier.getIdentifier());
+            setList.add("#studyKey = :studyKey");
+        }
+        int i = 0;
+        for (Map.Entry<String,String> update : updates.entrySet()) {
+            String name = "#o" + i;
+            nameMap.with(name, update.getKey());
+            if (update.getValue() != null) {
+                valueMap.withString(":v" + i, update.getValue());
+                setList.add("#options." + name + " = :v" + i);
+            } else {
+                removeList.add("#options." + name);
+            }
+            i++;
+        }
+        
+        StringBuilder expression = new StringBuilder();
+        if (!setList.isEmpty()) {
+            expression.append("SET ").append(String.join(", ", setList));
+        }
+        if (!removeList.isEmpty()) {
+            expression.append(expression.length() > 0 ? " " : "").append("REMOVE ").append(String.join(", ",
+                    removeList));
+        }
+        UpdateItemSpec spec = new UpdateItemSpec().withPrimaryKey(HEALTH_CODE, healthCode)
+                .withUpdateExpression(expression.toString()).withConditionExpression("attribute_exists(#options)")
+                .withNameMap(nameMap);
+        // DynamoDB rejects an empty value map.
+        if (!valueMap.isEmpty()) {
+            spec.withValueMap(valueMap);
+        }
+        return spec;
+    }
+
+    // Reads the record and writes its options back as an options map with the updates applied. Fails if another 
+    // update creates the options map in between. The JSON data attribute is left as it was, so a node that only 
+    // reads it still finds the options from before the map was created.
+    private void createOptionsMap(StudyIdentifier studyIdentifier, String healthCode, Map<String,String> updates) {
+        DynamoParticipantOptions keyObject = new DynamoParticipantOptions();
+        keyObject.setHealthCode(healthCode);
+        DynamoParticipantOptions existing = mapper.load(keyObject);
+        
+        // Removing options from a participant that has none is a no-op.
+        if (existing == null && studyIdentifier == null) {
+            return;
         }
+        
+        Map<String,String> options = applyUpdates((existing != null) ? existing.getOptions() : ImmutableMap.of(),
+                updates);
+        
+        NameMap nameMap = new NameMap().with("#options", OPTIONS);
+        ValueMap valueMap = new ValueMap().withMap(":options", options);
+        String expression = "SET #options = :options";
+        if (studyIdentifier != null) {
+            nameMap.with("#studyKey", STUDY_KEY);
+            valueMap.withString(":studyKey", studyIdentifier.getIdentifier());
+            expression += ", #studyKey = :studyKey";
+        }
+        table.updateItem(new UpdateItemSpec().withPrimaryKey(HEALTH_CODE, healthCode)
+                .withUpdateExpression(expression).withConditionExpression("attribute_not_exists(#options)")
+                .withNameMap(nameMap).withValueMap(valueMap));
+    }
+
+    // Returns a copy of the options with each update set, or removed if its value is null.
+    private static Map<String,String> applyUpdates(Map<String,String> existing, Map<String,String> updates) {
+        Map<String,String> options = new HashMap<>(existing);
+        for (Map.Entry<String,String> update : updates.entrySet()) {
+            if (update.getValue() != null) {
+                options.put(update.getKey(), update.getValue());
+            } else {
+                options.remove(update.getKey());
+            }
+        }
+        return options;
     }
 
     @Override
@@ -126,18 +362,83 @@ public class DynamoParticipantOptionsDao implements ParticipantOptionsDao {
         checkNotNull(studyIdentifier);
         
         AllParticipantOptionsLookup allLookup = new AllParticipantOptionsLookup();
-        
-        DynamoDBScanExpression scan = new DynamoDBScanExpression();
+        forEachParticipantOptions(studyIdentifier, allLookup::put);
+        return allLookup;
+    }
+
+    @Override
+    public void forEachParticipantOptions(StudyIdentifier studyIdentifier,
+            BiConsumer<String, ParticipantOptionsLookup> callback) {
+        checkNotNull(studyIdentifier);
+        checkNotNull(callback);
+
+        List<Future<?>> segmentFutureList = new ArrayList<>();
+        try {
+            for (int i = 0; i < scanSegmentCount; i++) {
+                final int segment = i;
+                segmentFutureList.add(scanExecutorService.submit(() -> scanSegment(studyIdentifier, segment,
+                        callback)));
+            }
+            for (Future<?> segmentFuture : segmentFutureList) {
+                waitForSegment(segmentFuture);
+            }
+        } finally {
+            // If a segment failed, don't leave the others scanning the table for a result no one will see.
+            for (Future<?> segmentFuture : segmentFutureList) {
+                segmentFuture.cancel(true);
+            }
+        }
+    }
+
+    // Scans one segment of the table a page at a time, passing the options in the study to the callback. The table
+    // is keyed by health code, so the study filter is applied after the read, and every record in the segment counts
+    // against read capacity. Each page waits for the capacity the previous page consumed.
+    // see https://aws.amazon.com/blogs/developer/rate-limited-scans-in-amazon-dynamodb/
+    private void scanSegment(StudyIdentifier studyIdentifier, int segment,
+            BiConsumer<String, ParticipantOptionsLookup> callback) {
         Condition condition = new Condition();
         condition.withComparisonOperator(ComparisonOperator.EQ);
         condition.withAttributeValueList(new AttributeValue().withS(studyIdentifier.getIdentifier()));
-        scan.addFilterCondition("studyKey", condition);
-        
-        List<DynamoParticipantOptions> mappings = mapper.scan(DynamoParticipantOptions.class, scan);
-        for (DynamoParticipantOptions mapping : mappings) {
-            allLookup.put(mapping.getHealthCode(), new ParticipantOptionsLookup(mapping.getOptions()));
+
+        // initial estimate: read capacity consumed will equal 1
+        int capacityAcquired = 1;
+        Map<String, AttributeValue> exclusiveStartKey = null;
+        do {
+            scanRateLimiter.acquire(capacityAcquired);
+
+            DynamoDBScanExpression scan = new DynamoDBScanExpression().withSegment(segment)
+                    .withTotalSegments(scanSegmentCount).withLimit(SCAN_PAGE_LIMIT)
+                    .withExclusiveStartKey(exclusiveStartKey)
+                    .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+            scan.addFilterCondition(STUDY_KEY, condition);
+
+            ScanResultPage<DynamoParticipantOptions> page = mapper.scanPage(DynamoParticipantOptions.class, scan);
+            for (DynamoParticipantOptions options : page.getResults()) {
+                callback.accept(options.getHealthCode(), new ParticipantOptionsLookup(options.getOptions()));
+            }
+
+            // RateLimiter can't acquire zero permits
+            ConsumedCapacity capacity = page.getConsumedCapacity();
+            capacityAcquired = (capacity != null) ? Math.max(1, capacity.getCapacityUnits().intValue()) : 1;
+            exclusiveStartKey = page.getLastEvaluatedKey();
+        } while (exclusiveStartKey != null);
+    }
+
+    // Waits for a segment of a scan to finish, re-throwing its exception if it failed.
+    private static void waitForSegment(Future<?> segmentFuture) {
+        try {
+            segmentFuture.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new BridgeServiceException(cause);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BridgeServiceException("Interrupted scanning participant options", ex);
         }
-        return allLookup;
     }
 
 }
@@ -1,8 +1,13 @@
 package org.sagebionetworks.bridge.dynamodb;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static org.sagebionetworks.bridge.BridgeConstants.API_MAXIMUM_PAGE_SIZE;
+import static org.sagebionetworks.bridge.BridgeConstants.API_MINIMUM_PAGE_SIZE;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.annotation.Resource;
 
@@ -11,27 +16,54 @@ import org.springframework.stereotype.Component;
 
 import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.dao.ReportDataDao;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.models.DateRangeResourceList;
+import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
 import org.sagebionetworks.bridge.models.reports.ReportData;
 import org.sagebionetworks.bridge.models.reports.ReportDataKey;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonServiceException.ErrorType;
+import com.amazonaws.retry.RetryUtils;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.FailedBatch;
+import com.amazonaws.services.dynamodbv2.datamodeling.QueryResultPage;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
 import com.amazonaws.services.dynamodbv2.model.Condition;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
 
 @Component
 public class DynamoReportDataDao implements ReportDataDao {
+    /** DynamoDB accepts at most 25 items in a single BatchWriteItem call. */
+    static final int BATCH_SAVE_SIZE = 25;
+    static final int MAX_BATCH_SAVE_ATTEMPTS = 3;
+    private static final long DEFAULT_BATCH_RETRY_DELAY_MILLIS = 200L;
+    /** Records are deleted a page at a time so a report's full history is never held in memory. */
+    static final int DELETE_PAGE_SIZE = 100;
+    static final String PAGE_SIZE_ERROR = "pageSize must be from " + API_MINIMUM_PAGE_SIZE + "-"
+            + API_MAXIMUM_PAGE_SIZE + " records";
+    private static final String KEY = "key";
+    private static final String DATE = "date";
 
     private DynamoDBMapper mapper;
+    private long batchRetryDelayMillis = DEFAULT_BATCH_RETRY_DELAY_MILLIS;
 
     @Resource(name = "reportDataMapper")
     final void setReportDataMapper(DynamoDBMapper reportDataMapper) {
         this.mapper = reportDataMapper;
     }
     
+    /** Base delay between attempts to write unprocessed items, doubled on each retry. Settable for tests. */
+    final void setBatchRetryDelayMillis(long batchRetryDelayMillis) {
+        this.batchRetryDelayMillis = batchRetryDelayMillis;
+    }
+    
     @Override
     public DateRangeResourceList<? extends ReportData> getReportData(ReportDataKey key, LocalDate startDate, LocalDate endDate) {
         checkNotNull(key);
@@ -48,11 +80,52 @@ public class DynamoReportDataDao implements ReportDataDao {
 
         DynamoDBQueryExpression<DynamoReportData> query =
                 new DynamoDBQueryExpression<DynamoReportData>().withHashKeyValues(hashKey)
-                        .withRangeKeyCondition("date", dateCondition);
+                        .withRangeKeyCondition(DATE, dateCondition);
         List<DynamoReportData> results = mapper.query(DynamoReportData.class, query);
 
         return new DateRangeResourceList<DynamoReportData>(results, startDate, endDate);
     }
+    
+    @Override
+    public ForwardCursorPagedResourceList<ReportData> getReportDataV4(ReportDataKey key, LocalDate startDate,
+            LocalDate endDate, String offsetKey, int pageSize) {
+        checkNotNull(key);
+        checkNotNull(startDate);
+        checkNotNull(endDate);
+        
+        if (pageSize < API_MINIMUM_PAGE_SIZE || pageSize > API_MAXIMUM_PAGE_SIZE) {
+            throw new BadRequestException(PAGE_SIZE_ERROR);
+        }
+        DynamoReportData hashKey = new DynamoReportData();
+        hashKey.setKey(key.getKeyString());
+        
+        Condition dateCondition = new Condition().withComparisonOperator(ComparisonOperator.BETWEEN)
+                .withAttributeValueList(new AttributeValue().withS(startDate.toString()),
+                        new AttributeValue().withS(endDate.toString()));
+        
+        DynamoDBQueryExpression<DynamoReportData> query =
+                new DynamoDBQueryExpression<DynamoReportData>().withHashKeyValues(hashKey)
+                        .withRangeKeyCondition(DATE, dateCondition).withLimit(pageSize);
+        // The offset key is the date of the last record returned; the query continues from the record after it.
+        // DynamoDB rejects a start key outside the range key condition, so it must be in the date range.
+        if (offsetKey != null) {
+            LocalDate offsetDate = parseOffsetKey(offsetKey);
+            if (offsetDate.isBefore(startDate) || offsetDate.isAfter(endDate)) {
+                throw new BadRequestException("offsetKey " + offsetKey + " is not between startDate " + startDate
+                        + " and endDate " + endDate);
+            }
+            query.withExclusiveStartKey(ImmutableMap.of(
+                    KEY, new AttributeValue().withS(key.getKeyString()),
+                    DATE, new AttributeValue().withS(offsetDate.toString())));
+        }
+        QueryResultPage<DynamoReportData> page = mapper.queryPage(DynamoReportData.class, query);
+        
+        String nextOffsetKey = (page.getLastEvaluatedKey() != null) ? page.getLastEvaluatedKey().get(DATE).getS() : null;
+        
+        return new ForwardCursorPagedResourceList<ReportData>(new ArrayList<>(page.getResults()), nextOffsetKey, pageSize)
+                .withFilter("startDate", startDate.toString())
+                .withFilter("endDate", endDate.toString());
+    }
 
     @Override
     public void saveReportData(ReportData reportData) {
@@ -61,6 +134,94 @@ public class DynamoReportDataDao implements ReportDataDao {
         mapper.save(reportData);
     }
 
+    @Override
+    public void saveReportDataBatch(List<? extends ReportData> reportDataList) {
+        checkNotNull(reportDataList);
+        
+        for (List<? extends ReportData> chunk : Lists.partition(reportDataList, BATCH_SAVE_SIZE)) {
+            saveChunk(chunk);
+        }
+    }
+    
+    /**
+     * Write one chunk of records. Items DynamoDB reports as unprocessed (usually due to throttling) are 
+     * written again with an increasing delay; anything still unwritten after the last attempt is reported 
+     * as a failure. Puts are idempotent, so re-writing an item that actually succeeded is harmless. Failures 
+     * that would only fail again, such as an invalid request, are reported right away.
+     */
+    private void saveChunk(List<? extends ReportData> chunk) {
+        List<? extends ReportData> pending = chunk;
+        List<FailedBatch> failures = mapper.batchSave(pending);
+        for (int attempt = 1; attempt < MAX_BATCH_SAVE_ATTEMPTS && !failures.isEmpty() && isRetryable(failures);
+                attempt++) {
+            pause(attempt);
+            List<? extends ReportData> unprocessed = getUnprocessedRecords(pending, failures);
+            // If the failures can't be matched to records, write the whole set again rather than drop any
+            if (!unprocessed.isEmpty()) {
+                pending = unprocessed;
+            }
+            failures = mapper.batchSave(pending);
+        }
+        BridgeUtils.ifFailuresThrowException(failures);
+    }
+    
+    // Unprocessed items, throttling and errors on DynamoDB's side can succeed on a later attempt. Anything else (a
+    // bad request, a missing table, a mapping error) is not retried.
+    private static boolean isRetryable(List<FailedBatch> failures) {
+        for (FailedBatch failure : failures) {
+            Exception ex = failure.getException();
+            if (ex == null) {
+                continue;
+            }
+            if (!(ex instanceof AmazonServiceException)) {
+                return false;
+            }
+            AmazonServiceException serviceEx = (AmazonServiceException) ex;
+            if (!RetryUtils.isThrottlingException(serviceEx) && serviceEx.getErrorType() != ErrorType.Service) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private List<? extends ReportData> getUnprocessedRecords(List<? extends ReportData> attempted,
+            List<FailedBatch> failures) {
+        Set<String> unprocessedIds = Sets.newHashSet();
+        for (FailedBatch failure : failures) {
+            for (List<WriteRequest> requests : failure.getUnprocessedItems().values()) {
+                for (WriteRequest request : requests) {
+                    if (request.getPutRequest() != null) {
+                        Map<String, AttributeValue> item = request.getPutRequest().getItem();
+                        unprocessedIds.add(item.get(KEY).getS() + "|" + item.get(DATE).getS());
+                    }
+                }
+            }
+        }
+        List<ReportData> unprocessed = Lists.newArrayList();
+        for (ReportData reportData : attempted) {
+            if (unprocessedIds.contains(reportData.getKey() + "|" + reportData.getDate())) {
+                unprocessed.add(reportData);
+            }
+        }
+        return unprocessed;
+    }
+    
+    private static LocalDate parseOffsetKey(String offsetKey) {
+        try {
+            return LocalDate.parse(offsetKey);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("invalid offsetKey " + offsetKey);
+        }
+    }
+    
+    private void pause(int attempt) {
+        try {
+            Thread.sleep(batchRetryDelayMillis << (attempt - 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     @Override
     public void deleteReportData(ReportDataKey key) {
         checkNotNull(key);
@@ -69,13 +230,16 @@ public class DynamoReportDataDao implements ReportDataDao {
         hashKey.setKey(key.getKeyString());
 
         DynamoDBQueryExpression<DynamoReportData> query =
-                new DynamoDBQueryExpression<DynamoReportData>().withHashKeyValues(hashKey);
-        List<DynamoReportData> objectsToDelete = mapper.query(DynamoReportData.class, query);
-        
-        if (!objectsToDelete.isEmpty()) {
-            List<FailedBatch> failures = mapper.batchDelete(objectsToDelete);
-            BridgeUtils.ifFailuresThrowException(failures);
-        }
+                new DynamoDBQueryExpression<DynamoReportData>().withHashKeyValues(hashKey).withLimit(DELETE_PAGE_SIZE);
+        QueryResultPage<DynamoReportData> page;
+        do {
+            page = mapper.queryPage(DynamoReportData.class, query);
+            if (!page.getResults().isEmpty()) {
+                List<FailedBatch> failures = mapper.batchDelete(page.getResults());
+                BridgeUtils.ifFailuresThrowException(failures);
+            }
+            query.withExclusiveStartKey(page.getLastEvaluatedKey());
+        } while (page.getLastEvaluatedKey() != null);
     }
     
     @Override
@@ -83,6 +83,7 @@ public final class DynamoScheduledActivity implements ScheduledActivity, BridgeE
      * The scheduled time without a time zone. This value is stored, but not returned in the JSON of the API. It is
      * localized using the caller's time zone.
      */
+    @Override
     @DynamoDBAttribute
     @DynamoDBTypeConverted(converter = LocalDateTimeMarshaller.class)
     @JsonIgnore
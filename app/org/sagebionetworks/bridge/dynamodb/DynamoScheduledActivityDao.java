@@ -6,20 +6,27 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.annotation.Resource;
 
 import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.dao.ScheduledActivityDao;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.models.schedules.ScheduledActivity;
 import org.sagebionetworks.bridge.models.schedules.ScheduledActivityList;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDateTime;
 import org.springframework.stereotype.Component;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
@@ -34,6 +41,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Range;
 
 @Component
 public class DynamoScheduledActivityDao implements ScheduledActivityDao {
@@ -50,11 +58,19 @@ public class DynamoScheduledActivityDao implements ScheduledActivityDao {
     
     private DynamoDBMapper mapper;
     
+    private ExecutorService queryExecutorService;
+    
     @Resource(name = "activityDdbMapper")
     final void setDdbMapper(DynamoDBMapper mapper) {
         this.mapper = mapper;
     }
     
+    /** Executor for running range queries concurrently. This is configured by Spring. */
+    @Resource(name = "dynamoIndexBatchLoadExecutorService")
+    final void setQueryExecutorService(ExecutorService queryExecutorService) {
+        this.queryExecutorService = queryExecutorService;
+    }
+    
     @Override
     public ScheduledActivityList getActivityHistoryV2(String healthCode,
             String activityGuid, DateTime scheduledOnStart, DateTime scheduledOnEnd, DateTimeZone timezone,
@@ -149,6 +165,109 @@ public class DynamoScheduledActivityDao implements ScheduledActivityDao {
         return results;
     }
     
+    /** {@inheritDoc} */
+    @Override
+    public List<ScheduledActivity> getActivitiesByGuid(String healthCode, List<String> guids) {
+        checkNotNull(healthCode);
+        checkNotNull(guids);
+        
+        if (guids.isEmpty()) {
+            return ImmutableList.of();
+        }
+        // BatchGetItem rejects a request with duplicate keys.
+        Set<String> uniqueGuids = new LinkedHashSet<>(guids);
+        List<Object> keys = Lists.newArrayListWithCapacity(uniqueGuids.size());
+        for (String guid : uniqueGuids) {
+            DynamoScheduledActivity key = new DynamoScheduledActivity();
+            key.setHealthCode(healthCode);
+            key.setGuid(guid);
+            keys.add(key);
+        }
+        // The mapper splits the keys into requests of up to 100 items, and retries unprocessed keys.
+        Map<String,List<Object>> resultMap = mapper.batchLoad(keys);
+        
+        // there's only one table of results returned.
+        List<Object> activitiesLoaded = Iterables.getFirst(resultMap.values(), ImmutableList.of());
+        
+        List<ScheduledActivity> results = Lists.newArrayListWithCapacity(activitiesLoaded.size());
+        for (Object object : activitiesLoaded) {
+            results.add((ScheduledActivity)object);
+        }
+        return results;
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    public List<ScheduledActivity> getActivitiesInRange(DateTimeZone timeZone, String healthCode,
+            String activityGuid, LocalDateTime scheduledOnStart, LocalDateTime scheduledOnEnd) {
+        checkNotNull(timeZone);
+        checkNotNull(healthCode);
+        checkNotNull(activityGuid);
+        checkNotNull(scheduledOnStart);
+        checkNotNull(scheduledOnEnd);
+        
+        DynamoScheduledActivity hashKey = new DynamoScheduledActivity();
+        hashKey.setHealthCode(healthCode);
+        
+        // The range key is the activity GUID followed by the local scheduled time, so one activity's scheduled
+        // activities are contiguous and sorted by time.
+        Condition dateCondition = new Condition().withComparisonOperator(ComparisonOperator.BETWEEN)
+                .withAttributeValueList(new AttributeValue().withS(activityGuid + ":" + scheduledOnStart.toString()),
+                        new AttributeValue().withS(activityGuid + ":" + scheduledOnEnd.toString()));
+        
+        DynamoDBQueryExpression<DynamoScheduledActivity> query = new DynamoDBQueryExpression<DynamoScheduledActivity>()
+            .withHashKeyValues(hashKey)
+            .withRangeKeyCondition(GUID, dateCondition);
+        
+        PaginatedQueryList<DynamoScheduledActivity> queryResults = mapper.query(DynamoScheduledActivity.class, query);
+        
+        List<ScheduledActivity> results = Lists.newArrayList();
+        for (DynamoScheduledActivity activity : queryResults) {
+            activity.setTimeZone(timeZone);
+            results.add(activity);
+        }
+        return results;
+    }
+    
+    /** {@inheritDoc} */
+    @Override
+    public List<ScheduledActivity> getActivitiesInRanges(DateTimeZone timeZone, String healthCode,
+            Map<String, Range<LocalDateTime>> scheduledOnRanges) {
+        checkNotNull(timeZone);
+        checkNotNull(healthCode);
+        checkNotNull(scheduledOnRanges);
+        
+        List<Future<List<ScheduledActivity>>> futures = new ArrayList<>();
+        for (Map.Entry<String, Range<LocalDateTime>> entry : scheduledOnRanges.entrySet()) {
+            String activityGuid = entry.getKey();
+            Range<LocalDateTime> range = entry.getValue();
+            futures.add(queryExecutorService.submit(() -> getActivitiesInRange(timeZone, healthCode, activityGuid,
+                    range.lowerEndpoint(), range.upperEndpoint())));
+        }
+        List<ScheduledActivity> results = Lists.newArrayList();
+        for (Future<List<ScheduledActivity>> future : futures) {
+            results.addAll(getQueryResult(future));
+        }
+        return results;
+    }
+    
+    // Waits for a range query and returns its result, re-throwing its exception if it failed.
+    private static List<ScheduledActivity> getQueryResult(Future<List<ScheduledActivity>> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new BridgeServiceException(cause);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new BridgeServiceException("Interrupted querying activities from DynamoDB", ex);
+        }
+    }
+    
     /** {@inheritDoc} */
     @Override
     public void saveActivities(List<ScheduledActivity> activities) {
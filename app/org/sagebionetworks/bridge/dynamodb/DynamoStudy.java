@@ -65,6 +65,43 @@ public final class DynamoStudy implements Study {
         pushNotificationARNs = new HashMap<>();
     }
 
+    /**
+     * Copies all fields. Collections are copied so the copy can be modified independently; the password policy and 
+     * email templates are immutable and are shared.
+     */
+    public DynamoStudy(DynamoStudy study) {
+        this.name = study.name;
+        this.sponsorName = study.sponsorName;
+        this.identifier = study.identifier;
+        this.supportEmail = study.supportEmail;
+        this.synapseDataAccessTeamId = study.synapseDataAccessTeamId;
+        this.synapseProjectId = study.synapseProjectId;
+        this.technicalEmail = study.technicalEmail;
+        this.usesCustomExportSchedule = study.usesCustomExportSchedule;
+        this.consentNotificationEmail = study.consentNotificationEmail;
+        this.minAgeOfConsent = study.minAgeOfConsent;
+        this.accountLimit = study.accountLimit;
+        this.version = study.version;
+        this.active = study.active;
+        this.profileAttributes = new HashSet<>(study.profileAttributes);
+        this.taskIdentifiers = new HashSet<>(study.taskIdentifiers);
+        this.dataGroups = new HashSet<>(study.dataGroups);
+        this.passwordPolicy = study.passwordPolicy;
+        this.verifyEmailTemplate = study.verifyEmailTemplate;
+        this.resetPasswordTemplate = study.resetPasswordTemplate;
+        this.emailSignInTemplate = study.emailSignInTemplate;
+        this.accountExistsTemplate = study.accountExistsTemplate;
+        this.strictUploadValidationEnabled = study.strictUploadValidationEnabled;
+        this.healthCodeExportEnabled = study.healthCodeExportEnabled;
+        this.emailVerificationEnabled = study.emailVerificationEnabled;
+        this.externalIdValidationEnabled = study.externalIdValidationEnabled;
+        this.emailSignInEnabled = study.emailSignInEnabled;
+        this.externalIdRequiredOnSignup = study.externalIdRequiredOnSignup;
+        this.minSupportedAppVersions = new HashMap<>(study.minSupportedAppVersions);
+        this.pushNotificationARNs = new HashMap<>(study.pushNotificationARNs);
+        this.disableExport = study.disableExport;
+    }
+
     /** {@inheritDoc} */
     @Override
     public String getSponsorName() {
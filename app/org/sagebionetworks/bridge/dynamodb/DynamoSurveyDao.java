@@ -4,6 +4,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Resource;
 
@@ -15,6 +16,7 @@ import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.exceptions.PublishedSurveyException;
 import org.sagebionetworks.bridge.json.DateUtils;
 import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolder;
+import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolderImpl;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
 import org.sagebionetworks.bridge.models.surveys.Constraints;
@@ -31,11 +33,12 @@ import org.springframework.stereotype.Component;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.FailedBatch;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
-import com.amazonaws.services.dynamodbv2.datamodeling.QueryResultPage;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
 import com.amazonaws.services.dynamodbv2.model.Condition;
 import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -180,10 +183,11 @@ public class DynamoSurveyDao implements SurveyDao {
             DynamoDBQueryExpression<DynamoSurveyElement> query = new DynamoDBQueryExpression<DynamoSurveyElement>();
             query.withHashKeyValues(template);
             
-            QueryResultPage<DynamoSurveyElement> page = surveyElementMapper.queryPage(DynamoSurveyElement.class, query);
+            // query() follows every page, so large surveys aren't truncated at DynamoDB's 1MB page limit.
+            List<DynamoSurveyElement> page = surveyElementMapper.query(DynamoSurveyElement.class, query);
 
             List<SurveyElement> elements = Lists.newArrayList();
-            for (DynamoSurveyElement element : page.getResults()) {
+            for (DynamoSurveyElement element : page) {
                 SurveyElement surveyElement = SurveyElementFactory.fromDynamoEntity(element);
                 reconcileRules(surveyElement);
                 elements.add(surveyElement);
@@ -216,6 +220,20 @@ public class DynamoSurveyDao implements SurveyDao {
         }
     }
 
+    static final long PUBLISHED_SURVEY_CACHE_EXPIRE_MINUTES = 30;
+    static final long MOST_RECENTLY_PUBLISHED_CACHE_EXPIRE_SECONDS = 60;
+    private static final long SURVEY_CACHE_MAX_SIZE = 1000L;
+
+    // Published survey versions, with elements attached, keyed by guid and createdOn. Published versions are only
+    // modified when they're deleted, so entries only go stale if the survey is deleted on another server.
+    private final Cache<String, Survey> publishedSurveyCache = CacheBuilder.newBuilder()
+            .maximumSize(SURVEY_CACHE_MAX_SIZE)
+            .expireAfterWrite(PUBLISHED_SURVEY_CACHE_EXPIRE_MINUTES, TimeUnit.MINUTES).build();
+    // The createdOn timestamp of the most recently published version, keyed by study and guid.
+    private final Cache<String, Long> mostRecentlyPublishedCache = CacheBuilder.newBuilder()
+            .maximumSize(SURVEY_CACHE_MAX_SIZE)
+            .expireAfterWrite(MOST_RECENTLY_PUBLISHED_CACHE_EXPIRE_SECONDS, TimeUnit.SECONDS).build();
+
     private DynamoDBMapper surveyMapper;
     private DynamoDBMapper surveyElementMapper;
     private UploadSchemaService uploadSchemaService;
@@ -272,6 +290,7 @@ public class DynamoSurveyDao implements SurveyDao {
             } catch(ConditionalCheckFailedException e) {
                 throw new ConcurrentModificationException(survey);
             }
+            invalidateMostRecentlyPublished(survey.getGuid());
         }
         return survey;
     }
@@ -328,6 +347,9 @@ public class DynamoSurveyDao implements SurveyDao {
         
         survey.setDeleted(true);
         saveSurvey(survey);
+        // A deleted version is no longer the most recently published one.
+        publishedSurveyCache.invalidate(getSurveyCacheKey(survey.getGuid(), survey.getCreatedOn()));
+        invalidateMostRecentlyPublished(survey.getGuid());
     }
 
     @Override
@@ -335,6 +357,8 @@ public class DynamoSurveyDao implements SurveyDao {
         Survey existing = getSurvey(keys);
         deleteAllElements(existing.getGuid(), existing.getCreatedOn());
         surveyMapper.delete(existing);
+        publishedSurveyCache.invalidate(getSurveyCacheKey(existing.getGuid(), existing.getCreatedOn()));
+        invalidateMostRecentlyPublished(existing.getGuid());
         
         // Delete the schemas as well, or they accumulate.
         try {
@@ -360,6 +384,33 @@ public class DynamoSurveyDao implements SurveyDao {
         return new QueryBuilder().setStudy(studyIdentifier).isPublished().setSurvey(guid).isNotDeleted().getOne(true);
     }
     
+    @Override
+    public Survey getCachedSurvey(GuidCreatedOnVersionHolder keys) {
+        String cacheKey = getSurveyCacheKey(keys.getGuid(), keys.getCreatedOn());
+        Survey survey = publishedSurveyCache.getIfPresent(cacheKey);
+        if (survey == null) {
+            // Throws if the survey doesn't exist, so we never cache a miss. Unpublished versions can still change.
+            survey = getSurvey(keys);
+            if (survey.isPublished()) {
+                publishedSurveyCache.put(cacheKey, survey);
+            }
+        }
+        return survey;
+    }
+    
+    @Override
+    public Survey getCachedSurveyMostRecentlyPublishedVersion(StudyIdentifier studyIdentifier, String guid) {
+        String pointerKey = studyIdentifier.getIdentifier() + ":" + guid;
+        Long createdOn = mostRecentlyPublishedCache.getIfPresent(pointerKey);
+        if (createdOn != null) {
+            return getCachedSurvey(new GuidCreatedOnVersionHolderImpl(guid, createdOn));
+        }
+        Survey survey = getSurveyMostRecentlyPublishedVersion(studyIdentifier, guid);
+        publishedSurveyCache.put(getSurveyCacheKey(guid, survey.getCreatedOn()), survey);
+        mostRecentlyPublishedCache.put(pointerKey, survey.getCreatedOn());
+        return survey;
+    }
+    
     // secondary index query (not survey GUID) 
     @Override
     public List<Survey> getAllSurveysMostRecentlyPublishedVersion(StudyIdentifier studyIdentifier) {
@@ -404,6 +455,16 @@ public class DynamoSurveyDao implements SurveyDao {
         return ImmutableList.copyOf(map.values());
     }
     
+    private static String getSurveyCacheKey(String guid, long createdOn) {
+        return guid + ":" + createdOn;
+    }
+    
+    // Pointers are keyed by study and guid, but a guid is only ever used in one study.
+    private void invalidateMostRecentlyPublished(String guid) {
+        String suffix = ":" + guid;
+        mostRecentlyPublishedCache.asMap().keySet().removeIf(key -> key.endsWith(suffix));
+    }
+    
     private Survey saveSurvey(Survey survey) {
         deleteAllElements(survey.getGuid(), survey.getCreatedOn());
         
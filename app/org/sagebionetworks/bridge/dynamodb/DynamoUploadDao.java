@@ -29,6 +29,7 @@ import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
 import com.amazonaws.services.dynamodbv2.model.Condition;
 import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
 
 import org.apache.commons.lang3.StringUtils;
 import org.joda.time.DateTime;
@@ -61,6 +62,9 @@ public class DynamoUploadDao implements UploadDao {
     private static final String REQUESTED_ON = "requestedOn";
     private static final String HEALTH_CODE = "healthCode";
     private static final String STUDY_ID_REQUESTED_ON_INDEX = "studyId-requestedOn-index";
+
+    /** Number of uploads deleted at a time when deleting a user's uploads. */
+    static final int DELETE_BATCH_SIZE = 100;
     
     /**
      * This is the DynamoDB mapper that reads from and writes to our DynamoDB table. This is normally configured by
@@ -284,11 +288,11 @@ public class DynamoUploadDao implements UploadDao {
     
     @Override
     public void deleteUploadsForHealthCode(@Nonnull String healthCode) {
-        List<? extends Upload> uploadsToDelete = healthCodeRequestedOnIndex.queryKeys(
-                DynamoUpload2.class, HEALTH_CODE, healthCode, null);
-        
-        if (!uploadsToDelete.isEmpty()) {
-            List<FailedBatch> failures = mapper.batchDelete(uploadsToDelete);
+        // Delete a chunk at a time, so we never hold all of a user's uploads in memory.
+        Iterator<List<Upload>> uploadChunkIter = Iterators.partition(healthCodeRequestedOnIndex.iterateKeys(
+                DynamoUpload2.class, HEALTH_CODE, healthCode, null), DELETE_BATCH_SIZE);
+        while (uploadChunkIter.hasNext()) {
+            List<FailedBatch> failures = mapper.batchDelete(uploadChunkIter.next());
             BridgeUtils.ifFailuresThrowException(failures);
         }
     }
@@ -2,6 +2,7 @@ package org.sagebionetworks.bridge.hibernate;
 
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import javax.persistence.CollectionTable;
@@ -12,6 +13,7 @@ import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
 import javax.persistence.FetchType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.MapKeyClass;
 import javax.persistence.MapKeyColumn;
@@ -26,12 +28,16 @@ import org.sagebionetworks.bridge.models.accounts.PasswordAlgorithm;
 // directly. This is because (1) some of the methods we would need in the Account interface don't really have an
 // equivalent in Stormpath, and (2) some of the patterns (especially around embedded collections) don't work really
 // well with Hibernate. While not ideal, it was ultimately cleaner to do it this way.
+// The (studyId, createdOn, id) index backs paging a study's accounts in (createdOn, id) order. The schema is managed
+// outside of this code base, so this index must also be created there.
 @Entity
-@Table(name = "Accounts")
+@Table(name = "Accounts", indexes = @Index(name = "Accounts-StudyId-CreatedOn-Id-Index",
+        columnList = "studyId, createdOn, id"))
 public class HibernateAccount {
     private String id;
     private String studyId;
     private String email;
+    private Set<String> emailTokens;
     private Map<String, String> attributes;
     private Map<HibernateAccountConsentKey, HibernateAccountConsent> consents;
     private Long createdOn;
@@ -46,6 +52,24 @@ public class HibernateAccount {
     private Set<Roles> roles;
     private AccountStatus status;
 
+    /** No args constructor, required and used by Hibernate for full object initialization. */
+    public HibernateAccount() {}
+
+    /**
+     * Constructs a partial account with just the fields in an account summary. Used by Hibernate for queries that
+     * select only these fields ("select new HibernateAccount(...)").
+     */
+    public HibernateAccount(Long createdOn, String studyId, String firstName, String lastName, String email,
+            String id, AccountStatus status) {
+        this.createdOn = createdOn;
+        this.studyId = studyId;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.email = email;
+        this.id = id;
+        this.status = status;
+    }
+
     /**
      * Account ID, used as a unique identifier for the account that doesn't leak email address (which is personally
      * identifying info).
@@ -80,6 +104,28 @@ public class HibernateAccount {
         this.email = email;
     }
 
+    /**
+     * Lower-cased trigrams (3-character substrings) of the email address, used to search for accounts by email
+     * substring through an index instead of scanning the study's accounts. Never returns null. This is loaded lazily,
+     * so it can only be read on accounts that are being written, not on accounts returned by a query.
+     */
+    @CollectionTable(name = "AccountEmailTokens", joinColumns = @JoinColumn(name = "accountId",
+            referencedColumnName = "id"))
+    @Column(name = "token")
+    @ElementCollection(fetch = FetchType.LAZY)
+    public Set<String> getEmailTokens() {
+        if (emailTokens == null) {
+            emailTokens = new HashSet<>();
+        }
+        return emailTokens;
+    }
+
+    /** @see #getEmailTokens */
+    public void setEmailTokens(Set<String> emailTokens) {
+        // Note: Hibernate doesn't support copying this into a separate set.
+        this.emailTokens = emailTokens;
+    }
+
     /** Map of custom account attributes. Never returns null. */
     @CollectionTable(name = "AccountAttributes", joinColumns = @JoinColumn(name = "accountId",
             referencedColumnName = "id"))
@@ -6,11 +6,19 @@ import java.security.spec.InvalidKeySpecException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.apache.commons.lang3.StringUtils;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
@@ -19,8 +27,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.config.BridgeConfig;
 import org.sagebionetworks.bridge.dao.AccountDao;
 import org.sagebionetworks.bridge.exceptions.AccountDisabledException;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.exceptions.ConcurrentModificationException;
 import org.sagebionetworks.bridge.exceptions.EntityAlreadyExistsException;
@@ -50,9 +60,50 @@ import org.sagebionetworks.bridge.services.HealthCodeService;
 public class HibernateAccountDao implements AccountDao {
     private static final Logger LOG = LoggerFactory.getLogger(HibernateAccountDao.class);
 
+    // Selects only the fields in an account summary. This doesn't load the account's attributes, consents, or roles.
+    static final String ACCOUNT_SUMMARY_QUERY_PREFIX = "select new " + HibernateAccount.class.getName() +
+            "(createdOn, studyId, firstName, lastName, email, id, status) from HibernateAccount";
+
+    /** Number of accounts read at a time when iterating over all accounts in a study or in the system. */
+    static final int ACCOUNT_ITERATOR_PAGE_SIZE = 1000;
+
+    // Offset keys for paged account summaries are the createdOn and ID of the last account on the previous page. Some
+    // older accounts have no createdOn. Their keys have nothing before the separator.
+    private static final String OFFSET_KEY_SEPARATOR = ":";
+    private static final Pattern OFFSET_KEY_PATTERN = Pattern.compile("^(-?\\d+)?" + OFFSET_KEY_SEPARATOR +
+            "([A-Za-z0-9_\\-]+)$");
+
+    /** Length of the email substrings indexed for email search. Email filters shorter than this can't use the index. */
+    static final int EMAIL_TOKEN_LENGTH = 3;
+
+    /**
+     * Max number of email tokens matched for an email filter. More tokens narrow down the candidate accounts, but each
+     * is another index lookup, and the filter is checked in full against the candidates anyway.
+     */
+    static final int MAX_EMAIL_FILTER_TOKENS = 4;
+
+    /**
+     * Whether email filters use the email tokens. Accounts only have tokens once they've been created or updated by
+     * this version, or re-saved by the account email token backfill, so until then, token matches would miss them.
+     */
+    static final String EMAIL_TOKEN_SEARCH_ENABLED_PROPERTY = "account.email.token.search.enabled";
+
+    /** How long account counts for paged account summaries are cached. */
+    static final int ACCOUNT_COUNT_EXPIRE_IN_SECONDS = 60;
+
+    /** Max number of account counts cached. Each filter and date range is a separate count. */
+    static final int ACCOUNT_COUNT_MAX_SIZE = 1000;
+
+    // Account counts for paged account summaries, keyed by the count query. Counts go stale for up to a minute on
+    // other nodes, which is fine for a total that's only used for display. The account limit uses an uncached count.
+    private final Cache<String, Integer> accountCountCache = CacheBuilder.newBuilder()
+            .expireAfterWrite(ACCOUNT_COUNT_EXPIRE_IN_SECONDS, TimeUnit.SECONDS)
+            .maximumSize(ACCOUNT_COUNT_MAX_SIZE).build();
+
     private AccountWorkflowService accountWorkflowService;
     private HealthCodeService healthCodeService;
     private HibernateHelper hibernateHelper;
+    private boolean emailTokenSearchEnabled;
 
     /** Service that handles email verification, password reset, etc. */
     @Autowired
@@ -72,6 +123,12 @@ public class HibernateAccountDao implements AccountDao {
         this.hibernateHelper = hibernateHelper;
     }
 
+    /** Bridge config, for whether email filters use the email tokens. */
+    @Autowired
+    public final void setBridgeConfig(BridgeConfig bridgeConfig) {
+        this.emailTokenSearchEnabled = Boolean.valueOf(bridgeConfig.get(EMAIL_TOKEN_SEARCH_ENABLED_PROPERTY));
+    }
+
     /** {@inheritDoc} */
     @Override
     public void verifyEmail(EmailVerification verification) {
@@ -211,10 +268,12 @@ public class HibernateAccountDao implements AccountDao {
         hibernateAccount.setModifiedOn(DateUtils.getCurrentMillisFromEpoch());
         hibernateAccount.setPasswordModifiedOn(DateUtils.getCurrentMillisFromEpoch());
         hibernateAccount.setStatus(sendVerifyEmail ? AccountStatus.UNVERIFIED : AccountStatus.ENABLED);
+        hibernateAccount.setEmailTokens(getEmailTokens(hibernateAccount.getEmail()));
 
         // Create account
         try {
             hibernateHelper.create(hibernateAccount);
+            invalidateAccountCounts(study);
         } catch (ConcurrentModificationException ex) {
             // account exists, but we don't have the userId, load the account
             HibernateAccount otherAccount = getHibernateAccountByEmail(study, account.getEmail());
@@ -240,6 +299,7 @@ public class HibernateAccountDao implements AccountDao {
         }
         accountToUpdate.setStudyId(persistedAccount.getStudyId());
         accountToUpdate.setEmail(persistedAccount.getEmail());
+        accountToUpdate.setEmailTokens(getEmailTokens(persistedAccount.getEmail()));
         accountToUpdate.setCreatedOn(persistedAccount.getCreatedOn());
         accountToUpdate.setPasswordModifiedOn(persistedAccount.getPasswordModifiedOn());
 
@@ -298,35 +358,50 @@ public class HibernateAccountDao implements AccountDao {
         HibernateAccount key = new HibernateAccount();
         key.setId(id);
         hibernateHelper.delete(key);
+        invalidateAccountCounts(study);
     }
 
     /** {@inheritDoc} */
     @Override
     public Iterator<AccountSummary> getAllAccounts() {
-        List<HibernateAccount> hibernateAccountList = hibernateHelper.queryGet("from HibernateAccount", null, null,
-                HibernateAccount.class);
-        return hibernateAccountList.stream().map(HibernateAccountDao::unmarshallAccountSummary).iterator();
+        return new AccountSummaryIterator(null);
     }
 
     /** {@inheritDoc} */
     @Override
     public Iterator<AccountSummary> getStudyAccounts(Study study) {
-        List<HibernateAccount> hibernateAccountList = hibernateHelper.queryGet("from HibernateAccount where " +
-                "studyId='" + study.getIdentifier() + "'", null, null, HibernateAccount.class);
-        return hibernateAccountList.stream().map(HibernateAccountDao::unmarshallAccountSummary).iterator();
+        return new AccountSummaryIterator("studyId='" + study.getIdentifier() + "'");
     }
 
     /** {@inheritDoc} */
     @Override
-    public PagedResourceList<AccountSummary> getPagedAccountSummaries(Study study, int offsetBy, int pageSize,
-            String emailFilter, DateTime startDate, DateTime endDate) {
+    public int getStudyAccountCount(Study study) {
+        return hibernateHelper.queryCount("from HibernateAccount where studyId='" + study.getIdentifier() + "'");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public PagedResourceList<AccountSummary> getPagedAccountSummaries(Study study, int offsetBy, String offsetKey,
+            int pageSize, String emailFilter, DateTime startDate, DateTime endDate) {
         // Note: emailFilter can be any substring, not just prefix/suffix
         // Note: start- and endDate are inclusive.
         StringBuilder queryBuilder = new StringBuilder();
-        queryBuilder.append("from HibernateAccount where studyId='");
+        queryBuilder.append(" where studyId='");
         queryBuilder.append(study.getIdentifier());
         queryBuilder.append("'");
         if (StringUtils.isNotBlank(emailFilter)) {
+            // A substring match can't use an index on email, so first narrow down to accounts in the study that have
+            // some of the filter's tokens, which can. The like condition then only needs to check those accounts.
+            if (emailTokenSearchEnabled) {
+                for (String token : getEmailFilterTokens(emailFilter)) {
+                    queryBuilder.append(" and id in (select tokenAccount.id from HibernateAccount tokenAccount");
+                    queryBuilder.append(" join tokenAccount.emailTokens token where tokenAccount.studyId='");
+                    queryBuilder.append(study.getIdentifier());
+                    queryBuilder.append("' and token='");
+                    queryBuilder.append(token.replace("'", "''"));
+                    queryBuilder.append("')");
+                }
+            }
             queryBuilder.append(" and email like '%");
             queryBuilder.append(emailFilter);
             queryBuilder.append("%'");
@@ -339,21 +414,55 @@ public class HibernateAccountDao implements AccountDao {
             queryBuilder.append(" and createdOn <= ");
             queryBuilder.append(endDate.getMillis());
         }
-        String query = queryBuilder.toString();
+        String whereClause = queryBuilder.toString();
+
+        // Accounts are ordered by creation time, then ID. With an offset key, the page starts right after the
+        // account in the key (keyset pagination), so deep pages cost the same as the first one. MySQL sorts accounts
+        // with no createdOn first, so a key without one continues through those accounts and then all the others.
+        StringBuilder pageQueryBuilder = new StringBuilder(ACCOUNT_SUMMARY_QUERY_PREFIX);
+        pageQueryBuilder.append(whereClause);
+        if (offsetKey != null) {
+            Matcher matcher = OFFSET_KEY_PATTERN.matcher(offsetKey);
+            if (!matcher.matches()) {
+                throw new BadRequestException("Invalid offsetKey: " + offsetKey);
+            }
+            if (matcher.group(1) != null) {
+                pageQueryBuilder.append(" and (createdOn > ").append(matcher.group(1));
+                pageQueryBuilder.append(" or (createdOn = ").append(matcher.group(1));
+                pageQueryBuilder.append(" and id > '").append(matcher.group(2)).append("'))");
+            } else {
+                pageQueryBuilder.append(" and (createdOn is not null");
+                pageQueryBuilder.append(" or id > '").append(matcher.group(2)).append("')");
+            }
+        }
+        pageQueryBuilder.append(" order by createdOn, id");
 
         // Get page of accounts.
-        List<HibernateAccount> hibernateAccountList = hibernateHelper.queryGet(query, offsetBy, pageSize,
-                HibernateAccount.class);
+        List<HibernateAccount> hibernateAccountList = hibernateHelper.queryGet(pageQueryBuilder.toString(),
+                (offsetKey == null) ? offsetBy : null, pageSize, HibernateAccount.class);
         List<AccountSummary> accountSummaryList = hibernateAccountList.stream()
                 .map(HibernateAccountDao::unmarshallAccountSummary).collect(Collectors.toList());
 
-        // Get count of accounts.
-        int count = hibernateHelper.queryCount(query);
+        // A full page may be followed by another page, which starts after the last account in this one.
+        String nextOffsetKey = null;
+        if (hibernateAccountList.size() == pageSize) {
+            HibernateAccount lastAccount = hibernateAccountList.get(pageSize - 1);
+            String createdOn = (lastAccount.getCreatedOn() != null) ? lastAccount.getCreatedOn().toString() : "";
+            nextOffsetKey = createdOn + OFFSET_KEY_SEPARATOR + lastAccount.getId();
+        }
+
+        // Get count of accounts. This is cached for a short time, so paging doesn't re-count on every page.
+        String countQuery = "from HibernateAccount" + whereClause;
+        Integer count = accountCountCache.getIfPresent(countQuery);
+        if (count == null) {
+            count = hibernateHelper.queryCount(countQuery);
+            accountCountCache.put(countQuery, count);
+        }
 
         // Package results and return.
-        return new PagedResourceList<>(accountSummaryList, offsetBy, pageSize, count)
+        return new PagedResourceList<>(accountSummaryList, (offsetKey == null) ? offsetBy : null, pageSize, count)
                 .withFilter("emailFilter", emailFilter).withFilter("startDate", startDate)
-                .withFilter("endDate", endDate);
+                .withFilter("endDate", endDate).withOffsetKey(nextOffsetKey);
     }
 
     // Helper method which marshalls a GenericAccount into a HibernateAccount.
@@ -535,4 +644,112 @@ public class HibernateAccountDao implements AccountDao {
                 hibernateAccount.getLastName(), hibernateAccount.getEmail(), hibernateAccount.getId(), createdOn,
                 hibernateAccount.getStatus(), studyId);
     }
+
+    /**
+     * Returns the lower-cased substrings of the given email of length {@link #EMAIL_TOKEN_LENGTH}, which are indexed so
+     * accounts can be searched by email substring. Every substring of the email at least that long contains one of
+     * these.
+     */
+    static Set<String> getEmailTokens(String email) {
+        Set<String> tokenSet = new HashSet<>();
+        if (email != null) {
+            String lowerCaseEmail = email.toLowerCase();
+            for (int i = 0; i + EMAIL_TOKEN_LENGTH <= lowerCaseEmail.length(); i++) {
+                tokenSet.add(lowerCaseEmail.substring(i, i + EMAIL_TOKEN_LENGTH));
+            }
+        }
+        return tokenSet;
+    }
+
+    /**
+     * Returns the email tokens an account must have to match the given email filter. These are non-overlapping
+     * substrings from the start of the filter, plus the substring at the end, up to {@link #MAX_EMAIL_FILTER_TOKENS}.
+     * Only the part of the filter before any "@" is used. Tokens from the domain (like "exa" or "com") are shared by
+     * most accounts, so they barely narrow down the candidates. Returns an empty list if there's too little of the
+     * filter before the "@" to have a token.
+     */
+    static List<String> getEmailFilterTokens(String emailFilter) {
+        String lowerCaseFilter = emailFilter.toLowerCase();
+        int atIndex = lowerCaseFilter.indexOf('@');
+        if (atIndex >= 0) {
+            lowerCaseFilter = lowerCaseFilter.substring(0, atIndex);
+        }
+        int length = lowerCaseFilter.length();
+        List<String> tokenList = new ArrayList<>();
+        for (int i = 0; i + EMAIL_TOKEN_LENGTH <= length && tokenList.size() < MAX_EMAIL_FILTER_TOKENS;
+                i += EMAIL_TOKEN_LENGTH) {
+            tokenList.add(lowerCaseFilter.substring(i, i + EMAIL_TOKEN_LENGTH));
+        }
+        if (length >= EMAIL_TOKEN_LENGTH && tokenList.size() < MAX_EMAIL_FILTER_TOKENS) {
+            String lastToken = lowerCaseFilter.substring(length - EMAIL_TOKEN_LENGTH);
+            if (!tokenList.contains(lastToken)) {
+                tokenList.add(lastToken);
+            }
+        }
+        return tokenList;
+    }
+
+    // Counts for this study on this node are dropped, so totals on this node include accounts created through it
+    // right away.
+    private void invalidateAccountCounts(Study study) {
+        String studyQueryPrefix = "from HibernateAccount where studyId='" + study.getIdentifier() + "'";
+        accountCountCache.asMap().keySet().removeIf(query -> query.startsWith(studyQueryPrefix));
+    }
+
+    /**
+     * Iterates over account summaries, reading them a page at a time in order of account ID. Each page starts after
+     * the last ID of the previous page (keyset pagination) rather than at an offset, so the database doesn't have to
+     * skip over earlier rows, and only one page is held in memory at a time.
+     */
+    private class AccountSummaryIterator implements Iterator<AccountSummary> {
+        private final String whereClause;
+        private Iterator<AccountSummary> page = Collections.emptyIterator();
+        private String lastId;
+        private boolean lastPage;
+
+        /** @param whereClause condition on the accounts to iterate over, or null for all accounts */
+        AccountSummaryIterator(String whereClause) {
+            this.whereClause = whereClause;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!page.hasNext() && !lastPage) {
+                loadNextPage();
+            }
+            return page.hasNext();
+        }
+
+        @Override
+        public AccountSummary next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.next();
+        }
+
+        private void loadNextPage() {
+            List<String> conditions = new ArrayList<>();
+            if (whereClause != null) {
+                conditions.add(whereClause);
+            }
+            if (lastId != null) {
+                conditions.add("id > '" + lastId + "'");
+            }
+            StringBuilder queryBuilder = new StringBuilder(ACCOUNT_SUMMARY_QUERY_PREFIX);
+            if (!conditions.isEmpty()) {
+                queryBuilder.append(" where ");
+                queryBuilder.append(String.join(" and ", conditions));
+            }
+            queryBuilder.append(" order by id");
+
+            List<HibernateAccount> hibernateAccountList = hibernateHelper.queryGet(queryBuilder.toString(), null,
+                    ACCOUNT_ITERATOR_PAGE_SIZE, HibernateAccount.class);
+            lastPage = hibernateAccountList.size() < ACCOUNT_ITERATOR_PAGE_SIZE;
+            if (!hibernateAccountList.isEmpty()) {
+                lastId = hibernateAccountList.get(hibernateAccountList.size() - 1).getId();
+            }
+            page = hibernateAccountList.stream().map(HibernateAccountDao::unmarshallAccountSummary).iterator();
+        }
+    }
 }
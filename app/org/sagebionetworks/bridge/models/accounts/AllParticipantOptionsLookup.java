@@ -1,17 +1,18 @@
 package org.sagebionetworks.bridge.models.accounts;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.google.common.collect.Maps;
 
 /**
  * Simple map wrapper that ensures all health codes have a lookup object, even if that healthCode
  * does not have a record in the table. The lookup is null-safe and will have default values where 
- * these exist.
+ * these exist. Lookups can be added from multiple threads.
  */
 public class AllParticipantOptionsLookup {
     
-    private final Map<String,ParticipantOptionsLookup> map = Maps.newHashMap();
+    private final Map<String,ParticipantOptionsLookup> map = new ConcurrentHashMap<>();
     
     public void put(String healthCode, ParticipantOptionsLookup lookup) {
         map.put(healthCode, lookup);
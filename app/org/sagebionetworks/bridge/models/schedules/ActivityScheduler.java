@@ -9,8 +9,12 @@ import org.joda.time.LocalDate;
 import org.joda.time.LocalDateTime;
 import org.joda.time.LocalTime;
 
+import com.google.common.collect.ImmutableList;
+
 public abstract class ActivityScheduler {
     
+    static final List<String> ENROLLMENT_EVENT_IDS = ImmutableList.of("enrollment");
+    
     protected final Schedule schedule;
     
     ActivityScheduler(Schedule schedule) {
@@ -24,11 +28,11 @@ public abstract class ActivityScheduler {
             return null;
         }
         // If no event is specified, it's enrollment by default.
-        String eventIdString = schedule.getEventId();
-        if (eventIdString == null) {
-            eventIdString = "enrollment";
+        List<String> eventIds = schedule.getParsedEventIds();
+        if (eventIds.isEmpty()) {
+            eventIds = ENROLLMENT_EVENT_IDS;
         }
-        DateTime eventTime = getFirstEventDateTime(context, eventIdString);
+        DateTime eventTime = getFirstEventDateTime(context, eventIds);
 
         // An event was specified, but it hasn't happened yet.. So no activities are generated.
         if (eventTime == null) {
@@ -116,18 +120,14 @@ public abstract class ActivityScheduler {
         return localDate.toLocalDateTime(localTime).plus(schedule.getExpires());
     }
 
-    protected DateTime getFirstEventDateTime(ScheduleContext context, String eventIdsString) {
-        DateTime eventDateTime = null;
-        if (eventIdsString != null) {
-            String[] eventIds = eventIdsString.trim().split("\\s*,\\s*");
-            for (String thisEventId : eventIds) {
-                if (context.getEvent(thisEventId) != null) {
-                    eventDateTime = context.getEvent(thisEventId);
-                    break;
-                }
+    protected DateTime getFirstEventDateTime(ScheduleContext context, List<String> eventIds) {
+        for (String thisEventId : eventIds) {
+            DateTime eventDateTime = context.getEvent(thisEventId);
+            if (eventDateTime != null) {
+                return eventDateTime;
             }
         }
-        return eventDateTime;
+        return null;
     }
     
     /**
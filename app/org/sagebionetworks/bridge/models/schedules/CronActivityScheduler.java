@@ -5,8 +5,7 @@ import java.util.List;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
-import org.quartz.CronScheduleBuilder;
-import org.quartz.spi.MutableTrigger;
+import org.quartz.CronExpression;
 
 import com.google.common.collect.Lists;
 
@@ -22,14 +21,14 @@ class CronActivityScheduler extends ActivityScheduler {
         DateTime scheduledTime = getScheduledTimeBasedOnEvent(context);
         
         if (scheduledTime != null) {
-            MutableTrigger trigger = parseTrigger(scheduledTime);
+            CronExpression expression = schedule.getParsedCronExpression();
             
             while (shouldContinueScheduling(context, scheduledTime, scheduledActivities)) {
                 // We use the scheduler to generate times in UTC (cron doesn't specify time zones
                 // and is usually in UTC), but when we add them, we add using localDate and 
                 // localTime, and then shift that to the user's time zone. So '0 0 10 1/1 * ? *' 
                 // is at 10am in the user's time zone. 
-                Date next = trigger.getFireTimeAfter(scheduledTime.toDate());
+                Date next = expression.getTimeAfter(scheduledTime.toDate());
                 scheduledTime = new DateTime(next, DateTimeZone.UTC);
                 
                 if (shouldContinueScheduling(context, scheduledTime, scheduledActivities)) {
@@ -39,13 +38,4 @@ class CronActivityScheduler extends ActivityScheduler {
         }
         return trimScheduledActivities(scheduledActivities);
     }
-    
-    private MutableTrigger parseTrigger(DateTime scheduledTime) {
-        MutableTrigger mutable = CronScheduleBuilder
-            .cronSchedule(schedule.getCronTrigger())
-            .inTimeZone(DateTimeZone.UTC.toTimeZone()).build();
-        mutable.setStartTime(scheduledTime.toDate());
-        return mutable;
-    }
-
 }
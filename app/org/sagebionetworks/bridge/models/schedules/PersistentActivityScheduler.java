@@ -4,6 +4,7 @@ import java.util.List;
 
 import org.joda.time.DateTime;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 
 public class PersistentActivityScheduler extends ActivityScheduler {
@@ -14,9 +15,11 @@ public class PersistentActivityScheduler extends ActivityScheduler {
     
     @Override
     public List<ScheduledActivity> getScheduledActivities(SchedulePlan plan, ScheduleContext context) {
-        // similar to a safety check in ActivityScheduler.getScheduledTimeBasedOnEvent
-        if (schedule.getEventId() == null) {
-            schedule.setEventId("enrollment");
+        // similar to a safety check in ActivityScheduler.getScheduledTimeBasedOnEvent. The schedule may be 
+        // shared with other requests, so don't default the eventId by modifying it.
+        List<String> eventIds = schedule.getParsedEventIds();
+        if (eventIds.isEmpty()) {
+            eventIds = ENROLLMENT_EVENT_IDS;
         }
         List<ScheduledActivity> scheduledActivities = Lists.newArrayList();
         for (Activity activity : schedule.getActivities()) {
@@ -26,7 +29,8 @@ public class PersistentActivityScheduler extends ActivityScheduler {
             // when creating a schedule. It's clearer if you don't include this "finished" event, though it 
             // won't break anything if a user does include it in the eventId.
             String finishedId = "activity:"+activity.getGuid()+":finished";
-            DateTime scheduledTime = getFirstEventDateTime(context, finishedId+"," + schedule.getEventId());
+            List<String> activityEventIds = ImmutableList.<String>builder().add(finishedId).addAll(eventIds).build();
+            DateTime scheduledTime = getFirstEventDateTime(context, activityEventIds);
 
             if (scheduledTime != null) {
                 DateTime localDateTime = scheduledTime.withZone(context.getInitialTimeZone());
@@ -2,18 +2,22 @@ package org.sagebionetworks.bridge.models.schedules;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.text.ParseException;
 import java.util.List;
 import java.util.Objects;
 
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.joda.time.LocalTime;
 import org.joda.time.Period;
+import org.quartz.CronExpression;
 import org.sagebionetworks.bridge.models.BridgeEntity;
 import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolder;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 
 // This has to be non-final because there's a lot of complex logic in here (such as getScheduler()) that needs to be
@@ -50,6 +54,10 @@ public class Schedule implements BridgeEntity {
     private DateTime endsOn;
     private List<LocalTime> times = Lists.newArrayList();
     private List<Activity> activities = Lists.newArrayList();
+    // Parsed forms of eventId and cronTrigger, computed on first use. Schedule plans are cached and shared 
+    // between requests, so these are parsed once rather than on every scheduling pass.
+    private transient volatile List<String> parsedEventIds;
+    private transient volatile CronExpression parsedCronExpression;
     
     public List<Activity> getActivities() {
         return activities;
@@ -97,6 +105,7 @@ public class Schedule implements BridgeEntity {
     }
     public void setCronTrigger(String cronTrigger) {
         this.cronTrigger = cronTrigger;
+        this.parsedCronExpression = null;
     }
     public DateTime getStartsOn() {
         return startsOn;
@@ -153,6 +162,41 @@ public class Schedule implements BridgeEntity {
     }
     public void setEventId(String eventId) {
         this.eventId = eventId;
+        this.parsedEventIds = null;
+    }
+    /**
+     * The event IDs in the eventId string, in order, or an empty list if there is no eventId.
+     */
+    List<String> getParsedEventIds() {
+        List<String> eventIds = parsedEventIds;
+        if (eventIds == null) {
+            eventIds = parseEventIds(eventId);
+            parsedEventIds = eventIds;
+        }
+        return eventIds;
+    }
+    /**
+     * The cron trigger parsed into an expression that fires in UTC, or null if there is no cron trigger. 
+     * The expression is never modified after it is parsed, so it can be shared between threads.
+     */
+    CronExpression getParsedCronExpression() {
+        CronExpression expression = parsedCronExpression;
+        if (expression == null && cronTrigger != null) {
+            try {
+                expression = new CronExpression(cronTrigger);
+                expression.setTimeZone(DateTimeZone.UTC.toTimeZone());
+            } catch (ParseException e) {
+                throw new RuntimeException("CronExpression '" + cronTrigger + "' is invalid.", e);
+            }
+            parsedCronExpression = expression;
+        }
+        return expression;
+    }
+    static List<String> parseEventIds(String eventIdsString) {
+        if (eventIdsString == null) {
+            return ImmutableList.of();
+        }
+        return ImmutableList.copyOf(eventIdsString.trim().split("\\s*,\\s*"));
     }
     /**
      * Persistent schedules will reschedule an activity immediately after it is finished. 
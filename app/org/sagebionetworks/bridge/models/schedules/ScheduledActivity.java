@@ -113,6 +113,8 @@ public interface ScheduledActivity extends BridgeEntity {
 
     DateTime getScheduledOn();
 
+    LocalDateTime getLocalScheduledOn();
+
     void setLocalScheduledOn(LocalDateTime localScheduledOn);
     
     JsonNode getClientData();
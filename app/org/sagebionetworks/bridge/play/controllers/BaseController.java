@@ -397,15 +397,15 @@ public abstract class BaseController extends Controller {
         }
     }
     
+    /**
+     * Returns a builder with the request information available from the session and the request. It does not 
+     * include the timestamps of earlier requests; CacheProvider.updateRequestInfo() merges the fields it is given 
+     * into what is already persisted.
+     */
     protected RequestInfo.Builder getRequestInfoBuilder(UserSession session) {
         checkNotNull(session);
         
         RequestInfo.Builder builder = new RequestInfo.Builder();
-        // If any timestamps exist, retrieve and preserve them in the returned requestInfo
-        RequestInfo requestInfo = cacheProvider.getRequestInfo(session.getId());
-        if (requestInfo != null) {
-            builder.copyOf(requestInfo);
-        }
         builder.withUserId(session.getId());
         builder.withClientInfo(getClientInfoFromUserAgentHeader());
         builder.withUserAgent(request().getHeader(USER_AGENT));
@@ -2,8 +2,9 @@ package org.sagebionetworks.bridge.play.controllers;
 
 import static org.sagebionetworks.bridge.Roles.ADMIN;
 
-import java.util.Set;
+import java.util.Map;
 
+import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
 import org.sagebionetworks.bridge.services.CacheAdminService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
@@ -20,13 +21,30 @@ public class CacheAdminController extends BaseController {
         this.cacheAdminService = cacheService;
     }
     
-    public Result listItems() throws Exception {
+    public Result listItems(String offsetKey, String pageSizeString) throws Exception {
         getAuthenticatedSession(ADMIN);
         
-        Set<String> keys = cacheAdminService.listItems();
+        // Play will not convert these to null if they are not included in the query string, so we must do the conversion.
+        Integer pageSize = (pageSizeString != null) ? Integer.parseInt(pageSizeString,10) : null;
+        
+        ForwardCursorPagedResourceList<String> keys = cacheAdminService.listItems(offsetKey, pageSize);
         return okResult(keys);
     }
     
+    public Result getItemStats() throws Exception {
+        getAuthenticatedSession(ADMIN);
+        
+        Map<String,Map<String,Long>> stats = cacheAdminService.getItemStats();
+        return okResult(stats);
+    }
+    
+    public Result getStudyCacheStats() throws Exception {
+        getAuthenticatedSession(ADMIN);
+        
+        Map<String,Long> stats = cacheAdminService.getStudyCacheStats();
+        return okResult(stats);
+    }
+    
     public Result removeItem(String cacheKey) {
         getAuthenticatedSession(ADMIN);
         
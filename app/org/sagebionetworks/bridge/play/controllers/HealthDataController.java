@@ -1,6 +1,9 @@
 package org.sagebionetworks.bridge.play.controllers;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import org.sagebionetworks.bridge.BridgeConstants;
+import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
+import org.sagebionetworks.bridge.models.healthdata.HealthDataRecord;
 import org.sagebionetworks.bridge.models.healthdata.RecordExportStatusRequest;
 import org.sagebionetworks.bridge.services.HealthDataService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -9,6 +12,7 @@ import play.mvc.Result;
 
 import java.util.List;
 
+import static org.sagebionetworks.bridge.BridgeUtils.getIntOrDefault;
 import static org.sagebionetworks.bridge.Roles.WORKER;
 
 @Controller
@@ -30,4 +34,18 @@ public class HealthDataController extends BaseController {
 
         return okResult("Update exporter status to: " + updatedRecordIds + " complete.");
     }
+
+    /**
+     * Returns the health data records uploaded on the given date, a page at a time. Records are in a stable order, so
+     * the exporter pages through a day's records with the offset key from each page.
+     */
+    public Result getRecordsForUploadDate(String uploadDate, String offsetKey, String pageSizeString) {
+        getAuthenticatedSession(WORKER);
+
+        int pageSize = getIntOrDefault(pageSizeString, BridgeConstants.API_DEFAULT_PAGE_SIZE);
+
+        ForwardCursorPagedResourceList<HealthDataRecord> page = healthDataService.getRecordsForUploadDate(
+                uploadDate, offsetKey, pageSize);
+        return okResult(page);
+    }
 }
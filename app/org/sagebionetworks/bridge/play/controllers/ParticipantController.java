@@ -94,34 +94,34 @@ public class ParticipantController extends BaseController {
         return okResult(UserSessionInfo.toJSON(session));
     }
     
-    public Result getParticipants(String offsetByString, String pageSizeString, String emailFilter,
+    public Result getParticipants(String offsetByString, String offsetKey, String pageSizeString, String emailFilter,
             String startDateString, String endDateString) {
         UserSession session = getAuthenticatedSession(RESEARCHER);
         Study study = studyService.getStudy(session.getStudyIdentifier());
         
-        return getParticipantsInternal(study, offsetByString, pageSizeString, emailFilter, startDateString,
-                endDateString);
+        return getParticipantsInternal(study, offsetByString, offsetKey, pageSizeString, emailFilter,
+                startDateString, endDateString);
     }
 
-    public Result getParticipantsForWorker(String studyId, String offsetByString, String pageSizeString, String emailFilter,
-            String startDateString, String endDateString) {
+    public Result getParticipantsForWorker(String studyId, String offsetByString, String offsetKey,
+            String pageSizeString, String emailFilter, String startDateString, String endDateString) {
         getAuthenticatedSession(WORKER);
         
         Study study = studyService.getStudy(studyId);
-        return getParticipantsInternal(study, offsetByString, pageSizeString, emailFilter, startDateString,
-                endDateString);
+        return getParticipantsInternal(study, offsetByString, offsetKey, pageSizeString, emailFilter,
+                startDateString, endDateString);
     }
     
-    private Result getParticipantsInternal(Study study, String offsetByString, String pageSizeString,
-            String emailFilter, String startDateString, String endDateString) {
+    private Result getParticipantsInternal(Study study, String offsetByString, String offsetKey,
+            String pageSizeString, String emailFilter, String startDateString, String endDateString) {
         
         int offsetBy = getIntOrDefault(offsetByString, 0);
         int pageSize = getIntOrDefault(pageSizeString, API_DEFAULT_PAGE_SIZE);
         DateTime startDate = DateUtils.getDateTimeOrDefault(startDateString, null);
         DateTime endDate = DateUtils.getDateTimeOrDefault(endDateString, null);
         
-        PagedResourceList<AccountSummary> page = participantService.getPagedAccountSummaries(study, offsetBy, pageSize,
-                emailFilter, startDate, endDate);
+        PagedResourceList<AccountSummary> page = participantService.getPagedAccountSummaries(study, offsetBy,
+                offsetKey, pageSize, emailFilter, startDate, endDate);
         return okResult(page);
     }
     
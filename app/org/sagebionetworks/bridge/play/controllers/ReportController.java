@@ -6,6 +6,9 @@ import static org.sagebionetworks.bridge.Roles.RESEARCHER;
 import static org.sagebionetworks.bridge.Roles.WORKER;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 
+import java.util.List;
+import java.util.Map;
+
 import org.joda.time.LocalDate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
@@ -15,6 +18,7 @@ import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.json.DateUtils;
 import org.sagebionetworks.bridge.models.DateRangeResourceList;
+import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
 import org.sagebionetworks.bridge.models.ReportTypeResourceList;
 import org.sagebionetworks.bridge.models.accounts.Account;
 import org.sagebionetworks.bridge.models.accounts.UserSession;
@@ -27,7 +31,10 @@ import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
 import org.sagebionetworks.bridge.services.ReportService;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 import play.mvc.Result;
 
@@ -50,6 +57,9 @@ import play.mvc.Result;
 @Controller
 public class ReportController extends BaseController {
     
+    private static final TypeReference<List<ReportData>> REPORT_DATA_LIST_TYPE_REF = 
+            new TypeReference<List<ReportData>>() {};
+    
     @Autowired
     ReportService reportService;
     
@@ -109,6 +119,41 @@ public class ReportController extends BaseController {
         return okResult(results);
     }
     
+    /**
+     * Individuals can page through their own participant reports. Unlike the v3 API, the date range is not 
+     * limited, as the results are returned one page at a time.
+     */
+    public Result getParticipantReportV4(String identifier, String startDateString, String endDateString,
+            String offsetKey, Integer pageSize) {
+        UserSession session = getAuthenticatedSession();
+        
+        LocalDate startDate = parseDateHelper(startDateString);
+        LocalDate endDate = parseDateHelper(endDateString);
+        
+        ForwardCursorPagedResourceList<ReportData> page = reportService.getParticipantReportV4(
+                session.getStudyIdentifier(), identifier, session.getHealthCode(), startDate, endDate, offsetKey,
+                pageSize);
+        
+        return okResult(page);
+    }
+    
+    public Result getParticipantReportForResearcherV4(String userId, String identifier, String startDateString,
+            String endDateString, String offsetKey, Integer pageSize) {
+        UserSession session = getAuthenticatedSession(RESEARCHER);
+        Study study = studyService.getStudy(session.getStudyIdentifier());
+        
+        LocalDate startDate = parseDateHelper(startDateString);
+        LocalDate endDate = parseDateHelper(endDateString);
+        
+        Account account = accountDao.getAccount(study, userId);
+        
+        ForwardCursorPagedResourceList<ReportData> page = reportService.getParticipantReportV4(
+                session.getStudyIdentifier(), identifier, account.getHealthCode(), startDate, endDate, offsetKey,
+                pageSize);
+        
+        return okResult(page);
+    }
+    
     /**
      * Report participant data can be saved by developers or by worker processes. The JSON for these must 
      * include a healthCode field. This is validated when constructing the DataReportKey.
@@ -150,6 +195,39 @@ public class ReportController extends BaseController {
         return createdResult("Report data saved.");
     }
     
+    /**
+     * Workers can save records of a participant report for many participants at once. The body is an array 
+     * of report data records, each of which must include a healthCode field.
+     */
+    public Result saveParticipantReportsForWorker(String identifier) throws Exception {
+        UserSession session = getAuthenticatedSession(WORKER);
+        
+        JsonNode node = requestToJSON(request());
+        if (node == null || !node.isArray()) {
+            throw new BadRequestException("Expected an array of report data records.");
+        }
+        Map<String, List<ReportData>> reportDataByHealthCode = Maps.newLinkedHashMap();
+        for (JsonNode child : node) {
+            if (!child.has("healthCode")) {
+                throw new BadRequestException("A health code is required to save report data.");
+            }
+            String healthCode = child.get("healthCode").asText();
+            
+            ReportData reportData = MAPPER.treeToValue(child, ReportData.class);
+            reportData.setKey(null); // set in service, but just so no future use depends on it
+            
+            List<ReportData> reportDataList = reportDataByHealthCode.get(healthCode);
+            if (reportDataList == null) {
+                reportDataList = Lists.newArrayList();
+                reportDataByHealthCode.put(healthCode, reportDataList);
+            }
+            reportDataList.add(reportData);
+        }
+        reportService.saveParticipantReports(session.getStudyIdentifier(), identifier, reportDataByHealthCode);
+        
+        return createdResult("Report data saved.");
+    }
+    
     /**
      * Developers and workers can delete participant report data (though worker accounts are unlikely 
      * to know the user ID for records). This deletes all reports for all users. This is not 
@@ -205,6 +283,23 @@ public class ReportController extends BaseController {
         return okResult(results);
     }
     
+    /**
+     * Any authenticated user can page through study reports. Unlike the v3 API, the date range is not limited, 
+     * as the results are returned one page at a time.
+     */
+    public Result getStudyReportV4(String identifier, String startDateString, String endDateString,
+            String offsetKey, Integer pageSize) {
+        UserSession session = getAuthenticatedSession();
+        
+        LocalDate startDate = parseDateHelper(startDateString);
+        LocalDate endDate = parseDateHelper(endDateString);
+        
+        ForwardCursorPagedResourceList<ReportData> page = reportService.getStudyReportV4(
+                session.getStudyIdentifier(), identifier, startDate, endDate, offsetKey, pageSize);
+        
+        return okResult(page);
+    }
+    
     /**
      * Get a study report *if* it is marked public, as this call does not require the user to be authenticated.
      */
@@ -237,6 +332,26 @@ public class ReportController extends BaseController {
         return createdResult("Report data saved.");
     }
 
+    /**
+     * Developers and workers can save many records of a study report at once. The body is an array of 
+     * report data records.
+     */
+    public Result saveStudyReports(String identifier) throws Exception {
+        UserSession session = getAuthenticatedSession(DEVELOPER, WORKER);
+        
+        JsonNode node = requestToJSON(request());
+        if (node == null || !node.isArray()) {
+            throw new BadRequestException("Expected an array of report data records.");
+        }
+        List<ReportData> reportDataList = MAPPER.convertValue(node, REPORT_DATA_LIST_TYPE_REF);
+        for (ReportData reportData : reportDataList) {
+            reportData.setKey(null); // set in service, but just so no future use depends on it
+        }
+        reportService.saveStudyReports(session.getStudyIdentifier(), identifier, reportDataList);
+        
+        return createdResult("Report data saved.");
+    }
+
     /**
      * A similar method as above but specifying study id only for WORKER
      */
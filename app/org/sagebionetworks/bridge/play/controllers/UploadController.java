@@ -1,5 +1,9 @@
 package org.sagebionetworks.bridge.play.controllers;
 
+import static org.sagebionetworks.bridge.Roles.ADMIN;
+
+import java.util.Map;
+
 import org.sagebionetworks.bridge.Roles;
 import org.sagebionetworks.bridge.dao.HealthCodeDao;
 import org.sagebionetworks.bridge.exceptions.UnauthorizedException;
@@ -15,6 +19,7 @@ import org.sagebionetworks.bridge.models.upload.UploadRequest;
 import org.sagebionetworks.bridge.models.upload.UploadSession;
 import org.sagebionetworks.bridge.models.upload.UploadValidationStatus;
 import org.sagebionetworks.bridge.services.UploadService;
+import org.sagebionetworks.bridge.services.UploadValidationService;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 
@@ -29,6 +34,8 @@ public class UploadController extends BaseController {
 
     private UploadService uploadService;
     
+    private UploadValidationService uploadValidationService;
+    
     private HealthCodeDao healthCodeDao;
 
     @Autowired
@@ -36,6 +43,11 @@ public class UploadController extends BaseController {
         this.uploadService = uploadService;
     }
     
+    @Autowired
+    final void setUploadValidationService(UploadValidationService uploadValidationService) {
+        this.uploadValidationService = uploadValidationService;
+    }
+    
     @Autowired
     final void setHealthCodeDao(HealthCodeDao healthCodeDao) {
         this.healthCodeDao = healthCodeDao;
@@ -111,5 +123,12 @@ public class UploadController extends BaseController {
 
         return okResult("Upload " + uploadId + " complete!");
     }
-
+    
+    /** Queue depth, wait times and handler latency for upload validation on this node. */
+    public Result getValidationStats() throws Exception {
+        getAuthenticatedSession(ADMIN);
+        
+        Map<String, Object> stats = uploadValidationService.getValidationStats();
+        return okResult(stats);
+    }
 }
@@ -50,6 +50,18 @@ public interface RedisKey {
     RedisKey VIEW = new SimpleKey("view");
 
     RedisKey STUDY_EMAIL_STATUS = new SimpleKey("study-email-status");
+
+    /** Version of a study's schedule plans, changed whenever a plan is created, updated or deleted. */
+    RedisKey SCHEDULE_PLAN_VERSION = new SimpleKey("schedule-plan-version");
+
+    /** How far each schedule plan's activities have been persisted for a user, keyed by health code. */
+    RedisKey SCHEDULE_MATERIALIZATION = new SimpleKey("schedule-materialization");
+
+    /** A user's activity events, keyed by health code. */
+    RedisKey ACTIVITY_EVENTS = new SimpleKey("activity-events");
+
+    /** Version of a user's activity events, incremented whenever an event is published, keyed by health code. */
+    RedisKey ACTIVITY_EVENTS_VERSION = new SimpleKey("activity-events-version");
     
     String SEPARATOR = ":";
 
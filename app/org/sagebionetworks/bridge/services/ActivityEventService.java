@@ -3,6 +3,8 @@ package org.sagebionetworks.bridge.services;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.sagebionetworks.bridge.BridgeUtils.COMMA_JOINER;
 
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.joda.time.DateTime;
@@ -17,6 +19,8 @@ import org.sagebionetworks.bridge.models.surveys.SurveyAnswer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.google.common.collect.ImmutableList;
+
 @Component
 public class ActivityEventService {
 
@@ -54,23 +58,52 @@ public class ActivityEventService {
     public void publishActivityFinishedEvent(ScheduledActivity schActivity) {
         checkNotNull(schActivity);
         
-        // If there's no colon, this is an existing activity and it cannot fire an 
-        // activity event. Quietly ignore this until we have migrated activities.
-        if (schActivity.getGuid().contains(":")) {
-            String activityGuid = schActivity.getGuid().split(":")[0];
-            
-            ActivityEvent event = new DynamoActivityEvent.Builder()
-                .withHealthCode(schActivity.getHealthCode())
-                .withObjectType(ActivityEventObjectType.ACTIVITY)
-                .withObjectId(activityGuid)
-                .withEventType(ActivityEventType.FINISHED)
-                .withTimestamp(schActivity.getFinishedOn())
-                .build();
-
+        ActivityEvent event = createActivityFinishedEvent(schActivity);
+        if (event != null) {
             activityEventDao.publishEvent(event);
         }
     }
     
+    /**
+     * Publish activity finished events for several scheduled activities in one batch. Only the latest finish of 
+     * each activity is published, since earlier ones would not be saved.
+     */
+    public void publishActivityFinishedEvents(List<ScheduledActivity> schActivities) {
+        checkNotNull(schActivities);
+        
+        Map<String, ActivityEvent> events = new LinkedHashMap<>();
+        for (ScheduledActivity schActivity : schActivities) {
+            ActivityEvent event = createActivityFinishedEvent(schActivity);
+            if (event != null) {
+                String key = event.getHealthCode() + ":" + event.getEventId();
+                ActivityEvent existingEvent = events.get(key);
+                if (existingEvent == null || event.getTimestamp() > existingEvent.getTimestamp()) {
+                    events.put(key, event);
+                }
+            }
+        }
+        if (!events.isEmpty()) {
+            activityEventDao.publishEvents(ImmutableList.copyOf(events.values()));
+        }
+    }
+    
+    // If there's no colon, this is an existing activity and it cannot fire an 
+    // activity event. Quietly ignore this until we have migrated activities.
+    private ActivityEvent createActivityFinishedEvent(ScheduledActivity schActivity) {
+        if (!schActivity.getGuid().contains(":")) {
+            return null;
+        }
+        String activityGuid = schActivity.getGuid().split(":")[0];
+        
+        return new DynamoActivityEvent.Builder()
+            .withHealthCode(schActivity.getHealthCode())
+            .withObjectType(ActivityEventObjectType.ACTIVITY)
+            .withObjectId(activityGuid)
+            .withEventType(ActivityEventType.FINISHED)
+            .withTimestamp(schActivity.getFinishedOn())
+            .build();
+    }
+    
     /**
      * ActivityEvents can be published directly, although all supported events have a more 
      * specific service method that should be preferred. This method can be used for 
@@ -2,18 +2,34 @@ package org.sagebionetworks.bridge.services;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
+import static org.sagebionetworks.bridge.BridgeConstants.API_DEFAULT_PAGE_SIZE;
+import static org.sagebionetworks.bridge.BridgeConstants.API_MAXIMUM_PAGE_SIZE;
+import static org.sagebionetworks.bridge.BridgeConstants.API_MINIMUM_PAGE_SIZE;
 
-import java.util.Set;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
 
+import org.sagebionetworks.bridge.cache.CacheProvider;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
 import org.sagebionetworks.bridge.redis.RedisKey;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.exceptions.JedisDataException;
 
-import com.google.common.collect.Sets;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 @Component
 public class CacheAdminService {
@@ -22,28 +38,135 @@ public class CacheAdminService {
     private final String USER_SESSION_SUFFIX = RedisKey.SEPARATOR + RedisKey.SESSION.getSuffix() + RedisKey.SEPARATOR + RedisKey.USER.getSuffix();
     private final String REQUEST_INFO_SUFFIX = RedisKey.SEPARATOR + RedisKey.REQUEST_INFO.getSuffix();
     
+    private static final String PAGE_SIZE_ERROR = "pageSize must be from " + API_MINIMUM_PAGE_SIZE + "-"
+            + API_MAXIMUM_PAGE_SIZE + " records";
+    
+    /** How many keys to ask SCAN for in each step when walking the whole keyspace. */
+    static final int STATS_SCAN_COUNT = 1000;
+    
+    // Values returned by TYPE for the kinds of keys we can size.
+    private static final String STRING_TYPE = "string";
+    private static final String HASH_TYPE = "hash";
+    private static final String NO_KEY_TYPE = "none";
+    
     private JedisPool jedisPool;
+    private CacheProvider cacheProvider;
     
     @Autowired
     public void setJedisPool(JedisPool jedisPool) {
         this.jedisPool = jedisPool;
     }
 
+    @Autowired
+    public void setCacheProvider(CacheProvider cacheProvider) {
+        this.cacheProvider = cacheProvider;
+    }
+
     /**
-     * Returns all keys in the cache that are not user session keys.
-     * @return
+     * Returns hit and miss counts for the in-process study cache on this node.
      */
-    public Set<String> listItems() {
+    public Map<String,Long> getStudyCacheStats() {
+        CacheStats stats = cacheProvider.getStudyCacheStats();
+        return ImmutableMap.of("hitCount", stats.hitCount(), "missCount", stats.missCount(), "evictionCount",
+                stats.evictionCount());
+    }
+
+    /**
+     * Returns a page of the keys in the cache that are not user session keys. Keys are walked with SCAN, so this never
+     * blocks Redis for the whole keyspace the way KEYS does. As with SCAN, a page may hold a few more or less keys than
+     * the page size, keys added or removed during the walk may or may not be returned, and there is another page as 
+     * long as the offset key is not null.
+     * 
+     * @param offsetKey
+     *      the SCAN cursor returned with the previous page, or null to start at the beginning
+     * @param pageSize
+     *      the approximate number of keys to return, or null for the default page size
+     */
+    public ForwardCursorPagedResourceList<String> listItems(String offsetKey, Integer pageSize) {
+        if (pageSize == null) {
+            pageSize = API_DEFAULT_PAGE_SIZE;
+        }
+        if (pageSize < API_MINIMUM_PAGE_SIZE || pageSize > API_MAXIMUM_PAGE_SIZE) {
+            throw new BadRequestException(PAGE_SIZE_ERROR);
+        }
+        String cursor = (offsetKey == null) ? ScanParams.SCAN_POINTER_START : offsetKey;
+        ScanParams params = new ScanParams().count(pageSize);
+        
+        List<String> keys = Lists.newArrayList();
         try (Jedis jedis = jedisPool.getResource()) {
-            Set<String> allKeys = jedis.keys("*");
-            Set<String> set = Sets.newHashSet();
-            for (String key : allKeys) {
-                if (notASessionKey(key)) {
-                    set.add(key);
+            // Session keys are filtered out after each step, so keep scanning until there is something to return.
+            do {
+                ScanResult<String> result = jedis.scan(cursor, params);
+                for (String key : result.getResult()) {
+                    if (notASessionKey(key)) {
+                        keys.add(key);
+                    }
                 }
-            }
-            return set;
+                cursor = result.getStringCursor();
+            } while (keys.isEmpty() && !ScanParams.SCAN_POINTER_START.equals(cursor));
+        }
+        String nextOffsetKey = ScanParams.SCAN_POINTER_START.equals(cursor) ? null : cursor;
+        return new ForwardCursorPagedResourceList<>(keys, nextOffsetKey, pageSize);
+    }
+
+    /**
+     * Returns the count and total size of the values (in bytes, for string and hash values) of the keys in the cache, 
+     * by the type of key (the part of the key after the ID, e.g. "study" or "Survey:view"). The size of a hash is the 
+     * size of its fields and values. User session keys are not included. The whole keyspace is walked with SCAN, and 
+     * the Redis type and then the size of each key are read in pipelined batches, so this takes a while for a large 
+     * cache, but it doesn't block Redis.
+     */
+    public Map<String,Map<String,Long>> getItemStats() {
+        Map<String,Long> counts = Maps.newTreeMap();
+        Map<String,Long> bytes = Maps.newTreeMap();
+        
+        ScanParams params = new ScanParams().count(STATS_SCAN_COUNT);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        try (Jedis jedis = jedisPool.getResource()) {
+            do {
+                ScanResult<String> result = jedis.scan(cursor, params);
+                
+                Map<String,Response<String>> redisTypes = Maps.newHashMap();
+                Pipeline typePipeline = jedis.pipelined();
+                for (String key : result.getResult()) {
+                    if (notASessionKey(key)) {
+                        redisTypes.put(key, typePipeline.type(key));
+                    }
+                }
+                typePipeline.sync();
+                
+                Map<String,Response<Long>> stringLengths = Maps.newHashMap();
+                Map<String,Response<Map<String,String>>> hashes = Maps.newHashMap();
+                Pipeline sizePipeline = jedis.pipelined();
+                for (Map.Entry<String,Response<String>> entry : redisTypes.entrySet()) {
+                    String redisType = entry.getValue().get();
+                    if (STRING_TYPE.equals(redisType)) {
+                        stringLengths.put(entry.getKey(), sizePipeline.strlen(entry.getKey()));
+                    } else if (HASH_TYPE.equals(redisType)) {
+                        hashes.put(entry.getKey(), sizePipeline.hgetAll(entry.getKey()));
+                    }
+                }
+                sizePipeline.sync();
+                
+                for (Map.Entry<String,Response<String>> entry : redisTypes.entrySet()) {
+                    // The key expired after it was scanned.
+                    if (NO_KEY_TYPE.equals(entry.getValue().get())) {
+                        continue;
+                    }
+                    String type = getKeyType(entry.getKey());
+                    counts.merge(type, 1L, Long::sum);
+                    bytes.merge(type, getSize(stringLengths.get(entry.getKey()), hashes.get(entry.getKey())),
+                            Long::sum);
+                }
+                cursor = result.getStringCursor();
+            } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+        }
+        
+        Map<String,Map<String,Long>> stats = Maps.newTreeMap();
+        for (String type : counts.keySet()) {
+            stats.put(type, ImmutableMap.of("count", counts.get(type), "bytes", bytes.get(type)));
         }
+        return stats;
     }
 
     /**
@@ -64,6 +187,33 @@ public class CacheAdminService {
         }
     }
     
+    // Keys are an ID followed by the key's type, e.g. "api:study". Keys without an ID are their own type.
+    private String getKeyType(String key) {
+        int index = key.indexOf(RedisKey.SEPARATOR);
+        return (index < 0) ? key : key.substring(index + RedisKey.SEPARATOR.length());
+    }
+    
+    // We don't have a size for keys that are neither strings nor hashes. STRLEN and HGETALL fail if the key was
+    // replaced by a different type of value after its type was read.
+    private long getSize(Response<Long> stringLength, Response<Map<String,String>> hash) {
+        try {
+            if (stringLength != null) {
+                return stringLength.get();
+            }
+            if (hash != null) {
+                long size = 0L;
+                for (Map.Entry<String,String> field : hash.get().entrySet()) {
+                    size += field.getKey().getBytes(StandardCharsets.UTF_8).length;
+                    size += field.getValue().getBytes(StandardCharsets.UTF_8).length;
+                }
+                return size;
+            }
+        } catch (JedisDataException e) {
+            // fall through
+        }
+        return 0L;
+    }
+    
     private boolean notASessionKey(String key) {
         return !(key.endsWith(SESSION_SUFFIX) || key.endsWith(USER_SESSION_SUFFIX) || key.endsWith(REQUEST_INFO_SUFFIX));
     }
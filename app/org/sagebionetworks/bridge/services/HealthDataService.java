@@ -1,11 +1,15 @@
 package org.sagebionetworks.bridge.services;
 
+import static org.sagebionetworks.bridge.BridgeConstants.API_MAXIMUM_PAGE_SIZE;
+import static org.sagebionetworks.bridge.BridgeConstants.API_MINIMUM_PAGE_SIZE;
+
 import java.util.List;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
 import org.sagebionetworks.bridge.dynamodb.DynamoHealthDataRecord;
 import org.sagebionetworks.bridge.exceptions.NotFoundException;
+import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
 import org.sagebionetworks.bridge.models.healthdata.*;
 import org.sagebionetworks.bridge.validators.RecordExportStatusRequestValidator;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -28,6 +32,8 @@ public class HealthDataService {
     private HealthDataDao healthDataDao;
 
     private final static int MAX_NUM_RECORD_IDS = 25;
+    private static final String PAGE_SIZE_ERROR = "pageSize must be from " + API_MINIMUM_PAGE_SIZE + "-"
+            + API_MAXIMUM_PAGE_SIZE + " records";
     private static final Validator exporterStatusValidator = new RecordExportStatusRequestValidator();
 
     /** Health data attachment DAO. This is configured by Spring. */
@@ -111,7 +117,39 @@ public class HealthDataService {
      * @return list of health data records
      */
     public List<HealthDataRecord> getRecordsForUploadDate(String uploadDate) {
-        // validate upload date
+        validateUploadDate(uploadDate);
+
+        // call through to DAO
+        return healthDataDao.getRecordsForUploadDate(uploadDate);
+    }
+
+    /**
+     * Returns a page of the health data records with the given upload date. Unlike
+     * {@link #getRecordsForUploadDate(String)}, this doesn't load all of a day's records at once, so it's suitable for
+     * exporting busy days. This method is generally called by worker apps as part of data export.
+     *
+     * @param uploadDate
+     *         an upload date in YYYY-MM-DD format, must be non-null, non-empty, and represent a valid date
+     * @param offsetKey
+     *         offset key returned with the previous page, or the ID of the last record processed, to continue after
+     *         it; null for the first page
+     * @param pageSize
+     *         max number of records to return, must be between API_MINIMUM_PAGE_SIZE and API_MAXIMUM_PAGE_SIZE
+     * @return page of health data records
+     */
+    public ForwardCursorPagedResourceList<HealthDataRecord> getRecordsForUploadDate(String uploadDate,
+            String offsetKey, int pageSize) {
+        validateUploadDate(uploadDate);
+        if (pageSize < API_MINIMUM_PAGE_SIZE || pageSize > API_MAXIMUM_PAGE_SIZE) {
+            throw new BadRequestException(PAGE_SIZE_ERROR);
+        }
+
+        // call through to DAO
+        return healthDataDao.getRecordsForUploadDate(uploadDate, offsetKey, pageSize);
+    }
+
+    // Throws a BadRequestException if the upload date is blank or isn't a valid YYYY-MM-DD date.
+    private static void validateUploadDate(String uploadDate) {
         if (StringUtils.isBlank(uploadDate)) {
             throw new BadRequestException(String.format(Validate.CANNOT_BE_BLANK, "uploadDate"));
         }
@@ -123,9 +161,6 @@ public class HealthDataService {
         } catch (IllegalArgumentException ex) {
             throw new BadRequestException(String.format("Expected date format YYYY-MM-DD, received %s", uploadDate));
         }
-
-        // call through to DAO
-        return healthDataDao.getRecordsForUploadDate(uploadDate);
     }
 
     public List<HealthDataRecord> getRecordsByHealthcodeCreatedOnSchemaId(String healthCode, Long createdOn, String schemaId) {
@@ -165,6 +200,25 @@ public class HealthDataService {
         return healthDataAttachmentDao.createOrUpdateAttachment(attachment);
     }
 
+    /**
+     * Creates or updates a list of health data attachments in a single batch. Attachments without IDs are assigned new
+     * IDs. This is used by upload validation, which writes all of an upload's attachments at once.
+     *
+     * @param attachmentList
+     *         health data attachments to create or update
+     */
+    public void createOrUpdateAttachments(List<HealthDataAttachment> attachmentList) {
+        if (attachmentList == null) {
+            throw new InvalidEntityException(String.format(Validate.CANNOT_BE_NULL, "HealthDataAttachment list"));
+        }
+        if (attachmentList.isEmpty()) {
+            return;
+        }
+
+        // call through to DAO
+        healthDataAttachmentDao.createOrUpdateAttachments(attachmentList);
+    }
+
     /* BUILDERS */
 
     /** Returns a builder object, used for building attachments, for create or update. */
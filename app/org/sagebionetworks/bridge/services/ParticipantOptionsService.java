@@ -7,6 +7,7 @@ import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.BiConsumer;
 
 import org.joda.time.DateTimeZone;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -41,6 +42,16 @@ public class ParticipantOptionsService {
         return optionsDao.getOptions(healthCode);
     }
     
+    /**
+     * Get all options and their values for a participant, as {@link #getOptions}, but always read from the 
+     * database rather than the short-lived cache, so the result includes writes made on other nodes.
+     */
+    public ParticipantOptionsLookup getOptionsUncached(String healthCode) {
+        checkArgument(isNotBlank(healthCode));
+        
+        return optionsDao.getOptionsUncached(healthCode);
+    }
+    
     /**
      * Get all options for all participants in a study, in a lookup object that always returns a 
      * ParticipantOptionsLookup object (event for healthCodes that have no options saved). For batch 
@@ -50,6 +61,19 @@ public class ParticipantOptionsService {
         return optionsDao.getOptionsForAllParticipants(studyIdentifier);
     }
 
+    /**
+     * Pass the health code and options of each participant in a study to the callback, one at a time, rather than 
+     * collecting them all in memory. The callback may be called concurrently from several threads. Participants with 
+     * no options saved are not included.
+     */
+    public void forEachParticipantOptions(StudyIdentifier studyIdentifier,
+            BiConsumer<String, ParticipantOptionsLookup> callback) {
+        checkNotNull(studyIdentifier);
+        checkNotNull(callback);
+        
+        optionsDao.forEachParticipantOptions(studyIdentifier, callback);
+    }
+
     /**
      * Persist a boolean participant option.
      */
@@ -197,12 +197,15 @@ public class ParticipantService {
         return builder.build();
     }
 
-    public PagedResourceList<AccountSummary> getPagedAccountSummaries(Study study, int offsetBy, int pageSize,
-            String emailFilter, DateTime startDate, DateTime endDate) {
+    public PagedResourceList<AccountSummary> getPagedAccountSummaries(Study study, int offsetBy, String offsetKey,
+            int pageSize, String emailFilter, DateTime startDate, DateTime endDate) {
         checkNotNull(study);
         if (offsetBy < 0) {
             throw new BadRequestException("offsetBy cannot be less than 0");
         }
+        if (offsetBy > 0 && offsetKey != null) {
+            throw new BadRequestException("offsetBy and offsetKey cannot both be used");
+        }
         // Just set a sane upper limit on this.
         if (pageSize < API_MINIMUM_PAGE_SIZE || pageSize > API_MAXIMUM_PAGE_SIZE) {
             throw new BadRequestException(PAGE_SIZE_ERROR);
@@ -210,7 +213,8 @@ public class ParticipantService {
         if (startDate != null && endDate != null && startDate.getMillis() >= endDate.getMillis()) {
             throw new BadRequestException(DATE_RANGE_ERROR);
         }
-        return accountDao.getPagedAccountSummaries(study, offsetBy, pageSize, emailFilter, startDate, endDate);
+        return accountDao.getPagedAccountSummaries(study, offsetBy, offsetKey, pageSize, emailFilter, startDate,
+                endDate);
     }
 
     public void signUserOut(Study study, String email) {
@@ -279,10 +283,8 @@ public class ParticipantService {
     }
 
     private void throwExceptionIfLimitMetOrExceeded(Study study) {
-        // It's sufficient to get minimum number of records the total if for all records
-        PagedResourceList<AccountSummary> summaries = getPagedAccountSummaries(study, 0,
-                BridgeConstants.API_MINIMUM_PAGE_SIZE, null, null, null);
-        if (summaries.getTotal() >= study.getAccountLimit()) {
+        // The paged total can be cached and out of date, so count the accounts directly.
+        if (accountDao.getStudyAccountCount(study) >= study.getAccountLimit()) {
             throw new LimitExceededException(String.format(BridgeConstants.MAX_USERS_ERROR, study.getAccountLimit()));
         }
     }
@@ -1,6 +1,12 @@
 package org.sagebionetworks.bridge.services;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static org.sagebionetworks.bridge.BridgeConstants.API_DEFAULT_PAGE_SIZE;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.joda.time.LocalDate;
 import org.joda.time.Period;
@@ -13,6 +19,7 @@ import org.sagebionetworks.bridge.dao.ReportIndexDao;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.json.DateUtils;
 import org.sagebionetworks.bridge.models.DateRangeResourceList;
+import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
 import org.sagebionetworks.bridge.models.ReportTypeResourceList;
 import org.sagebionetworks.bridge.models.reports.ReportData;
 import org.sagebionetworks.bridge.models.reports.ReportDataKey;
@@ -20,9 +27,12 @@ import org.sagebionetworks.bridge.models.reports.ReportIndex;
 import org.sagebionetworks.bridge.models.reports.ReportType;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
 
+import com.google.common.collect.Lists;
+
 @Component
 public class ReportService {
     private static final int MAX_RANGE_DAYS = 45;
+    static final int MAX_BATCH_RECORDS = 500;
     
     private ReportDataDao reportDataDao;
     private ReportIndexDao reportIndexDao;
@@ -74,6 +84,50 @@ public class ReportService {
         return reportDataDao.getReportData(key, startDate, endDate);
     }
 
+    /**
+     * Get one page of a study report. Because results are paged, the date range is not limited as it is in 
+     * {@link #getStudyReport(StudyIdentifier, String, LocalDate, LocalDate)}.
+     */
+    public ForwardCursorPagedResourceList<ReportData> getStudyReportV4(StudyIdentifier studyId, String identifier,
+            LocalDate startDate, LocalDate endDate, String offsetKey, Integer pageSize) {
+        // ReportDataKey validates all parameters to this method
+        
+        startDate = defaultValueToMinusDays(startDate, 1);
+        endDate = defaultValueToMinusDays(endDate, 0);
+        validateDateOrder(startDate, endDate);
+        
+        ReportDataKey key = new ReportDataKey.Builder()
+                .withReportType(ReportType.STUDY)
+                .withIdentifier(identifier)
+                .withStudyIdentifier(studyId).build();
+        
+        return reportDataDao.getReportDataV4(key, startDate, endDate, offsetKey,
+                (pageSize == null ? API_DEFAULT_PAGE_SIZE : pageSize.intValue()));
+    }
+    
+    /**
+     * Get one page of a participant report. Because results are paged, the date range is not limited as it is in 
+     * {@link #getParticipantReport(StudyIdentifier, String, String, LocalDate, LocalDate)}.
+     */
+    public ForwardCursorPagedResourceList<ReportData> getParticipantReportV4(StudyIdentifier studyId,
+            String identifier, String healthCode, LocalDate startDate, LocalDate endDate, String offsetKey,
+            Integer pageSize) {
+        // ReportDataKey validates all parameters to this method
+        
+        startDate = defaultValueToMinusDays(startDate, 1);
+        endDate = defaultValueToMinusDays(endDate, 0);
+        validateDateOrder(startDate, endDate);
+        
+        ReportDataKey key = new ReportDataKey.Builder()
+                .withHealthCode(healthCode)
+                .withReportType(ReportType.PARTICIPANT)
+                .withIdentifier(identifier)
+                .withStudyIdentifier(studyId).build();
+        
+        return reportDataDao.getReportDataV4(key, startDate, endDate, offsetKey,
+                (pageSize == null ? API_DEFAULT_PAGE_SIZE : pageSize.intValue()));
+    }
+
     public void saveStudyReport(StudyIdentifier studyId, String identifier, ReportData reportData) {
         checkNotNull(reportData);
         // ReportDataKey validates all other parameters to this method
@@ -106,6 +160,67 @@ public class ReportService {
         addToIndex(key);        
     }
     
+    /**
+     * Save many records of one study report. All records are validated before any are written, and the 
+     * report's index is updated once for the whole batch. A batch can't have two records for the same date.
+     */
+    public void saveStudyReports(StudyIdentifier studyId, String identifier, List<ReportData> reportDataList) {
+        checkNotNull(reportDataList);
+        validateBatchSize(reportDataList.size());
+        
+        ReportDataKey indexKey = null;
+        Set<String> savedKeysAndDates = new HashSet<>();
+        for (ReportData reportData : reportDataList) {
+            checkNotNull(reportData);
+            ReportDataKey key = new ReportDataKey.Builder()
+                    .withReportType(ReportType.STUDY)
+                    .withIdentifier(identifier)
+                    .withStudyIdentifier(studyId)
+                    .validateWithDate(reportData.getDate()).build();
+            reportData.setKey(key.getKeyString());
+            checkNotDuplicate(savedKeysAndDates, reportData);
+            indexKey = key;
+        }
+        if (indexKey != null) {
+            reportDataDao.saveReportDataBatch(reportDataList);
+            addToIndex(indexKey);
+        }
+    }
+    
+    /**
+     * Save records of one participant report for many participants, mapped from health code to that 
+     * participant's records. All records are validated before any are written, and the report's index is 
+     * updated once for the whole batch. A batch can't have two records for the same participant and date.
+     */
+    public void saveParticipantReports(StudyIdentifier studyId, String identifier,
+            Map<String, List<ReportData>> reportDataByHealthCode) {
+        checkNotNull(reportDataByHealthCode);
+        
+        List<ReportData> allReportData = Lists.newArrayList();
+        ReportDataKey indexKey = null;
+        Set<String> savedKeysAndDates = new HashSet<>();
+        for (Map.Entry<String, List<ReportData>> entry : reportDataByHealthCode.entrySet()) {
+            for (ReportData reportData : entry.getValue()) {
+                checkNotNull(reportData);
+                ReportDataKey key = new ReportDataKey.Builder()
+                        .withHealthCode(entry.getKey())
+                        .withReportType(ReportType.PARTICIPANT)
+                        .withIdentifier(identifier)
+                        .withStudyIdentifier(studyId)
+                        .validateWithDate(reportData.getDate()).build();
+                reportData.setKey(key.getKeyString());
+                checkNotDuplicate(savedKeysAndDates, reportData);
+                allReportData.add(reportData);
+                indexKey = key;
+            }
+        }
+        validateBatchSize(allReportData.size());
+        if (indexKey != null) {
+            reportDataDao.saveReportDataBatch(allReportData);
+            addToIndex(indexKey);
+        }
+    }
+    
     public void deleteStudyReport(StudyIdentifier studyId, String identifier) {
         // ReportDataKey validates all parameters to this method
 
@@ -188,6 +303,27 @@ public class ReportService {
         reportIndexDao.addIndex(key);
     }
     
+    private void validateDateOrder(LocalDate startDate, LocalDate endDate) {
+        if (startDate.isAfter(endDate)) {
+            throw new BadRequestException("Start date " + startDate + " can't be after end date " + endDate);
+        }
+    }
+    
+    // DynamoDB rejects a batch write with two items for the same key, and there's no telling which record the caller 
+    // meant to keep, so the whole batch is rejected.
+    private static void checkNotDuplicate(Set<String> savedKeysAndDates, ReportData reportData) {
+        if (!savedKeysAndDates.add(reportData.getKey() + "|" + reportData.getDate())) {
+            throw new BadRequestException("Cannot save more than one record of a report for the same date (" +
+                    reportData.getDate() + ").");
+        }
+    }
+    
+    private void validateBatchSize(int size) {
+        if (size > MAX_BATCH_RECORDS) {
+            throw new BadRequestException("Cannot save more than " + MAX_BATCH_RECORDS + " report records at once.");
+        }
+    }
+    
     private LocalDate defaultValueToMinusDays(LocalDate submittedValue, int minusDays) {
         if (submittedValue == null) {
             return DateUtils.getCurrentCalendarDateInLocalTime().minusDays(minusDays);
@@ -196,9 +332,7 @@ public class ReportService {
     }
     
     private void validateDateRange(LocalDate startDate, LocalDate endDate) {
-        if (startDate.isAfter(endDate)) {
-            throw new BadRequestException("Start date " + startDate + " can't be after end date " + endDate);
-        }
+        validateDateOrder(startDate, endDate);
         Period dateRange = new Period(startDate, endDate, PeriodType.days());
         if (dateRange.getDays() > MAX_RANGE_DAYS) {
             throw new BadRequestException("Date range cannot exceed " + MAX_RANGE_DAYS + " days, startDate=" +
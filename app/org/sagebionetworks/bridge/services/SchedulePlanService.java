@@ -7,6 +7,7 @@ import java.util.List;
 import java.util.Set;
 
 import org.sagebionetworks.bridge.BridgeUtils;
+import org.sagebionetworks.bridge.cache.CacheProvider;
 import org.sagebionetworks.bridge.dao.SchedulePlanDao;
 import org.sagebionetworks.bridge.models.ClientInfo;
 import org.sagebionetworks.bridge.models.GuidCreatedOnVersionHolder;
@@ -19,9 +20,13 @@ import org.sagebionetworks.bridge.models.studies.Study;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
 import org.sagebionetworks.bridge.models.surveys.Survey;
+import org.sagebionetworks.bridge.redis.RedisKey;
 import org.sagebionetworks.bridge.validators.SchedulePlanValidator;
 import org.sagebionetworks.bridge.validators.Validate;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Sets;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -31,8 +36,21 @@ import org.springframework.stereotype.Component;
 @Component
 public class SchedulePlanService {
     
+    static final int PLAN_VERSION_EXPIRE_IN_SECONDS = 24*60*60;
+    private static final long PLAN_CACHE_MAX_SIZE = 1000L;
+    
     private SchedulePlanDao schedulePlanDao;
     private SurveyService surveyService;
+    private CacheProvider cacheProvider;
+    
+    /**
+     * Schedule plans are read on every request for scheduled activities, and loading them requires a query plus a 
+     * load for the criteria of every schedule. Each node keeps the study's plans in memory along with the version 
+     * they were loaded at. The version is kept in Redis and changed whenever a plan is written, so every node sees 
+     * the change on its next read. Cached plans are shared between requests and must not be modified.
+     */
+    private final Cache<String, VersionedPlans> planCache = CacheBuilder.newBuilder()
+            .maximumSize(PLAN_CACHE_MAX_SIZE).build();
 
     @Autowired
     public final void setSchedulePlanDao(SchedulePlanDao schedulePlanDao) {
@@ -42,9 +60,31 @@ public class SchedulePlanService {
     public final void setSurveyService(SurveyService surveyService) {
         this.surveyService = surveyService;
     }
+    @Autowired
+    public final void setCacheProvider(CacheProvider cacheProvider) {
+        this.cacheProvider = cacheProvider;
+    }
 
+    /**
+     * Get all the schedule plans in the study. The plans are cached and shared between callers, so they should 
+     * not be modified.
+     */
     public List<SchedulePlan> getSchedulePlans(ClientInfo clientInfo, StudyIdentifier studyIdentifier) {
-        return schedulePlanDao.getSchedulePlans(clientInfo, studyIdentifier);
+        checkNotNull(studyIdentifier);
+        
+        String versionKey = RedisKey.SCHEDULE_PLAN_VERSION.getRedisKey(studyIdentifier.getIdentifier());
+        String version = cacheProvider.getString(versionKey);
+        if (version == null) {
+            version = BridgeUtils.generateGuid();
+            cacheProvider.setString(versionKey, version, PLAN_VERSION_EXPIRE_IN_SECONDS);
+        }
+        VersionedPlans cached = planCache.getIfPresent(studyIdentifier.getIdentifier());
+        if (cached != null && cached.version.equals(version)) {
+            return cached.plans;
+        }
+        List<SchedulePlan> plans = ImmutableList.copyOf(schedulePlanDao.getSchedulePlans(clientInfo, studyIdentifier));
+        planCache.put(studyIdentifier.getIdentifier(), new VersionedPlans(version, plans));
+        return plans;
     }
 
     public SchedulePlan getSchedulePlan(StudyIdentifier studyIdentifier, String guid) {
@@ -76,7 +116,9 @@ public class SchedulePlanService {
         Validate.entityThrowingException(new SchedulePlanValidator(study.getDataGroups(), study.getTaskIdentifiers()), plan);
 
         lookupSurveyReferenceIdentifiers(study.getStudyIdentifier(), plan);
-        return schedulePlanDao.createSchedulePlan(study.getStudyIdentifier(), plan);
+        SchedulePlan result = schedulePlanDao.createSchedulePlan(study.getStudyIdentifier(), plan);
+        invalidateSchedulePlans(study.getStudyIdentifier());
+        return result;
     }
     
     public SchedulePlan updateSchedulePlan(Study study, SchedulePlan plan) {
@@ -110,7 +152,9 @@ public class SchedulePlanService {
         
         StudyIdentifier studyId = new StudyIdentifierImpl(plan.getStudyKey());
         lookupSurveyReferenceIdentifiers(studyId, plan);
-        return schedulePlanDao.updateSchedulePlan(studyId, plan);
+        SchedulePlan result = schedulePlanDao.updateSchedulePlan(studyId, plan);
+        invalidateSchedulePlans(studyId);
+        return result;
     }
 
     public void deleteSchedulePlan(StudyIdentifier studyIdentifier, String guid) {
@@ -118,6 +162,16 @@ public class SchedulePlanService {
         checkNotNull(isNotBlank(guid));
         
         schedulePlanDao.deleteSchedulePlan(studyIdentifier, guid);
+        invalidateSchedulePlans(studyIdentifier);
+    }
+    
+    /**
+     * Change the study's plan version so that all nodes reload the study's plans on their next read.
+     */
+    private void invalidateSchedulePlans(StudyIdentifier studyIdentifier) {
+        planCache.invalidate(studyIdentifier.getIdentifier());
+        String versionKey = RedisKey.SCHEDULE_PLAN_VERSION.getRedisKey(studyIdentifier.getIdentifier());
+        cacheProvider.setString(versionKey, BridgeUtils.generateGuid(), PLAN_VERSION_EXPIRE_IN_SECONDS);
     }
     
     /**
@@ -172,4 +226,14 @@ public class SchedulePlanService {
         }
         return activity;
     }
+    
+    private static final class VersionedPlans {
+        private final String version;
+        private final List<SchedulePlan> plans;
+        
+        VersionedPlans(String version, List<SchedulePlan> plans) {
+            this.version = version;
+            this.plans = plans;
+        }
+    }
 }
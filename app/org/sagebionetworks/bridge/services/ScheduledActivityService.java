@@ -11,25 +11,37 @@ import static org.sagebionetworks.bridge.BridgeConstants.CLIENT_DATA_MAX_BYTES;
 import static org.sagebionetworks.bridge.util.BridgeCollectors.toImmutableList;
 import static org.sagebionetworks.bridge.validators.ScheduleContextValidator.MAX_DATE_RANGE_IN_DAYS;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.function.Predicate;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Range;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import org.sagebionetworks.bridge.cache.CacheProvider;
 import org.sagebionetworks.bridge.dao.ScheduledActivityDao;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
+import org.sagebionetworks.bridge.json.BridgeObjectMapper;
 import org.sagebionetworks.bridge.models.CriteriaContext;
 import org.sagebionetworks.bridge.models.schedules.Activity;
 import org.sagebionetworks.bridge.models.schedules.ActivityType;
@@ -46,11 +58,13 @@ import org.sagebionetworks.bridge.models.schedules.SurveyReference;
 import org.sagebionetworks.bridge.models.schedules.TaskReference;
 import org.sagebionetworks.bridge.models.surveys.Survey;
 import org.sagebionetworks.bridge.models.upload.UploadSchema;
+import org.sagebionetworks.bridge.redis.RedisKey;
 import org.sagebionetworks.bridge.validators.ScheduleContextValidator;
 import org.sagebionetworks.bridge.validators.Validate;
 
 @Component
 public class ScheduledActivityService {
+    private static final Logger LOG = LoggerFactory.getLogger(ScheduledActivityService.class);
 
     @FunctionalInterface
     interface NewAndPersistedActivitiesMerger {
@@ -104,6 +118,16 @@ public class ScheduledActivityService {
 
     private static final ScheduleContextValidator VALIDATOR = new ScheduleContextValidator();
 
+    private static final String PLAN_VERSION = "planVersion";
+
+    private static final String MATERIALIZED_THROUGH = "materializedThrough";
+
+    /**
+     * Materialization marks are only an optimization (without them, activities are merged as if they were new), so
+     * they expire if a user stops requesting activities.
+     */
+    static final int MATERIALIZATION_EXPIRE_IN_SECONDS = 30*24*60*60;
+
     private ScheduledActivityDao activityDao;
 
     private ActivityEventService activityEventService;
@@ -116,6 +140,8 @@ public class ScheduledActivityService {
 
     private SurveyService surveyService;
 
+    private CacheProvider cacheProvider;
+
     @Autowired
     final void setScheduledActivityDao(ScheduledActivityDao activityDao) {
         this.activityDao = activityDao;
@@ -150,6 +176,12 @@ public class ScheduledActivityService {
         this.surveyService = surveyService;
     }
 
+    /** Cache provider, used to remember how far each schedule plan's activities have been persisted for a user. */
+    @Autowired
+    final void setCacheProvider(CacheProvider cacheProvider) {
+        this.cacheProvider = cacheProvider;
+    }
+
     public ScheduledActivityList getActivityHistory(String healthCode,
             String activityGuid, DateTime scheduledOnStart, DateTime scheduledOnEnd, String offsetBy,
             int pageSize) {
@@ -184,16 +216,94 @@ public class ScheduledActivityService {
         return getScheduledActivities(context, V3_FILTER, V3_MERGE);
     }
     
+    /**
+     * <p>
+     * Unlike the V3 API, persisted activities are never replaced by newly generated ones, so once the activities of
+     * a schedule plan have been persisted up to some point in time, they don't need to be resolved and merged again.
+     * For each schedule plan, we remember (by plan version) the latest local scheduledOn time that has been
+     * persisted for the user. Activities scheduled up to that point are read back with a range query per activity,
+     * and only activities past it are resolved, merged and saved.
+     * </p>
+     * <p>
+     * The marks only save the link resolution, the key lookups and the saves. Every plan is still run over the whole 
+     * window, and every activity it returns is read back. Schedulers generate each unexpired activity since the 
+     * triggering event and this API returns all of them, so those are the activities the client needs. And which 
+     * activities a plan schedules before its mark depends on the current events, so they can't be taken from the 
+     * mark alone.
+     * </p>
+     * <p>
+     * If an activity we expect to be persisted is missing (for example, a new event scheduled it earlier than the
+     * mark), it's treated as new.
+     * </p>
+     */
     public List<ScheduledActivity> getScheduledActivitiesV4(ScheduleContext context) {
         checkNotNull(context);
-        return getScheduledActivities(context, V4_FILTER, V4_MERGE);
+
+        Validate.nonEntityThrowingException(VALIDATOR, context);
+
+        // Add events for scheduling
+        Map<String, DateTime> events = createEventsMap(context);
+        ScheduleContext newContext = new ScheduleContext.Builder().withContext(context).withEvents(events).build();
+        String healthCode = newContext.getCriteriaContext().getHealthCode();
+        DateTimeZone timeZone = newContext.getEndsOn().getZone();
+
+        // Split the scheduled activities into those that should already be persisted, and new ones.
+        Map<String, MaterializationMark> marks = getMaterializationMarks(healthCode);
+        Map<String, MaterializationMark> updatedMarks = new HashMap<>();
+        List<ScheduledActivity> persistedActivities = new ArrayList<>();
+        List<ScheduledActivity> newActivities = new ArrayList<>();
+        for (SchedulePlan plan : getSchedulePlans(newContext)) {
+            MaterializationMark mark = marks.get(plan.getGuid());
+            if (mark != null && !Objects.equals(mark.planVersion, plan.getVersion())) {
+                // The plan has changed since the mark was set, so it may schedule different activities.
+                mark = null;
+            }
+            LocalDateTime materializedThrough = (mark == null) ? null : mark.materializedThrough;
+            LocalDateTime newMaterializedThrough = materializedThrough;
+            for (ScheduledActivity activity : generateActivitiesForPlan(plan, newContext)) {
+                LocalDateTime scheduledOn = activity.getLocalScheduledOn();
+                if (materializedThrough != null && !scheduledOn.isAfter(materializedThrough)) {
+                    persistedActivities.add(activity);
+                } else {
+                    newActivities.add(activity);
+                }
+                if (newMaterializedThrough == null || scheduledOn.isAfter(newMaterializedThrough)) {
+                    newMaterializedThrough = scheduledOn;
+                }
+            }
+            if (newMaterializedThrough != null) {
+                updatedMarks.put(plan.getGuid(), new MaterializationMark(plan.getVersion(), newMaterializedThrough));
+            }
+        }
+
+        List<ScheduledActivity> scheduledActivities = new ArrayList<>();
+        Map<String, ScheduledActivity> dbMap = getPersistedActivities(timeZone, healthCode, persistedActivities);
+        for (ScheduledActivity activity : persistedActivities) {
+            ScheduledActivity dbActivity = dbMap.get(activity.getGuid());
+            if (dbActivity != null) {
+                scheduledActivities.add(dbActivity);
+            } else {
+                newActivities.add(activity);
+            }
+        }
+
+        List<ScheduledActivity> resolvedActivities = resolveLinks(newContext.getCriteriaContext(), new HashMap<>(),
+                new HashMap<>(), new HashMap<>(), newActivities);
+        scheduledActivities.addAll(mergeWithPersistedActivities(timeZone, resolvedActivities, V4_MERGE));
+
+        // Everything up to the new marks has now been persisted.
+        if (!updatedMarks.equals(marks)) {
+            setMaterializationMarks(healthCode, updatedMarks);
+        }
+        return orderActivities(scheduledActivities, V4_FILTER);
     }
 
     public void updateScheduledActivities(String healthCode, List<ScheduledActivity> scheduledActivities) {
         checkArgument(isNotBlank(healthCode));
         checkNotNull(scheduledActivities);
 
-        List<ScheduledActivity> activitiesToSave = Lists.newArrayListWithCapacity(scheduledActivities.size());
+        // Validate the whole list before reading anything, then load the persisted activities in one batch.
+        List<String> guids = Lists.newArrayListWithCapacity(scheduledActivities.size());
         for (int i=0; i < scheduledActivities.size(); i++) {
             ScheduledActivity schActivity = scheduledActivities.get(i);
             if (schActivity == null) {
@@ -205,7 +315,20 @@ public class ScheduledActivityService {
             if (byteLength(schActivity.getClientData()) > CLIENT_DATA_MAX_BYTES) {
                 throw new BadRequestException("Client data too large ("+CLIENT_DATA_MAX_BYTES+" bytes limit)");
             }
-            ScheduledActivity dbActivity = activityDao.getActivity(healthCode, schActivity.getGuid());
+            guids.add(schActivity.getGuid());
+        }
+        Map<String, ScheduledActivity> dbMap = Maps.uniqueIndex(activityDao.getActivitiesByGuid(healthCode, guids),
+                ScheduledActivity::getGuid);
+
+        // An activity submitted more than once is updated in place and saved once. If it is finished more than
+        // once, the latest finishedOn is kept regardless of submission order.
+        Map<String, ScheduledActivity> activitiesToSave = new LinkedHashMap<>();
+        Map<String, ScheduledActivity> finishedActivities = new LinkedHashMap<>();
+        for (ScheduledActivity schActivity : scheduledActivities) {
+            ScheduledActivity dbActivity = dbMap.get(schActivity.getGuid());
+            if (dbActivity == null) {
+                throw new EntityNotFoundException(ScheduledActivity.class);
+            }
             boolean addToSaves = false;
             if (hasUpdatedClientData(schActivity, dbActivity)) {
                 dbActivity.setClientData(schActivity.getClientData());
@@ -216,21 +339,26 @@ public class ScheduledActivityService {
                 addToSaves = true;
             }
             if (schActivity.getFinishedOn() != null) {
-                dbActivity.setFinishedOn(schActivity.getFinishedOn());
-                activityEventService.publishActivityFinishedEvent(dbActivity);
+                if (!finishedActivities.containsKey(dbActivity.getGuid())
+                        || schActivity.getFinishedOn() > dbActivity.getFinishedOn()) {
+                    dbActivity.setFinishedOn(schActivity.getFinishedOn());
+                }
+                finishedActivities.put(dbActivity.getGuid(), dbActivity);
                 addToSaves = true;
             }
             if (addToSaves) {
-                activitiesToSave.add(dbActivity);
+                activitiesToSave.put(dbActivity.getGuid(), dbActivity);
             }
         }
-        activityDao.updateActivities(healthCode, activitiesToSave);
+        activityEventService.publishActivityFinishedEvents(ImmutableList.copyOf(finishedActivities.values()));
+        activityDao.updateActivities(healthCode, ImmutableList.copyOf(activitiesToSave.values()));
     }
 
     public void deleteActivitiesForUser(String healthCode) {
         checkArgument(isNotBlank(healthCode));
 
         activityDao.deleteActivitiesForUser(healthCode);
+        cacheProvider.removeString(RedisKey.SCHEDULE_MATERIALIZATION.getRedisKey(healthCode));
     }
 
     protected List<ScheduledActivity> orderActivities(List<ScheduledActivity> activities,
@@ -253,7 +381,16 @@ public class ScheduledActivityService {
         
         // Get scheduled activities, persisted activities, and compare them
         List<ScheduledActivity> scheduledActivities = scheduleActivitiesForPlans(newContext);
-        List<ScheduledActivity> dbActivities = activityDao.getActivities(newContext.getEndsOn().getZone(), scheduledActivities);
+        mergeWithPersistedActivities(newContext.getEndsOn().getZone(), scheduledActivities, mergeFunction);
+        
+        return orderActivities(scheduledActivities, filter);
+    }
+
+    // Replaces scheduled activities with their persisted copies according to the merge function, and saves the ones
+    // the merge function selects. The list is updated in place and returned.
+    private List<ScheduledActivity> mergeWithPersistedActivities(DateTimeZone timeZone,
+            List<ScheduledActivity> scheduledActivities, NewAndPersistedActivitiesMerger mergeFunction) {
+        List<ScheduledActivity> dbActivities = activityDao.getActivities(timeZone, scheduledActivities);
         
         Map<String, ScheduledActivity> dbMap = Maps.uniqueIndex(dbActivities, ScheduledActivity::getGuid);
         List<ScheduledActivity> saves = Lists.newArrayList();
@@ -264,8 +401,93 @@ public class ScheduledActivityService {
             mergeFunction.mergeActivityLists(saves, scheduledActivities, dbActivities, activity, dbActivity, i);
         }        
         activityDao.saveActivities(saves);
-        
-        return orderActivities(scheduledActivities, filter);
+        return scheduledActivities;
+    }
+
+    // Reads back activities that should already be persisted, with one range query per activity GUID rather than
+    // loading each scheduled activity by key. The queries run concurrently. Returns them keyed by scheduled activity
+    // GUID.
+    private Map<String, ScheduledActivity> getPersistedActivities(DateTimeZone timeZone, String healthCode,
+            List<ScheduledActivity> activities) {
+        Map<String, Range<LocalDateTime>> ranges = new HashMap<>();
+        for (ScheduledActivity activity : activities) {
+            ranges.merge(activity.getActivity().getGuid(), Range.singleton(activity.getLocalScheduledOn()),
+                    Range::span);
+        }
+        Map<String, ScheduledActivity> dbMap = new HashMap<>();
+        if (!ranges.isEmpty()) {
+            for (ScheduledActivity dbActivity : activityDao.getActivitiesInRanges(timeZone, healthCode, ranges)) {
+                dbMap.put(dbActivity.getGuid(), dbActivity);
+            }
+        }
+        return dbMap;
+    }
+
+    private Map<String, MaterializationMark> getMaterializationMarks(String healthCode) {
+        Map<String, MaterializationMark> marks = new HashMap<>();
+        String json = cacheProvider.getString(RedisKey.SCHEDULE_MATERIALIZATION.getRedisKey(healthCode));
+        if (json == null) {
+            return marks;
+        }
+        try {
+            Iterator<Map.Entry<String, JsonNode>> fields = BridgeObjectMapper.get().readTree(json).fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                JsonNode planVersionNode = field.getValue().get(PLAN_VERSION);
+                JsonNode materializedThroughNode = field.getValue().get(MATERIALIZED_THROUGH);
+                if (materializedThroughNode != null && materializedThroughNode.isTextual()) {
+                    Long planVersion = (planVersionNode == null || planVersionNode.isNull()) ? null :
+                            planVersionNode.longValue();
+                    marks.put(field.getKey(), new MaterializationMark(planVersion,
+                            LocalDateTime.parse(materializedThroughNode.textValue())));
+                }
+            }
+        } catch (IOException | IllegalArgumentException ex) {
+            // Without marks, everything is merged as new, and the marks are rewritten.
+            LOG.warn("Could not read schedule materialization marks, ignoring them", ex);
+            marks.clear();
+        }
+        return marks;
+    }
+
+    private void setMaterializationMarks(String healthCode, Map<String, MaterializationMark> marks) {
+        ObjectNode node = BridgeObjectMapper.get().createObjectNode();
+        for (Map.Entry<String, MaterializationMark> entry : marks.entrySet()) {
+            ObjectNode markNode = node.putObject(entry.getKey());
+            markNode.put(PLAN_VERSION, entry.getValue().planVersion);
+            markNode.put(MATERIALIZED_THROUGH, entry.getValue().materializedThrough.toString());
+        }
+        cacheProvider.setString(RedisKey.SCHEDULE_MATERIALIZATION.getRedisKey(healthCode), node.toString(),
+                MATERIALIZATION_EXPIRE_IN_SECONDS);
+    }
+
+    /** The latest local scheduledOn time through which a version of a schedule plan has been persisted. */
+    private static final class MaterializationMark {
+        private final Long planVersion;
+        private final LocalDateTime materializedThrough;
+
+        MaterializationMark(Long planVersion, LocalDateTime materializedThrough) {
+            this.planVersion = planVersion;
+            this.materializedThrough = materializedThrough;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            MaterializationMark other = (MaterializationMark) obj;
+            return Objects.equals(planVersion, other.planVersion)
+                    && Objects.equals(materializedThrough, other.materializedThrough);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(planVersion, materializedThrough);
+        }
     }
 
     /**
@@ -306,19 +528,27 @@ public class ScheduledActivityService {
         Map<String, SurveyReference> surveyCache = new HashMap<>();
         List<ScheduledActivity> scheduledActivities = new ArrayList<>();
 
-        List<SchedulePlan> plans = schedulePlanService.getSchedulePlans(context.getCriteriaContext().getClientInfo(),
+        for (SchedulePlan plan : getSchedulePlans(context)) {
+            List<ScheduledActivity> activities = generateActivitiesForPlan(plan, context);
+            List<ScheduledActivity> resolvedActivities = resolveLinks(context.getCriteriaContext(),
+                    compoundActivityCache, schemaCache, surveyCache, activities);
+            scheduledActivities.addAll(resolvedActivities);
+        }
+        return scheduledActivities;
+    }
+
+    private List<SchedulePlan> getSchedulePlans(ScheduleContext context) {
+        return schedulePlanService.getSchedulePlans(context.getCriteriaContext().getClientInfo(),
                 context.getCriteriaContext().getStudyIdentifier());
+    }
 
-        for (SchedulePlan plan : plans) {
-            Schedule schedule = plan.getStrategy().getScheduleForUser(plan, context);
-            if (schedule != null) {
-                List<ScheduledActivity> activities = schedule.getScheduler().getScheduledActivities(plan, context);
-                List<ScheduledActivity> resolvedActivities = resolveLinks(context.getCriteriaContext(),
-                        compoundActivityCache, schemaCache, surveyCache, activities);
-                scheduledActivities.addAll(resolvedActivities);
-            }
+    // Runs the scheduler of the plan's schedule for this user. Links in the activities are not resolved.
+    private List<ScheduledActivity> generateActivitiesForPlan(SchedulePlan plan, ScheduleContext context) {
+        Schedule schedule = plan.getStrategy().getScheduleForUser(plan, context);
+        if (schedule == null) {
+            return ImmutableList.of();
         }
-        return scheduledActivities;
+        return schedule.getScheduler().getScheduledActivities(plan, context);
     }
 
     private List<ScheduledActivity> resolveLinks(CriteriaContext context,
@@ -468,8 +698,8 @@ public class ScheduledActivityService {
         String surveyGuid = surveyRef.getGuid();
         SurveyReference resolvedSurveyRef = surveyCache.get(surveyGuid);
         if (resolvedSurveyRef == null) {
-            Survey survey = surveyService.getSurveyMostRecentlyPublishedVersion(context.getStudyIdentifier(),
-                    surveyGuid);
+            Survey survey = surveyService.getCachedSurveyMostRecentlyPublishedVersion(
+                    context.getStudyIdentifier(), surveyGuid);
             resolvedSurveyRef = new SurveyReference(survey.getIdentifier(), surveyGuid,
                     new DateTime(survey.getCreatedOn()));
             surveyCache.put(surveyGuid, resolvedSurveyRef);
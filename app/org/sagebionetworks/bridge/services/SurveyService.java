@@ -86,6 +86,17 @@ public class SurveyService {
         return surveyDao.getSurvey(keys);
     }
 
+    /**
+     * Same as {@link #getSurvey}, but published versions are served from an in-memory cache when possible. This is 
+     * for read-only callers like upload validation. The returned survey is shared, so callers must not modify it.
+     */
+    public Survey getCachedSurvey(GuidCreatedOnVersionHolder keys) {
+        checkArgument(StringUtils.isNotBlank(keys.getGuid()), "Survey GUID cannot be null/blank");
+        checkArgument(keys.getCreatedOn() != 0L, "Survey createdOn timestamp cannot be 0");
+
+        return surveyDao.getCachedSurvey(keys);
+    }
+
     /**
      * Create a survey.
      * 
@@ -263,6 +274,17 @@ public class SurveyService {
         return surveyDao.getSurveyMostRecentlyPublishedVersion(studyIdentifier, guid);
     }
 
+    /**
+     * Same as {@link #getSurveyMostRecentlyPublishedVersion}, but served from an in-memory cache when possible. This 
+     * is for read-only callers like scheduling. The returned survey is shared, so callers must not modify it.
+     */
+    public Survey getCachedSurveyMostRecentlyPublishedVersion(StudyIdentifier studyIdentifier, String guid) {
+        checkNotNull(studyIdentifier, Validate.CANNOT_BE_NULL, "study");
+        checkArgument(isNotBlank(guid), Validate.CANNOT_BE_BLANK, "survey guid");
+
+        return surveyDao.getCachedSurveyMostRecentlyPublishedVersion(studyIdentifier, guid);
+    }
+
     /**
      * Get the most recent version of each survey in the study that has been published. If a survey has not been
      * published, nothing is returned.
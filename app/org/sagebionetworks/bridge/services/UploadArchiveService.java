@@ -1,6 +1,7 @@
 package org.sagebionetworks.bridge.services;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.security.cert.CertificateEncodingException;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
@@ -9,7 +10,7 @@ import javax.annotation.Nonnull;
 
 import org.bouncycastle.cms.CMSException;
 import org.sagebionetworks.bridge.config.BridgeConfigFactory;
-import org.sagebionetworks.bridge.crypto.CmsEncryptor;
+import org.sagebionetworks.bridge.crypto.StreamingCmsEncryptor;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.util.DuplicateZipEntryException;
@@ -32,13 +33,14 @@ public class UploadArchiveService {
 
     private final static Zipper ZIPPER = new Zipper(
             BridgeConfigFactory.getConfig().getPropertyAsInt("max.zip.entry.size"),
-            BridgeConfigFactory.getConfig().getPropertyAsInt("max.num.zip.entries"));
+            BridgeConfigFactory.getConfig().getPropertyAsInt("max.num.zip.entries"),
+            BridgeConfigFactory.getConfig().getPropertyAsInt("max.zip.total.size"));
 
-    private LoadingCache<String, CmsEncryptor> cmsEncryptorCache;
+    private LoadingCache<String, StreamingCmsEncryptor> cmsEncryptorCache;
 
     /** Loading cache for CMS encryptor, keyed by study ID. This is configured by Spring. */
     @Autowired
-    public void setCmsEncryptorCache(LoadingCache<String, CmsEncryptor> cmsEncryptorCache) {
+    public void setCmsEncryptorCache(LoadingCache<String, StreamingCmsEncryptor> cmsEncryptorCache) {
         this.cmsEncryptorCache = cmsEncryptorCache;
     }
 
@@ -63,7 +65,7 @@ public class UploadArchiveService {
         }
 
         // get encryptor from cache
-        CmsEncryptor encryptor = getEncryptorForStudy(studyId);
+        StreamingCmsEncryptor encryptor = getEncryptorForStudy(studyId);
 
         // encrypt
         byte[] encryptedData;
@@ -96,7 +98,7 @@ public class UploadArchiveService {
         }
 
         // get encryptor from cache
-        CmsEncryptor encryptor = getEncryptorForStudy(studyId);
+        StreamingCmsEncryptor encryptor = getEncryptorForStudy(studyId);
 
         // decrypt
         try {
@@ -106,6 +108,38 @@ public class UploadArchiveService {
         }
     }
 
+    /**
+     * Decrypts the specified stream, using the encryption materials for the specified study. The data is decrypted as
+     * the returned stream is read, so neither the encrypted nor the decrypted data is held in memory as a whole.
+     *
+     * @param studyId
+     *         study ID, must be non-null, non-empty, and refer to a valid study
+     * @param source
+     *         stream of data to decrypt, must be non-null
+     * @return stream of decrypted data, which closes the source when closed
+     * @throws BridgeServiceException
+     *         if we fail to load the encryptor, or if the source isn't encrypted data for the study
+     */
+    public InputStream decrypt(@Nonnull String studyId, @Nonnull InputStream source) throws BridgeServiceException {
+        // validate
+        if (Strings.isNullOrEmpty(studyId)) {
+            throw new BadRequestException(String.format(Validate.CANNOT_BE_BLANK, "studyId"));
+        }
+        if (source == null) {
+            throw new BadRequestException(String.format(Validate.CANNOT_BE_NULL, "source"));
+        }
+
+        // get encryptor from cache
+        StreamingCmsEncryptor encryptor = getEncryptorForStudy(studyId);
+
+        // decrypt
+        try {
+            return encryptor.decrypt(source);
+        } catch (CMSException | IOException ex) {
+            throw new BridgeServiceException(ex);
+        }
+    }
+
     /**
      * Helper function to get the encryptor for the given study.
      *
@@ -115,8 +149,9 @@ public class UploadArchiveService {
      * @throws BridgeServiceException
      *         if we fail to load the encryptor, or if the encryptor can't be found
      */
-    private @Nonnull CmsEncryptor getEncryptorForStudy(@Nonnull String studyId) throws BridgeServiceException {
-        CmsEncryptor encryptor;
+    private @Nonnull StreamingCmsEncryptor getEncryptorForStudy(@Nonnull String studyId)
+            throws BridgeServiceException {
+        StreamingCmsEncryptor encryptor;
         try {
             encryptor = cmsEncryptorCache.get(studyId);
         } catch (ExecutionException | UncheckedExecutionException ex) {
@@ -154,7 +189,8 @@ public class UploadArchiveService {
      * unzipped data entries as a byte array.
      * </p>
      * <p>
-     * This method will throw a BadRequestException if the zip file somehow contains duplicate filenames.
+     * This method will throw a BadRequestException if the zip file somehow contains duplicate filenames, or if the
+     * unzipped entries are over the max size per entry or in total.
      * </p>
      *
      * @param bytes
@@ -177,4 +213,29 @@ public class UploadArchiveService {
             throw new BadRequestException(e);
         }
     }
+
+    /**
+     * Unzips the given stream, the same way as {@link #unzip(byte[])}. Entries are read as the stream is read, so the
+     * zip file as a whole is never held in memory. The stream is closed when this returns.
+     *
+     * @param source
+     *         stream of the raw data to unzip, must be non-null
+     * @return raw bytes of unzipped data, keyed by filename
+     * @throws BridgeServiceException
+     *         if unzipping fails
+     */
+    public Map<String, byte[]> unzip(@Nonnull InputStream source) throws BridgeServiceException {
+        if (source == null) {
+            throw new BadRequestException(String.format(Validate.CANNOT_BE_NULL, "source"));
+        }
+        try {
+            return ZIPPER.unzip(source);
+        } catch (IOException e) {
+            throw new BridgeServiceException(e);
+        } catch (ZipOverflowException e) {
+            throw new BadRequestException(e);
+        } catch (DuplicateZipEntryException e) {
+            throw new BadRequestException(e);
+        }
+    }
 }
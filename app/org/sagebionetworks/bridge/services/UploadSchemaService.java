@@ -8,10 +8,14 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -85,6 +89,21 @@ public class UploadSchemaService {
         UploadSchemaService.singleChoiceDefaultLength = SINGLE_CHOICE_DEFAULT_LENGTH;
     }
 
+    // Upload validation and scheduling read the same few schema revisions over and over, so we keep them in memory.
+    // Writes through this service invalidate this node's entries immediately. Other nodes see the change when their
+    // entries expire. Published revisions can't be modified, so only edits to unpublished revisions can be seen late.
+    // Package-scoped to facilitate unit tests.
+    static final long SCHEMA_REVISION_CACHE_EXPIRE_MINUTES = 5;
+    static final long LATEST_REVISION_CACHE_EXPIRE_SECONDS = 60;
+    private static final long SCHEMA_CACHE_MAX_SIZE = 1000L;
+
+    private final Cache<String, UploadSchema> schemaRevisionCache = CacheBuilder.newBuilder()
+            .maximumSize(SCHEMA_CACHE_MAX_SIZE).expireAfterWrite(SCHEMA_REVISION_CACHE_EXPIRE_MINUTES, TimeUnit.MINUTES)
+            .build();
+    private final Cache<String, Optional<UploadSchema>> latestRevisionForAppVersionCache = CacheBuilder.newBuilder()
+            .maximumSize(SCHEMA_CACHE_MAX_SIZE).expireAfterWrite(LATEST_REVISION_CACHE_EXPIRE_SECONDS, TimeUnit.SECONDS)
+            .build();
+
     private SharedModuleMetadataService sharedModuleMetadataService;
     private UploadSchemaDao uploadSchemaDao;
 
@@ -124,7 +143,9 @@ public class UploadSchemaService {
         Validate.entityThrowingException(UploadSchemaValidator.INSTANCE, schema);
 
         // call through to DAO
-        return uploadSchemaDao.createSchemaRevision(schema);
+        UploadSchema createdSchema = uploadSchemaDao.createSchemaRevision(schema);
+        invalidateCachedSchemas(studyId, schema.getSchemaId());
+        return createdSchema;
     }
 
     /**
@@ -160,7 +181,9 @@ public class UploadSchemaService {
         Validate.entityThrowingException(UploadSchemaValidator.INSTANCE, schema);
 
         // call through to DAO
-        return uploadSchemaDao.createSchemaRevision(schema);
+        UploadSchema createdSchema = uploadSchemaDao.createSchemaRevision(schema);
+        invalidateCachedSchemas(studyId, schema.getSchemaId());
+        return createdSchema;
     }
 
     /**
@@ -550,6 +573,7 @@ public class UploadSchemaService {
         }
 
         uploadSchemaDao.deleteUploadSchemas(schemaList);
+        invalidateCachedSchemas(studyId, schemaId);
     }
 
     /**
@@ -569,6 +593,7 @@ public class UploadSchemaService {
         }
 
         uploadSchemaDao.deleteUploadSchemas(ImmutableList.of(schema));
+        invalidateCachedSchemas(studyId, schemaId);
     }
 
     /** Returns all revisions of all schemas. */
@@ -653,19 +678,60 @@ public class UploadSchemaService {
         return schema;
     }
 
+    /**
+     * Same as {@link #getUploadSchemaByIdAndRev}, but served from an in-memory cache when possible. This is for
+     * read-only callers like upload validation. The returned schema is shared, so callers must not modify it.
+     */
+    public UploadSchema getCachedUploadSchemaByIdAndRev(StudyIdentifier studyId, String schemaId, int revision) {
+        checkNotNull(studyId, "Study ID must be specified");
+
+        String cacheKey = getSchemaCacheKeyPrefix(studyId, schemaId) + revision;
+        UploadSchema schema = schemaRevisionCache.getIfPresent(cacheKey);
+        if (schema == null) {
+            // This validates params and throws if the schema doesn't exist, so we never cache a miss.
+            schema = getUploadSchemaByIdAndRev(studyId, schemaId, revision);
+            schemaRevisionCache.put(cacheKey, schema);
+        }
+        return schema;
+    }
+
     /**
      * Gets the latest available revision of the specified schema for the specified client. This API fetches every
      * schema revision for the specified schema ID, then checks the schema's min/maxAppVersion against the clientInfo.
-     * If multiple schema revisions match, it returns the latest one.
+     * If multiple schema revisions match, it returns the latest one. Results are cached briefly per OS and app
+     * version, so the returned schema is shared and callers must not modify it.
      */
     public UploadSchema getLatestUploadSchemaRevisionForAppVersion(StudyIdentifier studyId, String schemaId,
             ClientInfo clientInfo) {
         checkNotNull(studyId, "Study ID must be specified");
         checkNotNull(clientInfo, "Client Info must be specified");
 
+        // Only OS and app version affect which revisions are available.
+        String cacheKey = getSchemaCacheKeyPrefix(studyId, schemaId) + "latest:" + clientInfo.getOsName() + ":" +
+                clientInfo.getAppVersion();
+        Optional<UploadSchema> cachedSchema = latestRevisionForAppVersionCache.getIfPresent(cacheKey);
+        if (cachedSchema != null) {
+            return cachedSchema.orElse(null);
+        }
+
         List<UploadSchema> schemaList = getUploadSchemaAllRevisions(studyId, schemaId);
-        return schemaList.stream().filter(schema -> isSchemaAvailableForClientInfo(schema, clientInfo))
+        UploadSchema latestSchema = schemaList.stream()
+                .filter(schema -> isSchemaAvailableForClientInfo(schema, clientInfo))
                 .max((schema1, schema2) -> Integer.compare(schema1.getRevision(), schema2.getRevision())).orElse(null);
+        latestRevisionForAppVersionCache.put(cacheKey, Optional.ofNullable(latestSchema));
+        return latestSchema;
+    }
+
+    // Both caches are keyed with this prefix, so all entries for a schema can be dropped together.
+    private static String getSchemaCacheKeyPrefix(StudyIdentifier studyId, String schemaId) {
+        return studyId.getIdentifier() + ":" + schemaId + ":";
+    }
+
+    // Drops every cached revision and latest-revision lookup for the schema. Called after every write.
+    private void invalidateCachedSchemas(StudyIdentifier studyId, String schemaId) {
+        String prefix = getSchemaCacheKeyPrefix(studyId, schemaId);
+        schemaRevisionCache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+        latestRevisionForAppVersionCache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
     }
 
     // Helper method which checks if a schema is available for a client, by checking the schema's min/maxAppVersion
@@ -785,7 +851,9 @@ public class UploadSchemaService {
         }
 
         // Call through to the DAO
-        return uploadSchemaDao.updateSchemaRevision(schemaToUpdate);
+        UploadSchema updatedSchema = uploadSchemaDao.updateSchemaRevision(schemaToUpdate);
+        invalidateCachedSchemas(studyId, schemaId);
+        return updatedSchema;
     }
 
     // Helper method to get a map of fields by name for an Upload Schema. Returns a TreeMap so our error messaging has
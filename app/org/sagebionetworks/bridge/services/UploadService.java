@@ -23,6 +23,7 @@ import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
@@ -38,6 +39,7 @@ import org.sagebionetworks.bridge.dao.UploadDedupeDao;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.ConcurrentModificationException;
 import org.sagebionetworks.bridge.exceptions.NotFoundException;
+import org.sagebionetworks.bridge.exceptions.ServiceUnavailableException;
 import org.sagebionetworks.bridge.json.DateUtils;
 import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
 import org.sagebionetworks.bridge.models.accounts.StudyParticipant;
@@ -362,7 +364,17 @@ public class UploadService {
         }
 
         // kick off upload validation
-        uploadValidationService.validateUpload(studyId, upload);
+        try {
+            uploadValidationService.validateUpload(studyId, upload);
+        } catch (ServiceUnavailableException ex) {
+            // Validation wasn't queued. The upload is already marked complete, so put it back in the requested state.
+            // Otherwise, when the client retries, the upload looks like it's already being validated and is never
+            // validated.
+            logger.warn("Upload validation not queued for upload " + uploadId + ", resetting it to " +
+                    UploadStatus.REQUESTED + ": " + ex.getMessage());
+            uploadDao.writeValidationStatus(upload, UploadStatus.REQUESTED, ImmutableList.of(), null);
+            throw ex;
+        }
     }
     
     public void deleteUploadsForHealthCode(String healthCode) {
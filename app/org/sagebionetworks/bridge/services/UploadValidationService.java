@@ -1,27 +1,27 @@
 package org.sagebionetworks.bridge.services;
 
-import javax.annotation.Nonnull;
-import javax.annotation.Resource;
+import java.util.Map;
 
-import java.util.concurrent.ExecutorService;
+import javax.annotation.Nonnull;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
 import org.sagebionetworks.bridge.models.upload.Upload;
+import org.sagebionetworks.bridge.upload.UploadValidationScheduler;
 import org.sagebionetworks.bridge.upload.UploadValidationTask;
 import org.sagebionetworks.bridge.upload.UploadValidationTaskFactory;
 
 /** Service handler for upload validation. */
 @Component
 public class UploadValidationService {
-    private ExecutorService asyncExecutorService;
+    private UploadValidationScheduler scheduler;
     private UploadValidationTaskFactory taskFactory;
 
-    /** Async thread pool. This is configured by Spring. */
-    @Resource(name = "asyncExecutorService")
-    public void setAsyncExecutorService(ExecutorService asyncExecutorService) {
-        this.asyncExecutorService = asyncExecutorService;
+    /** Scheduler that runs validation tasks. This is configured by Spring. */
+    @Autowired
+    public void setScheduler(UploadValidationScheduler scheduler) {
+        this.scheduler = scheduler;
     }
 
     /** Task factory. This is configured by Spring. */
@@ -47,6 +47,25 @@ public class UploadValidationService {
      */
     public void validateUpload(@Nonnull StudyIdentifier study, @Nonnull Upload upload) {
         UploadValidationTask task = taskFactory.newTask(study, upload);
-        asyncExecutorService.execute(task);
+        scheduler.submit(UploadValidationScheduler.Lane.INTERACTIVE, task);
+    }
+
+    /**
+     * Re-drive validation for an upload from a backfill. This works like {@link #validateUpload}, except that it runs
+     * in the backfill lane, so that backfills don't hold up uploads from users.
+     *
+     * @param study
+     *         study this upload lives in
+     * @param upload
+     *         upload metadata object for the upload
+     */
+    public void revalidateUpload(@Nonnull StudyIdentifier study, @Nonnull Upload upload) {
+        UploadValidationTask task = taskFactory.newTask(study, upload);
+        scheduler.submit(UploadValidationScheduler.Lane.BACKFILL, task);
+    }
+
+    /** Queue and handler timing stats for upload validation on this node. */
+    public Map<String, Object> getValidationStats() {
+        return scheduler.getStats();
     }
 }
@@ -0,0 +1,61 @@
+package org.sagebionetworks.bridge.services.backfill;
+
+import java.util.Iterator;
+
+import org.sagebionetworks.bridge.dao.AccountDao;
+import org.sagebionetworks.bridge.models.accounts.Account;
+import org.sagebionetworks.bridge.models.accounts.AccountSummary;
+import org.sagebionetworks.bridge.models.backfill.BackfillTask;
+import org.sagebionetworks.bridge.models.studies.Study;
+import org.sagebionetworks.bridge.services.StudyService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Backfills the email tokens used to search accounts by email substring. Accounts get their tokens when they're
+ * created or updated, so this re-saves every account.
+ */
+@Component
+public class AccountEmailTokenBackfill extends AsyncBackfillTemplate {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AccountEmailTokenBackfill.class);
+
+    private StudyService studyService;
+    private AccountDao accountDao;
+
+    @Autowired
+    public void setStudyService(StudyService studyService) {
+        this.studyService = studyService;
+    }
+
+    @Autowired
+    public void setAccountDao(AccountDao accountDao) {
+        this.accountDao = accountDao;
+    }
+
+    @Override
+    int getLockExpireInSeconds() {
+        return 30 * 60;
+    }
+
+    @Override
+    void doBackfill(final BackfillTask task, final BackfillCallback callback) {
+        for (Iterator<AccountSummary> i = accountDao.getAllAccounts(); i.hasNext();) {
+            AccountSummary summary = i.next();
+            Study study = studyService.getStudy(summary.getStudyIdentifier());
+            Account account = accountDao.getAccount(study, summary.getId());
+            try {
+                accountDao.updateAccount(account);
+                String msg = "Email tokens updated.";
+                callback.newRecords(getBackfillRecordFactory().createOnly(task, study, account, msg));
+            } catch (final RuntimeException e) {
+                LOGGER.error(e.getMessage(), e);
+                String msg = e.getClass().getName() + " " + e.getMessage();
+                callback.newRecords(getBackfillRecordFactory().createOnly(task, study, account, msg));
+            }
+        }
+    }
+}
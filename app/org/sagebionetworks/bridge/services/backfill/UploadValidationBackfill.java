@@ -92,7 +92,7 @@ public abstract class UploadValidationBackfill extends AsyncBackfillTemplate {
                 StudyIdentifier studyIdentifier = new StudyIdentifierImpl(studyId);
 
                 // Kick off upload validation.
-                uploadValidationService.validateUpload(studyIdentifier, oneUpload);
+                uploadValidationService.revalidateUpload(studyIdentifier, oneUpload);
 
                 recordMessage(task, callback, "Backfilled upload ID " + oneUploadId);
                 logger.info("Backfilled upload ID " + oneUploadId);
@@ -10,7 +10,8 @@ import org.sagebionetworks.bridge.services.UploadArchiveService;
 /**
  * Validation handler for decrypting the upload. This handler reads from
  * {@link org.sagebionetworks.bridge.upload.UploadValidationContext#getData}, decrypts it, and writes the decrypted
- * data to {@link org.sagebionetworks.bridge.upload.UploadValidationContext#setDecryptedData }.
+ * data to {@link org.sagebionetworks.bridge.upload.UploadValidationContext#setDecryptedData }. Once decrypted, the raw
+ * data is no longer needed, so it's cleared from the context to keep it from being held for the rest of validation.
  */
 @Component
 public class DecryptHandler implements UploadValidationHandler {
@@ -27,5 +28,6 @@ public class DecryptHandler implements UploadValidationHandler {
     public void handle(@Nonnull UploadValidationContext context) {
         byte[] decryptedData = uploadArchiveService.decrypt(context.getStudy().getIdentifier(), context.getData());
         context.setDecryptedData(decryptedData);
+        context.setData(null);
     }
 }
@@ -221,7 +221,8 @@ public class IosSchemaValidationHandler2 implements UploadValidationHandler {
 
         // Get survey. We use the survey identifier as the schema ID and the schema revision. Both of these must be
         // specified.
-        Survey survey = surveyService.getSurvey(new GuidCreatedOnVersionHolderImpl(surveyGuid, surveyCreatedOnMillis));
+        Survey survey = surveyService.getCachedSurvey(new GuidCreatedOnVersionHolderImpl(surveyGuid,
+                surveyCreatedOnMillis));
         String schemaId = survey.getIdentifier();
         Integer schemaRev = survey.getSchemaRevision();
         if (StringUtils.isBlank(schemaId) || schemaRev == null) {
@@ -230,7 +231,7 @@ public class IosSchemaValidationHandler2 implements UploadValidationHandler {
         }
 
         // Get the schema with the schema ID and rev.
-        return uploadSchemaService.getUploadSchemaByIdAndRev(study, schemaId, schemaRev);
+        return uploadSchemaService.getCachedUploadSchemaByIdAndRev(study, schemaId, schemaRev);
     }
 
     private UploadSchema getUploadSchemaByItemAndRev(StudyIdentifier study, String item, Integer schemaRev) {
@@ -249,7 +250,7 @@ public class IosSchemaValidationHandler2 implements UploadValidationHandler {
         }
 
         // get schema
-        return uploadSchemaService.getUploadSchemaByIdAndRev(study, item, schemaRev);
+        return uploadSchemaService.getCachedUploadSchemaByIdAndRev(study, item, schemaRev);
     }
 
     private static JsonNode getInfoJsonFile(UploadValidationContext context, String uploadId,
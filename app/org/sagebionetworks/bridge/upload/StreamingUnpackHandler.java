@@ -0,0 +1,55 @@
+package org.sagebionetworks.bridge.upload;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import com.amazonaws.services.s3.AmazonS3;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import org.sagebionetworks.bridge.config.BridgeConfigFactory;
+import org.sagebionetworks.bridge.services.UploadArchiveService;
+
+/**
+ * Validation handler that downloads, decrypts, and unzips the upload as a single stream. This does the work of
+ * {@link S3DownloadHandler}, {@link DecryptHandler}, and {@link UnzipHandler}, but reads the upload from S3 as it's
+ * decrypted and decrypts it as it's unzipped, so neither the encrypted nor the decrypted upload is ever held in memory
+ * as a whole. This handler reads {@link org.sagebionetworks.bridge.upload.UploadValidationContext#getUpload} and
+ * writes the unzipped data to {@link org.sagebionetworks.bridge.upload.UploadValidationContext#setUnzippedDataMap}.
+ */
+@Component
+public class StreamingUnpackHandler implements UploadValidationHandler {
+    private static final String UPLOAD_BUCKET = BridgeConfigFactory.getConfig().getProperty("upload.bucket");
+
+    private AmazonS3 s3Client;
+    private UploadArchiveService uploadArchiveService;
+
+    /** S3 client, for streaming the upload from S3. This is configured by Spring. */
+    @Resource(name = "s3Client")
+    public void setS3Client(AmazonS3 s3Client) {
+        this.s3Client = s3Client;
+    }
+
+    /** Upload archive service, which handles decrypting and unzipping of files. This is configured by Spring. */
+    @Autowired
+    public void setUploadArchiveService(UploadArchiveService uploadArchiveService) {
+        this.uploadArchiveService = uploadArchiveService;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void handle(@Nonnull UploadValidationContext context) throws UploadValidationException {
+        String studyId = context.getStudy().getIdentifier();
+        try (InputStream s3Stream = s3Client.getObject(UPLOAD_BUCKET, context.getUpload().getObjectId())
+                .getObjectContent()) {
+            InputStream decryptedStream = uploadArchiveService.decrypt(studyId, s3Stream);
+            Map<String, byte[]> unzippedDataMap = uploadArchiveService.unzip(decryptedStream);
+            context.setUnzippedDataMap(unzippedDataMap);
+        } catch (IOException ex) {
+            throw new UploadValidationException(ex);
+        }
+    }
+}
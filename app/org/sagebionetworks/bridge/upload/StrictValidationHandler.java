@@ -84,7 +84,7 @@ public class StrictValidationHandler implements UploadValidationHandler {
         Set<String> attachmentFieldNameSet = context.getAttachmentsByFieldName().keySet();
 
         // get schema
-        UploadSchema schema = uploadSchemaService.getUploadSchemaByIdAndRev(studyIdentifier, schemaId, schemaRev);
+        UploadSchema schema = uploadSchemaService.getCachedUploadSchemaByIdAndRev(studyIdentifier, schemaId, schemaRev);
         List<UploadFieldDefinition> fieldDefList = schema.getFieldDefinitions();
 
         List<String> errorList = validateAllFields(fieldDefList, attachmentFieldNameSet,
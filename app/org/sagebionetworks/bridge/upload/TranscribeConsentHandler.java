@@ -26,8 +26,13 @@ public class TranscribeConsentHandler implements UploadValidationHandler {
 
     @Override
     public void handle(@Nonnull UploadValidationContext context) {
-        // read sharing scope from options service
-        ParticipantOptionsLookup lookup = optionsService.getOptions(context.getUpload().getHealthCode());
+        // Read sharing scope from options service. The record must not have an out-of-date sharing scope, so this 
+        // reads past the options cache, once per upload.
+        ParticipantOptionsLookup lookup = context.getParticipantOptionsLookup();
+        if (lookup == null) {
+            lookup = optionsService.getOptionsUncached(context.getUpload().getHealthCode());
+            context.setParticipantOptionsLookup(lookup);
+        }
 
         // Get sharing scope (defaults to NO_SHARING)
         SharingScope userSharingScope = lookup.getEnum(SHARING_SCOPE, SharingScope.class);
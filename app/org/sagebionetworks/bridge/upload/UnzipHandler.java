@@ -11,7 +11,9 @@ import org.sagebionetworks.bridge.services.UploadArchiveService;
 /**
  * Validation handler for unzipping the upload. This handler reads decrypted from
  * {@link org.sagebionetworks.bridge.upload.UploadValidationContext#getDecryptedData}, unzips it, and writes the
- * unzipped data to {@link org.sagebionetworks.bridge.upload.UploadValidationContext#getUnzippedDataMap}.
+ * unzipped data to {@link org.sagebionetworks.bridge.upload.UploadValidationContext#getUnzippedDataMap}. Once
+ * unzipped, the decrypted data is no longer needed, so it's cleared from the context to keep it from being held for the
+ * rest of validation.
  */
 @Component
 public class UnzipHandler implements UploadValidationHandler {
@@ -28,5 +30,6 @@ public class UnzipHandler implements UploadValidationHandler {
     public void handle(@Nonnull UploadValidationContext context) {
         Map<String, byte[]> unzippedDataMap = uploadArchiveService.unzip(context.getDecryptedData());
         context.setUnzippedDataMap(unzippedDataMap);
+        context.setDecryptedData(null);
     }
 }
@@ -1,18 +1,26 @@
 package org.sagebionetworks.bridge.upload;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import javax.annotation.Nonnull;
 import javax.annotation.Resource;
 
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.config.BridgeConfigFactory;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataAttachment;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecord;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecordBuilder;
@@ -25,9 +33,19 @@ public class UploadArtifactsHandler implements UploadValidationHandler {
 
     private static final String ATTACHMENT_BUCKET = BridgeConfigFactory.getConfig().getProperty("attachment.bucket");
 
+    private ExecutorService attachmentExecutorService;
     private HealthDataService healthDataService;
     private S3Helper s3Helper;
 
+    /**
+     * Thread pool used to write attachments to S3 in parallel. This is shared by all uploads on this node, which
+     * bounds the number of concurrent S3 writes. This is configured by Spring.
+     */
+    @Resource(name = "uploadAttachmentExecutorService")
+    public void setAttachmentExecutorService(ExecutorService attachmentExecutorService) {
+        this.attachmentExecutorService = attachmentExecutorService;
+    }
+
     @Autowired
     public void setHealthDataService(HealthDataService healthDataService) {
         this.healthDataService = healthDataService;
@@ -42,61 +60,73 @@ public class UploadArtifactsHandler implements UploadValidationHandler {
     public void handle(@Nonnull UploadValidationContext context) {
         String uploadId = context.getUpload().getUploadId();
 
-        // step 1: upload health data record
+        // Assign the record ID up front. Attachments point back to the record, and this lets us write the record once,
+        // with its attachment IDs, after the attachments are written.
         HealthDataRecordBuilder recordBuilder = context.getHealthDataRecordBuilder();
-        HealthDataRecord record = recordBuilder.build();
-        String recordId = healthDataService.createOrUpdateRecord(record);
-        context.setRecordId(recordId);
+        String recordId = recordBuilder.getId();
+        if (StringUtils.isBlank(recordId)) {
+            recordId = BridgeUtils.generateGuid();
+            recordBuilder.withId(recordId);
+        }
 
         Map<String, byte[]> attachmentMap = context.getAttachmentsByFieldName();
         if (!attachmentMap.isEmpty()) {
-            // step 2: upload health data attachments
-            Map<String, String> attachmentIdsByFieldName = new HashMap<>();
+            // For code hygiene, make a deep copy of the dataMap. This shouldn't be too expensive, since all the large
+            // fields are shunted off into attachments.
+            // IosSchemaValidationHandler guarantees getData() to return an ObjectNode.
+            ObjectNode updatedDataMap = ((ObjectNode) recordBuilder.getData()).deepCopy();
+
+            // step 1: assign attachment IDs (foreign keys / S3 keys), write them to the data map, and start the S3
+            // uploads
+            List<HealthDataAttachment> attachmentMetadataList = new ArrayList<>();
+            Map<String, Future<?>> s3FuturesByFieldName = new LinkedHashMap<>();
             for (Map.Entry<String, byte[]> oneAttachment : attachmentMap.entrySet()) {
                 String fieldName = oneAttachment.getKey();
                 byte[] data = oneAttachment.getValue();
 
-                // step 2a: upload attachments to metadata table
-                HealthDataAttachment attachmentMetadata = healthDataService.getAttachmentBuilder()
-                        .withRecordId(recordId).build();
-                String attachmentId = healthDataService.createOrUpdateAttachment(attachmentMetadata);
-                attachmentIdsByFieldName.put(fieldName, attachmentId);
+                String attachmentId = BridgeUtils.generateGuid();
+                attachmentMetadataList.add(healthDataService.getAttachmentBuilder().withId(attachmentId)
+                        .withRecordId(recordId).build());
+                updatedDataMap.put(fieldName, attachmentId);
 
-                // step 2b: upload attachments to S3
-                try {
+                s3FuturesByFieldName.put(fieldName, attachmentExecutorService.submit(() -> {
                     s3Helper.writeBytesToS3(ATTACHMENT_BUCKET, attachmentId, data);
-                } catch (IOException ex) {
-                    addMessageAndWarn(context, String.format("Upload ID %s error uploading attachment for field %s: %s",
-                            uploadId, fieldName, ex.getMessage()), ex);
-                }
+                    return null;
+                }));
             }
 
-            // step 3: add attachment IDs to health data record
+            // step 2: write attachment metadata in a single batch while the S3 uploads are in flight
+            healthDataService.createOrUpdateAttachments(attachmentMetadataList);
 
-            // Get the record back from the health data table (as it might have added new fields, like a record ID and
-            // a version.
-            HealthDataRecord downloadedRecord = healthDataService.getRecordById(recordId);
-            HealthDataRecordBuilder updatedRecordBuilder = healthDataService.getRecordBuilder().copyOf(
-                    downloadedRecord);
-
-            // For code hygiene, make a deep copy of the dataMap. This shouldn't be too expensive, since all the large
-            // fields are shunted off into attachments.
-            // IosSchemaValidationHandler guarantees getData() to return an ObjectNode.
-            ObjectNode downloadedDataMap = (ObjectNode) downloadedRecord.getData();
-            ObjectNode updatedDataMap = downloadedDataMap.deepCopy();
-
-            // write attachment fields and IDs (foreign keys / S3 keys) to the updated data map
-            for (Map.Entry<String, String> oneAttachmentId : attachmentIdsByFieldName.entrySet()) {
-                String fieldName = oneAttachmentId.getKey();
-                String attachmentId = oneAttachmentId.getValue();
-                updatedDataMap.put(fieldName, attachmentId);
+            // step 3: wait for the S3 uploads. Failing to write an attachment to S3 doesn't fail the upload.
+            for (Map.Entry<String, Future<?>> oneS3Future : s3FuturesByFieldName.entrySet()) {
+                String fieldName = oneS3Future.getKey();
+                try {
+                    oneS3Future.getValue().get();
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    if (cause instanceof IOException) {
+                        addMessageAndWarn(context, String.format(
+                                "Upload ID %s error uploading attachment for field %s: %s", uploadId, fieldName,
+                                cause.getMessage()), cause);
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else {
+                        throw new BridgeServiceException(cause);
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new BridgeServiceException("Interrupted uploading attachments for upload " + uploadId, ex);
+                }
             }
 
-            // Write the updated data map to the record. Write the record to the record table.
-            updatedRecordBuilder.withData(updatedDataMap);
-            HealthDataRecord updatedRecord = updatedRecordBuilder.build();
-            healthDataService.createOrUpdateRecord(updatedRecord);
+            recordBuilder.withData(updatedDataMap);
         }
+
+        // step 4: write the health data record
+        HealthDataRecord record = recordBuilder.build();
+        String savedRecordId = healthDataService.createOrUpdateRecord(record);
+        context.setRecordId(savedRecordId);
     }
 
     private static void addMessageAndWarn(UploadValidationContext context, String message, Throwable ex) {
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import org.sagebionetworks.bridge.models.accounts.ParticipantOptionsLookup;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecordBuilder;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
 import org.sagebionetworks.bridge.models.upload.Upload;
@@ -25,6 +26,7 @@ public class UploadValidationContext {
     private HealthDataRecordBuilder healthDataRecordBuilder;
     private Map<String, byte[]> attachmentsByFieldName;
     private String recordId;
+    private ParticipantOptionsLookup participantOptionsLookup;
 
     /**
      * This is the study that the upload lives in and is validated against. This is made available by the upload
@@ -81,7 +83,10 @@ public class UploadValidationContext {
         messageList.add(msg);
     }
 
-    /** Raw upload data as bytes. This is created by S3DownloadHandler and read by the DecryptHandler. */
+    /**
+     * Raw upload data as bytes. This is created by S3DownloadHandler and read by the DecryptHandler, which clears it
+     * once the data is decrypted.
+     */
     public byte[] getData() {
         return data;
     }
@@ -91,7 +96,10 @@ public class UploadValidationContext {
         this.data = data;
     }
 
-    /** Decrypted upload data as bytes. This is created by DecryptHandler and read by UnzipHandler. */
+    /**
+     * Decrypted upload data as bytes. This is created by DecryptHandler and read by UnzipHandler, which clears it once
+     * the data is unzipped.
+     */
     public byte[] getDecryptedData() {
         return decryptedData;
     }
@@ -167,6 +175,19 @@ public class UploadValidationContext {
         this.recordId = recordId;
     }
 
+    /**
+     * The uploading participant's options, read once per upload so handlers don't each read them again. This is
+     * read by TranscribeConsentHandler.
+     */
+    public ParticipantOptionsLookup getParticipantOptionsLookup() {
+        return participantOptionsLookup;
+    }
+
+    /** @see #getParticipantOptionsLookup */
+    public void setParticipantOptionsLookup(ParticipantOptionsLookup participantOptionsLookup) {
+        this.participantOptionsLookup = participantOptionsLookup;
+    }
+
     /**
      * <p>
      * Makes a shallow copy of this object. The fields of the returned copy can be get and set without affecting the
@@ -196,6 +217,7 @@ public class UploadValidationContext {
         copy.healthDataRecordBuilder = this.healthDataRecordBuilder;
         copy.attachmentsByFieldName = this.attachmentsByFieldName;
         copy.recordId = this.recordId;
+        copy.participantOptionsLookup = this.participantOptionsLookup;
 
         // messageList is the only field that gets deep copied
         copy.messageList = new ArrayList<>(this.messageList);
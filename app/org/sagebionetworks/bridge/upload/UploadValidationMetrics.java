@@ -0,0 +1,73 @@
+package org.sagebionetworks.bridge.upload;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Component;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Timings for upload validation: how long tasks wait in the scheduler's queues, and how long each validation handler
+ * takes. These are aggregated in memory for this node since startup and are reported through
+ * {@link UploadValidationScheduler#getStats}.
+ */
+@Component
+public class UploadValidationMetrics {
+    private final Map<UploadValidationScheduler.Lane, LatencyStats> queueWaitByLane;
+    private final ConcurrentMap<String, LatencyStats> latencyByHandler = new ConcurrentHashMap<>();
+
+    public UploadValidationMetrics() {
+        queueWaitByLane = new EnumMap<>(UploadValidationScheduler.Lane.class);
+        for (UploadValidationScheduler.Lane lane : UploadValidationScheduler.Lane.values()) {
+            queueWaitByLane.put(lane, new LatencyStats());
+        }
+    }
+
+    /** Records how long a task waited in the given lane's queue before it started running. */
+    public void recordQueueWait(UploadValidationScheduler.Lane lane, long millis) {
+        queueWaitByLane.get(lane).record(millis);
+    }
+
+    /** Records how long a validation handler took for one upload. */
+    public void recordHandlerLatency(String handlerName, long millis) {
+        latencyByHandler.computeIfAbsent(handlerName, key -> new LatencyStats()).record(millis);
+    }
+
+    /** Queue wait time stats for the given lane. */
+    public Map<String, Long> getQueueWaitStats(UploadValidationScheduler.Lane lane) {
+        return queueWaitByLane.get(lane).toMap();
+    }
+
+    /** Latency stats for every handler that has run, keyed by handler name. */
+    public Map<String, Map<String, Long>> getHandlerLatencyStats() {
+        Map<String, Map<String, Long>> stats = new TreeMap<>();
+        for (Map.Entry<String, LatencyStats> entry : latencyByHandler.entrySet()) {
+            stats.put(entry.getKey(), entry.getValue().toMap());
+        }
+        return stats;
+    }
+
+    /** Count, average and max of a series of timings, safe to update from multiple threads. */
+    static final class LatencyStats {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalMillis = new AtomicLong();
+        private final AtomicLong maxMillis = new AtomicLong();
+
+        void record(long millis) {
+            count.incrementAndGet();
+            totalMillis.addAndGet(millis);
+            maxMillis.accumulateAndGet(millis, Math::max);
+        }
+
+        Map<String, Long> toMap() {
+            long countValue = count.get();
+            long avgMillis = countValue == 0 ? 0 : totalMillis.get() / countValue;
+            return ImmutableMap.of("count", countValue, "avgMillis", avgMillis, "maxMillis", maxMillis.get());
+        }
+    }
+}
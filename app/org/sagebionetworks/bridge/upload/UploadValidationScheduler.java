@@ -0,0 +1,202 @@
+package org.sagebionetworks.bridge.upload;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.sagebionetworks.bridge.exceptions.ServiceUnavailableException;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * <p>
+ * Runs upload validation tasks. Interactive uploads and backfill re-validation each get their own lane, with its own
+ * threads and a bounded queue, so a large backfill can't delay uploads from users, and neither can queue up an
+ * unbounded amount of work on the node.
+ * </p>
+ * <p>
+ * What happens when a lane's queue is full is configured per lane with a {@link RejectionPolicy}.
+ * </p>
+ */
+public class UploadValidationScheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(UploadValidationScheduler.class);
+
+    /** Lanes that tasks can be submitted to. */
+    public enum Lane {
+        /** Uploads from users, validated when the upload is completed. */
+        INTERACTIVE,
+        /** Uploads re-validated by a backfill. */
+        BACKFILL
+    }
+
+    /**
+     * What to do with a task when its lane's queue is full. When a task isn't run, submit() throws a
+     * ServiceUnavailableException, and it's up to the caller to make sure the upload can be re-driven.
+     */
+    public enum RejectionPolicy {
+        /**
+         * Run the task on the submitting thread. This slows down the caller until the lane catches up. For the
+         * interactive lane, that's a request thread, so this should only be used where request threads are plentiful.
+         */
+        CALLER_RUNS,
+        /**
+         * Block the submitting thread until there is room in the queue, for up to the lane's block timeout, then
+         * throw a ServiceUnavailableException. With no block timeout, wait for as long as it takes.
+         */
+        BLOCK,
+        /** Throw a ServiceUnavailableException. */
+        ABORT
+    }
+
+    private final Map<Lane, LaneExecutor> lanes = new EnumMap<>(Lane.class);
+    private final UploadValidationMetrics metrics;
+
+    /**
+     * @param laneConfigs
+     *         thread count, queue size and rejection policy for each lane. Every lane must be configured.
+     * @param metrics
+     *         where queue wait times are recorded
+     */
+    public UploadValidationScheduler(@Nonnull Map<Lane, LaneConfig> laneConfigs,
+            @Nonnull UploadValidationMetrics metrics) {
+        checkNotNull(laneConfigs);
+        this.metrics = checkNotNull(metrics);
+        for (Lane lane : Lane.values()) {
+            LaneConfig config = laneConfigs.get(lane);
+            checkArgument(config != null, "No configuration for upload validation lane %s", lane);
+            lanes.put(lane, new LaneExecutor(lane, config));
+        }
+    }
+
+    /** Submits a validation task to the given lane. */
+    public void submit(@Nonnull Lane lane, @Nonnull UploadValidationTask task) {
+        checkNotNull(lane);
+        checkNotNull(task);
+
+        final long enqueuedNanos = System.nanoTime();
+        lanes.get(lane).execute(() -> {
+            metrics.recordQueueWait(lane, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - enqueuedNanos));
+            task.run();
+        });
+    }
+
+    /**
+     * Queue depth, thread activity and wait times for each lane, plus latency for each validation handler. Counts are
+     * for this node since startup.
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> laneStats = new LinkedHashMap<>();
+        for (Map.Entry<Lane, LaneExecutor> entry : lanes.entrySet()) {
+            LaneExecutor executor = entry.getValue();
+            laneStats.put(entry.getKey().name().toLowerCase(), new ImmutableMap.Builder<String, Object>()
+                    .put("queueDepth", executor.getQueue().size())
+                    .put("queueCapacity", executor.queueCapacity)
+                    .put("activeCount", executor.getActiveCount())
+                    .put("completedCount", executor.getCompletedTaskCount())
+                    .put("rejectedCount", executor.rejectedCount.get())
+                    .put("queueWait", metrics.getQueueWaitStats(entry.getKey())).build());
+        }
+        return ImmutableMap.of("lanes", laneStats, "handlers", metrics.getHandlerLatencyStats());
+    }
+
+    /** Stops accepting tasks. Tasks that are already queued are still run. Called by Spring on shutdown. */
+    public void shutdown() {
+        for (LaneExecutor executor : lanes.values()) {
+            executor.shutdown();
+        }
+    }
+
+    /** Thread count, queue size and rejection policy for one lane. */
+    public static final class LaneConfig {
+        private final int threadCount;
+        private final int queueSize;
+        private final RejectionPolicy rejectionPolicy;
+        private final long blockTimeoutMillis;
+
+        /**
+         * @param blockTimeoutMillis
+         *         how long the BLOCK policy waits for room in the queue. Zero means no limit. Ignored by the other
+         *         policies.
+         */
+        public LaneConfig(int threadCount, int queueSize, @Nonnull RejectionPolicy rejectionPolicy,
+                long blockTimeoutMillis) {
+            checkArgument(threadCount > 0);
+            checkArgument(queueSize > 0);
+            checkArgument(blockTimeoutMillis >= 0);
+            this.threadCount = threadCount;
+            this.queueSize = queueSize;
+            this.rejectionPolicy = checkNotNull(rejectionPolicy);
+            this.blockTimeoutMillis = blockTimeoutMillis;
+        }
+    }
+
+    private static final class LaneExecutor extends ThreadPoolExecutor {
+        private final int queueCapacity;
+        private final AtomicLong rejectedCount;
+
+        LaneExecutor(Lane lane, LaneConfig config) {
+            this(lane, config, new AtomicLong());
+        }
+
+        private LaneExecutor(Lane lane, LaneConfig config, AtomicLong rejectedCount) {
+            super(config.threadCount, config.threadCount, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(config.queueSize), new ThreadFactoryBuilder()
+                            .setNameFormat("upload-validation-" + lane.name().toLowerCase() + "-%d").build(),
+                    rejectionHandler(lane, config.rejectionPolicy, config.blockTimeoutMillis, rejectedCount));
+            this.queueCapacity = config.queueSize;
+            this.rejectedCount = rejectedCount;
+        }
+
+        private static RejectedExecutionHandler rejectionHandler(Lane lane, RejectionPolicy policy,
+                long blockTimeoutMillis, AtomicLong rejectedCount) {
+            return (runnable, executor) -> {
+                rejectedCount.incrementAndGet();
+                if (executor.isShutdown()) {
+                    throw new ServiceUnavailableException("Upload validation is shutting down");
+                }
+                switch (policy) {
+                    case CALLER_RUNS:
+                        LOG.warn("Upload validation " + lane + " queue is full, running task on the caller's thread");
+                        runnable.run();
+                        break;
+                    case BLOCK:
+                        boolean queued;
+                        try {
+                            if (blockTimeoutMillis > 0) {
+                                queued = executor.getQueue().offer(runnable, blockTimeoutMillis,
+                                        TimeUnit.MILLISECONDS);
+                            } else {
+                                executor.getQueue().put(runnable);
+                                queued = true;
+                            }
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                            throw new ServiceUnavailableException("Interrupted waiting for the upload validation " +
+                                    lane + " queue");
+                        }
+                        if (!queued) {
+                            throw new ServiceUnavailableException("Upload validation " + lane +
+                                    " queue is still full after " + blockTimeoutMillis + " ms");
+                        }
+                        break;
+                    default:
+                        throw new ServiceUnavailableException("Upload validation " + lane + " queue is full");
+                }
+            };
+        }
+    }
+}
@@ -29,6 +29,7 @@ public class UploadValidationTask implements Runnable {
     private List<UploadValidationHandler> handlerList;
     private UploadDao uploadDao;
     private HealthDataService healthDataService;
+    private UploadValidationMetrics metrics;
 
     public final void setHealthDataService(HealthDataService healthDataService) {
         this.healthDataService = healthDataService;
@@ -72,6 +73,16 @@ public class UploadValidationTask implements Runnable {
         return uploadDao;
     }
 
+    /** Metrics, for recording handler latency. This is configured by Spring through the task factory. */
+    public void setMetrics(UploadValidationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /** This is package-scoped to facilitate unit tests. */
+    /* package-scoped*/ UploadValidationMetrics getMetrics() {
+        return metrics;
+    }
+
     /** {@inheritDoc} */
     @Override
     public void run() {
@@ -106,7 +117,9 @@ public class UploadValidationTask implements Runnable {
             } finally {
                 long elapsedMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
                 stopwatch.reset();
-                // TODO: send this to somewhere other than the logs
+                if (metrics != null) {
+                    metrics.recordHandlerLatency(oneHandler.getClass().getSimpleName(), elapsedMillis);
+                }
                 logger.info(String.format("Upload validation handler %s took %d ms", handlerName, elapsedMillis));
             }
         }
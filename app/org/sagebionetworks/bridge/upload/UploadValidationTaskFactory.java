@@ -22,6 +22,7 @@ public class UploadValidationTaskFactory {
     private List<UploadValidationHandler> handlerList;
     private UploadDao uploadDao;
     private HealthDataService healthDataService;
+    private UploadValidationMetrics metrics;
 
     /** Validation handler list. This is configured by Spring. */
     @Resource(name = "uploadValidationHandlerList")
@@ -40,6 +41,12 @@ public class UploadValidationTaskFactory {
         this.healthDataService = healthDataService;
     }
 
+    /** Metrics, used to record handler latency. This is configured by Spring. */
+    @Autowired
+    public final void setMetrics(UploadValidationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     /**
      * Factory method for creating a validation task instance, for validating a single upload.
      *
@@ -60,6 +67,7 @@ public class UploadValidationTaskFactory {
         task.setHandlerList(handlerList);
         task.setUploadDao(uploadDao);
         task.setHealthDataService(healthDataService);
+        task.setMetrics(metrics);
         return task;
     }
 }
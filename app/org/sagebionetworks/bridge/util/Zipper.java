@@ -5,6 +5,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.zip.ZipEntry;
@@ -16,9 +17,14 @@ import javax.annotation.Nonnull;
 import org.apache.commons.io.output.ByteArrayOutputStream;
 
 public class Zipper {
-    // Size of temporary buffer in bytes. This is big enough that there should be no churn for most files, but small
-    // enough to have minimal memory overhead.
-    private static final int TEMP_BUFFER_SIZE = 4096;
+    // Entries whose size isn't in the zip header are read into a per-thread scratch buffer, which is reused across
+    // entries and archives, then copied once into an array of the right size. Unzipping runs on a fixed set of upload
+    // validation threads, so there's at most one of these per thread. Buffers that grew past the retained size are
+    // dropped after use, so one large entry doesn't pin memory.
+    private static final int INITIAL_SCRATCH_BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_RETAINED_SCRATCH_BUFFER_SIZE = 1024 * 1024;
+    private static final ThreadLocal<byte[]> SCRATCH_BUFFER = ThreadLocal.withInitial(
+            () -> new byte[INITIAL_SCRATCH_BUFFER_SIZE]);
 
     /** Max number of uncompressed bytes per zip entry. */
     private final int maxZipEntrySize;
@@ -26,11 +32,21 @@ public class Zipper {
     /** Max number of zip entries per archive. */
     private final int maxNumZipEntries;
 
+    /** Max number of uncompressed bytes across all zip entries in an archive. */
+    private final long maxTotalZipSize;
+
+    /** Zipper with no limit on total uncompressed bytes beyond the per-entry and entry count limits. */
     public Zipper(int maxZipEntrySize, int maxNumZipEntries) {
+        this(maxZipEntrySize, maxNumZipEntries, Long.MAX_VALUE);
+    }
+
+    public Zipper(int maxZipEntrySize, int maxNumZipEntries, long maxTotalZipSize) {
         checkArgument(maxZipEntrySize > 0);
         checkArgument(maxNumZipEntries > 0);
+        checkArgument(maxTotalZipSize > 0);
         this.maxZipEntrySize = maxZipEntrySize;
         this.maxNumZipEntries = maxNumZipEntries;
+        this.maxTotalZipSize = maxTotalZipSize;
     }
 
     /**
@@ -61,9 +77,22 @@ public class Zipper {
      */
     public Map<String, byte[]> unzip(@Nonnull byte[] bytes)
             throws IOException, ZipOverflowException, DuplicateZipEntryException {
+        try (final ByteArrayInputStream bais = new ByteArrayInputStream(bytes)) {
+            return unzip(bais);
+        }
+    }
+
+    /**
+     * Unzips the given stream, with the same limits as {@link #unzip(byte[])}. Entries are read as the stream is
+     * read, so the zip file as a whole is never held in memory. The stream is closed when this returns. Unzipped
+     * entries are held in memory, so reading stops as soon as the entries together go over the max total size, rather
+     * than after the whole archive has been unzipped.
+     */
+    public Map<String, byte[]> unzip(@Nonnull InputStream source)
+            throws IOException, ZipOverflowException, DuplicateZipEntryException {
         final Map<String, byte[]> dataMap = new HashMap<>();
-        try (final ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-                final ZipInputStream zis = new ZipInputStream(bais)) {
+        long totalSize = 0;
+        try (final ZipInputStream zis = new ZipInputStream(source)) {
             ZipEntry zipEntry = zis.getNextEntry();
             while (zipEntry != null) {
                 if (dataMap.size() >= maxNumZipEntries) {
@@ -73,12 +102,14 @@ public class Zipper {
                 if (dataMap.containsKey(entryName)) {
                     throw new DuplicateZipEntryException(String.format("Duplicate filename %s", entryName));
                 }
+                // An entry can use whatever is left of the total, up to the per-entry max.
+                final int maxSize = (int) Math.min(maxZipEntrySize, maxTotalZipSize - totalSize);
                 final long entrySize = zipEntry.getSize();
-                if (entrySize > maxZipEntrySize) {
-                    throw new ZipOverflowException("Zip entry size is over the max allowed size. The entry " + entryName +
-                            " has size " + entrySize + ". The max allowed size is" + maxZipEntrySize + ".");
+                if (entrySize > maxSize) {
+                    throw overflow(entryName, entrySize, "has size " + entrySize);
                 }
-                byte[] content = toByteArray(entryName, zis);
+                byte[] content = toByteArray(entryName, entrySize, maxSize, zis);
+                totalSize += content.length;
                 dataMap.put(entryName, content);
                 zipEntry = zis.getNextEntry();
             }
@@ -86,26 +117,75 @@ public class Zipper {
         }
     }
 
-    private byte[] toByteArray(final String entryName, final InputStream inputStream)
+    private byte[] toByteArray(final String entryName, final long entrySize, final int maxSize,
+            final InputStream inputStream) throws IOException, ZipOverflowException {
+        if (entrySize >= 0) {
+            return readKnownSize(entryName, (int) entrySize, inputStream);
+        } else {
+            return readUnknownSize(entryName, maxSize, inputStream);
+        }
+    }
+
+    // Reports whichever limit the entry went over. If the entry is no bigger than the per-entry max, it went over
+    // what was left of the total.
+    private ZipOverflowException overflow(final String entryName, final long entrySize, final String sizeDescription) {
+        if (entrySize > maxZipEntrySize) {
+            return new ZipOverflowException("Zip entry size is over the max allowed size. The entry " + entryName +
+                    " " + sizeDescription + ". The max allowed size is " + maxZipEntrySize + ".");
+        }
+        return new ZipOverflowException("Zip entries are over the max allowed total size. The entry " + entryName +
+                " " + sizeDescription + ". The max allowed total size is " + maxTotalZipSize + ".");
+    }
+
+    // The size from the zip header has already been checked against the max, so we can read straight into an array
+    // of that size, with no intermediate buffers.
+    private static byte[] readKnownSize(final String entryName, final int entrySize, final InputStream inputStream)
+            throws IOException, ZipOverflowException {
+        byte[] content = new byte[entrySize];
+        int totalBytes = 0;
+        while (totalBytes < entrySize) {
+            int bytesRead = inputStream.read(content, totalBytes, entrySize - totalBytes);
+            if (bytesRead < 0) {
+                throw new IOException("Zip entry " + entryName + " is shorter than its declared size " + entrySize);
+            }
+            totalBytes += bytesRead;
+        }
+
+        // Don't rely on the header for zip bomb protection. Make sure there's nothing past the declared size.
+        if (inputStream.read() >= 0) {
+            throw new ZipOverflowException("Zip entry " + entryName + " is larger than its declared size " +
+                    entrySize + ".");
+        }
+        return content;
+    }
+
+    private byte[] readUnknownSize(final String entryName, final int maxSize, final InputStream inputStream)
             throws IOException, ZipOverflowException {
         // We want copy data from the stream to a byte array manually, so we can count the bytes and protect against
-        // zip bombs. We use Apache IO's ByteArrayOutputStream, because it's memory optimized, so we don't have to
-        // clean up a bunch of byte arrays.
-        byte[] tempBuffer = new byte[TEMP_BUFFER_SIZE];
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            int totalBytes = 0;
-            int bytesRead;
-            while ((bytesRead = inputStream.read(tempBuffer, 0, TEMP_BUFFER_SIZE)) >= 0) {
-                totalBytes += bytesRead;
-                if (totalBytes > maxZipEntrySize) {
-                    throw new ZipOverflowException("Zip entry size is over the max allowed size. The entry " + entryName +
-                            " has size more than " + totalBytes + ". The max allowed size is" + maxZipEntrySize + ".");
-                }
+        // zip bombs.
+        byte[] buffer = SCRATCH_BUFFER.get();
+        int totalBytes = 0;
+        int bytesRead;
+        while (true) {
+            if (totalBytes == buffer.length) {
+                // Grow the buffer, but never past one byte over the max. That's enough to detect an oversized entry.
+                int newLength = (int) Math.min(buffer.length * 2L, maxSize + 1L);
+                buffer = Arrays.copyOf(buffer, newLength);
+            }
 
-                baos.write(tempBuffer, 0, bytesRead);
+            bytesRead = inputStream.read(buffer, totalBytes, buffer.length - totalBytes);
+            if (bytesRead < 0) {
+                break;
             }
+            totalBytes += bytesRead;
+            if (totalBytes > maxSize) {
+                throw overflow(entryName, totalBytes, "has size more than " + maxSize);
+            }
+        }
 
-            return baos.toByteArray();
+        if (buffer.length <= MAX_RETAINED_SCRATCH_BUFFER_SIZE) {
+            SCRATCH_BUFFER.set(buffer);
         }
+        return Arrays.copyOf(buffer, totalBytes);
     }
 }
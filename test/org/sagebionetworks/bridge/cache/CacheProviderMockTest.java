@@ -11,17 +11,22 @@ import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Map;
 
 import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.MockitoAnnotations;
 
 import org.sagebionetworks.bridge.BridgeConstants;
 import org.sagebionetworks.bridge.Roles;
@@ -32,17 +37,21 @@ import org.sagebionetworks.bridge.crypto.AesGcmEncryptor;
 import org.sagebionetworks.bridge.crypto.Encryptor;
 import org.sagebionetworks.bridge.dao.ParticipantOption.SharingScope;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.RequestInfo;
 import org.sagebionetworks.bridge.models.accounts.ConsentStatus;
 import org.sagebionetworks.bridge.models.accounts.StudyParticipant;
 import org.sagebionetworks.bridge.models.accounts.UserSession;
 import org.sagebionetworks.bridge.models.studies.Study;
 import org.sagebionetworks.bridge.models.subpopulations.SubpopulationGuid;
 import org.sagebionetworks.bridge.redis.JedisOps;
-import org.sagebionetworks.bridge.redis.JedisTransaction;
 import org.sagebionetworks.bridge.redis.RedisKey;
 
+import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.exceptions.JedisDataException;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
@@ -53,25 +62,35 @@ public class CacheProviderMockTest {
     private static final String SESSION_TOKEN = "sessionToken";
     private static final String ENCRYPTED_SESSION_TOKEN = "TFMkaVFKPD48WissX0bgcD3esBMEshxb3MVgKxHnkXLSEPN4FQMKc01tDbBAVcXx94kMX6ckXVYUZ8wx4iICl08uE+oQr9gorE1hlgAyLAM=";
     private static final String DECRYPTED_SESSION_TOKEN = "ccea2978-f5b9-4377-8194-f887a3e2a19b";
-    private JedisTransaction transaction;
+    private static final String WRONG_TYPE_MESSAGE = "WRONGTYPE Operation against a key holding the wrong kind of value";
+    
+    @Captor
+    private ArgumentCaptor<Map<String,String>> requestInfoFieldsCaptor;
+    
+    private Transaction transaction;
+    private JedisOps jedisOps;
+    private Jedis jedis;
     private CacheProvider cacheProvider;
 
     @Before
     public void before() {
-        transaction = mock(JedisTransaction.class);
-        when(transaction.setex(any(String.class), anyInt(), any(String.class))).thenReturn(transaction);
-        when(transaction.expire(any(String.class), anyInt())).thenReturn(transaction);
-        when(transaction.del(any(String.class))).thenReturn(transaction);
+        MockitoAnnotations.initMocks(this);
+        
+        transaction = mock(Transaction.class);
         when(transaction.exec()).thenReturn(Arrays.asList((Object)"OK", "OK"));
         
-        JedisOps jedisOps = mock(JedisOps.class);
-        when(jedisOps.getTransaction()).thenReturn(transaction);
+        jedisOps = mock(JedisOps.class);
         
         String userKey = RedisKey.USER_SESSION.getRedisKey(USER_ID);
-        when(jedisOps.get(userKey)).thenReturn(SESSION_TOKEN);
+        jedis = mock(Jedis.class);
+        when(jedis.get(userKey)).thenReturn(SESSION_TOKEN);
+        when(jedis.multi()).thenReturn(transaction);
+        JedisPool jedisPool = mock(JedisPool.class);
+        when(jedisPool.getResource()).thenReturn(jedis);
         
         cacheProvider = new CacheProvider();
         cacheProvider.setJedisOps(jedisOps);
+        cacheProvider.setJedisPool(jedisPool);
         cacheProvider.setBridgeObjectMapper(BridgeObjectMapper.get());
     }
 
@@ -86,9 +105,9 @@ public class CacheProviderMockTest {
         session.setSessionToken(SESSION_TOKEN);
         cacheProvider.setUserSession(session);
 
-        String sessionKey = RedisKey.SESSION.getRedisKey(SESSION_TOKEN);
+        byte[] sessionKey = RedisKey.SESSION.getRedisKey(SESSION_TOKEN).getBytes(StandardCharsets.UTF_8);
         String userKey = RedisKey.USER_SESSION.getRedisKey(USER_ID);
-        verify(transaction, times(1)).setex(eq(sessionKey), anyInt(), anyString());
+        verify(transaction, times(1)).setex(eq(sessionKey), anyInt(), any(byte[].class));
         verify(transaction, times(1)).setex(eq(userKey), anyInt(), eq(SESSION_TOKEN));
         verify(transaction, times(1)).exec();
     }
@@ -108,9 +127,9 @@ public class CacheProviderMockTest {
         } catch(Throwable e) {
             fail(e.getMessage());
         }
-        String sessionKey = RedisKey.SESSION.getRedisKey(SESSION_TOKEN);
+        byte[] sessionKey = RedisKey.SESSION.getRedisKey(SESSION_TOKEN).getBytes(StandardCharsets.UTF_8);
         String userKey = RedisKey.USER_SESSION.getRedisKey(USER_ID);
-        verify(transaction, times(0)).setex(eq(sessionKey), anyInt(), anyString());
+        verify(transaction, times(0)).setex(eq(sessionKey), anyInt(), any(byte[].class));
         verify(transaction, times(0)).setex(eq(userKey), anyInt(), eq(SESSION_TOKEN));
         verify(transaction, times(0)).exec();
     }
@@ -126,9 +145,9 @@ public class CacheProviderMockTest {
         } catch(Throwable e) {
             fail(e.getMessage());
         }
-        String sessionKey = RedisKey.SESSION.getRedisKey(SESSION_TOKEN);
+        byte[] sessionKey = RedisKey.SESSION.getRedisKey(SESSION_TOKEN).getBytes(StandardCharsets.UTF_8);
         String userKey = RedisKey.USER_SESSION.getRedisKey(USER_ID);
-        verify(transaction, times(0)).setex(eq(sessionKey), anyInt(), anyString());
+        verify(transaction, times(0)).setex(eq(sessionKey), anyInt(), any(byte[].class));
         verify(transaction, times(0)).setex(eq(userKey), anyInt(), eq(SESSION_TOKEN));
         verify(transaction, times(0)).exec();
     }
@@ -148,9 +167,9 @@ public class CacheProviderMockTest {
         } catch(Throwable e) {
             fail(e.getMessage());
         }
-        String sessionKey = RedisKey.SESSION.getRedisKey(SESSION_TOKEN);
+        byte[] sessionKey = RedisKey.SESSION.getRedisKey(SESSION_TOKEN).getBytes(StandardCharsets.UTF_8);
         String userKey = RedisKey.USER_SESSION.getRedisKey(USER_ID);
-        verify(transaction, times(0)).setex(eq(sessionKey), anyInt(), anyString());
+        verify(transaction, times(0)).setex(eq(sessionKey), anyInt(), any(byte[].class));
         verify(transaction, times(0)).setex(eq(userKey), anyInt(), eq(SESSION_TOKEN));
         verify(transaction, times(0)).exec();
     }
@@ -216,6 +235,300 @@ public class CacheProviderMockTest {
         assertNull(cachedString);
     }
 
+    @Test
+    public void studyFromNearCacheIsPrivateCopy() throws Exception {
+        mockStudyInRedis();
+        
+        Study first = cacheProvider.getStudy("test");
+        String originalName = first.getName();
+        first.setName("Modified by caller");
+        first.getDataGroups().add("modifiedGroup");
+        
+        Study second = cacheProvider.getStudy("test");
+        assertFalse(first == second);
+        assertEquals(originalName, second.getName());
+        assertFalse(second.getDataGroups().contains("modifiedGroup"));
+    }
+    
+    @Test
+    public void studyIsServedFromNearCache() throws Exception {
+        String studyKey = mockStudyInRedis();
+        
+        Study study = cacheProvider.getStudy("test");
+        assertEquals("test", study.getIdentifier());
+        assertEquals(study, cacheProvider.getStudy("test"));
+        
+        verify(jedisOps, times(1)).get(studyKey);
+        assertEquals(1L, cacheProvider.getStudyCacheStats().hitCount());
+        assertEquals(1L, cacheProvider.getStudyCacheStats().missCount());
+    }
+    
+    @Test
+    public void removeStudyInvalidatesNearCacheAndOtherNodes() throws Exception {
+        String studyKey = mockStudyInRedis();
+        cacheProvider.getStudy("test");
+        
+        cacheProvider.removeStudy("test");
+        verify(jedisOps).del(studyKey);
+        verify(jedis).publish(eq(CacheProvider.STUDY_INVALIDATION_CHANNEL), anyString());
+        
+        cacheProvider.getStudy("test");
+        verify(jedisOps, times(2)).get(studyKey);
+    }
+    
+    @Test
+    public void setStudyDoesNotCacheCallersInstance() throws Exception {
+        String studyKey = mockStudyInRedis();
+        cacheProvider.getStudy("test");
+        
+        Study study = TestUtils.getValidStudy(CacheProviderMockTest.class);
+        study.setIdentifier("test");
+        when(jedisOps.setex(eq(studyKey), anyInt(), anyString())).thenReturn("OK");
+        cacheProvider.setStudy(study);
+        
+        assertFalse(study == cacheProvider.getStudy("test"));
+        verify(jedisOps, times(2)).get(studyKey);
+    }
+    
+    @Test
+    public void invalidationMessageFromAnotherNodeInvalidatesNearCache() throws Exception {
+        String studyKey = mockStudyInRedis();
+        cacheProvider.getStudy("test");
+        
+        cacheProvider.onStudyInvalidationMessage("otherNode" + CacheProvider.INVALIDATION_MESSAGE_SEPARATOR + "test");
+        cacheProvider.getStudy("test");
+        verify(jedisOps, times(2)).get(studyKey);
+    }
+    
+    @Test
+    public void malformedInvalidationMessageIsIgnored() throws Exception {
+        String studyKey = mockStudyInRedis();
+        cacheProvider.getStudy("test");
+        
+        cacheProvider.onStudyInvalidationMessage("test");
+        cacheProvider.onStudyInvalidationMessage(null);
+        cacheProvider.getStudy("test");
+        verify(jedisOps, times(1)).get(studyKey);
+    }
+    
+    private String mockStudyInRedis() throws Exception {
+        Study study = TestUtils.getValidStudy(CacheProviderMockTest.class);
+        study.setIdentifier("test");
+        String studyKey = RedisKey.STUDY.getRedisKey("test");
+        when(jedisOps.get(studyKey)).thenReturn(BridgeObjectMapper.get().writeValueAsString(study));
+        return studyKey;
+    }
+
+    @Test
+    public void updateRequestInfoWritesOnlyNonNullFields() throws Exception {
+        RequestInfo requestInfo = new RequestInfo.Builder().withUserId(USER_ID).withUserAgent("app/10")
+                .withSignedInOn(DateTime.parse("2017-04-01T10:00:00.000Z")).build();
+        
+        cacheProvider.updateRequestInfo(requestInfo);
+        
+        verify(jedis).hmset(eq(RedisKey.REQUEST_INFO.getRedisKey(USER_ID)), requestInfoFieldsCaptor.capture());
+        Map<String,String> fields = requestInfoFieldsCaptor.getValue();
+        assertEquals("\"userId\"", fields.get("userId"));
+        assertEquals("\"app/10\"", fields.get("userAgent"));
+        assertEquals("\"2017-04-01T10:00:00.000Z\"", fields.get("signedInOn"));
+        assertFalse(fields.containsKey("uploadedOn"));
+        assertFalse(fields.containsKey("activitiesAccessedOn"));
+        assertFalse(fields.containsKey("type"));
+        verify(jedis, never()).get(anyString());
+        
+        // Properties of the latest request that weren't set are removed. Timestamps are left alone.
+        verify(jedis).hdel(RedisKey.REQUEST_INFO.getRedisKey(USER_ID), "clientInfo", "languages", "userDataGroups",
+                "timeZone", "studyIdentifier");
+    }
+    
+    @Test
+    public void getRequestInfoReadsHash() throws Exception {
+        Map<String,String> fields = Maps.newHashMap();
+        fields.put("userId", "\"userId\"");
+        fields.put("userAgent", "\"app/10\"");
+        fields.put("signedInOn", "\"2017-04-01T10:00:00.000Z\"");
+        when(jedis.hgetAll(RedisKey.REQUEST_INFO.getRedisKey(USER_ID))).thenReturn(fields);
+        
+        RequestInfo requestInfo = cacheProvider.getRequestInfo(USER_ID);
+        assertEquals(USER_ID, requestInfo.getUserId());
+        assertEquals("app/10", requestInfo.getUserAgent());
+        assertEquals(DateTime.parse("2017-04-01T10:00:00.000Z"), requestInfo.getSignedInOn());
+    }
+    
+    @Test
+    public void getRequestInfoMissing() throws Exception {
+        when(jedis.hgetAll(RedisKey.REQUEST_INFO.getRedisKey(USER_ID))).thenReturn(Maps.newHashMap());
+        
+        assertNull(cacheProvider.getRequestInfo(USER_ID));
+    }
+    
+    @Test
+    public void getRequestInfoReadsLegacyJson() throws Exception {
+        String redisKey = RedisKey.REQUEST_INFO.getRedisKey(USER_ID);
+        when(jedis.hgetAll(redisKey)).thenThrow(new JedisDataException(WRONG_TYPE_MESSAGE));
+        when(jedis.get(redisKey)).thenReturn(TestUtils.createJson("{'userId':'userId','userAgent':'app/10'}"));
+        
+        RequestInfo requestInfo = cacheProvider.getRequestInfo(USER_ID);
+        assertEquals(USER_ID, requestInfo.getUserId());
+        assertEquals("app/10", requestInfo.getUserAgent());
+    }
+    
+    @Test
+    public void getRequestInfoRereadsKeyConvertedBetweenReads() throws Exception {
+        String redisKey = RedisKey.REQUEST_INFO.getRedisKey(USER_ID);
+        Map<String,String> fields = Maps.newHashMap();
+        fields.put("userId", "\"userId\"");
+        fields.put("userAgent", "\"app/10\"");
+        when(jedis.hgetAll(redisKey)).thenThrow(new JedisDataException(WRONG_TYPE_MESSAGE)).thenReturn(fields);
+        when(jedis.get(redisKey)).thenThrow(new JedisDataException(WRONG_TYPE_MESSAGE));
+        
+        RequestInfo requestInfo = cacheProvider.getRequestInfo(USER_ID);
+        assertEquals("app/10", requestInfo.getUserAgent());
+        verify(jedis, times(2)).hgetAll(redisKey);
+    }
+    
+    @Test
+    public void updateRequestInfoMigratesLegacyJson() throws Exception {
+        String redisKey = RedisKey.REQUEST_INFO.getRedisKey(USER_ID);
+        when(jedis.hmset(eq(redisKey), any())).thenThrow(new JedisDataException(WRONG_TYPE_MESSAGE));
+        when(jedis.get(redisKey)).thenReturn(TestUtils.createJson("{'userId':'userId','userAgent':'app/9'," +
+                "'languages':['en'],'signedInOn':'2017-03-01T10:00:00.000Z'}"));
+        
+        RequestInfo requestInfo = new RequestInfo.Builder().withUserId(USER_ID).withUserAgent("app/10")
+                .withUploadedOn(DateTime.parse("2017-04-01T10:00:00.000Z")).build();
+        cacheProvider.updateRequestInfo(requestInfo);
+        
+        verify(jedis).watch(redisKey);
+        verify(transaction).del(redisKey);
+        verify(transaction).hmset(eq(redisKey), requestInfoFieldsCaptor.capture());
+        verify(transaction).exec();
+        Map<String,String> fields = requestInfoFieldsCaptor.getValue();
+        assertEquals("\"app/10\"", fields.get("userAgent"));
+        assertEquals("\"2017-03-01T10:00:00.000Z\"", fields.get("signedInOn"));
+        assertEquals("\"2017-04-01T10:00:00.000Z\"", fields.get("uploadedOn"));
+        assertFalse(fields.containsKey("languages"));
+    }
+    
+    @Test
+    public void updateRequestInfoRetriesWhenMigrationAborted() throws Exception {
+        String redisKey = RedisKey.REQUEST_INFO.getRedisKey(USER_ID);
+        when(jedis.hmset(eq(redisKey), any())).thenThrow(new JedisDataException(WRONG_TYPE_MESSAGE))
+                .thenReturn("OK");
+        when(jedis.get(redisKey)).thenReturn(TestUtils.createJson("{'userId':'userId','userAgent':'app/9'}"));
+        // Another update changed the key after it was watched.
+        when(transaction.exec()).thenReturn(null);
+        
+        RequestInfo requestInfo = new RequestInfo.Builder().withUserId(USER_ID).withUserAgent("app/10").build();
+        cacheProvider.updateRequestInfo(requestInfo);
+        
+        verify(transaction).exec();
+        verify(jedis, times(2)).hmset(eq(redisKey), any());
+    }
+    
+    @Test
+    public void updateRequestInfoRetriesWhenMigratedConcurrently() throws Exception {
+        String redisKey = RedisKey.REQUEST_INFO.getRedisKey(USER_ID);
+        when(jedis.hmset(eq(redisKey), any())).thenThrow(new JedisDataException(WRONG_TYPE_MESSAGE))
+                .thenReturn("OK");
+        // Another update converted the key to a hash after the first write failed.
+        when(jedis.get(redisKey)).thenThrow(new JedisDataException(WRONG_TYPE_MESSAGE));
+        
+        RequestInfo requestInfo = new RequestInfo.Builder().withUserId(USER_ID).withUserAgent("app/10").build();
+        cacheProvider.updateRequestInfo(requestInfo);
+        
+        verify(jedis).unwatch();
+        verify(jedis, never()).multi();
+        verify(jedis, times(2)).hmset(eq(redisKey), any());
+    }
+
+    @Test
+    public void getActivityEventsReadsCompleteHash() {
+        String redisKey = RedisKey.ACTIVITY_EVENTS.getRedisKey("healthCode");
+        Map<String,String> fields = Maps.newHashMap();
+        fields.put(CacheProvider.ACTIVITY_EVENTS_COMPLETE_FIELD, "");
+        fields.put("enrollment", "1491040800000");
+        when(jedis.hgetAll(redisKey)).thenReturn(fields);
+        
+        Map<String,String> events = cacheProvider.getActivityEvents("healthCode", () -> {
+            fail("Should not load events that are cached");
+            return null;
+        });
+        assertEquals(ImmutableMap.of("enrollment", "1491040800000"), events);
+        verify(jedis, never()).watch(anyString());
+        verify(jedis, never()).multi();
+    }
+    
+    @Test
+    public void getActivityEventsLoadsAndCachesMissingHash() {
+        String redisKey = RedisKey.ACTIVITY_EVENTS.getRedisKey("healthCode");
+        String versionKey = RedisKey.ACTIVITY_EVENTS_VERSION.getRedisKey("healthCode");
+        when(jedis.hgetAll(redisKey)).thenReturn(Maps.newHashMap());
+        when(jedis.get(versionKey)).thenReturn("3");
+        Transaction jedisTransaction = mock(Transaction.class);
+        when(jedis.multi()).thenReturn(jedisTransaction);
+        
+        Map<String,String> events = cacheProvider.getActivityEvents("healthCode", () -> {
+            // The version is only watched after the load, so no connection is held during it.
+            verify(jedis, never()).watch(anyString());
+            return ImmutableMap.of("enrollment", "1491040800000");
+        });
+        assertEquals(ImmutableMap.of("enrollment", "1491040800000"), events);
+        
+        verify(jedis).watch(versionKey);
+        verify(jedisTransaction).del(redisKey);
+        verify(jedisTransaction).hmset(eq(redisKey), requestInfoFieldsCaptor.capture());
+        verify(jedisTransaction).expire(redisKey, CacheProvider.ACTIVITY_EVENTS_EXPIRE_IN_SECONDS);
+        verify(jedisTransaction).exec();
+        assertEquals(ImmutableMap.of("enrollment", "1491040800000", CacheProvider.ACTIVITY_EVENTS_COMPLETE_FIELD, ""),
+                requestInfoFieldsCaptor.getValue());
+    }
+    
+    @Test
+    public void getActivityEventsDoesNotCacheLoadThatOverlapsPublish() {
+        String redisKey = RedisKey.ACTIVITY_EVENTS.getRedisKey("healthCode");
+        String versionKey = RedisKey.ACTIVITY_EVENTS_VERSION.getRedisKey("healthCode");
+        when(jedis.hgetAll(redisKey)).thenReturn(Maps.newHashMap());
+        // Nothing was cached and no event had been published, then an event is published during the load.
+        when(jedis.get(versionKey)).thenReturn(null, "1");
+        
+        Map<String,String> events = cacheProvider.getActivityEvents("healthCode",
+                () -> ImmutableMap.of("enrollment", "1491040800000"));
+        assertEquals(ImmutableMap.of("enrollment", "1491040800000"), events);
+        
+        verify(jedis).watch(versionKey);
+        verify(jedis).unwatch();
+        verify(jedis, never()).multi();
+    }
+    
+    @Test
+    public void removeActivityEventsChangesVersion() {
+        String redisKey = RedisKey.ACTIVITY_EVENTS.getRedisKey("healthCode");
+        String versionKey = RedisKey.ACTIVITY_EVENTS_VERSION.getRedisKey("healthCode");
+        Transaction jedisTransaction = mock(Transaction.class);
+        when(jedis.multi()).thenReturn(jedisTransaction);
+        
+        cacheProvider.removeActivityEvents("healthCode");
+        
+        verify(jedisTransaction).incr(versionKey);
+        verify(jedisTransaction).expire(versionKey, CacheProvider.ACTIVITY_EVENTS_EXPIRE_IN_SECONDS);
+        verify(jedisTransaction).del(redisKey);
+        verify(jedisTransaction).exec();
+    }
+    
+    @Test
+    public void getActivityEventsLoadsIncompleteHash() {
+        // Written through by an earlier version, so there may be other events that aren't cached.
+        String redisKey = RedisKey.ACTIVITY_EVENTS.getRedisKey("healthCode");
+        Map<String,String> fields = Maps.newHashMap();
+        fields.put("question:guid:answered", "1491386400000:Yes");
+        when(jedis.hgetAll(redisKey)).thenReturn(fields);
+        when(jedis.multi()).thenReturn(mock(Transaction.class));
+        
+        Map<String,String> events = cacheProvider.getActivityEvents("healthCode",
+                () -> ImmutableMap.of("enrollment", "1491040800000", "question:guid:answered", "1491386400000:Yes"));
+        assertEquals(2, events.size());
+    }
+    
     @Test
     public void newUserSessionDeserializes() {
         String json = TestUtils.createJson("{'authenticated':true,"+
@@ -252,15 +565,8 @@ public class CacheProviderMockTest {
     }
 
     private void assertSession(String json) {
-        JedisOps jedisOps = mock(JedisOps.class);
-        
-        String sessionKey = RedisKey.SESSION.getRedisKey("sessionToken");
-        doReturn(sessionKey).when(jedisOps).get("sessionToken");
-        doReturn(transaction).when(jedisOps).getTransaction(sessionKey);
-        doReturn(json).when(jedisOps).get(sessionKey);
-        
-        cacheProvider.setJedisOps(jedisOps);
-        cacheProvider.setBridgeObjectMapper(BridgeObjectMapper.get());
+        byte[] sessionKey = RedisKey.SESSION.getRedisKey("sessionToken").getBytes(StandardCharsets.UTF_8);
+        doReturn(json.getBytes(StandardCharsets.UTF_8)).when(jedis).get(sessionKey);
         
         UserSession session = cacheProvider.getUserSession("sessionToken");
 
@@ -63,6 +63,9 @@ public class CacheProviderTest {
     @Autowired
     private JedisOps testJedisOps;
     
+    @Autowired
+    private JedisPool testJedisPool;
+    
     @Resource(name = "redisProviders")
     private List<String> redisProviders;
     
@@ -70,6 +73,7 @@ public class CacheProviderTest {
     public void after() {
         // restore in the in memory redis implementation
         cacheProvider.setJedisOps(testJedisOps);
+        cacheProvider.setJedisPool(testJedisPool);
     }
     
     @Before
@@ -77,6 +81,7 @@ public class CacheProviderTest {
         JedisPool jedisPool = constructJedisPool();
         JedisOps jedisOps = new JedisOps(jedisPool);
         cacheProvider.setJedisOps(jedisOps);
+        cacheProvider.setJedisPool(jedisPool);
         cacheProvider.setSessionExpireInSeconds(4);
     }
     
@@ -161,9 +166,13 @@ public class CacheProviderTest {
                 .build();
         cacheProvider.updateRequestInfo(requestInfo);
         
-        // Add different information, rewriting one value
+        // Add different information, rewriting one value. Every update carries the properties of the latest request,
+        // as the controllers' updates do.
         RequestInfo extraRequestInfo = new RequestInfo.Builder()
                 .withUserId(USER_ID)
+                .withUserAgent(USER_AGENT_STRING)
+                .withStudyIdentifier(STUDY_ID)
+                .withUserDataGroups(TestConstants.USER_DATA_GROUPS)
                 .withLanguages(LANGUAGES)
                 .withTimeZone(MST)
                 .withActivitiesAccessedOn(ACTIVITIES_REQUESTED_ON)
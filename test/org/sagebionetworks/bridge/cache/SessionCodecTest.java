@@ -0,0 +1,102 @@
+package org.sagebionetworks.bridge.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import org.sagebionetworks.bridge.Roles;
+import org.sagebionetworks.bridge.config.Environment;
+import org.sagebionetworks.bridge.dao.ParticipantOption.SharingScope;
+import org.sagebionetworks.bridge.models.accounts.ConsentStatus;
+import org.sagebionetworks.bridge.models.accounts.StudyParticipant;
+import org.sagebionetworks.bridge.models.accounts.UserSession;
+import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
+import org.sagebionetworks.bridge.models.subpopulations.SubpopulationGuid;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+
+public class SessionCodecTest {
+
+    private static final SubpopulationGuid SUBPOP_GUID = SubpopulationGuid.create("api");
+    private static final DateTime CREATED_ON = DateTime.parse("2016-04-21T16:48:22.386Z");
+
+    @Test
+    public void binaryRoundTrip() throws Exception {
+        UserSession session = createSession();
+
+        byte[] ser = SessionCodec.encode(session, true);
+        assertTrue(new String(ser, StandardCharsets.ISO_8859_1).startsWith(SessionCodec.BINARY_V1_PREFIX));
+
+        assertSession(SessionCodec.decode(ser));
+    }
+
+    @Test
+    public void jsonRoundTrip() throws Exception {
+        UserSession session = createSession();
+
+        byte[] ser = SessionCodec.encode(session, false);
+        assertTrue(new String(ser, StandardCharsets.UTF_8).startsWith("{"));
+
+        assertSession(SessionCodec.decode(ser));
+    }
+
+    @Test
+    public void binaryDoesNotIncludeHealthCode() throws Exception {
+        UserSession session = createSession();
+
+        byte[] ser = SessionCodec.encode(session, true);
+        String raw = new String(ser, StandardCharsets.ISO_8859_1);
+        assertTrue(raw.contains("encryptedHealthCode"));
+        assertFalse(raw.contains("healthCode"));
+    }
+
+    private UserSession createSession() {
+        StudyParticipant participant = new StudyParticipant.Builder()
+                .withId("userId")
+                .withHealthCode("healthCode")
+                .withEmail("bridgeit@sagebase.org")
+                .withFirstName("Bridge")
+                .withLastName("IT")
+                .withSharingScope(SharingScope.ALL_QUALIFIED_RESEARCHERS)
+                .withDataGroups(Sets.newHashSet("group1", "group2"))
+                .withRoles(Sets.newHashSet(Roles.DEVELOPER))
+                .withCreatedOn(CREATED_ON).build();
+
+        UserSession session = new UserSession(participant);
+        session.setAuthenticated(true);
+        session.setEnvironment(Environment.LOCAL);
+        session.setSessionToken("sessionToken");
+        session.setInternalSessionToken("internalSessionToken");
+        session.setStudyIdentifier(new StudyIdentifierImpl("api"));
+        session.setConsentStatuses(ImmutableMap.of(SUBPOP_GUID, new ConsentStatus.Builder().withName("Consent")
+                .withGuid(SUBPOP_GUID).withRequired(true).withConsented(true).withSignedMostRecentConsent(true)
+                .build()));
+        return session;
+    }
+
+    private void assertSession(UserSession session) {
+        assertTrue(session.isAuthenticated());
+        assertEquals(Environment.LOCAL, session.getEnvironment());
+        assertEquals("sessionToken", session.getSessionToken());
+        assertEquals("internalSessionToken", session.getInternalSessionToken());
+        assertEquals("api", session.getStudyIdentifier().getIdentifier());
+        assertTrue(session.doesConsent());
+
+        StudyParticipant participant = session.getParticipant();
+        assertEquals("userId", participant.getId());
+        assertEquals("healthCode", participant.getHealthCode());
+        assertEquals("bridgeit@sagebase.org", participant.getEmail());
+        assertEquals("Bridge", participant.getFirstName());
+        assertEquals("IT", participant.getLastName());
+        assertEquals(SharingScope.ALL_QUALIFIED_RESEARCHERS, participant.getSharingScope());
+        assertEquals(Sets.newHashSet("group1", "group2"), participant.getDataGroups());
+        assertEquals(Sets.newHashSet(Roles.DEVELOPER), participant.getRoles());
+        assertEquals(CREATED_ON, participant.getCreatedOn());
+    }
+}
@@ -1,6 +1,15 @@
 package org.sagebionetworks.bridge.config;
 
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.sagebionetworks.bridge.TestUserAdminHelper;
 import org.sagebionetworks.bridge.redis.InMemoryJedisOps;
@@ -8,7 +17,11 @@ import org.sagebionetworks.bridge.redis.JedisOps;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.ImportResource;
+import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Transaction;
+
+import com.google.common.collect.Lists;
 
 /**
  * Test-only Spring config that mocks out things we don't want in our test configs for reliability/repeatability
@@ -24,9 +37,50 @@ public class BridgeTestSpringConfig {
 
     @Bean(name = "jedisPool")
     public JedisPool jedisPool() {
-        // Since we don't connect to a real host, pass in "localhost" as a dummy hostname
-        // This is only used by CacheAdminService, the test of which is fully mocked. Just use a Mockito mock.
-        return mock(JedisPool.class);
+        // We don't connect to a real host. CacheAdminService's test is fully mocked, and CacheProvider uses the 
+        // pool for request info hashes and pub/sub, so hand out a mock connection that stores nothing, except 
+        // for the string and binary values CacheProvider uses to store sessions.
+        JedisPool jedisPool = mock(JedisPool.class);
+        when(jedisPool.getResource()).thenReturn(mockJedis());
+        return jedisPool;
+    }
+
+    private static Jedis mockJedis() {
+        Map<String,byte[]> values = new ConcurrentHashMap<>();
+        Jedis jedis = mock(Jedis.class);
+        when(jedis.get(anyString())).thenAnswer(invocation -> {
+            byte[] value = values.get(invocation.getArgumentAt(0, String.class));
+            return (value == null) ? null : new String(value, StandardCharsets.UTF_8);
+        });
+        when(jedis.get(any(byte[].class))).thenAnswer(invocation -> values.get(toKey(invocation.getArgumentAt(0, byte[].class))));
+        when(jedis.ttl(anyString())).thenReturn(-2L);
+        when(jedis.multi()).thenAnswer(invocation -> {
+            // Commands are applied as they are queued, and exec() reports them all as succeeding.
+            List<Object> results = Lists.newArrayList();
+            Transaction transaction = mock(Transaction.class);
+            when(transaction.setex(anyString(), anyInt(), anyString())).thenAnswer(setex -> {
+                values.put(setex.getArgumentAt(0, String.class),
+                        setex.getArgumentAt(2, String.class).getBytes(StandardCharsets.UTF_8));
+                results.add("OK");
+                return null;
+            });
+            when(transaction.setex(any(byte[].class), anyInt(), any(byte[].class))).thenAnswer(setex -> {
+                values.put(toKey(setex.getArgumentAt(0, byte[].class)), setex.getArgumentAt(2, byte[].class));
+                results.add("OK");
+                return null;
+            });
+            when(transaction.del(anyString())).thenAnswer(del -> {
+                results.add((values.remove(del.getArgumentAt(0, String.class)) == null) ? 0L : 1L);
+                return null;
+            });
+            when(transaction.exec()).thenReturn(results);
+            return transaction;
+        });
+        return jedis;
+    }
+
+    private static String toKey(byte[] key) {
+        return new String(key, StandardCharsets.UTF_8);
     }
 
     @Bean(name = "testUserAdminHelper")
@@ -0,0 +1,168 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import org.sagebionetworks.bridge.cache.CacheProvider;
+import org.sagebionetworks.bridge.models.activities.ActivityEvent;
+import org.sagebionetworks.bridge.models.activities.ActivityEventObjectType;
+import org.sagebionetworks.bridge.models.activities.ActivityEventType;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBSaveExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.PaginatedQueryList;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ConditionalOperator;
+import com.amazonaws.services.dynamodbv2.model.ExpectedAttributeValue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class DynamoActivityEventDaoMockTest {
+    private static final String HEALTH_CODE = "healthCode";
+    private static final DateTime ENROLLED_ON = DateTime.parse("2017-04-01T10:00:00.000Z");
+    private static final DateTime ANSWERED_ON = DateTime.parse("2017-04-05T10:00:00.000Z");
+
+    private DynamoDBMapper mockMapper;
+    private CacheProvider mockCacheProvider;
+    private DynamoActivityEventDao dao;
+
+    @Before
+    public void before() {
+        mockMapper = mock(DynamoDBMapper.class);
+        mockCacheProvider = mock(CacheProvider.class);
+        dao = new DynamoActivityEventDao();
+        dao.setDdbMapper(mockMapper);
+        dao.setCacheProvider(mockCacheProvider);
+    }
+
+    @Test
+    public void publishEnrollmentOnlyIfNotSaved() {
+        ActivityEvent event = makeEnrollmentEvent();
+        dao.publishEvent(event);
+
+        ArgumentCaptor<DynamoDBSaveExpression> expressionCaptor = ArgumentCaptor.forClass(
+                DynamoDBSaveExpression.class);
+        verify(mockMapper).save(eq(event), expressionCaptor.capture());
+        Map<String, ExpectedAttributeValue> expected = expressionCaptor.getValue().getExpected();
+        assertEquals(1, expected.size());
+        assertFalse(expected.get("eventId").getExists());
+
+        verify(mockCacheProvider).removeActivityEvents(HEALTH_CODE);
+    }
+
+    @Test
+    public void publishEventOnlyIfLater() {
+        ActivityEvent event = makeAnswerEvent();
+        dao.publishEvent(event);
+
+        ArgumentCaptor<DynamoDBSaveExpression> expressionCaptor = ArgumentCaptor.forClass(
+                DynamoDBSaveExpression.class);
+        verify(mockMapper).save(eq(event), expressionCaptor.capture());
+        DynamoDBSaveExpression expression = expressionCaptor.getValue();
+        assertEquals(ConditionalOperator.OR.toString(), expression.getConditionalOperator());
+        assertFalse(expression.getExpected().get("eventId").getExists());
+        ExpectedAttributeValue timestamp = expression.getExpected().get("timestamp");
+        assertEquals(ComparisonOperator.LT.toString(), timestamp.getComparisonOperator());
+        assertEquals(Long.toString(ANSWERED_ON.getMillis()), timestamp.getValue().getN());
+
+        verify(mockCacheProvider).removeActivityEvents(HEALTH_CODE);
+    }
+
+    @Test
+    public void publishEventNotSavedKeepsCachedEvents() {
+        ActivityEvent event = makeAnswerEvent();
+        doThrow(new ConditionalCheckFailedException("test exception")).when(mockMapper).save(eq(event),
+                any(DynamoDBSaveExpression.class));
+
+        dao.publishEvent(event);
+
+        verify(mockCacheProvider, never()).removeActivityEvents(any());
+    }
+
+    @Test
+    public void publishEventsRemovesCachedEventsOncePerUser() {
+        dao.publishEvents(ImmutableList.of(makeEnrollmentEvent(), makeAnswerEvent()));
+
+        verify(mockMapper).batchSave(any(Iterable.class));
+        verify(mockCacheProvider, times(1)).removeActivityEvents(HEALTH_CODE);
+    }
+
+    @Test
+    public void getActivityEventMapFromCache() {
+        when(mockCacheProvider.getActivityEvents(eq(HEALTH_CODE), any())).thenReturn(ImmutableMap.of(
+                "enrollment", Long.toString(ENROLLED_ON.getMillis()),
+                "question:guid:answered", ANSWERED_ON.getMillis() + ":Yes,No"));
+
+        Map<String, DateTime> eventMap = dao.getActivityEventMap(HEALTH_CODE);
+        assertEventMap(eventMap);
+
+        verify(mockMapper, never()).query(any(), any());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void getActivityEventMapLoadsEventsNotCached() {
+        PaginatedQueryList<DynamoActivityEvent> mockResults = mock(PaginatedQueryList.class);
+        when(mockResults.iterator()).thenReturn(ImmutableList.of((DynamoActivityEvent) makeEnrollmentEvent(),
+                (DynamoActivityEvent) makeAnswerEvent()).iterator());
+        when(mockMapper.query(eq(DynamoActivityEvent.class), any(DynamoDBQueryExpression.class)))
+                .thenReturn(mockResults);
+        when(mockCacheProvider.getActivityEvents(eq(HEALTH_CODE), any())).thenAnswer(
+                invocation -> invocation.getArgumentAt(1, Supplier.class).get());
+
+        Map<String, DateTime> eventMap = dao.getActivityEventMap(HEALTH_CODE);
+        assertEventMap(eventMap);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void deleteActivityEventsRemovesCachedEvents() {
+        PaginatedQueryList<DynamoActivityEvent> mockResults = mock(PaginatedQueryList.class);
+        when(mockMapper.query(eq(DynamoActivityEvent.class), any(DynamoDBQueryExpression.class)))
+                .thenReturn(mockResults);
+
+        dao.deleteActivityEvents(HEALTH_CODE);
+
+        verify(mockCacheProvider).removeActivityEvents(HEALTH_CODE);
+    }
+
+    private static void assertEventMap(Map<String, DateTime> eventMap) {
+        assertEquals(4, eventMap.size());
+        assertEquals(ENROLLED_ON, eventMap.get("enrollment"));
+        assertEquals(ENROLLED_ON.minusWeeks(2), eventMap.get("two_weeks_before_enrollment"));
+        assertEquals(ENROLLED_ON.minusMonths(2), eventMap.get("two_months_before_enrollment"));
+        assertEquals(ANSWERED_ON.withZone(DateTimeZone.UTC), eventMap.get("question:guid:answered=Yes,No"));
+        assertNull(eventMap.get("question:guid:answered"));
+    }
+
+    private static ActivityEvent makeEnrollmentEvent() {
+        return new DynamoActivityEvent.Builder().withHealthCode(HEALTH_CODE).withTimestamp(ENROLLED_ON)
+                .withObjectType(ActivityEventObjectType.ENROLLMENT).build();
+    }
+
+    private static ActivityEvent makeAnswerEvent() {
+        return new DynamoActivityEvent.Builder().withHealthCode(HEALTH_CODE).withTimestamp(ANSWERED_ON)
+                .withObjectType(ActivityEventObjectType.QUESTION).withObjectId("guid")
+                .withEventType(ActivityEventType.ANSWERED).withAnswerValue("Yes,No").build();
+    }
+}
@@ -22,6 +22,8 @@ import org.sagebionetworks.bridge.models.activities.ActivityEventType;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import com.google.common.collect.ImmutableList;
+
 @ContextConfiguration("classpath:test-context.xml")
 @RunWith(SpringJUnit4ClassRunner.class)
 public class DynamoActivityEventDaoTest {
@@ -113,6 +115,24 @@ public class DynamoActivityEventDaoTest {
         assertEquals(firstEvent.withZone(DateTimeZone.UTC), eventMap.get("enrollment"));
     }
     
+    @Test
+    public void publishEventsOnlySavesLaterEvents() {
+        DateTime now = DateTime.now(DateTimeZone.UTC);
+        activityEventDao.publishEvent(getEnrollmentEvent(now));
+        activityEventDao.publishEvent(getSurveyFinishedEvent(now));
+        
+        // Enrollment is never updated, the survey is finished later, and the activity is new.
+        activityEventDao.publishEvents(ImmutableList.of(getEnrollmentEvent(now.plusHours(1)),
+                getSurveyFinishedEvent(now.plusHours(1)), getScheduledActivityFinishedEvent(now.plusHours(2))));
+        
+        Map<String,DateTime> map = activityEventDao.getActivityEventMap(healthCode);
+        assertEquals(now, map.get("enrollment"));
+        assertEquals(now.plusHours(1), map.get("survey:AAA-BBB-CCC:finished"));
+        assertEquals(now.plusHours(2), map.get("activity:AAA-BBB-CCC:finished"));
+        
+        activityEventDao.deleteActivityEvents(healthCode);
+    }
+    
     private DynamoActivityEvent getEnrollmentEvent(DateTime timestamp) {
         return new DynamoActivityEvent.Builder().withHealthCode(healthCode)
             .withObjectType(ActivityEventObjectType.ENROLLMENT).withTimestamp(timestamp).build();
@@ -2,25 +2,36 @@ package org.sagebionetworks.bridge.dynamodb;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.amazonaws.services.dynamodbv2.datamodeling.QueryResultPage;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.QueryOutcome;
+import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
 import com.amazonaws.services.dynamodbv2.model.WriteRequest;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
 import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecord;
 
 @SuppressWarnings({ "unchecked", "rawtypes" })
@@ -59,7 +70,8 @@ public class DynamoHealthDataDaoTest {
         List<HealthDataRecord> mockResult = Collections.<HealthDataRecord>singletonList(record);
 
         DynamoIndexHelper mockIndex = mock(DynamoIndexHelper.class);
-        when(mockIndex.queryKeys(HealthDataRecord.class, "healthCode", "test health code", null)).thenReturn(mockResult);
+        when(mockIndex.iterateKeys(HealthDataRecord.class, "healthCode", "test health code", null)).thenReturn(
+                mockResult.iterator());
 
         // set up and execute
         DynamoHealthDataDao dao = new DynamoHealthDataDao();
@@ -75,6 +87,39 @@ public class DynamoHealthDataDaoTest {
         assertEquals("test ID", recordKeyList.get(0).getId());
     }
 
+    @Test
+    public void deleteRecordsForHealthCodeInBatches() {
+        // mock mapper
+        DynamoDBMapper mockMapper = mock(DynamoDBMapper.class);
+        ArgumentCaptor<List> arg = ArgumentCaptor.forClass(List.class);
+        when(mockMapper.batchDelete(arg.capture())).thenReturn(Collections.<DynamoDBMapper.FailedBatch>emptyList());
+
+        // mock index helper - one more record than fits in a batch
+        List<HealthDataRecord> mockResult = new ArrayList<>();
+        for (int i = 0; i <= DynamoHealthDataDao.DELETE_BATCH_SIZE; i++) {
+            DynamoHealthDataRecord record = new DynamoHealthDataRecord();
+            record.setHealthCode("test health code");
+            record.setId("test ID " + i);
+            mockResult.add(record);
+        }
+
+        DynamoIndexHelper mockIndex = mock(DynamoIndexHelper.class);
+        when(mockIndex.iterateKeys(HealthDataRecord.class, "healthCode", "test health code", null)).thenReturn(
+                mockResult.iterator());
+
+        // set up and execute
+        DynamoHealthDataDao dao = new DynamoHealthDataDao();
+        dao.setMapper(mockMapper);
+        dao.setHealthCodeIndex(mockIndex);
+        int numDeleted = dao.deleteRecordsForHealthCode("test health code");
+        assertEquals(DynamoHealthDataDao.DELETE_BATCH_SIZE + 1, numDeleted);
+
+        // validate batches
+        verify(mockMapper, times(2)).batchDelete(any(List.class));
+        assertEquals(DynamoHealthDataDao.DELETE_BATCH_SIZE, arg.getAllValues().get(0).size());
+        assertEquals(1, arg.getAllValues().get(1).size());
+    }
+
     @Test
     public void deleteRecordsForHealthCodeMapperException() {
         // mock failed batch
@@ -95,7 +140,8 @@ public class DynamoHealthDataDaoTest {
         List<HealthDataRecord> mockResult = Collections.<HealthDataRecord>singletonList(record);
 
         DynamoIndexHelper mockIndex = mock(DynamoIndexHelper.class);
-        when(mockIndex.queryKeys(HealthDataRecord.class, "healthCode", "test health code", null)).thenReturn(mockResult);
+        when(mockIndex.iterateKeys(HealthDataRecord.class, "healthCode", "test health code", null)).thenReturn(
+                mockResult.iterator());
 
         // set up
         DynamoHealthDataDao dao = new DynamoHealthDataDao();
@@ -134,6 +180,63 @@ public class DynamoHealthDataDaoTest {
         assertSame(mockResult, retVal);
     }
 
+    @Test
+    public void getRecordsForUploadDatePaged() {
+        // mock index query - two keys, and a last evaluated key, so there are more records
+        QueryOutcome mockOutcome = mock(QueryOutcome.class);
+        when(mockOutcome.getItems()).thenReturn(ImmutableList.of(
+                new Item().withString("id", "record-1").withString("uploadDate", "2015-02-11"),
+                new Item().withString("id", "record-2").withString("uploadDate", "2015-02-11")));
+        when(mockOutcome.getQueryResult()).thenReturn(new QueryResult().withLastEvaluatedKey(ImmutableMap.of(
+                "id", new AttributeValue("record-2"), "uploadDate", new AttributeValue("2015-02-11"))));
+
+        DynamoIndexHelper mockIndex = mock(DynamoIndexHelper.class);
+        ArgumentCaptor<QuerySpec> specCaptor = ArgumentCaptor.forClass(QuerySpec.class);
+        when(mockIndex.query(specCaptor.capture())).thenReturn(mockOutcome);
+
+        // Batch load returns records out of order.
+        DynamoHealthDataRecord record1 = new DynamoHealthDataRecord();
+        record1.setId("record-1");
+        DynamoHealthDataRecord record2 = new DynamoHealthDataRecord();
+        record2.setId("record-2");
+        when(mockIndex.batchLoad(eq(HealthDataRecord.class), any(List.class))).thenReturn(
+                ImmutableList.<HealthDataRecord>of(record2, record1));
+
+        DynamoHealthDataDao dao = new DynamoHealthDataDao();
+        dao.setUploadDateIndex(mockIndex);
+
+        // execute and validate
+        ForwardCursorPagedResourceList<HealthDataRecord> page = dao.getRecordsForUploadDate("2015-02-11",
+                "record-0", 2);
+        assertEquals(ImmutableList.of(record1, record2), page.getItems());
+        assertEquals("record-2", page.getOffsetKey());
+        assertEquals(2, page.getPageSize());
+
+        // The query continues after the offset key.
+        QuerySpec spec = specCaptor.getValue();
+        assertEquals(2, spec.getMaxPageSize().intValue());
+        assertEquals("2015-02-11", spec.getHashKey().getValue());
+        assertEquals(2, spec.getExclusiveStartKey().size());
+    }
+
+    @Test
+    public void getRecordsForUploadDateLastPage() {
+        QueryOutcome mockOutcome = mock(QueryOutcome.class);
+        when(mockOutcome.getItems()).thenReturn(ImmutableList.of());
+        when(mockOutcome.getQueryResult()).thenReturn(new QueryResult());
+
+        DynamoIndexHelper mockIndex = mock(DynamoIndexHelper.class);
+        when(mockIndex.query(any(QuerySpec.class))).thenReturn(mockOutcome);
+        when(mockIndex.batchLoad(eq(HealthDataRecord.class), any(List.class))).thenReturn(ImmutableList.of());
+
+        DynamoHealthDataDao dao = new DynamoHealthDataDao();
+        dao.setUploadDateIndex(mockIndex);
+
+        ForwardCursorPagedResourceList<HealthDataRecord> page = dao.getRecordsForUploadDate("2015-02-11", null, 2);
+        assertTrue(page.getItems().isEmpty());
+        assertNull(page.getOffsetKey());
+    }
+
     @Test
     public void getRecordsByHealthCodeCreatedOnSchemaId() {
         // For branch coverage, first record has the wrong schema ID.
@@ -2,13 +2,17 @@ package org.sagebionetworks.bridge.dynamodb;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import javax.annotation.Nonnull;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -17,12 +21,17 @@ import com.amazonaws.services.dynamodbv2.document.Index;
 import com.amazonaws.services.dynamodbv2.document.Item;
 import com.amazonaws.services.dynamodbv2.document.ItemCollection;
 import com.amazonaws.services.dynamodbv2.document.Page;
+import com.amazonaws.services.dynamodbv2.document.PageIterable;
 import com.amazonaws.services.dynamodbv2.document.QueryOutcome;
 import com.amazonaws.services.dynamodbv2.document.RangeKeyCondition;
 import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.Select;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
@@ -106,6 +115,7 @@ public class DynamoIndexHelperTest {
         arg = ArgumentCaptor.forClass(List.class);
         when(mockMapper.batchLoad(arg.capture())).thenReturn(mockMapperResultMap);
         helper.setMapper(mockMapper);
+        helper.setBatchLoadExecutorService(MoreExecutors.newDirectExecutorService());
     }
 
     @Test
@@ -140,11 +150,69 @@ public class DynamoIndexHelperTest {
     }
     
     @Test
-    public void testCount() {
+    public void iterateKeys() {
         mockResultsOfQuery(null);
-        int count = helper.queryKeyCount("test key", "test value", null);
-        // There are two lists of two items each
+        Iterator<Thing> keyIter = helper.iterateKeys(Thing.class, "test key", "test value", null);
+        validateKeyObjects(Lists.newArrayList(keyIter));
+    }
+
+    @Test
+    public void queryLoadsInBatches() {
+        // One more key than fits in a batch.
+        List<Item> mockItemList = new ArrayList<>();
+        for (int i = 0; i <= DynamoIndexHelper.BATCH_LOAD_SIZE; i++) {
+            mockItemList.add(new Item().with("key", "key " + i));
+        }
+        helper = new TestDynamoIndexHelper("test key", "test value", null, mockItemList);
+        helper.setBatchLoadExecutorService(MoreExecutors.newDirectExecutorService());
+
+        DynamoDBMapper mockMapper = mock(DynamoDBMapper.class);
+        arg = ArgumentCaptor.forClass(List.class);
+        when(mockMapper.batchLoad(arg.capture())).thenReturn(ImmutableMap.<String, List<Object>>of("dummy key 1",
+                ImmutableList.<Object>of(new Thing("key", "value"))));
+        helper.setMapper(mockMapper);
+
+        List<Thing> resultList = helper.query(Thing.class, "test key", "test value", null);
+        assertEquals(2, resultList.size());
+
+        verify(mockMapper, times(2)).batchLoad(any(List.class));
+        List<List> keyChunkList = arg.getAllValues();
+        assertEquals(DynamoIndexHelper.BATCH_LOAD_SIZE, keyChunkList.get(0).size());
+        assertEquals(1, keyChunkList.get(1).size());
+    }
+
+    @Test
+    public void testCount() {
+        helper = new DynamoIndexHelper();
+        Index mockIndex = mock(Index.class);
+        helper.setIndex(mockIndex);
+
+        // Two pages of counts.
+        List<Page<Item, QueryOutcome>> pageList = ImmutableList.of(makeCountPage(3), makeCountPage(1));
+        PageIterable mockPageIterable = mock(PageIterable.class);
+        when(mockPageIterable.iterator()).thenReturn(pageList.iterator());
+
+        ItemCollection mockItemCollection = mock(ItemCollection.class);
+        when(mockItemCollection.pages()).thenReturn(mockPageIterable);
+        ArgumentCaptor<QuerySpec> specCaptor = ArgumentCaptor.forClass(QuerySpec.class);
+        when(mockIndex.query(specCaptor.capture())).thenReturn(mockItemCollection);
+
+        RangeKeyCondition rangeKeyCondition = new RangeKeyCondition("antwerp").eq("belgium");
+        int count = helper.queryKeyCount("test key", "test value", rangeKeyCondition);
         assertEquals(4, count);
+
+        // The count is done by DynamoDB.
+        QuerySpec spec = specCaptor.getValue();
+        assertEquals(Select.COUNT.toString(), spec.getSelect());
+        assertEquals("test key", spec.getHashKey().getName());
+        assertEquals("test value", spec.getHashKey().getValue());
+        assertEquals(rangeKeyCondition, spec.getRangeKeyCondition());
+    }
+
+    private static Page<Item, QueryOutcome> makeCountPage(int count) {
+        QueryOutcome mockQueryOutcome = mock(QueryOutcome.class);
+        when(mockQueryOutcome.getQueryResult()).thenReturn(new QueryResult().withCount(count));
+        return new TestPage<>(ImmutableList.of(), mockQueryOutcome);
     }
     
     @Test
@@ -1,15 +1,38 @@
 package org.sagebionetworks.bridge.dynamodb;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBScanExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.ScanResultPage;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.RateLimiter;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 import org.sagebionetworks.bridge.TestConstants;
+import org.sagebionetworks.bridge.dao.ParticipantOption;
+import org.sagebionetworks.bridge.models.accounts.ParticipantOptionsLookup;
 
 public class DynamoParticipantOptionsDaoMockTest {
     @Test
@@ -25,4 +48,336 @@ public class DynamoParticipantOptionsDaoMockTest {
         // No update done, it didn't change.
         verify(mockMapper, never()).save(any());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void getOptionsIsCachedUntilWrite() {
+        DynamoDBMapper mockMapper = mock(DynamoDBMapper.class);
+        when(mockMapper.load(any(DynamoParticipantOptions.class))).thenReturn(makeOptions("test-healthcode", "ext1"));
+        DynamoParticipantOptionsDao optionsDao = makeUpdatingDao(mockMapper, mock(Table.class));
+
+        // Reading twice only loads once.
+        assertEquals("ext1", optionsDao.getOptions("test-healthcode").getString(
+                ParticipantOption.EXTERNAL_IDENTIFIER));
+        assertEquals("ext1", optionsDao.getOptions("test-healthcode").getString(
+                ParticipantOption.EXTERNAL_IDENTIFIER));
+        verify(mockMapper, times(1)).load(any(DynamoParticipantOptions.class));
+
+        // A write invalidates the cached options.
+        optionsDao.setOption(TestConstants.TEST_STUDY, "test-healthcode", ParticipantOption.EXTERNAL_IDENTIFIER,
+                "ext2");
+        optionsDao.getOptions("test-healthcode");
+        verify(mockMapper, times(2)).load(any(DynamoParticipantOptions.class));
+
+        // So does deleting all options.
+        optionsDao.deleteAllOptions("test-healthcode");
+        optionsDao.getOptions("test-healthcode");
+        verify(mockMapper, times(3)).load(any(DynamoParticipantOptions.class));
+    }
+
+    @Test
+    public void getOptionsDoesNotCacheLoadThatOverlapsWrite() {
+        DynamoDBMapper mockMapper = mock(DynamoDBMapper.class);
+        DynamoParticipantOptionsDao optionsDao = makeUpdatingDao(mockMapper, mock(Table.class));
+
+        // The options are deleted while they're being loaded, so the load may have read them from before the delete.
+        when(mockMapper.load(any(DynamoParticipantOptions.class))).thenAnswer(invocation -> {
+            optionsDao.deleteAllOptions("test-healthcode");
+            return makeOptions("test-healthcode", "ext1");
+        }).thenReturn(null);
+
+        assertEquals("ext1", optionsDao.getOptions("test-healthcode").getString(
+                ParticipantOption.EXTERNAL_IDENTIFIER));
+        assertNull(optionsDao.getOptions("test-healthcode").getString(ParticipantOption.EXTERNAL_IDENTIFIER));
+        verify(mockMapper, times(2)).load(any(DynamoParticipantOptions.class));
+    }
+
+    @Test
+    public void getOptionsUncachedAlwaysLoads() {
+        DynamoDBMapper mockMapper = mock(DynamoDBMapper.class);
+        when(mockMapper.load(any(DynamoParticipantOptions.class))).thenReturn(makeOptions("test-healthcode", "ext1"));
+        DynamoParticipantOptionsDao optionsDao = makeUpdatingDao(mockMapper, mock(Table.class));
+
+        optionsDao.getOptions("test-healthcode");
+        assertEquals("ext1", optionsDao.getOptionsUncached("test-healthcode").getString(
+                ParticipantOption.EXTERNAL_IDENTIFIER));
+        assertEquals("ext1", optionsDao.getOptionsUncached("test-healthcode").getString(
+                ParticipantOption.EXTERNAL_IDENTIFIER));
+        verify(mockMapper, times(3)).load(any(DynamoParticipantOptions.class));
+    }
+
+    @Test
+    public void getOptionsCachesMissingRecord() {
+        DynamoDBMapper mockMapper = mock(DynamoDBMapper.class);
+        DynamoParticipantOptionsDao optionsDao = makeUpdatingDao(mockMapper, mock(Table.class));
+
+        assertNull(optionsDao.getOptions("test-healthcode").getString(ParticipantOption.EXTERNAL_IDENTIFIER));
+        assertNull(optionsDao.getOptions("test-healthcode").getString(ParticipantOption.EXTERNAL_IDENTIFIER));
+        verify(mockMapper, times(1)).load(any(DynamoParticipantOptions.class));
+    }
+
+    @Test
+    public void setOptionUpdatesWithoutReading() {
+        DynamoDBMapper mockMapper = mock(DynamoDBMapper.class);
+        Table mockTable = mock(Table.class);
+        DynamoParticipantOptionsDao optionsDao = makeUpdatingDao(mockMapper, mockTable);
+
+        // execute
+        optionsDao.setOption(TestConstants.TEST_STUDY, "test-healthcode", ParticipantOption.EXTERNAL_IDENTIFIER,
+                "ext1");
+
+        // validate
+        ArgumentCaptor<UpdateItemSpec> specCaptor = ArgumentCaptor.forClass(UpdateItemSpec.class);
+        verify(mockTable).updateItem(specCaptor.capture());
+        UpdateItemSpec spec = specCaptor.getValue();
+        assertEquals("SET #studyKey = :studyKey, #options.#o0 = :v0", spec.getUpdateExpression());
+        assertEquals("attribute_exists(#options)", spec.getConditionExpression());
+        assertEquals("options", spec.getNameMap().get("#options"));
+        assertEquals("EXTERNAL_IDENTIFIER", spec.getNameMap().get("#o0"));
+        assertEquals(TestConstants.TEST_STUDY_IDENTIFIER, spec.getValueMap().get(":studyKey"));
+        assertEquals("ext1", spec.getValueMap().get(":v0"));
+
+        verify(mockMapper, never()).load(any());
+    }
+
+    @Test
+    public void deleteOptionRemovesKeyWithoutReading() {
+        DynamoDBMapper mockMapper = mock(DynamoDBMapper.class);
+        Table mockTable = mock(Table.class);
+        DynamoParticipantOptionsDao optionsDao = makeUpdatingDao(mockMapper, mockTable);
+
+        // execute
+        optionsDao.deleteOption("test-healthcode", ParticipantOption.EXTERNAL_IDENTIFIER);
+
+        // validate
+        ArgumentCaptor<UpdateItemSpec> specCaptor = ArgumentCaptor.forClass(UpdateItemSpec.class);
+        verify(mockTable).updateItem(specCaptor.capture());
+        UpdateItemSpec spec = specCaptor.getValue();
+        assertEquals("REMOVE #options.#o0", spec.getUpdateExpression());
+        assertEquals("EXTERNAL_IDENTIFIER", spec.getNameMap().get("#o0"));
+        assertNull(spec.getValueMap());
+
+        verify(mockMapper, never()).load(any());
+    }
+
+    @Test
+    public void setOptionCreatesOptionsMapFromData() {
+        // This record has its options in the JSON data attribute, so the first update fails its condition.
+        DynamoParticipantOptions legacyOptions = new DynamoParticipantOptions();
+        legacyOptions.setHealthCode("test-healthcode");
+        legacyOptions.setData("{\"SHARING_SCOPE\":\"NO_SHARING\",\"EXTERNAL_IDENTIFIER\":\"ext1\"}");
+        DynamoDBMapper mockMapper = mock(DynamoDBMapper.class);
+        when(mockMapper.load(any(DynamoParticipantOptions.class))).thenReturn(legacyOptions);
+        Table mockTable = mock(Table.class);
+        when(mockTable.updateItem(any(UpdateItemSpec.class))).thenThrow(new ConditionalCheckFailedException(
+                "test exception")).thenReturn(null);
+        DynamoParticipantOptionsDao optionsDao = makeUpdatingDao(mockMapper, mockTable);
+
+        // execute
+        optionsDao.setOption(TestConstants.TEST_STUDY, "test-healthcode", ParticipantOption.EXTERNAL_IDENTIFIER,
+                "ext2");
+
+        // validate
+        ArgumentCaptor<UpdateItemSpec> specCaptor = ArgumentCaptor.forClass(UpdateItemSpec.class);
+        verify(mockTable, times(2)).updateItem(specCaptor.capture());
+        UpdateItemSpec spec = specCaptor.getAllValues().get(1);
+        // The data attribute is left for nodes that don't read the options map.
+        assertEquals("SET #options = :options, #studyKey = :studyKey", spec.getUpdateExpression());
+        assertEquals("attribute_not_exists(#options)", spec.getConditionExpression());
+        assertEquals(ImmutableMap.of("SHARING_SCOPE", "NO_SHARING", "EXTERNAL_IDENTIFIER", "ext2"),
+                spec.getValueMap().get(":options"));
+    }
+
+    @Test
+    public void setOptionRetriesWhenOptionsMapCreatedConcurrently() {
+        DynamoDBMapper mockMapper = mock(DynamoDBMapper.class);
+        Table mockTable = mock(Table.class);
+        when(mockTable.updateItem(any(UpdateItemSpec.class))).thenThrow(new ConditionalCheckFailedException(
+                "test exception")).thenThrow(new ConditionalCheckFailedException("test exception")).thenReturn(null);
+        DynamoParticipantOptionsDao optionsDao = makeUpdatingDao(mockMapper, mockTable);
+
+        // execute
+        optionsDao.setOption(TestConstants.TEST_STUDY, "test-healthcode", ParticipantOption.EXTERNAL_IDENTIFIER,
+                "ext1");
+
+        // The last attempt is an update of the one option again.
+        ArgumentCaptor<UpdateItemSpec> specCaptor = ArgumentCaptor.forClass(UpdateItemSpec.class);
+        verify(mockTable, times(3)).updateItem(specCaptor.capture());
+        assertEquals("SET #studyKey = :studyKey, #options.#o0 = :v0",
+                specCaptor.getAllValues().get(2).getUpdateExpression());
+    }
+
+    @Test
+    public void deleteOptionWithNoRecordDoesNothing() {
+        DynamoDBMapper mockMapper = mock(DynamoDBMapper.class);
+        Table mockTable = mock(Table.class);
+        when(mockTable.updateItem(any(UpdateItemSpec.class))).thenThrow(new ConditionalCheckFailedException(
+                "test exception"));
+        DynamoParticipantOptionsDao optionsDao = makeUpdatingDao(mockMapper, mockTable);
+
+        // execute
+        optionsDao.deleteOption("test-healthcode", ParticipantOption.EXTERNAL_IDENTIFIER);
+
+        // The record isn't created.
+        verify(mockTable, times(1)).updateItem(any(UpdateItemSpec.class));
+    }
+
+    @Test
+    public void setOptionSavesDataWhenMapWritesDisabled() {
+        DynamoParticipantOptions existing = new DynamoParticipantOptions();
+        existing.setHealthCode("test-healthcode");
+        existing.setData("{\"SHARING_SCOPE\":\"NO_SHARING\",\"EXTERNAL_IDENTIFIER\":\"ext1\"}");
+        DynamoDBMapper mockMapper = mock(DynamoDBMapper.class);
+        when(mockMapper.load(any(DynamoParticipantOptions.class))).thenReturn(existing);
+        Table mockTable = mock(Table.class);
+        DynamoParticipantOptionsDao optionsDao = new DynamoParticipantOptionsDao();
+        optionsDao.setDdbMapper(mockMapper);
+        optionsDao.setTable(mockTable);
+
+        // execute
+        optionsDao.setOption(TestConstants.TEST_STUDY, "test-healthcode", ParticipantOption.EXTERNAL_IDENTIFIER,
+                "ext2");
+
+        // validate
+        ArgumentCaptor<DynamoParticipantOptions> optionsCaptor = ArgumentCaptor.forClass(
+                DynamoParticipantOptions.class);
+        verify(mockMapper).save(optionsCaptor.capture());
+        DynamoParticipantOptions saved = optionsCaptor.getValue();
+        assertEquals(TestConstants.TEST_STUDY_IDENTIFIER, saved.getStudyKey());
+        assertNull(saved.getOptionsMap());
+        assertEquals(ImmutableMap.of("SHARING_SCOPE", "NO_SHARING", "EXTERNAL_IDENTIFIER", "ext2"),
+                saved.getOptions());
+        verify(mockTable, never()).updateItem(any(UpdateItemSpec.class));
+    }
+
+    @Test
+    public void setOptionRemovesOptionsMapWhenMapWritesDisabled() {
+        // Written while map writes were enabled, so the data attribute is behind the map.
+        DynamoParticipantOptions existing = new DynamoParticipantOptions();
+        existing.setHealthCode("test-healthcode");
+        existing.setData("{\"EXTERNAL_IDENTIFIER\":\"ext1\"}");
+        existing.setOptionsMap(new HashMap<>(ImmutableMap.of("SHARING_SCOPE", "NO_SHARING",
+                "EXTERNAL_IDENTIFIER", "ext1")));
+        DynamoDBMapper mockMapper = mock(DynamoDBMapper.class);
+        when(mockMapper.load(any(DynamoParticipantOptions.class))).thenReturn(existing);
+        DynamoParticipantOptionsDao optionsDao = new DynamoParticipantOptionsDao();
+        optionsDao.setDdbMapper(mockMapper);
+
+        // execute
+        optionsDao.deleteOption("test-healthcode", ParticipantOption.EXTERNAL_IDENTIFIER);
+
+        // The options from the map are saved to the data attribute, and the map is removed.
+        ArgumentCaptor<DynamoParticipantOptions> optionsCaptor = ArgumentCaptor.forClass(
+                DynamoParticipantOptions.class);
+        verify(mockMapper).save(optionsCaptor.capture());
+        DynamoParticipantOptions saved = optionsCaptor.getValue();
+        assertNull(saved.getOptionsMap());
+        assertEquals("{\"SHARING_SCOPE\":\"NO_SHARING\"}", saved.getData());
+    }
+
+    @Test
+    public void deleteOptionWithNoRecordDoesNothingWhenMapWritesDisabled() {
+        DynamoDBMapper mockMapper = mock(DynamoDBMapper.class);
+        DynamoParticipantOptionsDao optionsDao = new DynamoParticipantOptionsDao();
+        optionsDao.setDdbMapper(mockMapper);
+
+        // execute
+        optionsDao.deleteOption("test-healthcode", ParticipantOption.EXTERNAL_IDENTIFIER);
+
+        verify(mockMapper, never()).save(any());
+    }
+
+    @Test
+    public void forEachParticipantOptionsScansEverySegmentAndPage() {
+        // Segment 0 has two pages, segment 1 has one.
+        DynamoDBMapper mockMapper = mock(DynamoDBMapper.class);
+        ScanResultPage<DynamoParticipantOptions> page0a = makePage(ImmutableList.of(makeOptions("hc1", "ext1")),
+                ImmutableMap.of("healthDataCode", new AttributeValue("hc1")), 3.0);
+        ScanResultPage<DynamoParticipantOptions> page0b = makePage(ImmutableList.of(makeOptions("hc2", "ext2")),
+                null, 2.0);
+        ScanResultPage<DynamoParticipantOptions> page1 = makePage(ImmutableList.of(makeOptions("hc3", "ext3")),
+                null, 0.5);
+        when(mockMapper.scanPage(eq(DynamoParticipantOptions.class), any(DynamoDBScanExpression.class))).thenAnswer(
+                invocation -> {
+                    DynamoDBScanExpression scan = invocation.getArgumentAt(1, DynamoDBScanExpression.class);
+                    if (scan.getSegment() == 1) {
+                        return page1;
+                    }
+                    return scan.getExclusiveStartKey() == null ? page0a : page0b;
+                });
+        RateLimiter mockRateLimiter = mock(RateLimiter.class);
+        DynamoParticipantOptionsDao optionsDao = makeScanningDao(mockMapper, mockRateLimiter);
+
+        // execute
+        Map<String, ParticipantOptionsLookup> results = new HashMap<>();
+        optionsDao.forEachParticipantOptions(TestConstants.TEST_STUDY, results::put);
+
+        // validate
+        assertEquals(3, results.size());
+        assertEquals("ext1", results.get("hc1").getString(ParticipantOption.EXTERNAL_IDENTIFIER));
+        assertEquals("ext2", results.get("hc2").getString(ParticipantOption.EXTERNAL_IDENTIFIER));
+        assertEquals("ext3", results.get("hc3").getString(ParticipantOption.EXTERNAL_IDENTIFIER));
+
+        ArgumentCaptor<DynamoDBScanExpression> scanCaptor = ArgumentCaptor.forClass(DynamoDBScanExpression.class);
+        verify(mockMapper, times(3)).scanPage(eq(DynamoParticipantOptions.class), scanCaptor.capture());
+        List<DynamoDBScanExpression> scanList = scanCaptor.getAllValues();
+        for (DynamoDBScanExpression scan : scanList) {
+            assertEquals(2, scan.getTotalSegments().intValue());
+            assertEquals(DynamoParticipantOptionsDao.SCAN_PAGE_LIMIT, scan.getLimit().intValue());
+            assertEquals(TestConstants.TEST_STUDY_IDENTIFIER,
+                    scan.getScanFilter().get("studyKey").getAttributeValueList().get(0).getS());
+        }
+
+        // Each segment starts with 1 permit. The second page of segment 0 waits for the 3 units the first consumed.
+        verify(mockRateLimiter, times(2)).acquire(1);
+        verify(mockRateLimiter).acquire(3);
+    }
+
+    @Test
+    public void forEachParticipantOptionsThrowsSegmentError() {
+        DynamoDBMapper mockMapper = mock(DynamoDBMapper.class);
+        when(mockMapper.scanPage(eq(DynamoParticipantOptions.class), any(DynamoDBScanExpression.class))).thenThrow(
+                new IllegalStateException("test exception"));
+        DynamoParticipantOptionsDao optionsDao = makeScanningDao(mockMapper, mock(RateLimiter.class));
+
+        try {
+            optionsDao.forEachParticipantOptions(TestConstants.TEST_STUDY, (healthCode, lookup) -> {});
+            fail("expected exception");
+        } catch (IllegalStateException ex) {
+            assertEquals("test exception", ex.getMessage());
+        }
+    }
+
+    private static DynamoParticipantOptionsDao makeUpdatingDao(DynamoDBMapper mapper, Table table) {
+        DynamoParticipantOptionsDao optionsDao = new DynamoParticipantOptionsDao();
+        optionsDao.setDdbMapper(mapper);
+        optionsDao.setTable(table);
+        optionsDao.setMapWritesEnabled(true);
+        return optionsDao;
+    }
+
+    private static DynamoParticipantOptionsDao makeScanningDao(DynamoDBMapper mapper, RateLimiter rateLimiter) {
+        DynamoParticipantOptionsDao optionsDao = new DynamoParticipantOptionsDao();
+        optionsDao.setDdbMapper(mapper);
+        optionsDao.setScanExecutorService(MoreExecutors.newDirectExecutorService());
+        optionsDao.setScanSegmentCount(2);
+        optionsDao.setScanRateLimiter(rateLimiter);
+        return optionsDao;
+    }
+
+    private static DynamoParticipantOptions makeOptions(String healthCode, String externalId) {
+        DynamoParticipantOptions options = new DynamoParticipantOptions();
+        options.setStudyKey(TestConstants.TEST_STUDY_IDENTIFIER);
+        options.setHealthCode(healthCode);
+        options.getOptions().put(ParticipantOption.EXTERNAL_IDENTIFIER.name(), externalId);
+        return options;
+    }
+
+    private static ScanResultPage<DynamoParticipantOptions> makePage(List<DynamoParticipantOptions> results,
+            Map<String, AttributeValue> lastEvaluatedKey, double capacityUnits) {
+        ScanResultPage<DynamoParticipantOptions> page = new ScanResultPage<>();
+        page.setResults(results);
+        page.setLastEvaluatedKey(lastEvaluatedKey);
+        page.setConsumedCapacity(new ConsumedCapacity().withCapacityUnits(capacityUnits));
+        return page;
+    }
+}
@@ -0,0 +1,277 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.sagebionetworks.bridge.TestConstants.TEST_STUDY;
+
+import java.util.List;
+import java.util.Map;
+
+import org.joda.time.LocalDate;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
+import org.sagebionetworks.bridge.models.reports.ReportData;
+import org.sagebionetworks.bridge.models.reports.ReportDataKey;
+import org.sagebionetworks.bridge.models.reports.ReportType;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonServiceException.ErrorType;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper.FailedBatch;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
+import com.amazonaws.services.dynamodbv2.datamodeling.QueryResultPage;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+public class DynamoReportDataDaoMockTest {
+    private static final String KEY = "report-id:api";
+    private static final LocalDate DATE = LocalDate.parse("2016-04-01");
+    private static final ReportDataKey REPORT_KEY = new ReportDataKey.Builder().withStudyIdentifier(TEST_STUDY)
+            .withReportType(ReportType.STUDY).withIdentifier("report-id").build();
+
+    private DynamoDBMapper mockMapper;
+    private DynamoReportDataDao dao;
+    private List<List<ReportData>> savedBatches;
+
+    @Before
+    public void before() {
+        mockMapper = mock(DynamoDBMapper.class);
+        dao = new DynamoReportDataDao();
+        dao.setReportDataMapper(mockMapper);
+        dao.setBatchRetryDelayMillis(0L);
+        savedBatches = Lists.newArrayList();
+    }
+
+    @Test
+    public void saveBatchWritesInChunks() {
+        mockBatchSave(ImmutableList.of());
+        List<ReportData> records = makeRecords(60);
+
+        dao.saveReportDataBatch(records);
+
+        assertEquals(3, savedBatches.size());
+        assertEquals(DynamoReportDataDao.BATCH_SAVE_SIZE, savedBatches.get(0).size());
+        assertEquals(DynamoReportDataDao.BATCH_SAVE_SIZE, savedBatches.get(1).size());
+        assertEquals(10, savedBatches.get(2).size());
+    }
+
+    @Test
+    public void saveBatchRetriesOnlyUnprocessedRecords() {
+        List<ReportData> records = makeRecords(3);
+        mockBatchSave(ImmutableList.of(makeFailure(records.get(1))), ImmutableList.of());
+
+        dao.saveReportDataBatch(records);
+
+        assertEquals(2, savedBatches.size());
+        assertEquals(3, savedBatches.get(0).size());
+        assertEquals(1, savedBatches.get(1).size());
+        assertSame(records.get(1), savedBatches.get(1).get(0));
+    }
+
+    @Test
+    public void saveBatchThrowsWhenRetriesAreExhausted() {
+        List<ReportData> records = makeRecords(2);
+        List<FailedBatch> failures = ImmutableList.of(makeFailure(records.get(0)));
+        mockBatchSave(failures, failures, failures);
+
+        try {
+            dao.saveReportDataBatch(records);
+            fail("Should have thrown exception");
+        } catch(BridgeServiceException e) {
+            assertEquals(DynamoReportDataDao.MAX_BATCH_SAVE_ATTEMPTS, savedBatches.size());
+        }
+    }
+
+    @Test
+    public void saveBatchDoesNotRetryErrorsThatAreNotThrottling() {
+        List<ReportData> records = makeRecords(2);
+        AmazonServiceException ex = new AmazonServiceException("Item size has exceeded the maximum allowed size");
+        ex.setErrorCode("ValidationException");
+        ex.setErrorType(ErrorType.Client);
+        mockBatchSave(ImmutableList.of(makeFailure(records.get(0), ex)), ImmutableList.of());
+
+        try {
+            dao.saveReportDataBatch(records);
+            fail("Should have thrown exception");
+        } catch(BridgeServiceException e) {
+            assertEquals(1, savedBatches.size());
+        }
+    }
+
+    @Test
+    public void saveBatchRetriesServerErrors() {
+        List<ReportData> records = makeRecords(2);
+        AmazonServiceException ex = new AmazonServiceException("Internal server error");
+        ex.setErrorCode("InternalServerError");
+        ex.setErrorType(ErrorType.Service);
+        mockBatchSave(ImmutableList.of(makeFailure(records.get(0), ex)), ImmutableList.of());
+
+        dao.saveReportDataBatch(records);
+        assertEquals(2, savedBatches.size());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void getReportDataV4ReturnsOnePage() {
+        QueryResultPage<DynamoReportData> page = makePage(makeRecords(5), "2016-04-05");
+        when(mockMapper.queryPage(eq(DynamoReportData.class), any(DynamoDBQueryExpression.class))).thenReturn(page);
+
+        ForwardCursorPagedResourceList<ReportData> result = dao.getReportDataV4(REPORT_KEY, DATE,
+                DATE.plusDays(30), null, 5);
+
+        assertEquals(5, result.getItems().size());
+        assertEquals("2016-04-05", result.getOffsetKey());
+        assertEquals(5, result.getPageSize());
+        assertEquals("2016-04-01", result.getFilters().get("startDate"));
+        assertEquals("2016-05-01", result.getFilters().get("endDate"));
+
+        ArgumentCaptor<DynamoDBQueryExpression> queryCaptor = ArgumentCaptor.forClass(DynamoDBQueryExpression.class);
+        verify(mockMapper).queryPage(eq(DynamoReportData.class), queryCaptor.capture());
+        DynamoDBQueryExpression<DynamoReportData> query = queryCaptor.getValue();
+        assertEquals(new Integer(5), query.getLimit());
+        assertNull(query.getExclusiveStartKey());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void getReportDataV4ContinuesFromOffsetKey() {
+        QueryResultPage<DynamoReportData> page = makePage(makeRecords(2), null);
+        when(mockMapper.queryPage(eq(DynamoReportData.class), any(DynamoDBQueryExpression.class))).thenReturn(page);
+
+        ForwardCursorPagedResourceList<ReportData> result = dao.getReportDataV4(REPORT_KEY, DATE,
+                DATE.plusDays(30), "2016-04-05", 5);
+
+        assertEquals(2, result.getItems().size());
+        assertNull(result.getOffsetKey());
+
+        ArgumentCaptor<DynamoDBQueryExpression> queryCaptor = ArgumentCaptor.forClass(DynamoDBQueryExpression.class);
+        verify(mockMapper).queryPage(eq(DynamoReportData.class), queryCaptor.capture());
+        Map<String, AttributeValue> startKey = queryCaptor.getValue().getExclusiveStartKey();
+        assertEquals(REPORT_KEY.getKeyString(), startKey.get("key").getS());
+        assertEquals("2016-04-05", startKey.get("date").getS());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void getReportDataV4RejectsBadPageSize() {
+        try {
+            dao.getReportDataV4(REPORT_KEY, DATE, DATE.plusDays(30), null, 1000);
+            fail("Should have thrown exception");
+        } catch(BadRequestException e) {
+            assertEquals(DynamoReportDataDao.PAGE_SIZE_ERROR, e.getMessage());
+        }
+        verify(mockMapper, never()).queryPage(eq(DynamoReportData.class), any(DynamoDBQueryExpression.class));
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void getReportDataV4RejectsBadOffsetKey() {
+        dao.getReportDataV4(REPORT_KEY, DATE, DATE.plusDays(30), "not-a-date", 5);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void getReportDataV4RejectsOffsetKeyOutsideDateRange() {
+        try {
+            dao.getReportDataV4(REPORT_KEY, DATE, DATE.plusDays(30), "2016-03-31", 5);
+            fail("Should have thrown exception");
+        } catch(BadRequestException e) {
+            // expected exception
+        }
+        try {
+            dao.getReportDataV4(REPORT_KEY, DATE, DATE.plusDays(30), "2016-05-02", 5);
+            fail("Should have thrown exception");
+        } catch(BadRequestException e) {
+            // expected exception
+        }
+        verify(mockMapper, never()).queryPage(eq(DynamoReportData.class), any(DynamoDBQueryExpression.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void deleteReportDataDeletesPageByPage() {
+        List<ReportData> firstPage = makeRecords(2);
+        List<ReportData> secondPage = makeRecords(1);
+        List<Map<String, AttributeValue>> startKeys = Lists.newArrayList();
+        when(mockMapper.queryPage(eq(DynamoReportData.class), any(DynamoDBQueryExpression.class))).thenAnswer(invocation -> {
+            DynamoDBQueryExpression<DynamoReportData> query = invocation.getArgumentAt(1, DynamoDBQueryExpression.class);
+            assertEquals(new Integer(DynamoReportDataDao.DELETE_PAGE_SIZE), query.getLimit());
+            startKeys.add(query.getExclusiveStartKey());
+            return (startKeys.size() == 1) ? makePage(firstPage, "2016-04-02") : makePage(secondPage, null);
+        });
+        when(mockMapper.batchDelete(any(List.class))).thenReturn(ImmutableList.of());
+
+        dao.deleteReportData(REPORT_KEY);
+
+        assertEquals(2, startKeys.size());
+        assertNull(startKeys.get(0));
+        assertEquals("2016-04-02", startKeys.get(1).get("date").getS());
+        verify(mockMapper).batchDelete(firstPage);
+        verify(mockMapper).batchDelete(secondPage);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void mockBatchSave(List<?>... results) {
+        when(mockMapper.batchSave(any(List.class))).thenAnswer(invocation -> {
+            savedBatches.add(Lists.newArrayList(invocation.getArgumentAt(0, List.class)));
+            return results[Math.min(savedBatches.size(), results.length) - 1];
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static QueryResultPage<DynamoReportData> makePage(List<ReportData> records, String lastDate) {
+        QueryResultPage<DynamoReportData> page = new QueryResultPage<>();
+        page.setResults((List<DynamoReportData>)(List<?>)records);
+        if (lastDate != null) {
+            page.setLastEvaluatedKey(ImmutableMap.of(
+                    "key", new AttributeValue().withS(KEY),
+                    "date", new AttributeValue().withS(lastDate)));
+        }
+        return page;
+    }
+
+    private static List<ReportData> makeRecords(int count) {
+        List<ReportData> records = Lists.newArrayList();
+        for (int i=0; i < count; i++) {
+            ReportData reportData = ReportData.create();
+            reportData.setKey(KEY);
+            reportData.setDate(DATE.plusDays(i));
+            records.add(reportData);
+        }
+        return records;
+    }
+
+    private static FailedBatch makeFailure(ReportData reportData) {
+        AmazonServiceException ex = new AmazonServiceException("Throttled");
+        ex.setErrorCode("ProvisionedThroughputExceededException");
+        ex.setErrorType(ErrorType.Client);
+        return makeFailure(reportData, ex);
+    }
+
+    private static FailedBatch makeFailure(ReportData reportData, Exception ex) {
+        PutRequest put = new PutRequest().withItem(ImmutableMap.of(
+                "key", new AttributeValue().withS(reportData.getKey()),
+                "date", new AttributeValue().withS(reportData.getDate().toString())));
+        FailedBatch failure = mock(FailedBatch.class);
+        when(failure.getUnprocessedItems()).thenReturn(ImmutableMap.<String, List<WriteRequest>>of("ReportData",
+                ImmutableList.of(new WriteRequest().withPutRequest(put))));
+        when(failure.getException()).thenReturn(ex);
+        return failure;
+    }
+}
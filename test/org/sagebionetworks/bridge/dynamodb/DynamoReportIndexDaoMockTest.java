@@ -0,0 +1,82 @@
+package org.sagebionetworks.bridge.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.sagebionetworks.bridge.TestConstants.TEST_STUDY;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import org.sagebionetworks.bridge.models.reports.ReportDataKey;
+import org.sagebionetworks.bridge.models.reports.ReportType;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBSaveExpression;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+
+public class DynamoReportIndexDaoMockTest {
+    private static final ReportDataKey KEY = new ReportDataKey.Builder().withStudyIdentifier(TEST_STUDY)
+            .withReportType(ReportType.STUDY).withIdentifier("report-id").build();
+
+    private DynamoDBMapper mockMapper;
+    private DynamoReportIndexDao dao;
+
+    @Before
+    public void before() {
+        mockMapper = mock(DynamoDBMapper.class);
+        dao = new DynamoReportIndexDao();
+        dao.setReportIndexMapper(mockMapper);
+    }
+
+    @Test
+    public void addIndexSavesWithoutReading() {
+        dao.addIndex(KEY);
+
+        ArgumentCaptor<DynamoReportIndex> indexCaptor = ArgumentCaptor.forClass(DynamoReportIndex.class);
+        ArgumentCaptor<DynamoDBSaveExpression> expressionCaptor = ArgumentCaptor.forClass(
+                DynamoDBSaveExpression.class);
+        verify(mockMapper).save(indexCaptor.capture(), expressionCaptor.capture());
+        assertEquals(KEY.getIndexKeyString(), indexCaptor.getValue().getKey());
+        assertEquals(KEY.getIdentifier(), indexCaptor.getValue().getIdentifier());
+        assertEquals(Boolean.FALSE, expressionCaptor.getValue().getExpected().get("key").getExists());
+        assertEquals(Boolean.FALSE, expressionCaptor.getValue().getExpected().get("identifier").getExists());
+
+        verify(mockMapper, never()).load(any(DynamoReportIndex.class));
+    }
+
+    @Test
+    public void addExistingIndexDoesNothing() {
+        doThrow(new ConditionalCheckFailedException("test exception")).when(mockMapper)
+                .save(any(DynamoReportIndex.class), any(DynamoDBSaveExpression.class));
+
+        // Doesn't throw.
+        dao.addIndex(KEY);
+    }
+
+    @Test
+    public void addIndexAfterRemoveCreatesIndexAgain() {
+        when(mockMapper.load(any(DynamoReportIndex.class))).thenReturn(makeIndex());
+        dao.addIndex(KEY);
+
+        // A remove, on this node or another, is seen by the next add.
+        dao.removeIndex(KEY);
+        dao.addIndex(KEY);
+
+        verify(mockMapper).delete(any(DynamoReportIndex.class));
+        verify(mockMapper, times(2)).save(any(DynamoReportIndex.class), any(DynamoDBSaveExpression.class));
+    }
+
+    private static DynamoReportIndex makeIndex() {
+        DynamoReportIndex index = new DynamoReportIndex();
+        index.setKey(KEY.getIndexKeyString());
+        index.setIdentifier(KEY.getIdentifier());
+        return index;
+    }
+}
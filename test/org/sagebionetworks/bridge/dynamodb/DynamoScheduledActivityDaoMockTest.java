@@ -4,6 +4,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -35,9 +36,14 @@ import org.sagebionetworks.bridge.models.schedules.ScheduledActivity;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
 import com.amazonaws.services.dynamodbv2.datamodeling.PaginatedQueryList;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+import com.amazonaws.services.dynamodbv2.model.Condition;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Range;
+import com.google.common.util.concurrent.MoreExecutors;
 
 public class DynamoScheduledActivityDaoMockTest {
 
@@ -68,6 +74,7 @@ public class DynamoScheduledActivityDaoMockTest {
         when(mapper.load(any(DynamoScheduledActivity.class))).thenReturn(testSchActivity);
         activityDao = new DynamoScheduledActivityDao();
         activityDao.setDdbMapper(mapper);
+        activityDao.setQueryExecutorService(MoreExecutors.newDirectExecutorService());
     }
 
     @After
@@ -231,6 +238,106 @@ public class DynamoScheduledActivityDaoMockTest {
         assertEquals(activities, argument.getValue());
     }
     
+    @SuppressWarnings({"unchecked","rawtypes"})
+    @Test
+    public void getActivitiesInRangeQueriesGuidRange() {
+        DynamoScheduledActivity activity = new DynamoScheduledActivity();
+        activity.setHealthCode(HEALTH_CODE);
+        activity.setGuid("activityGuid:2015-04-11T13:00:00.000");
+        mockMapperResults(Lists.newArrayList(activity));
+        
+        ArgumentCaptor<DynamoDBQueryExpression> queryArg = ArgumentCaptor.forClass(DynamoDBQueryExpression.class);
+        List<ScheduledActivity> results = activityDao.getActivitiesInRange(PACIFIC_TIME_ZONE, HEALTH_CODE,
+                "activityGuid", LocalDateTime.parse("2015-04-10T00:00:00"), LocalDateTime.parse("2015-04-12T00:00:00"));
+        
+        verify(mapper).query((Class<DynamoScheduledActivity>) any(Class.class),
+                (DynamoDBQueryExpression<DynamoScheduledActivity>) queryArg.capture());
+        verifyNoMoreInteractions(mapper);
+        
+        DynamoDBQueryExpression<DynamoScheduledActivity> query = queryArg.getValue();
+        assertEquals(HEALTH_CODE, query.getHashKeyValues().getHealthCode());
+        Condition condition = (Condition) query.getRangeKeyConditions().get("guid");
+        assertEquals(ComparisonOperator.BETWEEN.toString(), condition.getComparisonOperator());
+        assertEquals("activityGuid:2015-04-10T00:00:00.000", condition.getAttributeValueList().get(0).getS());
+        assertEquals("activityGuid:2015-04-12T00:00:00.000", condition.getAttributeValueList().get(1).getS());
+        
+        assertEquals(1, results.size());
+        assertEquals(PACIFIC_TIME_ZONE, results.get(0).getTimeZone());
+    }
+    
+    @SuppressWarnings({"unchecked","rawtypes"})
+    @Test
+    public void getActivitiesInRangesQueriesEachRange() {
+        DynamoScheduledActivity activity1 = new DynamoScheduledActivity();
+        activity1.setHealthCode(HEALTH_CODE);
+        activity1.setGuid("AAA:2015-04-11T13:00:00.000");
+        DynamoScheduledActivity activity2 = new DynamoScheduledActivity();
+        activity2.setHealthCode(HEALTH_CODE);
+        activity2.setGuid("BBB:2015-04-10T13:00:00.000");
+        
+        PaginatedQueryList<DynamoScheduledActivity> results1 = mock(PaginatedQueryList.class);
+        when(results1.iterator()).thenReturn(Lists.newArrayList(activity1).iterator());
+        PaginatedQueryList<DynamoScheduledActivity> results2 = mock(PaginatedQueryList.class);
+        when(results2.iterator()).thenReturn(Lists.newArrayList(activity2).iterator());
+        when(mapper.query((Class<DynamoScheduledActivity>) any(Class.class),
+                (DynamoDBQueryExpression<DynamoScheduledActivity>) any(DynamoDBQueryExpression.class)))
+                .thenReturn(results1, results2);
+        
+        Map<String, Range<LocalDateTime>> ranges = ImmutableMap.of(
+                "AAA", Range.closed(LocalDateTime.parse("2015-04-10T00:00:00"), LocalDateTime.parse("2015-04-12T00:00:00")),
+                "BBB", Range.singleton(LocalDateTime.parse("2015-04-10T13:00:00")));
+        List<ScheduledActivity> results = activityDao.getActivitiesInRanges(PACIFIC_TIME_ZONE, HEALTH_CODE, ranges);
+        
+        ArgumentCaptor<DynamoDBQueryExpression> queryArg = ArgumentCaptor.forClass(DynamoDBQueryExpression.class);
+        verify(mapper, times(2)).query((Class<DynamoScheduledActivity>) any(Class.class),
+                (DynamoDBQueryExpression<DynamoScheduledActivity>) queryArg.capture());
+        verifyNoMoreInteractions(mapper);
+        
+        // One query per activity, each over that activity's range.
+        List<DynamoDBQueryExpression> queries = queryArg.getAllValues();
+        Condition condition1 = (Condition) queries.get(0).getRangeKeyConditions().get("guid");
+        assertEquals("AAA:2015-04-10T00:00:00.000", condition1.getAttributeValueList().get(0).getS());
+        assertEquals("AAA:2015-04-12T00:00:00.000", condition1.getAttributeValueList().get(1).getS());
+        Condition condition2 = (Condition) queries.get(1).getRangeKeyConditions().get("guid");
+        assertEquals("BBB:2015-04-10T13:00:00.000", condition2.getAttributeValueList().get(0).getS());
+        assertEquals("BBB:2015-04-10T13:00:00.000", condition2.getAttributeValueList().get(1).getS());
+        
+        assertEquals(ImmutableList.of(activity1, activity2), results);
+        assertEquals(PACIFIC_TIME_ZONE, results.get(0).getTimeZone());
+        assertEquals(PACIFIC_TIME_ZONE, results.get(1).getTimeZone());
+    }
+    
+    @SuppressWarnings({"unchecked","rawtypes"})
+    @Test
+    public void getActivitiesByGuidLoadsUniqueKeysInBatch() {
+        DynamoScheduledActivity activity = new DynamoScheduledActivity();
+        activity.setHealthCode(HEALTH_CODE);
+        activity.setGuid("AAA:2015-04-11T13:00:00.000");
+        mockMapperResults(Lists.newArrayList(activity));
+        
+        List<ScheduledActivity> results = activityDao.getActivitiesByGuid(HEALTH_CODE,
+                ImmutableList.of("AAA:2015-04-11T13:00:00.000", "BBB:2015-04-11T13:00:00.000",
+                        "AAA:2015-04-11T13:00:00.000"));
+        assertEquals(ImmutableList.of(activity), results);
+        
+        ArgumentCaptor<List> keysArg = ArgumentCaptor.forClass(List.class);
+        verify(mapper).batchLoad(keysArg.capture());
+        verifyNoMoreInteractions(mapper);
+        
+        List<DynamoScheduledActivity> keys = keysArg.getValue();
+        assertEquals(2, keys.size());
+        assertEquals(HEALTH_CODE, keys.get(0).getHealthCode());
+        assertEquals("AAA:2015-04-11T13:00:00.000", keys.get(0).getGuid());
+        assertEquals(HEALTH_CODE, keys.get(1).getHealthCode());
+        assertEquals("BBB:2015-04-11T13:00:00.000", keys.get(1).getGuid());
+    }
+    
+    @Test
+    public void getActivitiesByGuidWithEmptyListReturnsEmptyList() {
+        assertTrue(activityDao.getActivitiesByGuid(HEALTH_CODE, ImmutableList.of()).isEmpty());
+        verifyNoMoreInteractions(mapper);
+    }
+    
     @Test
     public void callGetActivitiesWithEmptyListReturnsEmptyList() {
         List<ScheduledActivity> activities = activityDao.getActivities(DateTimeZone.UTC, new ArrayList<>());
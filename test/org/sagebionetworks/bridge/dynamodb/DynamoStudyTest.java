@@ -37,6 +37,23 @@ public class DynamoStudyTest {
             .withPrefabValues(JsonFactory.class, new JsonFactory(), new JsonFactory()).verify();
     }
 
+    @Test
+    public void copyConstructorCopiesAllFields() {
+        DynamoStudy study = TestUtils.getValidStudy(DynamoStudyTest.class);
+        study.setVersion(2L);
+        study.getMinSupportedAppVersions().put(OperatingSystem.IOS, 2);
+
+        // equals() uses every field (see equalsHashCode above)
+        DynamoStudy copy = new DynamoStudy(study);
+        assertEquals(study, copy);
+
+        // collections are not shared
+        copy.getDataGroups().add("newGroup");
+        copy.getMinSupportedAppVersions().put(OperatingSystem.ANDROID, 3);
+        assertFalse(study.getDataGroups().contains("newGroup"));
+        assertFalse(study.getMinSupportedAppVersions().containsKey(OperatingSystem.ANDROID));
+    }
+
     @Test
     public void studyFullySerializesForCaching() throws Exception {
         final DynamoStudy study = TestUtils.getValidStudy(DynamoStudyTest.class);
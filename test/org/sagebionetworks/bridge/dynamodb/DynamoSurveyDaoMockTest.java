@@ -2,6 +2,7 @@ package org.sagebionetworks.bridge.dynamodb;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
@@ -11,6 +12,7 @@ import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -140,4 +142,79 @@ public class DynamoSurveyDaoMockTest {
         verify(mockSurveyMapper).delete(survey);
         verify(mockSchemaService).deleteUploadSchemaById(TestConstants.TEST_STUDY, SURVEY_ID);
     }
+
+    @Test
+    public void getCachedSurveyLoadsPublishedSurveyOnce() {
+        survey.setPublished(true);
+
+        Survey first = surveyDao.getCachedSurvey(SURVEY_KEY);
+        Survey second = surveyDao.getCachedSurvey(SURVEY_KEY);
+
+        assertSame(survey, first);
+        assertSame(survey, second);
+        verify(surveyDao, times(1)).getSurvey(SURVEY_KEY);
+    }
+
+    @Test
+    public void getCachedSurveyDoesNotCacheUnpublishedSurvey() {
+        surveyDao.getCachedSurvey(SURVEY_KEY);
+        surveyDao.getCachedSurvey(SURVEY_KEY);
+
+        verify(surveyDao, times(2)).getSurvey(SURVEY_KEY);
+    }
+
+    @Test
+    public void getCachedSurveyMostRecentlyPublishedVersionQueriesOnce() {
+        survey.setPublished(true);
+        doReturn(survey).when(surveyDao).getSurveyMostRecentlyPublishedVersion(TestConstants.TEST_STUDY,
+                SURVEY_GUID);
+
+        Survey first = surveyDao.getCachedSurveyMostRecentlyPublishedVersion(TestConstants.TEST_STUDY, SURVEY_GUID);
+        Survey second = surveyDao.getCachedSurveyMostRecentlyPublishedVersion(TestConstants.TEST_STUDY, SURVEY_GUID);
+
+        assertSame(survey, first);
+        assertSame(survey, second);
+        verify(surveyDao, times(1)).getSurveyMostRecentlyPublishedVersion(TestConstants.TEST_STUDY, SURVEY_GUID);
+        // The hydrated survey is cached along with the pointer, so it isn't loaded again by its keys.
+        verify(surveyDao, never()).getSurvey(SURVEY_KEY);
+    }
+
+    @Test
+    public void publishSurveyInvalidatesMostRecentlyPublishedVersion() {
+        doReturn(survey).when(surveyDao).getSurveyMostRecentlyPublishedVersion(TestConstants.TEST_STUDY,
+                SURVEY_GUID);
+        surveyDao.getCachedSurveyMostRecentlyPublishedVersion(TestConstants.TEST_STUDY, SURVEY_GUID);
+
+        surveyDao.publishSurvey(TestConstants.TEST_STUDY, survey, SURVEY_KEY, true);
+        surveyDao.getCachedSurveyMostRecentlyPublishedVersion(TestConstants.TEST_STUDY, SURVEY_GUID);
+
+        verify(surveyDao, times(2)).getSurveyMostRecentlyPublishedVersion(TestConstants.TEST_STUDY, SURVEY_GUID);
+    }
+
+    @Test
+    public void deleteSurveyInvalidatesMostRecentlyPublishedVersion() {
+        survey.setPublished(true);
+        doNothing().when(surveyDao).deleteAllElements(SURVEY_GUID, SURVEY_CREATED_ON);
+        doReturn(survey).when(surveyDao).getSurveyMostRecentlyPublishedVersion(TestConstants.TEST_STUDY,
+                SURVEY_GUID);
+        surveyDao.getCachedSurveyMostRecentlyPublishedVersion(TestConstants.TEST_STUDY, SURVEY_GUID);
+
+        surveyDao.deleteSurvey(survey);
+        surveyDao.getCachedSurveyMostRecentlyPublishedVersion(TestConstants.TEST_STUDY, SURVEY_GUID);
+
+        verify(surveyDao, times(2)).getSurveyMostRecentlyPublishedVersion(TestConstants.TEST_STUDY, SURVEY_GUID);
+    }
+
+    @Test
+    public void deleteSurveyPermanentlyInvalidatesCachedSurvey() {
+        survey.setPublished(true);
+        doNothing().when(surveyDao).deleteAllElements(SURVEY_GUID, SURVEY_CREATED_ON);
+
+        surveyDao.getCachedSurvey(SURVEY_KEY);
+        surveyDao.deleteSurveyPermanently(SURVEY_KEY);
+        surveyDao.getCachedSurvey(SURVEY_KEY);
+
+        // Once for each cache miss, and once in deleteSurveyPermanently()
+        verify(surveyDao, times(3)).getSurvey(SURVEY_KEY);
+    }
 }
@@ -8,10 +8,13 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.sagebionetworks.bridge.TestConstants.TEST_STUDY;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -287,6 +290,33 @@ public class DynamoUploadDaoMockTest {
         assertEquals(30000, page.getItems().get(1).getRequestedOn());
     }
 
+    @Test
+    public void deleteUploadsForHealthCodeInBatches() {
+        // One more upload than fits in a batch.
+        List<Upload> uploadKeys = new ArrayList<>();
+        for (int i = 0; i <= DynamoUploadDao.DELETE_BATCH_SIZE; i++) {
+            uploadKeys.add(new DynamoUpload2());
+        }
+        when(mockIndexHelper.<Upload>iterateKeys(DynamoUpload2.class, "healthCode", "fakeHealthCode", null)).thenReturn(
+                uploadKeys.iterator());
+
+        dao.deleteUploadsForHealthCode("fakeHealthCode");
+
+        verify(mockMapper, times(2)).batchDelete(uploadListCaptor.capture());
+        assertEquals(DynamoUploadDao.DELETE_BATCH_SIZE, uploadListCaptor.getAllValues().get(0).size());
+        assertEquals(1, uploadListCaptor.getAllValues().get(1).size());
+    }
+
+    @Test
+    public void deleteUploadsForHealthCodeWithNoUploads() {
+        when(mockIndexHelper.<Upload>iterateKeys(DynamoUpload2.class, "healthCode", "fakeHealthCode", null)).thenReturn(
+                Collections.<Upload>emptyIterator());
+
+        dao.deleteUploadsForHealthCode("fakeHealthCode");
+
+        verify(mockMapper, never()).batchDelete(any(List.class));
+    }
+
     private static UploadRequest createUploadRequest() {
         final String text = "test upload dao";
         ObjectNode node = JsonNodeFactory.instance.objectNode();
@@ -1,18 +1,24 @@
 package org.sagebionetworks.bridge.hibernate;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
@@ -32,7 +38,9 @@ import org.mockito.ArgumentCaptor;
 
 import org.sagebionetworks.bridge.Roles;
 import org.sagebionetworks.bridge.TestConstants;
+import org.sagebionetworks.bridge.config.BridgeConfig;
 import org.sagebionetworks.bridge.exceptions.AccountDisabledException;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.sagebionetworks.bridge.exceptions.ConcurrentModificationException;
 import org.sagebionetworks.bridge.exceptions.EntityAlreadyExistsException;
@@ -347,6 +355,7 @@ public class HibernateAccountDaoTest {
         assertEquals(MOCK_NOW_MILLIS, createdHibernateAccount.getModifiedOn().longValue());
         assertEquals(MOCK_NOW_MILLIS, createdHibernateAccount.getPasswordModifiedOn().longValue());
         assertEquals(AccountStatus.ENABLED, createdHibernateAccount.getStatus());
+        assertEquals(HibernateAccountDao.getEmailTokens(EMAIL), createdHibernateAccount.getEmailTokens());
 
         // don't call sendEmailVerificationToken
         verify(mockAccountWorkflowService, never()).sendEmailVerificationToken(any(), any(), any());
@@ -445,6 +454,8 @@ public class HibernateAccountDaoTest {
         assertEquals(1234, updatedHibernateAccount.getCreatedOn().longValue());
         assertEquals(5678, updatedHibernateAccount.getPasswordModifiedOn().longValue());
         assertEquals(MOCK_NOW_MILLIS, updatedHibernateAccount.getModifiedOn().longValue());
+        assertEquals(HibernateAccountDao.getEmailTokens("persisted@example.com"),
+                updatedHibernateAccount.getEmailTokens());
     }
 
     @Test
@@ -615,8 +626,47 @@ public class HibernateAccountDaoTest {
         assertEquals(TestConstants.TEST_STUDY, accountSummaryList.get(1).getStudyIdentifier());
         assertEquals("email2@example.com", accountSummaryList.get(1).getEmail());
 
-        // verify hibernate call
-        verify(mockHibernateHelper).queryGet("from HibernateAccount", null, null, HibernateAccount.class);
+        // verify hibernate call - the first page is short, so there's no second query
+        verify(mockHibernateHelper).queryGet(HibernateAccountDao.ACCOUNT_SUMMARY_QUERY_PREFIX + " order by id", null,
+                HibernateAccountDao.ACCOUNT_ITERATOR_PAGE_SIZE, HibernateAccount.class);
+        verifyNoMoreInteractions(mockHibernateHelper);
+    }
+
+    @Test
+    public void getAllReadsPagesAfterLastId() throws Exception {
+        // mock hibernate - a full first page, then a page with one account
+        List<HibernateAccount> firstPage = new ArrayList<>();
+        for (int i = 0; i < HibernateAccountDao.ACCOUNT_ITERATOR_PAGE_SIZE; i++) {
+            HibernateAccount hibernateAccount = makeValidHibernateAccount(false);
+            hibernateAccount.setId(String.format("account-%04d", i));
+            firstPage.add(hibernateAccount);
+        }
+        HibernateAccount lastAccount = makeValidHibernateAccount(false);
+        lastAccount.setId("account-9999");
+
+        String lastIdOfFirstPage = firstPage.get(firstPage.size() - 1).getId();
+        String firstQuery = HibernateAccountDao.ACCOUNT_SUMMARY_QUERY_PREFIX + " where studyId='" +
+                TestConstants.TEST_STUDY_IDENTIFIER + "' order by id";
+        String secondQuery = HibernateAccountDao.ACCOUNT_SUMMARY_QUERY_PREFIX + " where studyId='" +
+                TestConstants.TEST_STUDY_IDENTIFIER + "' and id > '" + lastIdOfFirstPage + "' order by id";
+        when(mockHibernateHelper.queryGet(eq(firstQuery), any(), any(), any())).thenReturn(firstPage);
+        when(mockHibernateHelper.queryGet(eq(secondQuery), any(), any(), any())).thenReturn(
+                ImmutableList.of(lastAccount));
+
+        // execute and validate - pages are only read as the iterator gets to them
+        Iterator<AccountSummary> accountSummaryIter = dao.getStudyAccounts(STUDY);
+        verifyZeroInteractions(mockHibernateHelper);
+
+        List<AccountSummary> accountSummaryList = ImmutableList.copyOf(accountSummaryIter);
+        assertEquals(HibernateAccountDao.ACCOUNT_ITERATOR_PAGE_SIZE + 1, accountSummaryList.size());
+        assertEquals("account-9999", accountSummaryList.get(accountSummaryList.size() - 1).getId());
+        assertFalse(accountSummaryIter.hasNext());
+
+        verify(mockHibernateHelper).queryGet(firstQuery, null, HibernateAccountDao.ACCOUNT_ITERATOR_PAGE_SIZE,
+                HibernateAccount.class);
+        verify(mockHibernateHelper).queryGet(secondQuery, null, HibernateAccountDao.ACCOUNT_ITERATOR_PAGE_SIZE,
+                HibernateAccount.class);
+        verifyNoMoreInteractions(mockHibernateHelper);
     }
 
     @Test
@@ -647,8 +697,9 @@ public class HibernateAccountDaoTest {
         assertEquals("email2@example.com", accountSummaryList.get(1).getEmail());
 
         // verify hibernate call
-        verify(mockHibernateHelper).queryGet("from HibernateAccount where studyId='" +
-                TestConstants.TEST_STUDY_IDENTIFIER + "'", null, null, HibernateAccount.class);
+        verify(mockHibernateHelper).queryGet(HibernateAccountDao.ACCOUNT_SUMMARY_QUERY_PREFIX + " where studyId='" +
+                TestConstants.TEST_STUDY_IDENTIFIER + "' order by id", null,
+                HibernateAccountDao.ACCOUNT_ITERATOR_PAGE_SIZE, HibernateAccount.class);
     }
 
     @Test
@@ -667,12 +718,13 @@ public class HibernateAccountDaoTest {
         when(mockHibernateHelper.queryCount(any())).thenReturn(12);
 
         // execute and validate
-        PagedResourceList<AccountSummary> accountSummaryResourceList = dao.getPagedAccountSummaries(STUDY, 10, 5,
-                null, null, null);
+        PagedResourceList<AccountSummary> accountSummaryResourceList = dao.getPagedAccountSummaries(STUDY, 10, null,
+                5, null, null, null);
         assertEquals(10, accountSummaryResourceList.getOffsetBy().intValue());
         assertEquals(5, accountSummaryResourceList.getPageSize());
         assertEquals(12, accountSummaryResourceList.getTotal());
 
+        // Partial page, so there is no next page.
         Map<String, String> filterMap = accountSummaryResourceList.getFilters();
         assertTrue(filterMap.isEmpty());
 
@@ -689,14 +741,107 @@ public class HibernateAccountDaoTest {
         assertEquals("email2@example.com", accountSummaryList.get(1).getEmail());
 
         // verify hibernate calls
-        String expectedQueryString = "from HibernateAccount where studyId='" + TestConstants.TEST_STUDY_IDENTIFIER +
-                "'";
-        verify(mockHibernateHelper).queryGet(expectedQueryString, 10, 5, HibernateAccount.class);
-        verify(mockHibernateHelper).queryCount(expectedQueryString);
+        String expectedWhereClause = " where studyId='" + TestConstants.TEST_STUDY_IDENTIFIER + "'";
+        verify(mockHibernateHelper).queryGet(HibernateAccountDao.ACCOUNT_SUMMARY_QUERY_PREFIX + expectedWhereClause +
+                " order by createdOn, id", 10, 5, HibernateAccount.class);
+        verify(mockHibernateHelper).queryCount("from HibernateAccount" + expectedWhereClause);
+    }
+
+    @Test
+    public void getPagedFullPageReturnsOffsetKey() throws Exception {
+        HibernateAccount hibernateAccount = makeValidHibernateAccount(false);
+        hibernateAccount.setCreatedOn(MOCK_NOW_MILLIS);
+        when(mockHibernateHelper.queryGet(any(), any(), any(), any())).thenReturn(ImmutableList.of(
+                hibernateAccount));
+        when(mockHibernateHelper.queryCount(any())).thenReturn(12);
+
+        PagedResourceList<AccountSummary> accountSummaryResourceList = dao.getPagedAccountSummaries(STUDY, 0, null, 1,
+                null, null, null);
+        assertEquals(MOCK_NOW_MILLIS + ":" + ACCOUNT_ID, accountSummaryResourceList.getFilters().get("offsetKey"));
+    }
+
+    @Test
+    public void getPagedWithOffsetKey() throws Exception {
+        when(mockHibernateHelper.queryGet(any(), any(), any(), any())).thenReturn(ImmutableList.of(
+                makeValidHibernateAccount(false)));
+        when(mockHibernateHelper.queryCount(any())).thenReturn(12);
+
+        PagedResourceList<AccountSummary> accountSummaryResourceList = dao.getPagedAccountSummaries(STUDY, 0,
+                MOCK_NOW_MILLIS + ":" + ACCOUNT_ID, 5, null, null, null);
+        assertNull(accountSummaryResourceList.getOffsetBy());
+        assertEquals(12, accountSummaryResourceList.getTotal());
+
+        // The page starts after the account in the offset key, rather than at an offset.
+        verify(mockHibernateHelper).queryGet(HibernateAccountDao.ACCOUNT_SUMMARY_QUERY_PREFIX + " where studyId='" +
+                TestConstants.TEST_STUDY_IDENTIFIER + "' and (createdOn > " + MOCK_NOW_MILLIS + " or (createdOn = " +
+                MOCK_NOW_MILLIS + " and id > '" + ACCOUNT_ID + "')) order by createdOn, id", null, 5,
+                HibernateAccount.class);
+    }
+
+    @Test
+    public void getPagedFullPageWithoutCreatedOnReturnsOffsetKey() throws Exception {
+        HibernateAccount hibernateAccount = makeValidHibernateAccount(false);
+        hibernateAccount.setCreatedOn(null);
+        when(mockHibernateHelper.queryGet(any(), any(), any(), any())).thenReturn(ImmutableList.of(
+                hibernateAccount));
+        when(mockHibernateHelper.queryCount(any())).thenReturn(12);
+
+        PagedResourceList<AccountSummary> accountSummaryResourceList = dao.getPagedAccountSummaries(STUDY, 0, null, 1,
+                null, null, null);
+        assertEquals(":" + ACCOUNT_ID, accountSummaryResourceList.getFilters().get("offsetKey"));
+    }
+
+    @Test
+    public void getPagedWithOffsetKeyWithoutCreatedOn() throws Exception {
+        when(mockHibernateHelper.queryGet(any(), any(), any(), any())).thenReturn(ImmutableList.of(
+                makeValidHibernateAccount(false)));
+        when(mockHibernateHelper.queryCount(any())).thenReturn(12);
+
+        dao.getPagedAccountSummaries(STUDY, 0, ":" + ACCOUNT_ID, 5, null, null, null);
+
+        // Accounts without createdOn sort first, so the page continues through them, then to all the others.
+        verify(mockHibernateHelper).queryGet(HibernateAccountDao.ACCOUNT_SUMMARY_QUERY_PREFIX + " where studyId='" +
+                TestConstants.TEST_STUDY_IDENTIFIER + "' and (createdOn is not null or id > '" + ACCOUNT_ID +
+                "') order by createdOn, id", null, 5, HibernateAccount.class);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void getPagedWithInvalidOffsetKey() {
+        dao.getPagedAccountSummaries(STUDY, 0, "1000:' or '1'='1", 5, null, null, null);
+    }
+
+    @Test
+    public void getPagedCachesCount() throws Exception {
+        when(mockHibernateHelper.queryGet(any(), any(), any(), any())).thenReturn(ImmutableList.of(
+                makeValidHibernateAccount(false)));
+        when(mockHibernateHelper.queryCount(any())).thenReturn(12);
+
+        dao.getPagedAccountSummaries(STUDY, 0, null, 5, null, null, null);
+        PagedResourceList<AccountSummary> accountSummaryResourceList = dao.getPagedAccountSummaries(STUDY, 5, null,
+                5, null, null, null);
+        assertEquals(12, accountSummaryResourceList.getTotal());
+        verify(mockHibernateHelper, times(1)).queryCount(any());
+
+        // Deleting an account in the study drops the cached count.
+        dao.deleteAccount(STUDY, ACCOUNT_ID);
+        dao.getPagedAccountSummaries(STUDY, 0, null, 5, null, null, null);
+        verify(mockHibernateHelper, times(2)).queryCount(any());
+    }
+
+    @Test
+    public void getStudyAccountCountIsNotCached() throws Exception {
+        when(mockHibernateHelper.queryCount(any())).thenReturn(12);
+
+        assertEquals(12, dao.getStudyAccountCount(STUDY));
+        assertEquals(12, dao.getStudyAccountCount(STUDY));
+        verify(mockHibernateHelper, times(2)).queryCount("from HibernateAccount where studyId='" +
+                TestConstants.TEST_STUDY_IDENTIFIER + "'");
     }
 
     @Test
     public void getPagedWithOptionalParams() throws Exception {
+        enableEmailTokenSearch();
+
         // Setup start and end dates.
         DateTime startDate = DateTime.parse("2017-05-19T11:40:06.247-0700");
         DateTime endDate = DateTime.parse("2017-05-19T18:32:03.434-0700");
@@ -707,8 +852,8 @@ public class HibernateAccountDaoTest {
         when(mockHibernateHelper.queryCount(any())).thenReturn(11);
 
         // execute and validate - Just validate filters and query, since everything else is tested in getPaged().
-        PagedResourceList<AccountSummary> accountSummaryResourceList = dao.getPagedAccountSummaries(STUDY, 10, 5,
-                EMAIL, startDate, endDate);
+        PagedResourceList<AccountSummary> accountSummaryResourceList = dao.getPagedAccountSummaries(STUDY, 10, null,
+                5, EMAIL, startDate, endDate);
 
         Map<String, String> filterMap = accountSummaryResourceList.getFilters();
         assertEquals(3, filterMap.size());
@@ -717,11 +862,58 @@ public class HibernateAccountDaoTest {
         assertEquals(endDate.toString(), filterMap.get("endDate"));
 
         // verify hibernate calls
-        String expectedQueryString = "from HibernateAccount where studyId='" + TestConstants.TEST_STUDY_IDENTIFIER +
-                "' and email like '%" + EMAIL + "%' and createdOn >= " + startDate.getMillis() + " and createdOn <= " +
-                endDate.getMillis();
-        verify(mockHibernateHelper).queryGet(expectedQueryString, 10, 5, HibernateAccount.class);
-        verify(mockHibernateHelper).queryCount(expectedQueryString);
+        String expectedWhereClause = " where studyId='" + TestConstants.TEST_STUDY_IDENTIFIER + "'" +
+                makeEmailTokenCondition("egg") + makeEmailTokenCondition("pla") + makeEmailTokenCondition("ant") +
+                " and email like '%" + EMAIL + "%' and createdOn >= " +
+                startDate.getMillis() + " and createdOn <= " + endDate.getMillis();
+        verify(mockHibernateHelper).queryGet(HibernateAccountDao.ACCOUNT_SUMMARY_QUERY_PREFIX + expectedWhereClause +
+                " order by createdOn, id", 10, 5, HibernateAccount.class);
+        verify(mockHibernateHelper).queryCount("from HibernateAccount" + expectedWhereClause);
+    }
+
+    @Test
+    public void getPagedWithEmailTokenSearchDisabled() throws Exception {
+        when(mockHibernateHelper.queryGet(any(), any(), any(), any())).thenReturn(ImmutableList.of());
+
+        // Until the email tokens are backfilled, email filters only use the like condition.
+        dao.getPagedAccountSummaries(STUDY, 0, null, 5, EMAIL, null, null);
+        verify(mockHibernateHelper).queryCount("from HibernateAccount where studyId='" +
+                TestConstants.TEST_STUDY_IDENTIFIER + "' and email like '%" + EMAIL + "%'");
+    }
+
+    @Test
+    public void getPagedWithShortEmailFilter() throws Exception {
+        enableEmailTokenSearch();
+        when(mockHibernateHelper.queryGet(any(), any(), any(), any())).thenReturn(ImmutableList.of());
+
+        // Filters shorter than a token can't use the email tokens, so they only use the like condition.
+        dao.getPagedAccountSummaries(STUDY, 0, null, 5, "eg", null, null);
+        verify(mockHibernateHelper).queryCount("from HibernateAccount where studyId='" +
+                TestConstants.TEST_STUDY_IDENTIFIER + "' and email like '%eg%'");
+    }
+
+    @Test
+    public void getEmailTokens() {
+        assertEquals(ImmutableSet.of("abc", "bcd", "cd@", "d@x", "@x.", "x.o", ".or", "org"),
+                HibernateAccountDao.getEmailTokens("ABCd@x.org"));
+        assertTrue(HibernateAccountDao.getEmailTokens("ab").isEmpty());
+        assertTrue(HibernateAccountDao.getEmailTokens(null).isEmpty());
+    }
+
+    @Test
+    public void getEmailFilterTokens() {
+        // Non-overlapping tokens, then the token at the end.
+        assertEquals(ImmutableList.of("abc", "def", "efg"), HibernateAccountDao.getEmailFilterTokens("ABCdefg"));
+        assertEquals(ImmutableList.of("abc", "def"), HibernateAccountDao.getEmailFilterTokens("abcdef"));
+        assertEquals(ImmutableList.of("abc", "def", "ghi", "jkl"),
+                HibernateAccountDao.getEmailFilterTokens("abcdefghijklmn"));
+        assertTrue(HibernateAccountDao.getEmailFilterTokens("ab").isEmpty());
+
+        // Only the part before the "@" is used, since domain tokens are shared by most accounts.
+        assertEquals(ImmutableList.of("abc", "def"), HibernateAccountDao.getEmailFilterTokens("abcdef@example.com"));
+        assertEquals(ImmutableList.of("abc", "bcd"), HibernateAccountDao.getEmailFilterTokens("abcd@"));
+        assertTrue(HibernateAccountDao.getEmailFilterTokens("ab@example.com").isEmpty());
+        assertTrue(HibernateAccountDao.getEmailFilterTokens("@example.com").isEmpty());
     }
 
     @Test
@@ -1013,7 +1205,20 @@ public class HibernateAccountDaoTest {
         return genericAccount;
     }
 
+    private void enableEmailTokenSearch() {
+        BridgeConfig mockConfig = mock(BridgeConfig.class);
+        when(mockConfig.get(HibernateAccountDao.EMAIL_TOKEN_SEARCH_ENABLED_PROPERTY)).thenReturn("true");
+        dao.setBridgeConfig(mockConfig);
+    }
+
+    private static String makeEmailTokenCondition(String token) {
+        return " and id in (select tokenAccount.id from HibernateAccount tokenAccount join tokenAccount.emailTokens " +
+                "token where tokenAccount.studyId='" + TestConstants.TEST_STUDY_IDENTIFIER + "' and token='" + token +
+                "')";
+    }
+
     // Create minimal Hibernate account for everything that will be used by HibernateAccountDao.
+
     private static HibernateAccount makeValidHibernateAccount(boolean generatePasswordHash) throws Exception {
         HibernateAccount hibernateAccount = new HibernateAccount();
         hibernateAccount.setId(ACCOUNT_ID);
@@ -2,14 +2,18 @@ package org.sagebionetworks.bridge.models.schedules;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import nl.jqno.equalsverifier.EqualsVerifier;
 import nl.jqno.equalsverifier.Warning;
 
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.joda.time.LocalTime;
 import org.joda.time.Period;
 import org.junit.Test;
+import org.quartz.CronExpression;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
 import org.sagebionetworks.bridge.models.surveys.Survey;
 import org.sagebionetworks.bridge.models.surveys.TestSurvey;
@@ -159,4 +163,31 @@ public class ScheduleTest {
         schedule.setDelay((Period)null);
         assertTrue(schedule.getPersistent());
     }
+    
+    @Test
+    public void eventIdsParsedAndResetOnChange() {
+        Schedule schedule = new Schedule();
+        assertTrue(schedule.getParsedEventIds().isEmpty());
+        
+        schedule.setEventId(" activity:AAA:finished , enrollment ");
+        assertEquals(Lists.newArrayList("activity:AAA:finished", "enrollment"), schedule.getParsedEventIds());
+        
+        schedule.setEventId("enrollment");
+        assertEquals(Lists.newArrayList("enrollment"), schedule.getParsedEventIds());
+    }
+    
+    @Test
+    public void cronExpressionParsedAndResetOnChange() {
+        Schedule schedule = new Schedule();
+        assertNull(schedule.getParsedCronExpression());
+        
+        schedule.setCronTrigger("0 0 8 ? * TUE *");
+        CronExpression expression = schedule.getParsedCronExpression();
+        assertEquals("0 0 8 ? * TUE *", expression.getCronExpression());
+        assertEquals(DateTimeZone.UTC.toTimeZone(), expression.getTimeZone());
+        assertSame(expression, schedule.getParsedCronExpression());
+        
+        schedule.setCronTrigger("0 0 10 ? * MON *");
+        assertEquals("0 0 10 ? * MON *", schedule.getParsedCronExpression().getCronExpression());
+    }
 }
@@ -6,12 +6,17 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.sagebionetworks.bridge.TestUtils;
+import org.sagebionetworks.bridge.dynamodb.DynamoHealthDataRecord;
+import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
 import org.sagebionetworks.bridge.models.accounts.UserSession;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecord;
 import org.sagebionetworks.bridge.models.healthdata.RecordExportStatusRequest;
 import org.sagebionetworks.bridge.services.HealthDataService;
 import play.mvc.Result;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableList;
+
 import java.util.Arrays;
 
 import static org.junit.Assert.assertEquals;
@@ -79,4 +84,28 @@ public class HealthDataControllerTest {
         // finally, verify the return result
         TestUtils.assertResult(result, 200, "Update exporter status to: " + Arrays.asList(TEST_RECORD_ID) + " complete.");
     }
+
+    @Test
+    public void getRecordsForUploadDate() throws Exception {
+        TestUtils.mockPlayContext();
+        ForwardCursorPagedResourceList<HealthDataRecord> page = new ForwardCursorPagedResourceList<>(
+                ImmutableList.of(makeRecord("record-1")), "record-1", 20);
+        when(healthDataService.getRecordsForUploadDate("2017-05-19", "record-0", 20)).thenReturn(page);
+
+        HealthDataController controller = spy(new HealthDataController());
+        controller.setHealthDataService(healthDataService);
+        doReturn(new UserSession()).when(controller).getAuthenticatedSession(anyVararg());
+
+        Result result = controller.getRecordsForUploadDate("2017-05-19", "record-0", "20");
+        assertEquals(200, result.status());
+
+        JsonNode node = TestUtils.getJson(result);
+        assertEquals("record-1", node.get("offsetKey").textValue());
+        assertEquals("record-1", node.get("items").get(0).get("id").textValue());
+    }
+
+    private static HealthDataRecord makeRecord(String id) {
+        return new DynamoHealthDataRecord.Builder().withId(id).withHealthCode("healthCode")
+                .withSchemaId("schema").withSchemaRevision(1).withStudyId("study").build();
+    }
 }
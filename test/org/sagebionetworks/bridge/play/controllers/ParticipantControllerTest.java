@@ -176,7 +176,7 @@ public class ParticipantControllerTest {
         
         when(authService.getSession(eq(study), any())).thenReturn(session);
         
-        when(mockParticipantService.getPagedAccountSummaries(eq(study), anyInt(), anyInt(), any(), any(), any())).thenReturn(page);
+        when(mockParticipantService.getPagedAccountSummaries(eq(study), anyInt(), any(), anyInt(), any(), any(), any())).thenReturn(page);
         
         controller.setParticipantService(mockParticipantService);
         controller.setStudyService(mockStudyService);
@@ -196,7 +196,7 @@ public class ParticipantControllerTest {
     public void getParticipants() throws Exception {
         DateTime start = DateTime.now();
         DateTime end = DateTime.now();
-        Result result = controller.getParticipants("10", "20", "foo", start.toString(), end.toString());
+        Result result = controller.getParticipants("10", null, "20", "foo", start.toString(), end.toString());
         PagedResourceList<AccountSummary> page = resultToPage(result);
         
         // verify the result contains items
@@ -211,7 +211,7 @@ public class ParticipantControllerTest {
         
         // DateTime instances don't seem to be equal unless you use the library's equality methods, which
         // verification does not do. So capture and compare that way.
-        verify(mockParticipantService).getPagedAccountSummaries(eq(study), eq(10), eq(20), eq("foo"),
+        verify(mockParticipantService).getPagedAccountSummaries(eq(study), eq(10), eq(null), eq(20), eq("foo"),
                 startTimeCaptor.capture(), endTimeCaptor.capture());
         assertEquals(start.toString(), startTimeCaptor.getValue().toString());
         assertEquals(end.toString(), endTimeCaptor.getValue().toString());
@@ -219,10 +219,10 @@ public class ParticipantControllerTest {
     
     @Test(expected = BadRequestException.class)
     public void oddParametersUseDefaults() throws Exception {
-        controller.getParticipants("asdf", "qwer", null, null, null);
+        controller.getParticipants("asdf", null, "qwer", null, null, null);
         
         // paging with defaults
-        verify(mockParticipantService).getPagedAccountSummaries(study, 0, API_DEFAULT_PAGE_SIZE, null, null, null);
+        verify(mockParticipantService).getPagedAccountSummaries(study, 0, null, API_DEFAULT_PAGE_SIZE, null, null, null);
     }
 
     @Test
@@ -300,10 +300,17 @@ public class ParticipantControllerTest {
     
     @Test
     public void nullParametersUseDefaults() throws Exception {
-        controller.getParticipants(null, null, null, null, null);
+        controller.getParticipants(null, null, null, null, null, null);
 
         // paging with defaults
-        verify(mockParticipantService).getPagedAccountSummaries(study, 0, API_DEFAULT_PAGE_SIZE, null, null, null);
+        verify(mockParticipantService).getPagedAccountSummaries(study, 0, null, API_DEFAULT_PAGE_SIZE, null, null, null);
+    }
+    
+    @Test
+    public void getParticipantsWithOffsetKey() throws Exception {
+        controller.getParticipants(null, "1000:userId", "20", null, null, null);
+
+        verify(mockParticipantService).getPagedAccountSummaries(study, 0, "1000:userId", 20, null, null, null);
     }
     
     @Test
@@ -718,7 +725,8 @@ public class ParticipantControllerTest {
         DateTime start = DateTime.now();
         DateTime end = DateTime.now();
         
-        controller.getParticipantsForWorker(study.getIdentifier(), "10", "20", "foo", start.toString(), end.toString());
+        controller.getParticipantsForWorker(study.getIdentifier(), "10", null, "20", "foo", start.toString(),
+                end.toString());
     }
     
     @Test(expected = UnauthorizedException.class)
@@ -735,7 +743,8 @@ public class ParticipantControllerTest {
         
         when(mockStudyService.getStudy(study.getIdentifier())).thenReturn(study);
         
-        Result result = controller.getParticipantsForWorker(study.getIdentifier(), "10", "20", "foo", start.toString(), end.toString());
+        Result result = controller.getParticipantsForWorker(study.getIdentifier(), "10", null, "20", "foo", start.toString(),
+                end.toString());
         PagedResourceList<AccountSummary> page = resultToPage(result);
         
         // verify the result contains items
@@ -750,7 +759,7 @@ public class ParticipantControllerTest {
         
         // DateTime instances don't seem to be equal unless you use the library's equality methods, which
         // verification does not do. So capture and compare that way.
-        verify(mockParticipantService).getPagedAccountSummaries(eq(study), eq(10), eq(20), eq("foo"),
+        verify(mockParticipantService).getPagedAccountSummaries(eq(study), eq(10), eq(null), eq(20), eq("foo"),
                 startTimeCaptor.capture(), endTimeCaptor.capture());
         assertEquals(start.toString(), startTimeCaptor.getValue().toString());
         assertEquals(end.toString(), endTimeCaptor.getValue().toString());
@@ -33,6 +33,7 @@ import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.exceptions.UnauthorizedException;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
 import org.sagebionetworks.bridge.models.DateRangeResourceList;
+import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
 import org.sagebionetworks.bridge.models.ReportTypeResourceList;
 import org.sagebionetworks.bridge.models.accounts.Account;
 import org.sagebionetworks.bridge.models.accounts.ConsentStatus;
@@ -97,6 +98,12 @@ public class ReportControllerTest {
     @Captor
     ArgumentCaptor<ReportIndex> reportDataIndex;
     
+    @Captor
+    ArgumentCaptor<List<ReportData>> reportDataListCaptor;
+    
+    @Captor
+    ArgumentCaptor<Map<String, List<ReportData>>> reportDataMapCaptor;
+    
     ReportController controller;
     
     UserSession session;
@@ -199,6 +206,44 @@ public class ReportControllerTest {
         assertResult(result);
     }
     
+    @Test
+    public void getParticipantReportDataV4() throws Exception {
+        setupContext();
+        doReturn(makePage("2015-02-12")).when(mockReportService).getParticipantReportV4(session.getStudyIdentifier(),
+                REPORT_ID, HEALTH_CODE, START_DATE, END_DATE, "2015-01-31", 20);
+        
+        Result result = controller.getParticipantReportV4(REPORT_ID, START_DATE.toString(), END_DATE.toString(),
+                "2015-01-31", 20);
+        assertEquals(200, result.status());
+        assertPageResult(result);
+    }
+    
+    @Test
+    public void getParticipantReportDataForResearcherV4() throws Exception {
+        StudyParticipant participant = new StudyParticipant.Builder().withHealthCode(HEALTH_CODE)
+                .withRoles(Sets.newHashSet(Roles.RESEARCHER)).build();
+        session.setParticipant(participant);
+        doReturn(session).when(controller).getAuthenticatedSession(Roles.RESEARCHER);
+        doReturn(makePage("2015-02-12")).when(mockReportService).getParticipantReportV4(session.getStudyIdentifier(),
+                REPORT_ID, OTHER_PARTICIPANT_HEALTH_CODE, START_DATE, END_DATE, null, null);
+        
+        Result result = controller.getParticipantReportForResearcherV4(OTHER_PARTICIPANT_ID, REPORT_ID,
+                START_DATE.toString(), END_DATE.toString(), null, null);
+        assertEquals(200, result.status());
+        assertPageResult(result);
+    }
+    
+    @Test
+    public void getStudyReportDataV4() throws Exception {
+        setupContext();
+        doReturn(makePage("2015-02-12")).when(mockReportService).getStudyReportV4(session.getStudyIdentifier(),
+                REPORT_ID, START_DATE, END_DATE, null, 20);
+        
+        Result result = controller.getStudyReportV4(REPORT_ID, START_DATE.toString(), END_DATE.toString(), null, 20);
+        assertEquals(200, result.status());
+        assertPageResult(result);
+    }
+    
     @Test
     public void getStudyReportIndexAsDeveloper() throws Exception {
         // Developer is set up in the @Before method, no further changes necessary
@@ -349,6 +394,70 @@ public class ReportControllerTest {
         assertEquals("Name", reportData.getData().get("field2").asText());
     }
 
+    @Test
+    public void saveStudyReports() throws Exception {
+        String json = TestUtils.createJson("[{'date':'2015-02-12','data':{'field1':'First'}},"+
+                "{'date':'2015-02-13','data':{'field1':'Last'}}]");
+        TestUtils.mockPlayContextWithJson(json);
+        
+        Result result = controller.saveStudyReports(REPORT_ID);
+        TestUtils.assertResult(result, 201, "Report data saved.");
+        
+        verify(mockReportService).saveStudyReports(eq(TEST_STUDY), eq(REPORT_ID), reportDataListCaptor.capture());
+        List<ReportData> reportDataList = reportDataListCaptor.getValue();
+        assertEquals(2, reportDataList.size());
+        assertEquals("2015-02-12", reportDataList.get(0).getDate().toString());
+        assertEquals("First", reportDataList.get(0).getData().get("field1").asText());
+        assertEquals("2015-02-13", reportDataList.get(1).getDate().toString());
+        assertNull(reportDataList.get(1).getKey());
+    }
+    
+    @Test(expected = BadRequestException.class)
+    public void saveStudyReportsRequiresArray() throws Exception {
+        String json = TestUtils.createJson("{'date':'2015-02-12','data':{'field1':'First'}}");
+        TestUtils.mockPlayContextWithJson(json);
+        
+        controller.saveStudyReports(REPORT_ID);
+    }
+    
+    @Test
+    public void saveParticipantReportsForWorker() throws Exception {
+        String json = TestUtils.createJson("[{'healthCode':'"+OTHER_PARTICIPANT_HEALTH_CODE+"','date':'2015-02-12','data':['A']},"+
+                "{'healthCode':'"+HEALTH_CODE+"','date':'2015-02-12','data':['B']},"+
+                "{'healthCode':'"+OTHER_PARTICIPANT_HEALTH_CODE+"','date':'2015-02-13','data':['C']}]");
+        TestUtils.mockPlayContextWithJson(json);
+        
+        Result result = controller.saveParticipantReportsForWorker(REPORT_ID);
+        TestUtils.assertResult(result, 201, "Report data saved.");
+        
+        verify(mockReportService).saveParticipantReports(eq(TEST_STUDY), eq(REPORT_ID), reportDataMapCaptor.capture());
+        Map<String, List<ReportData>> map = reportDataMapCaptor.getValue();
+        assertEquals(2, map.size());
+        
+        List<ReportData> otherList = map.get(OTHER_PARTICIPANT_HEALTH_CODE);
+        assertEquals(2, otherList.size());
+        assertEquals("A", otherList.get(0).getData().get(0).asText());
+        assertEquals("2015-02-13", otherList.get(1).getDate().toString());
+        assertNull(otherList.get(1).getKey());
+        
+        List<ReportData> list = map.get(HEALTH_CODE);
+        assertEquals(1, list.size());
+        assertEquals("B", list.get(0).getData().get(0).asText());
+    }
+    
+    @Test
+    public void saveParticipantReportsForWorkerRequiresHealthCode() throws Exception {
+        String json = TestUtils.createJson("[{'healthCode':'"+HEALTH_CODE+"','date':'2015-02-12','data':['A']},"+
+                "{'date':'2015-02-12','data':['B']}]");
+        TestUtils.mockPlayContextWithJson(json);
+        try {
+            controller.saveParticipantReportsForWorker(REPORT_ID);
+        } catch(BadRequestException e) {
+            assertEquals("A health code is required to save report data.", e.getMessage());
+            verifyNoMoreInteractions(mockReportService);
+        }
+    }
+
     @Test
     public void saveStudyReportForSpecifiedStudyData() throws Exception {
         String json = TestUtils.createJson("{'date':'2015-02-12','data':{'field1':'Last','field2':'Name'}}");
@@ -555,6 +664,20 @@ public class ReportControllerTest {
         assertEquals("Name", child2Data.get("field2").asText());
     }
     
+    private void assertPageResult(Result result) throws Exception {
+        JsonNode node = BridgeObjectMapper.get().readTree(Helpers.contentAsString(result));
+        assertEquals("2015-02-12", node.get("offsetKey").asText());
+        assertTrue(node.get("hasNext").asBoolean());
+        assertEquals(20, node.get("pageSize").asInt());
+        assertEquals(2, node.get("items").size());
+        assertEquals("2015-02-10", node.get("items").get(0).get("date").asText());
+        assertEquals("Last", node.get("items").get(1).get("data").get("field1").asText());
+    }
+    
+    private ForwardCursorPagedResourceList<ReportData> makePage(String offsetKey) {
+        return new ForwardCursorPagedResourceList<>(makeResults(START_DATE, END_DATE).getItems(), offsetKey, 20);
+    }
+    
     private DateRangeResourceList<ReportData> makeResults(LocalDate startDate, LocalDate endDate){
         List<ReportData> list = Lists.newArrayList();
         list.add(createReport(LocalDate.parse("2015-02-10"), "First", "Name"));
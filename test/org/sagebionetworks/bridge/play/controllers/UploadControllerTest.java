@@ -8,10 +8,12 @@ import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import java.net.URL;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import org.junit.Before;
@@ -43,6 +45,7 @@ import org.sagebionetworks.bridge.models.upload.UploadSession;
 import org.sagebionetworks.bridge.models.upload.UploadStatus;
 import org.sagebionetworks.bridge.models.upload.UploadValidationStatus;
 import org.sagebionetworks.bridge.services.UploadService;
+import org.sagebionetworks.bridge.services.UploadValidationService;
 
 @RunWith(MockitoJUnitRunner.class)
 public class UploadControllerTest {
@@ -55,6 +58,9 @@ public class UploadControllerTest {
     @Mock
     private UploadService uploadService;
     
+    @Mock
+    private UploadValidationService uploadValidationService;
+    
     @Mock
     private HealthCodeDao healthCodeDao;
     
@@ -85,6 +91,7 @@ public class UploadControllerTest {
     @Before
     public void before() {
         controller.setUploadService(uploadService);
+        controller.setUploadValidationService(uploadValidationService);
         controller.setHealthCodeDao(healthCodeDao);
         controller.setCacheProvider(cacheProvider);
         
@@ -189,6 +196,19 @@ public class UploadControllerTest {
         verify(uploadService, never()).uploadComplete(any(), any(), any());
     }
     
+    @Test
+    public void getValidationStats() throws Exception {
+        doReturn(researcherSession).when(controller).getAuthenticatedSession(Roles.ADMIN);
+        when(uploadValidationService.getValidationStats()).thenReturn(ImmutableMap.of("lanes",
+                ImmutableMap.of("interactive", ImmutableMap.of("queueDepth", 3))));
+        
+        Result result = controller.getValidationStats();
+        assertEquals(200, result.status());
+        
+        JsonNode node = BridgeObjectMapper.get().readTree(Helpers.contentAsString(result));
+        assertEquals(3, node.get("lanes").get("interactive").get("queueDepth").asInt());
+    }
+    
     @Test
     public void getValidationStatusWorks() throws Exception {
         doReturn(consentedUserSession).when(controller).getSessionEitherConsentedOrInRole(Roles.RESEARCHER);
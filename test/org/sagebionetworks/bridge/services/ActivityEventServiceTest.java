@@ -8,6 +8,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import java.util.List;
 import java.util.Map;
 
 import org.joda.time.DateTime;
@@ -174,4 +175,42 @@ public class ActivityEventServiceTest {
         assertEquals("activity:AAA:finished", event.getEventId());
         assertEquals(finishedOn, event.getTimestamp().longValue());
     }
+    
+    @SuppressWarnings({"unchecked","rawtypes"})
+    @Test
+    public void publishActivityFinishedEventsCoalescesToLatestFinish() {
+        long finishedOn = DateTime.now().getMillis();
+        
+        ScheduledActivity first = createFinishedActivity("AAA:2017-02-23T10:00:00.000", finishedOn);
+        ScheduledActivity second = createFinishedActivity("AAA:2017-02-24T10:00:00.000", finishedOn + 1000);
+        ScheduledActivity other = createFinishedActivity("CCC:2017-02-23T10:00:00.000", finishedOn);
+        ScheduledActivity oldActivity = createFinishedActivity("DDD", finishedOn);
+        
+        service.publishActivityFinishedEvents(Lists.newArrayList(first, second, other, oldActivity));
+        
+        ArgumentCaptor<List> argument = ArgumentCaptor.forClass(List.class);
+        verify(activityEventDao).publishEvents(argument.capture());
+        verifyNoMoreInteractions(activityEventDao);
+        
+        List<ActivityEvent> events = argument.getValue();
+        assertEquals(2, events.size());
+        assertEquals("activity:AAA:finished", events.get(0).getEventId());
+        assertEquals(finishedOn + 1000, events.get(0).getTimestamp().longValue());
+        assertEquals("activity:CCC:finished", events.get(1).getEventId());
+        assertEquals(finishedOn, events.get(1).getTimestamp().longValue());
+    }
+    
+    @Test
+    public void publishActivityFinishedEventsWithNoEventsDoesntCallDao() {
+        service.publishActivityFinishedEvents(Lists.newArrayList());
+        verifyNoMoreInteractions(activityEventDao);
+    }
+    
+    private ScheduledActivity createFinishedActivity(String guid, long finishedOn) {
+        ScheduledActivity schActivity = ScheduledActivity.create();
+        schActivity.setGuid(guid);
+        schActivity.setFinishedOn(finishedOn);
+        schActivity.setHealthCode("BBB");
+        return schActivity;
+    }
 }
@@ -1,20 +1,42 @@
 package org.sagebionetworks.bridge.services;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.sagebionetworks.bridge.BridgeConstants.API_DEFAULT_PAGE_SIZE;
+import static org.sagebionetworks.bridge.BridgeConstants.API_MAXIMUM_PAGE_SIZE;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.sagebionetworks.bridge.cache.CacheProvider;
+import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
+import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
 
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.exceptions.JedisDataException;
 
 public class CacheAdminServiceTest {
 
@@ -37,18 +59,101 @@ public class CacheAdminServiceTest {
     
     @Test
     public void listsItemsWithoutSessions() {
-        Set<String> set = adminService.listItems();
-        assertEquals(2, set.size());
-        assertTrue(set.contains("foo:study"));
-        assertTrue(set.contains("baz:Survey:view"));
+        ForwardCursorPagedResourceList<String> page = adminService.listItems(null, null);
+        assertEquals(2, page.getItems().size());
+        assertTrue(page.getItems().contains("foo:study"));
+        assertTrue(page.getItems().contains("baz:Survey:view"));
+        assertNull(page.getOffsetKey());
+        assertEquals(API_DEFAULT_PAGE_SIZE, page.getPageSize());
     }
     
+    @Test
+    public void listItemsPagesWithScanCursor() {
+        // The first page is all sessions, so the next SCAN step is included in it.
+        Jedis jedis = mock(Jedis.class);
+        when(jedis.scan(eq("0"), any(ScanParams.class))).thenReturn(
+                new ScanResult<>("17", Lists.newArrayList("bar:session", REQUEST_INFO_KEY)));
+        when(jedis.scan(eq("17"), any(ScanParams.class))).thenReturn(
+                new ScanResult<>("23", Lists.newArrayList("foo:study")));
+        when(jedis.scan(eq("23"), any(ScanParams.class))).thenReturn(
+                new ScanResult<>("0", Lists.newArrayList("baz:Survey:view")));
+        setJedis(jedis);
+        
+        ForwardCursorPagedResourceList<String> page = adminService.listItems(null, 10);
+        assertEquals(Lists.newArrayList("foo:study"), page.getItems());
+        assertEquals("23", page.getOffsetKey());
+        
+        page = adminService.listItems(page.getOffsetKey(), 10);
+        assertEquals(Lists.newArrayList("baz:Survey:view"), page.getItems());
+        assertNull(page.getOffsetKey());
+        
+        verify(jedis, never()).keys(anyString());
+    }
+    
+    @Test(expected = BadRequestException.class)
+    public void listItemsRejectsPageSizeTooLarge() {
+        adminService.listItems(null, API_MAXIMUM_PAGE_SIZE+1);
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void getItemStatsCountsAndSizesByKeyType() {
+        Jedis jedis = mock(Jedis.class);
+        when(jedis.scan(eq("0"), any(ScanParams.class))).thenReturn(
+                new ScanResult<>("5", Lists.newArrayList("foo:study", "bar:session", "qux:study", "gone:study")));
+        when(jedis.scan(eq("5"), any(ScanParams.class))).thenReturn(
+                new ScanResult<>("0", Lists.newArrayList("baz:Survey:view", "hc:activity-events", "lock")));
+        Pipeline pipeline = mock(Pipeline.class);
+        when(jedis.pipelined()).thenReturn(pipeline);
+        when(pipeline.type("foo:study")).thenReturn(mockResponse("string"));
+        when(pipeline.type("qux:study")).thenReturn(mockResponse("string"));
+        when(pipeline.type("gone:study")).thenReturn(mockResponse("none"));
+        when(pipeline.type("baz:Survey:view")).thenReturn(mockResponse("string"));
+        when(pipeline.type("hc:activity-events")).thenReturn(mockResponse("hash"));
+        when(pipeline.type("lock")).thenReturn(mockResponse("list"));
+        when(pipeline.strlen("foo:study")).thenReturn(mockResponse(10L));
+        when(pipeline.strlen("qux:study")).thenReturn(mockResponse(15L));
+        when(pipeline.strlen("baz:Survey:view")).thenReturn(mockResponse(100L));
+        when(pipeline.hgetAll("hc:activity-events")).thenReturn(mockResponse(ImmutableMap.of(
+                "enrollment", "1491040800000", "*", "")));
+        setJedis(jedis);
+        
+        Map<String,Map<String,Long>> stats = adminService.getItemStats();
+        assertEquals(4, stats.size());
+        assertEquals(ImmutableMap.of("count", 2L, "bytes", 25L), stats.get("study"));
+        assertEquals(ImmutableMap.of("count", 1L, "bytes", 100L), stats.get("Survey:view"));
+        // Field and value sizes: "enrollment" (10) + "1491040800000" (13) + "*" (1)
+        assertEquals(ImmutableMap.of("count", 1L, "bytes", 24L), stats.get("activity-events"));
+        assertEquals(ImmutableMap.of("count", 1L, "bytes", 0L), stats.get("lock"));
+        
+        verify(pipeline, never()).type("bar:session");
+        verify(pipeline, never()).strlen("lock");
+        verify(pipeline, times(4)).sync();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void getItemStatsCountsKeyReplacedAfterTypeRead() {
+        Jedis jedis = mock(Jedis.class);
+        when(jedis.scan(eq("0"), any(ScanParams.class))).thenReturn(
+                new ScanResult<>("0", Lists.newArrayList("foo:study")));
+        Pipeline pipeline = mock(Pipeline.class);
+        when(jedis.pipelined()).thenReturn(pipeline);
+        when(pipeline.type("foo:study")).thenReturn(mockResponse("string"));
+        Response<Long> notAString = mock(Response.class);
+        when(notAString.get()).thenThrow(new JedisDataException("WRONGTYPE"));
+        when(pipeline.strlen("foo:study")).thenReturn(notAString);
+        setJedis(jedis);
+        
+        Map<String,Map<String,Long>> stats = adminService.getItemStats();
+        assertEquals(ImmutableMap.of("count", 1L, "bytes", 0L), stats.get("study"));
+    }
     
     @Test
     public void canRemoveItem() {
         adminService.removeItem("foo:study");
-        Set<String> set = adminService.listItems();
-        assertEquals(1, set.size());
+        List<String> items = adminService.listItems(null, null).getItems();
+        assertEquals(1, items.size());
     }
     
     @Test(expected = BridgeServiceException.class)
@@ -81,11 +186,36 @@ public class CacheAdminServiceTest {
         adminService.removeItem(REQUEST_INFO_KEY);
     }
     
+    @Test
+    public void getStudyCacheStats() {
+        CacheProvider cacheProvider = mock(CacheProvider.class);
+        when(cacheProvider.getStudyCacheStats()).thenReturn(new CacheStats(5, 2, 0, 0, 0, 1));
+        adminService.setCacheProvider(cacheProvider);
+        
+        Map<String,Long> stats = adminService.getStudyCacheStats();
+        assertEquals(new Long(5), stats.get("hitCount"));
+        assertEquals(new Long(2), stats.get("missCount"));
+        assertEquals(new Long(1), stats.get("evictionCount"));
+    }
+    
+    private void setJedis(Jedis jedis) {
+        JedisPool pool = mock(JedisPool.class);
+        when(pool.getResource()).thenReturn(jedis);
+        adminService.setJedisPool(pool);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private <T> Response<T> mockResponse(T value) {
+        Response<T> response = mock(Response.class);
+        when(response.get()).thenReturn(value);
+        return response;
+    }
+    
     private Jedis createStubJedis() {
         return new Jedis("") {
             @Override
-            public Set<String> keys(String pattern) {
-                return KEYS;
+            public ScanResult<String> scan(String cursor, ScanParams params) {
+                return new ScanResult<>(ScanParams.SCAN_POINTER_START, Lists.newArrayList(KEYS));
             }
             @Override
             public Long del(String key) {
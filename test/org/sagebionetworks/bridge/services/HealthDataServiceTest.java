@@ -2,6 +2,7 @@ package org.sagebionetworks.bridge.services;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -18,6 +19,7 @@ import org.sagebionetworks.bridge.dynamodb.DynamoHealthDataDao;
 import org.sagebionetworks.bridge.dynamodb.DynamoHealthDataRecord;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.InvalidEntityException;
+import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecord;
 import org.sagebionetworks.bridge.models.healthdata.RecordExportStatusRequest;
 
@@ -136,6 +138,29 @@ public class HealthDataServiceTest {
         assertEquals("baz healthcode", recordList.get(2).getHealthCode());
     }
 
+    @Test
+    public void getRecordsForUploadDatePaged() {
+        ForwardCursorPagedResourceList<HealthDataRecord> page = new ForwardCursorPagedResourceList<>(
+                ImmutableList.of(), null, 50);
+        HealthDataDao mockDao = mock(HealthDataDao.class);
+        when(mockDao.getRecordsForUploadDate("2014-02-12", "offset-key", 50)).thenReturn(page);
+
+        HealthDataService svc = new HealthDataService();
+        svc.setHealthDataDao(mockDao);
+
+        assertSame(page, svc.getRecordsForUploadDate("2014-02-12", "offset-key", 50));
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void getRecordsForUploadDatePagedInvalidUploadDate() {
+        new HealthDataService().getRecordsForUploadDate("2014-02-31", null, 50);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void getRecordsForUploadDatePagedPageSizeTooLarge() {
+        new HealthDataService().getRecordsForUploadDate("2014-02-12", null, 101);
+    }
+
     @Test(expected = InvalidEntityException.class)
     public void updateRecordsWithExporterStatusNullRecordIds() {
         RecordExportStatusRequest request = new RecordExportStatusRequest();
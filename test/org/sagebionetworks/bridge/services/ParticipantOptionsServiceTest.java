@@ -12,6 +12,7 @@ import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.BiConsumer;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -77,6 +78,14 @@ public class ParticipantOptionsServiceTest {
         assertTrue(service.getOptions(HEALTH_CODE).getBoolean(EMAIL_NOTIFICATIONS));
     }
     
+    @Test
+    public void getStringUncached() {
+        when(mockDao.getOptionsUncached(HEALTH_CODE)).thenReturn(new ParticipantOptionsLookup(
+                map(EXTERNAL_IDENTIFIER, "BBB")));
+        
+        assertEquals("BBB", service.getOptionsUncached(HEALTH_CODE).getString(EXTERNAL_IDENTIFIER));
+    }
+    
     @Test
     public void setString() {
         ExternalIdentifier externalId = ExternalIdentifier.create(TEST_STUDY, "BBB");
@@ -224,6 +233,16 @@ public class ParticipantOptionsServiceTest {
         verifyNoMoreInteractions(mockDao);
     }
     
+    @Test
+    public void forEachParticipantOptions() {
+        BiConsumer<String, ParticipantOptionsLookup> callback = (healthCode, lookup) -> {};
+        
+        service.forEachParticipantOptions(TEST_STUDY, callback);
+        
+        verify(mockDao).forEachParticipantOptions(TEST_STUDY, callback);
+        verifyNoMoreInteractions(mockDao);
+    }
+    
     @Test
     public void canSetLinkedHashSet() {
         when(mockDao.getOptions(HEALTH_CODE)).thenReturn(new ParticipantOptionsLookup(map(LANGUAGES, "en,fr")));
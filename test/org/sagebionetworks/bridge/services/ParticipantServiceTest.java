@@ -41,7 +41,6 @@ import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
-import org.sagebionetworks.bridge.BridgeConstants;
 import org.sagebionetworks.bridge.BridgeUtils;
 import org.sagebionetworks.bridge.Roles;
 import org.sagebionetworks.bridge.TestUtils;
@@ -58,10 +57,8 @@ import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.exceptions.InvalidEntityException;
 import org.sagebionetworks.bridge.exceptions.LimitExceededException;
 import org.sagebionetworks.bridge.models.CriteriaContext;
-import org.sagebionetworks.bridge.models.PagedResourceList;
 import org.sagebionetworks.bridge.models.accounts.Account;
 import org.sagebionetworks.bridge.models.accounts.AccountStatus;
-import org.sagebionetworks.bridge.models.accounts.AccountSummary;
 import org.sagebionetworks.bridge.models.accounts.Email;
 import org.sagebionetworks.bridge.models.accounts.ExternalIdentifier;
 import org.sagebionetworks.bridge.models.accounts.IdentifierHolder;
@@ -170,9 +167,6 @@ public class ParticipantServiceTest {
     @Mock
     private ScheduledActivityService scheduledActivityService;
     
-    @Mock
-    private PagedResourceList<AccountSummary> accountSummaries;
-    
     @Captor
     ArgumentCaptor<StudyParticipant> participantCaptor;
     
@@ -318,41 +312,53 @@ public class ParticipantServiceTest {
     
     @Test
     public void getPagedAccountSummaries() {
-        participantService.getPagedAccountSummaries(STUDY, 1100, 50, "foo", START_DATE, END_DATE);
+        participantService.getPagedAccountSummaries(STUDY, 1100, null, 50, "foo", START_DATE, END_DATE);
         
-        verify(accountDao).getPagedAccountSummaries(STUDY, 1100, 50, "foo", START_DATE, END_DATE); 
+        verify(accountDao).getPagedAccountSummaries(STUDY, 1100, null, 50, "foo", START_DATE, END_DATE); 
     }
     
     @Test(expected = NullPointerException.class)
     public void getPagedAccountSummariesWithBadStudy() {
-        participantService.getPagedAccountSummaries(null, 0, 100, null, null, null);
+        participantService.getPagedAccountSummaries(null, 0, null, 100, null, null, null);
     }
     
     @Test(expected = BadRequestException.class)
     public void getPagedAccountSummariesWithNegativeOffsetBy() {
-        participantService.getPagedAccountSummaries(STUDY, -1, 100, null, null, null);
+        participantService.getPagedAccountSummaries(STUDY, -1, null, 100, null, null, null);
     }
 
     @Test(expected = BadRequestException.class)
     public void getPagedAccountSummariesWithNegativePageSize() {
-        participantService.getPagedAccountSummaries(STUDY, 0, -100, null, null, null);
+        participantService.getPagedAccountSummaries(STUDY, 0, null, -100, null, null, null);
     }
     
     @Test(expected = BadRequestException.class)
     public void getPagedAccountSummariesWithBadDateRange() {
-        participantService.getPagedAccountSummaries(STUDY, 0, -100, null, END_DATE, START_DATE);
+        participantService.getPagedAccountSummaries(STUDY, 0, null, -100, null, END_DATE, START_DATE);
     }
     
     @Test
     public void getPagedAccountSummariesWithoutEmailFilterOK() {
-        participantService.getPagedAccountSummaries(STUDY, 1100, 50, null, null, null);
+        participantService.getPagedAccountSummaries(STUDY, 1100, null, 50, null, null, null);
         
-        verify(accountDao).getPagedAccountSummaries(STUDY, 1100, 50, null, null, null); 
+        verify(accountDao).getPagedAccountSummaries(STUDY, 1100, null, 50, null, null, null); 
     }
     
     @Test(expected = BadRequestException.class)
     public void getPagedAccountSummariesWithTooLargePageSize() {
-        participantService.getPagedAccountSummaries(STUDY, 0, 251, null, null, null);
+        participantService.getPagedAccountSummaries(STUDY, 0, null, 251, null, null, null);
+    }
+    
+    @Test
+    public void getPagedAccountSummariesWithOffsetKey() {
+        participantService.getPagedAccountSummaries(STUDY, 0, "1000:userId", 50, null, null, null);
+        
+        verify(accountDao).getPagedAccountSummaries(STUDY, 0, "1000:userId", 50, null, null, null);
+    }
+    
+    @Test(expected = BadRequestException.class)
+    public void getPagedAccountSummariesWithOffsetByAndOffsetKey() {
+        participantService.getPagedAccountSummaries(STUDY, 10, "1000:userId", 50, null, null, null);
     }
     
     @Test(expected = EntityNotFoundException.class)
@@ -885,9 +891,7 @@ public class ParticipantServiceTest {
     public void limitNotExceededException() {
         mockHealthCodeAndAccountRetrieval();
         STUDY.setAccountLimit(10);
-        when(accountSummaries.getTotal()).thenReturn(9);
-        when(accountDao.getPagedAccountSummaries(STUDY, 0, BridgeConstants.API_MINIMUM_PAGE_SIZE, null, null, null))
-                .thenReturn(accountSummaries);
+        when(accountDao.getStudyAccountCount(STUDY)).thenReturn(9);
         
         participantService.createParticipant(STUDY,  CALLER_ROLES, PARTICIPANT, false);
     }
@@ -895,9 +899,7 @@ public class ParticipantServiceTest {
     @Test
     public void throwLimitExceededExactlyException() {
         STUDY.setAccountLimit(10);
-        when(accountSummaries.getTotal()).thenReturn(10);
-        when(accountDao.getPagedAccountSummaries(STUDY, 0, BridgeConstants.API_MINIMUM_PAGE_SIZE, null, null, null))
-                .thenReturn(accountSummaries);
+        when(accountDao.getStudyAccountCount(STUDY)).thenReturn(10);
         
         try {
             participantService.createParticipant(STUDY,  CALLER_ROLES, PARTICIPANT, false);
@@ -910,9 +912,7 @@ public class ParticipantServiceTest {
     @Test(expected = LimitExceededException.class)
     public void throwLimitExceededException() {
         STUDY.setAccountLimit(10);
-        when(accountSummaries.getTotal()).thenReturn(13);
-        when(accountDao.getPagedAccountSummaries(STUDY, 0, BridgeConstants.API_MINIMUM_PAGE_SIZE, null, null, null))
-                .thenReturn(accountSummaries);
+        when(accountDao.getStudyAccountCount(STUDY)).thenReturn(13);
         
         participantService.createParticipant(STUDY,  CALLER_ROLES, PARTICIPANT, false);
     }
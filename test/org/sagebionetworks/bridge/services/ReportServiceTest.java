@@ -1,15 +1,20 @@
 package org.sagebionetworks.bridge.services;
 
+import static org.sagebionetworks.bridge.BridgeConstants.API_DEFAULT_PAGE_SIZE;
 import static org.sagebionetworks.bridge.TestConstants.TEST_STUDY;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 
 import java.util.List;
+import java.util.Map;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeUtils;
@@ -28,6 +33,7 @@ import org.sagebionetworks.bridge.dao.ReportIndexDao;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
 import org.sagebionetworks.bridge.exceptions.InvalidEntityException;
 import org.sagebionetworks.bridge.models.DateRangeResourceList;
+import org.sagebionetworks.bridge.models.ForwardCursorPagedResourceList;
 import org.sagebionetworks.bridge.models.ReportTypeResourceList;
 import org.sagebionetworks.bridge.models.reports.ReportData;
 import org.sagebionetworks.bridge.models.reports.ReportDataKey;
@@ -36,7 +42,10 @@ import org.sagebionetworks.bridge.models.reports.ReportType;
 
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 @RunWith(MockitoJUnitRunner.class)
 public class ReportServiceTest {
@@ -75,6 +84,9 @@ public class ReportServiceTest {
     @Captor
     ArgumentCaptor<ReportDataKey> reportDataKeyCaptor;
     
+    @Captor
+    ArgumentCaptor<List<ReportData>> reportDataListCaptor;
+    
     ReportService service;
     
     DateRangeResourceList<? extends ReportData> results;
@@ -192,6 +204,51 @@ public class ReportServiceTest {
         }
     }
     
+    @Test
+    public void getStudyReportDataV4() {
+        ForwardCursorPagedResourceList<ReportData> page = new ForwardCursorPagedResourceList<>(
+                Lists.newArrayList(CANNED_REPORT), "2015-02-10", 20);
+        doReturn(page).when(mockReportDataDao).getReportDataV4(STUDY_REPORT_DATA_KEY, START_DATE, END_DATE,
+                "offsetKey", 20);
+        
+        ForwardCursorPagedResourceList<ReportData> retrieved = service.getStudyReportV4(TEST_STUDY, IDENTIFIER,
+                START_DATE, END_DATE, "offsetKey", 20);
+        
+        assertEquals(page, retrieved);
+    }
+    
+    @Test
+    public void getStudyReportDataV4AllowsLongDateRangeAndDefaultsPageSize() {
+        LocalDate startDate = END_DATE.minusYears(2);
+        service.getStudyReportV4(TEST_STUDY, IDENTIFIER, startDate, END_DATE, null, null);
+        
+        verify(mockReportDataDao).getReportDataV4(STUDY_REPORT_DATA_KEY, startDate, END_DATE, null,
+                API_DEFAULT_PAGE_SIZE);
+    }
+    
+    @Test(expected = BadRequestException.class)
+    public void getStudyReportDataV4StartDateAfterEndDate() {
+        service.getStudyReportV4(TEST_STUDY, IDENTIFIER, END_DATE, START_DATE, null, null);
+    }
+    
+    @Test
+    public void getParticipantReportDataV4() {
+        ForwardCursorPagedResourceList<ReportData> page = new ForwardCursorPagedResourceList<>(
+                Lists.newArrayList(CANNED_REPORT), null, 20);
+        doReturn(page).when(mockReportDataDao).getReportDataV4(PARTICIPANT_REPORT_DATA_KEY, START_DATE, END_DATE,
+                null, 20);
+        
+        ForwardCursorPagedResourceList<ReportData> retrieved = service.getParticipantReportV4(TEST_STUDY,
+                IDENTIFIER, HEALTH_CODE, START_DATE, END_DATE, null, 20);
+        
+        assertEquals(page, retrieved);
+    }
+    
+    @Test(expected = BadRequestException.class)
+    public void getParticipantReportDataV4StartDateAfterEndDate() {
+        service.getParticipantReportV4(TEST_STUDY, IDENTIFIER, HEALTH_CODE, END_DATE, START_DATE, null, null);
+    }
+    
     @Test
     public void saveStudyReportData() {
         ReportData someData = createReport(LocalDate.parse("2015-02-10"), "First", "Name");
@@ -231,6 +288,111 @@ public class ReportServiceTest {
                 .withIdentifier(IDENTIFIER).build());
     }
     
+    @Test
+    public void saveStudyReports() {
+        ReportData first = createReport(LocalDate.parse("2015-02-10"), "First", "Name");
+        ReportData second = createReport(LocalDate.parse("2015-02-11"), "Last", "Name");
+        service.saveStudyReports(TEST_STUDY, IDENTIFIER, Lists.newArrayList(first, second));
+        
+        verify(mockReportDataDao).saveReportDataBatch(reportDataListCaptor.capture());
+        List<ReportData> saved = reportDataListCaptor.getValue();
+        assertEquals(2, saved.size());
+        assertEquals(STUDY_REPORT_DATA_KEY.getKeyString(), saved.get(0).getKey());
+        assertEquals(STUDY_REPORT_DATA_KEY.getKeyString(), saved.get(1).getKey());
+        
+        // The index is updated once for the whole batch
+        verify(mockReportIndexDao).addIndex(STUDY_REPORT_DATA_KEY);
+    }
+    
+    @Test
+    public void saveStudyReportsEmptyDoesNothing() {
+        service.saveStudyReports(TEST_STUDY, IDENTIFIER, Lists.newArrayList());
+        
+        verifyNoMoreInteractions(mockReportDataDao);
+        verifyNoMoreInteractions(mockReportIndexDao);
+    }
+    
+    @Test
+    public void saveStudyReportsInvalidRecordSavesNothing() {
+        ReportData valid = createReport(LocalDate.parse("2015-02-10"), "First", "Name");
+        ReportData invalid = createReport(null, "Last", "Name");
+        
+        invalid(() -> service.saveStudyReports(TEST_STUDY, IDENTIFIER, Lists.newArrayList(valid, invalid)),
+                "date", "is required");
+        verify(mockReportIndexDao, never()).addIndex(any());
+    }
+    
+    @Test
+    public void saveStudyReportsTooManyRecords() {
+        List<ReportData> list = Lists.newArrayList();
+        for (int i=0; i <= ReportService.MAX_BATCH_RECORDS; i++) {
+            list.add(createReport(LocalDate.parse("2015-02-10"), "First", "Name"));
+        }
+        try {
+            service.saveStudyReports(TEST_STUDY, IDENTIFIER, list);
+            fail("Should have thrown exception");
+        } catch(BadRequestException e) {
+            verifyNoMoreInteractions(mockReportDataDao);
+        }
+    }
+    
+    @Test
+    public void saveStudyReportsDuplicateDateSavesNothing() {
+        ReportData first = createReport(LocalDate.parse("2015-02-10"), "First", "Name");
+        ReportData second = createReport(LocalDate.parse("2015-02-10"), "Last", "Name");
+        try {
+            service.saveStudyReports(TEST_STUDY, IDENTIFIER, Lists.newArrayList(first, second));
+            fail("Should have thrown exception");
+        } catch(BadRequestException e) {
+            assertEquals("Cannot save more than one record of a report for the same date (2015-02-10).",
+                    e.getMessage());
+        }
+        verifyNoMoreInteractions(mockReportDataDao);
+        verify(mockReportIndexDao, never()).addIndex(any());
+    }
+    
+    @Test
+    public void saveParticipantReports() {
+        ReportData first = createReport(LocalDate.parse("2015-02-10"), "First", "Name");
+        ReportData second = createReport(LocalDate.parse("2015-02-11"), "Last", "Name");
+        ReportData third = createReport(LocalDate.parse("2015-02-10"), "Other", "Name");
+        Map<String, List<ReportData>> map = ImmutableMap.of(HEALTH_CODE, ImmutableList.of(first, second),
+                "otherHealthCode", ImmutableList.of(third));
+        
+        service.saveParticipantReports(TEST_STUDY, IDENTIFIER, map);
+        
+        verify(mockReportDataDao).saveReportDataBatch(reportDataListCaptor.capture());
+        List<ReportData> saved = reportDataListCaptor.getValue();
+        assertEquals(3, saved.size());
+        assertEquals(PARTICIPANT_REPORT_DATA_KEY.getKeyString(), saved.get(0).getKey());
+        assertEquals(PARTICIPANT_REPORT_DATA_KEY.getKeyString(), saved.get(1).getKey());
+        assertEquals("otherHealthCode:" + IDENTIFIER + ":" + TEST_STUDY.getIdentifier(), saved.get(2).getKey());
+        
+        // All participants share one index, updated once for the whole batch
+        verify(mockReportIndexDao).addIndex(reportDataKeyCaptor.capture());
+        assertEquals(PARTICIPANT_REPORT_DATA_KEY.getIndexKeyString(),
+                reportDataKeyCaptor.getValue().getIndexKeyString());
+    }
+    
+    @Test(expected = BadRequestException.class)
+    public void saveParticipantReportsDuplicateDateForOneParticipant() {
+        ReportData first = createReport(LocalDate.parse("2015-02-10"), "First", "Name");
+        ReportData second = createReport(LocalDate.parse("2015-02-10"), "Last", "Name");
+        
+        service.saveParticipantReports(TEST_STUDY, IDENTIFIER, ImmutableMap.of(HEALTH_CODE,
+                ImmutableList.of(first, second)));
+    }
+    
+    @Test
+    public void saveParticipantReportsNoHealthCode() {
+        Map<String, List<ReportData>> map = Maps.newHashMap();
+        map.put(null, ImmutableList.of(CANNED_REPORT));
+        
+        invalid(() -> service.saveParticipantReports(TEST_STUDY, IDENTIFIER, map),
+                "healthCode", "is required for participant reports");
+        verify(mockReportIndexDao, never()).addIndex(any());
+    }
+    
     @Test
     public void deleteStudyReport() {
         service.deleteStudyReport(TEST_STUDY, IDENTIFIER);
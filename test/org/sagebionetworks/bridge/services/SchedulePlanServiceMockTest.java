@@ -4,9 +4,15 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.sagebionetworks.bridge.TestConstants.TEST_STUDY;
@@ -21,10 +27,12 @@ import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
 import org.sagebionetworks.bridge.TestUtils;
+import org.sagebionetworks.bridge.cache.CacheProvider;
 import org.sagebionetworks.bridge.dao.SchedulePlanDao;
 import org.sagebionetworks.bridge.dynamodb.DynamoSchedulePlan;
 import org.sagebionetworks.bridge.dynamodb.DynamoStudy;
 import org.sagebionetworks.bridge.exceptions.InvalidEntityException;
+import org.sagebionetworks.bridge.models.ClientInfo;
 import org.sagebionetworks.bridge.models.Criteria;
 import org.sagebionetworks.bridge.models.schedules.Activity;
 import org.sagebionetworks.bridge.models.schedules.CriteriaScheduleStrategy;
@@ -36,11 +44,15 @@ import org.sagebionetworks.bridge.models.schedules.SimpleScheduleStrategy;
 import org.sagebionetworks.bridge.models.studies.Study;
 import org.sagebionetworks.bridge.models.surveys.Survey;
 import org.sagebionetworks.bridge.models.surveys.TestSurvey;
+import org.sagebionetworks.bridge.redis.RedisKey;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 public class SchedulePlanServiceMockTest {
 
+    private static final String VERSION_KEY = RedisKey.SCHEDULE_PLAN_VERSION.getRedisKey(TEST_STUDY_IDENTIFIER);
+
     private Study study;
     private String surveyGuid1;
     private String surveyGuid2;
@@ -48,6 +60,7 @@ public class SchedulePlanServiceMockTest {
     
     private SchedulePlanDao mockSchedulePlanDao;
     private SurveyService mockSurveyService;
+    private CacheProvider mockCacheProvider;
     
     @Before
     public void before() {
@@ -58,10 +71,12 @@ public class SchedulePlanServiceMockTest {
         
         mockSchedulePlanDao = mock(SchedulePlanDao.class);
         mockSurveyService = mock(SurveyService.class);
+        mockCacheProvider = mock(CacheProvider.class);
         
         service = new SchedulePlanService();
         service.setSchedulePlanDao(mockSchedulePlanDao);
         service.setSurveyService(mockSurveyService);
+        service.setCacheProvider(mockCacheProvider);
         
         Survey survey1 = new TestSurvey(SchedulePlanServiceMockTest.class, false);
         survey1.setIdentifier("identifier1");
@@ -219,6 +234,69 @@ public class SchedulePlanServiceMockTest {
         }
     }
     
+    @Test
+    public void getSchedulePlansCachedWhileVersionUnchanged() {
+        List<SchedulePlan> plans = Lists.newArrayList(getSchedulePlan());
+        when(mockCacheProvider.getString(VERSION_KEY)).thenReturn("version1");
+        when(mockSchedulePlanDao.getSchedulePlans(ClientInfo.UNKNOWN_CLIENT, TEST_STUDY)).thenReturn(plans);
+        
+        List<SchedulePlan> first = service.getSchedulePlans(ClientInfo.UNKNOWN_CLIENT, TEST_STUDY);
+        List<SchedulePlan> second = service.getSchedulePlans(ClientInfo.UNKNOWN_CLIENT, TEST_STUDY);
+        
+        assertEquals(plans, first);
+        assertSame(first, second);
+        verify(mockSchedulePlanDao, times(1)).getSchedulePlans(ClientInfo.UNKNOWN_CLIENT, TEST_STUDY);
+        verify(mockCacheProvider, never()).setString(anyString(), anyString(), anyInt());
+    }
+    
+    @Test
+    public void getSchedulePlansReloadsWhenVersionChanges() {
+        when(mockCacheProvider.getString(VERSION_KEY)).thenReturn("version1", "version2");
+        when(mockSchedulePlanDao.getSchedulePlans(ClientInfo.UNKNOWN_CLIENT, TEST_STUDY))
+                .thenReturn(Lists.newArrayList(getSchedulePlan()));
+        
+        service.getSchedulePlans(ClientInfo.UNKNOWN_CLIENT, TEST_STUDY);
+        service.getSchedulePlans(ClientInfo.UNKNOWN_CLIENT, TEST_STUDY);
+        
+        verify(mockSchedulePlanDao, times(2)).getSchedulePlans(ClientInfo.UNKNOWN_CLIENT, TEST_STUDY);
+    }
+    
+    @Test
+    public void getSchedulePlansSetsMissingVersion() {
+        when(mockSchedulePlanDao.getSchedulePlans(ClientInfo.UNKNOWN_CLIENT, TEST_STUDY))
+                .thenReturn(Lists.newArrayList(getSchedulePlan()));
+        
+        service.getSchedulePlans(ClientInfo.UNKNOWN_CLIENT, TEST_STUDY);
+        
+        verify(mockCacheProvider).setString(eq(VERSION_KEY), anyString(),
+                eq(SchedulePlanService.PLAN_VERSION_EXPIRE_IN_SECONDS));
+        verify(mockSchedulePlanDao).getSchedulePlans(ClientInfo.UNKNOWN_CLIENT, TEST_STUDY);
+    }
+    
+    @Test
+    public void createSchedulePlanChangesVersion() {
+        service.createSchedulePlan(study, createSchedulePlan());
+        
+        verify(mockCacheProvider).setString(eq(VERSION_KEY), anyString(),
+                eq(SchedulePlanService.PLAN_VERSION_EXPIRE_IN_SECONDS));
+    }
+    
+    @Test
+    public void deleteSchedulePlanReloadsPlans() {
+        when(mockCacheProvider.getString(VERSION_KEY)).thenReturn("version1");
+        when(mockSchedulePlanDao.getSchedulePlans(ClientInfo.UNKNOWN_CLIENT, TEST_STUDY))
+                .thenReturn(Lists.newArrayList(getSchedulePlan()));
+        service.getSchedulePlans(ClientInfo.UNKNOWN_CLIENT, TEST_STUDY);
+        
+        service.deleteSchedulePlan(TEST_STUDY, "BBB");
+        verify(mockCacheProvider).setString(eq(VERSION_KEY), anyString(),
+                eq(SchedulePlanService.PLAN_VERSION_EXPIRE_IN_SECONDS));
+        
+        // Even if the version in Redis is stale, this node doesn't serve the plans it had before the delete.
+        service.getSchedulePlans(ClientInfo.UNKNOWN_CLIENT, TEST_STUDY);
+        verify(mockSchedulePlanDao, times(2)).getSchedulePlans(ClientInfo.UNKNOWN_CLIENT, TEST_STUDY);
+    }
+    
     private SchedulePlan createInvalidSchedulePlan() {
         Schedule schedule = new Schedule();
         schedule.addActivity(new Activity.Builder().withTask("DDD").build());
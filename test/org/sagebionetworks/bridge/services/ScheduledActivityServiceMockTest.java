@@ -5,13 +5,16 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 import static org.sagebionetworks.bridge.TestConstants.TEST_STUDY;
 import static org.sagebionetworks.bridge.services.ScheduledActivityService.V3_FILTER;
@@ -29,6 +32,7 @@ import com.google.common.collect.ImmutableSet;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeUtils;
 import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDateTime;
 import org.junit.After;
 import org.joda.time.Period;
 import org.junit.Before;
@@ -40,11 +44,13 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import org.sagebionetworks.bridge.TestUtils;
+import org.sagebionetworks.bridge.cache.CacheProvider;
 import org.sagebionetworks.bridge.dao.ScheduledActivityDao;
 import org.sagebionetworks.bridge.dynamodb.DynamoSchedulePlan;
 import org.sagebionetworks.bridge.dynamodb.DynamoScheduledActivity;
 import org.sagebionetworks.bridge.dynamodb.DynamoSurvey;
 import org.sagebionetworks.bridge.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.exceptions.EntityNotFoundException;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
 import org.sagebionetworks.bridge.json.DateUtils;
 import org.sagebionetworks.bridge.models.ClientInfo;
@@ -58,6 +64,7 @@ import org.sagebionetworks.bridge.models.schedules.ScheduledActivity;
 import org.sagebionetworks.bridge.models.schedules.SimpleScheduleStrategy;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifierImpl;
 import org.sagebionetworks.bridge.models.surveys.Survey;
+import org.sagebionetworks.bridge.redis.RedisKey;
 import org.sagebionetworks.bridge.services.ScheduledActivityService.NewAndPersistedActivitiesMerger;
 import org.sagebionetworks.bridge.validators.ScheduleContextValidator;
 
@@ -68,6 +75,7 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Range;
 import com.google.common.collect.Sets;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -93,6 +101,10 @@ public class ScheduledActivityServiceMockTest {
 
     private static final DateTimeZone TIME_ZONE = STARTS_ON.getChronology().getZone();
     
+    private static final String MATERIALIZATION_KEY = RedisKey.SCHEDULE_MATERIALIZATION.getRedisKey(HEALTH_CODE);
+    
+    private static final LocalDateTime MATERIALIZED_THROUGH = NOW.plusYears(1).toLocalDateTime();
+    
     private ScheduledActivityService service;
     
     @Mock
@@ -110,6 +122,9 @@ public class ScheduledActivityServiceMockTest {
     @Mock
     private Survey survey;
     
+    @Mock
+    private CacheProvider cacheProvider;
+    
     @Captor
     private ArgumentCaptor<List<ScheduledActivity>> scheduledActivityListCaptor;
     
@@ -133,12 +148,16 @@ public class ScheduledActivityServiceMockTest {
         ScheduleContext context = createScheduleContext(endsOn).build();
         List<ScheduledActivity> scheduledActivities = TestUtils.runSchedulerForActivities(context);
         
-        when(activityDao.getActivity(anyString(), anyString())).thenAnswer(invocation -> {
+        when(activityDao.getActivitiesByGuid(anyString(), any())).thenAnswer(invocation -> {
             Object[] args = invocation.getArguments();
-            DynamoScheduledActivity schActivity = new DynamoScheduledActivity();
-            schActivity.setHealthCode((String)args[0]);
-            schActivity.setGuid((String)args[1]);
-            return schActivity;
+            List<ScheduledActivity> dbActivities = Lists.newArrayList();
+            for (Object guid : ImmutableSet.copyOf((List<?>)args[1])) {
+                DynamoScheduledActivity schActivity = new DynamoScheduledActivity();
+                schActivity.setHealthCode((String)args[0]);
+                schActivity.setGuid((String)guid);
+                dbActivities.add(schActivity);
+            }
+            return dbActivities;
         });
         when(activityDao.getActivities(context.getInitialTimeZone(), scheduledActivities))
                 .thenReturn(scheduledActivities);
@@ -146,13 +165,14 @@ public class ScheduledActivityServiceMockTest {
         doReturn(SURVEY_GUID).when(survey).getGuid();
         doReturn(SURVEY_CREATED_ON.getMillis()).when(survey).getCreatedOn();
         doReturn("identifier").when(survey).getIdentifier();
-        when(surveyService.getSurveyMostRecentlyPublishedVersion(
+        when(surveyService.getCachedSurveyMostRecentlyPublishedVersion(
                 eq(TEST_STUDY), any())).thenReturn(survey);
         
         service.setSchedulePlanService(schedulePlanService);
         service.setScheduledActivityDao(activityDao);
         service.setActivityEventService(activityEventService);
         service.setSurveyService(surveyService);
+        service.setCacheProvider(cacheProvider);
     }
     
     @After
@@ -287,17 +307,20 @@ public class ScheduledActivityServiceMockTest {
         scheduledActivities.get(3).setClientData(TestUtils.getClientData());
         
         ArgumentCaptor<List> updateCapture = ArgumentCaptor.forClass(List.class);
-        ArgumentCaptor<ScheduledActivity> publishCapture = ArgumentCaptor.forClass(ScheduledActivity.class);
+        ArgumentCaptor<List> publishCapture = ArgumentCaptor.forClass(List.class);
         
         service.updateScheduledActivities("BBB", scheduledActivities);
         
         verify(activityDao).updateActivities(anyString(), updateCapture.capture());
-        // Three activities have timestamp updates and need to be persisted
-        verify(activityDao, times(count)).getActivity(anyString(), anyString());
-        // Two activities have been finished and generate activity finished events
-        verify(activityEventService, times(2)).publishActivityFinishedEvent(publishCapture.capture());
-        
-        List<DynamoScheduledActivity> dbActivities = (List<DynamoScheduledActivity>)updateCapture.getValue();
+        // All the activities are loaded in one batch
+        verify(activityDao).getActivitiesByGuid(eq("BBB"), updateCapture.capture());
+        assertEquals(count, updateCapture.getAllValues().get(1).size());
+        verify(activityDao, never()).getActivity(anyString(), anyString());
+        // Two activities have been finished and generate activity finished events, published together
+        verify(activityEventService).publishActivityFinishedEvents(publishCapture.capture());
+        
+        List<DynamoScheduledActivity> dbActivities = (List<DynamoScheduledActivity>)updateCapture.getAllValues()
+                .get(0);
         assertEquals(4, dbActivities.size());
         
         // Correct saved activities
@@ -307,10 +330,73 @@ public class ScheduledActivityServiceMockTest {
         assertEquals(scheduledActivities.get(3).getClientData(), dbActivities.get(3).getClientData());
         
         // Correct published activities
-        ScheduledActivity publishedActivity1 = publishCapture.getAllValues().get(0);
-        assertEquals(scheduledActivities.get(1).getGuid(), publishedActivity1.getGuid());
-        ScheduledActivity publishedActivity2 = publishCapture.getAllValues().get(1);
-        assertEquals(scheduledActivities.get(2).getGuid(), publishedActivity2.getGuid());
+        List<ScheduledActivity> publishedActivities = (List<ScheduledActivity>)publishCapture.getValue();
+        assertEquals(2, publishedActivities.size());
+        assertEquals(scheduledActivities.get(1).getGuid(), publishedActivities.get(0).getGuid());
+        assertEquals(scheduledActivities.get(2).getGuid(), publishedActivities.get(1).getGuid());
+    }
+    
+    @SuppressWarnings({"unchecked","rawtypes"})
+    @Test
+    public void updateActivitiesSavesRepeatedActivityOnce() throws Exception {
+        ScheduleContext context = createScheduleContext(endsOn).build();
+        List<ScheduledActivity> scheduledActivities = TestUtils.runSchedulerForActivities(context);
+        
+        ScheduledActivity started = ScheduledActivity.create();
+        started.setGuid(scheduledActivities.get(0).getGuid());
+        started.setStartedOn(NOW.getMillis());
+        ScheduledActivity finished = ScheduledActivity.create();
+        finished.setGuid(scheduledActivities.get(0).getGuid());
+        finished.setFinishedOn(NOW.plusHours(1).getMillis());
+        
+        service.updateScheduledActivities("BBB", Lists.newArrayList(started, finished));
+        
+        ArgumentCaptor<List> updateCapture = ArgumentCaptor.forClass(List.class);
+        verify(activityDao).updateActivities(anyString(), updateCapture.capture());
+        List<ScheduledActivity> dbActivities = (List<ScheduledActivity>)updateCapture.getValue();
+        assertEquals(1, dbActivities.size());
+        assertEquals(NOW.getMillis(), dbActivities.get(0).getStartedOn().longValue());
+        assertEquals(NOW.plusHours(1).getMillis(), dbActivities.get(0).getFinishedOn().longValue());
+    }
+    
+    @SuppressWarnings({"unchecked","rawtypes"})
+    @Test
+    public void updateActivitiesKeepsLatestFinishedOnForRepeatedActivity() throws Exception {
+        ScheduleContext context = createScheduleContext(endsOn).build();
+        List<ScheduledActivity> scheduledActivities = TestUtils.runSchedulerForActivities(context);
+        
+        // The later finish is submitted first.
+        ScheduledActivity finishedLater = ScheduledActivity.create();
+        finishedLater.setGuid(scheduledActivities.get(0).getGuid());
+        finishedLater.setFinishedOn(NOW.plusHours(2).getMillis());
+        ScheduledActivity finishedEarlier = ScheduledActivity.create();
+        finishedEarlier.setGuid(scheduledActivities.get(0).getGuid());
+        finishedEarlier.setFinishedOn(NOW.plusHours(1).getMillis());
+        
+        service.updateScheduledActivities("BBB", Lists.newArrayList(finishedLater, finishedEarlier));
+        
+        ArgumentCaptor<List> publishCapture = ArgumentCaptor.forClass(List.class);
+        verify(activityEventService).publishActivityFinishedEvents(publishCapture.capture());
+        List<ScheduledActivity> publishedActivities = (List<ScheduledActivity>)publishCapture.getValue();
+        assertEquals(1, publishedActivities.size());
+        assertEquals(NOW.plusHours(2).getMillis(), publishedActivities.get(0).getFinishedOn().longValue());
+        
+        ArgumentCaptor<List> updateCapture = ArgumentCaptor.forClass(List.class);
+        verify(activityDao).updateActivities(anyString(), updateCapture.capture());
+        List<ScheduledActivity> dbActivities = (List<ScheduledActivity>)updateCapture.getValue();
+        assertEquals(1, dbActivities.size());
+        assertEquals(NOW.plusHours(2).getMillis(), dbActivities.get(0).getFinishedOn().longValue());
+    }
+    
+    @Test(expected = EntityNotFoundException.class)
+    public void updateActivitiesRejectsMissingActivity() {
+        when(activityDao.getActivitiesByGuid(anyString(), any())).thenReturn(Lists.newArrayList());
+        
+        ScheduledActivity activity = ScheduledActivity.create();
+        activity.setGuid("AAA:2017-02-23T10:00:00.000");
+        activity.setStartedOn(NOW.getMillis());
+        
+        service.updateScheduledActivities("BBB", Lists.newArrayList(activity));
     }
     
     @Test(expected = BadRequestException.class)
@@ -352,6 +438,7 @@ public class ScheduledActivityServiceMockTest {
         
         verify(activityDao).deleteActivitiesForUser("BBB");
         verifyNoMoreInteractions(activityDao);
+        verify(cacheProvider).removeString(RedisKey.SCHEDULE_MATERIALIZATION.getRedisKey("BBB"));
     }
 
     @Test
@@ -684,7 +771,7 @@ public class ScheduledActivityServiceMockTest {
         DynamoSurvey survey = new DynamoSurvey();
         survey.setIdentifier("surveyId");
         survey.setGuid("guid");
-        doReturn(survey).when(surveyService).getSurveyMostRecentlyPublishedVersion(any(), any());
+        doReturn(survey).when(surveyService).getCachedSurveyMostRecentlyPublishedVersion(any(), any());
         
         ScheduleContext context = new ScheduleContext.Builder()
                 .withInitialTimeZone(DateTimeZone.UTC)
@@ -719,7 +806,7 @@ public class ScheduledActivityServiceMockTest {
             assertEquals("guid", act.getActivity().getSurvey().getGuid());
         }
         
-        verify(surveyService, times(1)).getSurveyMostRecentlyPublishedVersion(any(), any());
+        verify(surveyService, times(1)).getCachedSurveyMostRecentlyPublishedVersion(any(), any());
     }
     
     // These cases suggested by Dwayne, there all good to verify further we don't have a date change
@@ -874,6 +961,102 @@ public class ScheduledActivityServiceMockTest {
         assertEquals(toGuids(dbActivities), toGuids(activities));
     }
     
+    @Test
+    public void getActivitiesV4SetsMaterializationMarks() throws Exception {
+        ScheduleContext context = createScheduleContext(endsOn).build();
+        
+        List<ScheduledActivity> activities = service.getScheduledActivitiesV4(context);
+        
+        ArgumentCaptor<String> jsonCaptor = ArgumentCaptor.forClass(String.class);
+        verify(cacheProvider).setString(eq(MATERIALIZATION_KEY), jsonCaptor.capture(),
+                eq(ScheduledActivityService.MATERIALIZATION_EXPIRE_IN_SECONDS));
+        JsonNode marks = BridgeObjectMapper.get().readTree(jsonCaptor.getValue());
+        
+        // Each plan is marked with the latest activity it scheduled.
+        Map<String, LocalDateTime> expectedMarks = Maps.newHashMap();
+        for (ScheduledActivity activity : activities) {
+            expectedMarks.merge(activity.getSchedulePlanGuid(), activity.getLocalScheduledOn(),
+                    (a, b) -> a.isAfter(b) ? a : b);
+        }
+        assertFalse(expectedMarks.isEmpty());
+        assertEquals(expectedMarks.keySet(), Sets.newHashSet(marks.fieldNames()));
+        for (Map.Entry<String, LocalDateTime> entry : expectedMarks.entrySet()) {
+            assertEquals(entry.getValue().toString(),
+                    marks.get(entry.getKey()).get("materializedThrough").textValue());
+        }
+    }
+    
+    @Test
+    public void getActivitiesV4ReadsMaterializedActivitiesByRange() throws Exception {
+        ScheduleContext context = createScheduleContext(endsOn).build();
+        List<ScheduledActivity> dbActivities = service.scheduleActivitiesForPlans(context);
+        reset(surveyService);
+        
+        when(cacheProvider.getString(MATERIALIZATION_KEY)).thenReturn(createMarks(null, MATERIALIZED_THROUGH));
+        when(activityDao.getActivitiesInRanges(any(), eq(HEALTH_CODE), any())).thenReturn(dbActivities);
+        
+        List<ScheduledActivity> activities = service.getScheduledActivitiesV4(context);
+        assertEquals(toGuids(dbActivities), toGuids(activities));
+        
+        // One range is read per activity, covering all of that activity's scheduled times.
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<String, Range<LocalDateTime>>> rangesCaptor = ArgumentCaptor.forClass(Map.class);
+        verify(activityDao).getActivitiesInRanges(eq(endsOn.getZone()), eq(HEALTH_CODE), rangesCaptor.capture());
+        Map<String, Range<LocalDateTime>> ranges = rangesCaptor.getValue();
+        assertEquals(dbActivities.stream().map(act -> act.getActivity().getGuid()).collect(Collectors.toSet()),
+                ranges.keySet());
+        for (ScheduledActivity dbActivity : dbActivities) {
+            assertTrue(ranges.get(dbActivity.getActivity().getGuid()).contains(dbActivity.getLocalScheduledOn()));
+        }
+        
+        // Nothing is resolved, loaded by key, or saved, and the marks haven't changed.
+        verifyZeroInteractions(surveyService);
+        verify(activityDao).getActivities(eq(endsOn.getZone()), scheduledActivityListCaptor.capture());
+        assertTrue(scheduledActivityListCaptor.getValue().isEmpty());
+        verify(activityDao).saveActivities(scheduledActivityListCaptor.capture());
+        assertTrue(scheduledActivityListCaptor.getValue().isEmpty());
+        verify(cacheProvider, never()).setString(any(), any(), anyInt());
+    }
+    
+    @Test
+    public void getActivitiesV4IgnoresMarksForChangedPlans() throws Exception {
+        ScheduleContext context = createScheduleContext(endsOn).build();
+        when(cacheProvider.getString(MATERIALIZATION_KEY)).thenReturn(createMarks(2L, MATERIALIZED_THROUGH));
+        
+        List<ScheduledActivity> activities = service.getScheduledActivitiesV4(context);
+        
+        verify(activityDao, never()).getActivitiesInRanges(any(), any(), any());
+        verify(activityDao).saveActivities(scheduledActivityListCaptor.capture());
+        assertEquals(toGuids(activities), toGuids(scheduledActivityListCaptor.getValue()));
+        verify(cacheProvider).setString(eq(MATERIALIZATION_KEY), any(), anyInt());
+    }
+    
+    @Test
+    public void getActivitiesV4SavesMaterializedActivitiesThatAreMissing() throws Exception {
+        ScheduleContext context = createScheduleContext(endsOn).build();
+        when(cacheProvider.getString(MATERIALIZATION_KEY)).thenReturn(createMarks(null, MATERIALIZED_THROUGH));
+        when(activityDao.getActivitiesInRanges(any(), any(), any())).thenReturn(Lists.newArrayList());
+        
+        List<ScheduledActivity> activities = service.getScheduledActivitiesV4(context);
+        assertTrue(activities.size() > 0);
+        
+        // The missing activities are resolved and saved like new ones.
+        verify(surveyService, times(2)).getCachedSurveyMostRecentlyPublishedVersion(eq(TEST_STUDY), any());
+        verify(activityDao).saveActivities(scheduledActivityListCaptor.capture());
+        assertEquals(toGuids(activities), toGuids(scheduledActivityListCaptor.getValue()));
+    }
+    
+    // Marks for the three schedule plans from TestUtils.getSchedulePlans().
+    private String createMarks(Long planVersion, LocalDateTime materializedThrough) {
+        ObjectNode marks = JsonNodeFactory.instance.objectNode();
+        for (String planGuid : ImmutableSet.of("BBB", "CCC", "DDD")) {
+            ObjectNode mark = marks.putObject(planGuid);
+            mark.put("planVersion", planVersion);
+            mark.put("materializedThrough", materializedThrough.toString());
+        }
+        return marks.toString();
+    }
+    
     private String firstTimeStampFor(int initialTZOffset, int requestTZOffset, Schedule schedule) {
         // Tests calling this method set up different mocked environment from other tests.
         reset(schedulePlanService);
@@ -91,7 +91,7 @@ public class ScheduledActivityServiceResolveLinksTest {
         survey.setCreatedOn(SURVEY_CREATED_ON_MILLIS);
 
         mockSurveyService = mock(SurveyService.class);
-        when(mockSurveyService.getSurveyMostRecentlyPublishedVersion(TestConstants.TEST_STUDY, SURVEY_GUID))
+        when(mockSurveyService.getCachedSurveyMostRecentlyPublishedVersion(TestConstants.TEST_STUDY, SURVEY_GUID))
                 .thenReturn(survey);
 
         // Set up scheduled activity service with the mocks.
@@ -162,7 +162,7 @@ public class ScheduledActivityServiceResolveLinksTest {
         // Validate backends. We only called compound activity, schema, and survey services once.
         verify(mockCompoundActivityDefinitionService, times(1)).getCompoundActivityDefinition(any(), any());
         verify(mockSchemaService, times(1)).getLatestUploadSchemaRevisionForAppVersion(any(), any(), any());
-        verify(mockSurveyService, times(1)).getSurveyMostRecentlyPublishedVersion(any(), any());
+        verify(mockSurveyService, times(1)).getCachedSurveyMostRecentlyPublishedVersion(any(), any());
     }
 
     @Test
@@ -184,7 +184,7 @@ public class ScheduledActivityServiceResolveLinksTest {
         // Validate backends. We only called schema and survey services once. We never call compound activity service.
         verify(mockCompoundActivityDefinitionService, never()).getCompoundActivityDefinition(any(), any());
         verify(mockSchemaService, times(1)).getLatestUploadSchemaRevisionForAppVersion(any(), any(), any());
-        verify(mockSurveyService, times(1)).getSurveyMostRecentlyPublishedVersion(any(), any());
+        verify(mockSurveyService, times(1)).getCachedSurveyMostRecentlyPublishedVersion(any(), any());
     }
 
     @Test
@@ -207,7 +207,7 @@ public class ScheduledActivityServiceResolveLinksTest {
         // Validate we never call any backends.
         verify(mockCompoundActivityDefinitionService, never()).getCompoundActivityDefinition(any(), any());
         verify(mockSchemaService, never()).getLatestUploadSchemaRevisionForAppVersion(any(), any(), any());
-        verify(mockSurveyService, never()).getSurveyMostRecentlyPublishedVersion(any(), any());
+        verify(mockSurveyService, never()).getCachedSurveyMostRecentlyPublishedVersion(any(), any());
     }
 
     private static void verifyCompoundActivities(List<ScheduledActivity> scheduledActivityList) {
@@ -240,7 +240,7 @@ public class ScheduledActivityServiceResolveLinksTest {
         verifySurveys(scheduledActivityList);
 
         // We call survey service once.
-        verify(mockSurveyService, times(1)).getSurveyMostRecentlyPublishedVersion(any(), any());
+        verify(mockSurveyService, times(1)).getCachedSurveyMostRecentlyPublishedVersion(any(), any());
 
         // Validate that we never call compound activity service or schema service (not like we have any reason to).
         verify(mockCompoundActivityDefinitionService, never()).getCompoundActivityDefinition(any(), any());
@@ -260,7 +260,7 @@ public class ScheduledActivityServiceResolveLinksTest {
         verifySurveys(scheduledActivityList);
 
         // We never call survey service.
-        verify(mockSurveyService, never()).getSurveyMostRecentlyPublishedVersion(any(), any());
+        verify(mockSurveyService, never()).getCachedSurveyMostRecentlyPublishedVersion(any(), any());
 
         // Validate that we never call compound activity service or schema service (not like we have any reason to).
         verify(mockCompoundActivityDefinitionService, never()).getCompoundActivityDefinition(any(), any());
@@ -295,7 +295,7 @@ public class ScheduledActivityServiceResolveLinksTest {
 
         // Validate that we never call compound activity service or survey service (not like we have any reason to).
         verify(mockCompoundActivityDefinitionService, never()).getCompoundActivityDefinition(any(), any());
-        verify(mockSurveyService, never()).getSurveyMostRecentlyPublishedVersion(any(), any());
+        verify(mockSurveyService, never()).getCachedSurveyMostRecentlyPublishedVersion(any(), any());
     }
 
     @Test
@@ -316,7 +316,7 @@ public class ScheduledActivityServiceResolveLinksTest {
 
         // Validate that we never call compound activity service or survey service (not like we have any reason to).
         verify(mockCompoundActivityDefinitionService, never()).getCompoundActivityDefinition(any(), any());
-        verify(mockSurveyService, never()).getSurveyMostRecentlyPublishedVersion(any(), any());
+        verify(mockSurveyService, never()).getCachedSurveyMostRecentlyPublishedVersion(any(), any());
     }
 
     private static void verifySchemas(List<ScheduledActivity> scheduledActivityList) {
@@ -350,7 +350,7 @@ public class ScheduledActivityServiceResolveLinksTest {
         // No resolution happens, so we never call any of the backends.
         verify(mockCompoundActivityDefinitionService, never()).getCompoundActivityDefinition(any(), any());
         verify(mockSchemaService, never()).getLatestUploadSchemaRevisionForAppVersion(any(), any(), any());
-        verify(mockSurveyService, never()).getSurveyMostRecentlyPublishedVersion(any(), any());
+        verify(mockSurveyService, never()).getCachedSurveyMostRecentlyPublishedVersion(any(), any());
     }
 
     private static void verifyActivityListSizeAndLabels(List<ScheduledActivity> scheduledActivityList) {
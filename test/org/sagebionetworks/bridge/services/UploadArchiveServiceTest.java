@@ -8,7 +8,9 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.notNull;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
@@ -17,12 +19,12 @@ import java.util.Map;
 import com.google.common.base.Charsets;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
 import org.junit.Before;
 import org.junit.Test;
 
-import org.sagebionetworks.bridge.crypto.BcCmsEncryptor;
-import org.sagebionetworks.bridge.crypto.CmsEncryptor;
 import org.sagebionetworks.bridge.crypto.PemUtils;
+import org.sagebionetworks.bridge.crypto.StreamingCmsEncryptor;
 import org.sagebionetworks.bridge.exceptions.BridgeServiceException;
 import org.springframework.core.io.ClassPathResource;
 
@@ -39,10 +41,10 @@ public class UploadArchiveServiceTest {
         File privateKeyFile = new ClassPathResource("/cms/rsaprivkey.pem").getFile();
         byte[] privateKeyBytes = Files.readAllBytes(privateKeyFile.toPath());
         PrivateKey privateKey = PemUtils.loadPrivateKeyFromPem(new String(privateKeyBytes));
-        CmsEncryptor encryptor = new BcCmsEncryptor(cert, privateKey);
+        StreamingCmsEncryptor encryptor = new StreamingCmsEncryptor(cert, privateKey);
 
         // mock encryptor cache
-        LoadingCache<String, CmsEncryptor> mockEncryptorCache = mock(LoadingCache.class);
+        LoadingCache<String, StreamingCmsEncryptor> mockEncryptorCache = mock(LoadingCache.class);
         when(mockEncryptorCache.get(notNull(String.class))).thenReturn(encryptor);
 
         // archive service
@@ -66,6 +68,25 @@ public class UploadArchiveServiceTest {
         assertEquals(inputStr, new String(decryptedData, Charsets.UTF_8));
     }
 
+    @Test
+    public void encryptDecryptStreamRoundTrip() throws Exception {
+        // starting data
+        String inputStr = "This is my raw data.";
+        byte[] encryptedData = archiveService.encrypt("test-study", inputStr.getBytes(Charsets.UTF_8));
+
+        // decrypt
+        try (InputStream decryptedStream = archiveService.decrypt("test-study",
+                new ByteArrayInputStream(encryptedData))) {
+            assertEquals(inputStr, new String(ByteStreams.toByteArray(decryptedStream), Charsets.UTF_8));
+        }
+    }
+
+    @Test(expected = BridgeServiceException.class)
+    public void decryptGarbageStream() {
+        byte[] garbageData = "This is not encrypted data.".getBytes(Charsets.UTF_8);
+        archiveService.decrypt("test-study", new ByteArrayInputStream(garbageData));
+    }
+
     @Test(expected = BridgeServiceException.class)
     public void decryptGarbageData() {
         String garbageStr = "This is not encrypted data.";
@@ -116,4 +137,25 @@ public class UploadArchiveServiceTest {
             assertTrue(oneData.length > 0);
         }
     }
+
+    @Test
+    public void decryptAndUnzipRealFileAsStream() throws Exception {
+        // get archive file, which is stored in git
+        File archiveFile = new ClassPathResource("/cms/data/archive").getFile();
+
+        // decrypt and unzip
+        Map<String, byte[]> unzippedData;
+        try (InputStream encryptedStream = Files.newInputStream(archiveFile.toPath())) {
+            unzippedData = archiveService.unzip(archiveService.decrypt("test-study", encryptedStream));
+        }
+
+        // Same as reading the whole file.
+        Map<String, byte[]> expectedData = archiveService.unzip(archiveService.decrypt("test-study",
+                Files.readAllBytes(archiveFile.toPath())));
+        assertEquals(3, unzippedData.size());
+        assertEquals(expectedData.keySet(), unzippedData.keySet());
+        for (Map.Entry<String, byte[]> oneEntry : expectedData.entrySet()) {
+            assertArrayEquals(oneEntry.getValue(), unzippedData.get(oneEntry.getKey()));
+        }
+    }
 }
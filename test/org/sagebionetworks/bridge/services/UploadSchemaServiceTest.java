@@ -12,6 +12,7 @@ import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.sagebionetworks.bridge.services.SharedModuleMetadataServiceTest.makeValidMetadata;
@@ -560,6 +561,76 @@ public class UploadSchemaServiceTest {
                 schemaRev1, schemaRev2));
     }
 
+    @Test
+    public void getLatestIsCached() {
+        setupDaoForGetLatest();
+        ClientInfo clientInfo = new ClientInfo.Builder().withOsName(OS_NAME).withAppVersion(25).build();
+
+        // Second call is served from the cache.
+        UploadSchema retval1 = svc.getLatestUploadSchemaRevisionForAppVersion(TestConstants.TEST_STUDY, SCHEMA_ID,
+                clientInfo);
+        UploadSchema retval2 = svc.getLatestUploadSchemaRevisionForAppVersion(TestConstants.TEST_STUDY, SCHEMA_ID,
+                clientInfo);
+        assertSame(retval1, retval2);
+        verify(dao, times(1)).getUploadSchemaAllRevisionsById(TestConstants.TEST_STUDY, SCHEMA_ID);
+
+        // No match is cached too.
+        ClientInfo oldClientInfo = new ClientInfo.Builder().withOsName(OS_NAME).withAppVersion(5).build();
+        assertNull(svc.getLatestUploadSchemaRevisionForAppVersion(TestConstants.TEST_STUDY, SCHEMA_ID,
+                oldClientInfo));
+        assertNull(svc.getLatestUploadSchemaRevisionForAppVersion(TestConstants.TEST_STUDY, SCHEMA_ID,
+                oldClientInfo));
+        verify(dao, times(2)).getUploadSchemaAllRevisionsById(TestConstants.TEST_STUDY, SCHEMA_ID);
+    }
+
+    @Test
+    public void createV4InvalidatesLatestCache() {
+        setupDaoForGetLatest();
+        ClientInfo clientInfo = new ClientInfo.Builder().withOsName(OS_NAME).withAppVersion(25).build();
+        svc.getLatestUploadSchemaRevisionForAppVersion(TestConstants.TEST_STUDY, SCHEMA_ID, clientInfo);
+
+        when(dao.createSchemaRevision(any())).thenReturn(makeSimpleSchema());
+        svc.createSchemaRevisionV4(TestConstants.TEST_STUDY, svcInputSchema);
+
+        svc.getLatestUploadSchemaRevisionForAppVersion(TestConstants.TEST_STUDY, SCHEMA_ID, clientInfo);
+        verify(dao, times(2)).getUploadSchemaAllRevisionsById(TestConstants.TEST_STUDY, SCHEMA_ID);
+    }
+
+    @Test
+    public void getCachedByIdAndRev() {
+        UploadSchema schema = makeSimpleSchema();
+        when(dao.getUploadSchemaByIdAndRevision(TestConstants.TEST_STUDY, SCHEMA_ID, SCHEMA_REV)).thenReturn(schema);
+
+        assertSame(schema, svc.getCachedUploadSchemaByIdAndRev(TestConstants.TEST_STUDY, SCHEMA_ID, SCHEMA_REV));
+        assertSame(schema, svc.getCachedUploadSchemaByIdAndRev(TestConstants.TEST_STUDY, SCHEMA_ID, SCHEMA_REV));
+        verify(dao, times(1)).getUploadSchemaByIdAndRevision(TestConstants.TEST_STUDY, SCHEMA_ID, SCHEMA_REV);
+    }
+
+    @Test
+    public void getCachedByIdAndRevDoesNotCacheMisses() {
+        for (int i = 0; i < 2; i++) {
+            try {
+                svc.getCachedUploadSchemaByIdAndRev(TestConstants.TEST_STUDY, SCHEMA_ID, SCHEMA_REV);
+                fail("expected exception");
+            } catch (EntityNotFoundException ex) {
+                // expected exception
+            }
+        }
+        verify(dao, times(2)).getUploadSchemaByIdAndRevision(TestConstants.TEST_STUDY, SCHEMA_ID, SCHEMA_REV);
+    }
+
+    @Test
+    public void deleteByIdAndRevInvalidatesCache() {
+        UploadSchema schema = makeSimpleSchema();
+        when(dao.getUploadSchemaByIdAndRevision(TestConstants.TEST_STUDY, SCHEMA_ID, SCHEMA_REV)).thenReturn(schema);
+        svc.getCachedUploadSchemaByIdAndRev(TestConstants.TEST_STUDY, SCHEMA_ID, SCHEMA_REV);
+
+        // Delete reads the schema once, and the next cached read goes back to the DAO.
+        svc.deleteUploadSchemaByIdAndRevision(TestConstants.TEST_STUDY, SCHEMA_ID, SCHEMA_REV);
+        svc.getCachedUploadSchemaByIdAndRev(TestConstants.TEST_STUDY, SCHEMA_ID, SCHEMA_REV);
+        verify(dao, times(3)).getUploadSchemaByIdAndRevision(TestConstants.TEST_STUDY, SCHEMA_ID, SCHEMA_REV);
+    }
+
     @Test
     public void isSchemaAvailableForClientInfo() {
         // test cases: { clientInfoAppVersion, minAppVersion, maxAppVersion, expected }
@@ -24,6 +24,7 @@ import org.sagebionetworks.bridge.dao.UploadDao;
 import org.sagebionetworks.bridge.dynamodb.DynamoUpload2;
 import org.sagebionetworks.bridge.exceptions.ConcurrentModificationException;
 import org.sagebionetworks.bridge.exceptions.NotFoundException;
+import org.sagebionetworks.bridge.exceptions.ServiceUnavailableException;
 import org.sagebionetworks.bridge.models.studies.StudyIdentifier;
 import org.sagebionetworks.bridge.models.upload.Upload;
 import org.sagebionetworks.bridge.models.upload.UploadStatus;
@@ -168,4 +169,33 @@ public class UploadServiceUploadCompleteMockTest {
         verify(mockUploadDao).uploadComplete(APP, upload);
         verify(mockUploadValidationService).validateUpload(TestConstants.TEST_STUDY, upload);
     }
+
+    @Test
+    public void validationNotQueued() {
+        // set up input
+        DynamoUpload2 upload = new DynamoUpload2();
+        upload.setUploadId(TEST_UPLOAD_ID);
+        upload.setStatus(UploadStatus.REQUESTED);
+
+        // mock S3
+        ObjectMetadata mockObjMetadata = mock(ObjectMetadata.class);
+        when(mockObjMetadata.getSSEAlgorithm()).thenReturn(ObjectMetadata.AES_256_SERVER_SIDE_ENCRYPTION);
+        when(mockS3Client.getObjectMetadata(TEST_BUCKET, TEST_UPLOAD_ID)).thenReturn(mockObjMetadata);
+
+        // mock validation queue is full
+        doThrow(ServiceUnavailableException.class).when(mockUploadValidationService).validateUpload(
+                TestConstants.TEST_STUDY, upload);
+
+        // execute
+        try {
+            svc.uploadComplete(TestConstants.TEST_STUDY, APP, upload);
+            fail("expected exception");
+        } catch (ServiceUnavailableException ex) {
+            // expected exception
+        }
+
+        // The upload is put back in the requested state, so completing it again re-drives validation.
+        verify(mockUploadDao).uploadComplete(APP, upload);
+        verify(mockUploadDao).writeValidationStatus(upload, UploadStatus.REQUESTED, ImmutableList.of(), null);
+    }
 }
@@ -1,48 +1,72 @@
 package org.sagebionetworks.bridge.services;
 
+import static org.junit.Assert.assertSame;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-import java.util.concurrent.ExecutorService;
+import java.util.Map;
 
+import org.junit.Before;
 import org.junit.Test;
 import org.sagebionetworks.bridge.TestUtils;
 import org.sagebionetworks.bridge.dynamodb.DynamoUpload2;
 import org.sagebionetworks.bridge.models.studies.Study;
 import org.sagebionetworks.bridge.models.upload.Upload;
+import org.sagebionetworks.bridge.upload.UploadValidationScheduler;
 import org.sagebionetworks.bridge.upload.UploadValidationTask;
 import org.sagebionetworks.bridge.upload.UploadValidationTaskFactory;
 
+import com.google.common.collect.ImmutableMap;
+
 public class UploadValidationServiceTest {
-    @Test
-    public void test() {
-        // UploadValidationService is a simple call-through to the task factory and the async thread pool. As such, our
-        // test strategy is to verify that execution flows through to these dependencies.
+    // UploadValidationService is a simple call-through to the task factory and the scheduler. As such, our test
+    // strategy is to verify that execution flows through to these dependencies.
 
+    private Study study;
+    private Upload upload;
+    private UploadValidationTask mockTask;
+    private UploadValidationScheduler mockScheduler;
+    private UploadValidationService svc;
+
+    @Before
+    public void before() {
         // inputs
-        Study study = TestUtils.getValidStudy(UploadValidationServiceTest.class);
-        Upload upload = new DynamoUpload2();
+        study = TestUtils.getValidStudy(UploadValidationServiceTest.class);
+        upload = new DynamoUpload2();
 
         // mock task
-        UploadValidationTask mockTask = mock(UploadValidationTask.class);
+        mockTask = mock(UploadValidationTask.class);
 
         // mock task factory
         UploadValidationTaskFactory mockTaskFactory = mock(UploadValidationTaskFactory.class);
         when(mockTaskFactory.newTask(study, upload)).thenReturn(mockTask);
 
-        // mock async thread pool
-        ExecutorService mockExecutor = mock(ExecutorService.class);
+        // mock scheduler
+        mockScheduler = mock(UploadValidationScheduler.class);
 
         // set up service
-        UploadValidationService svc = new UploadValidationService();
-        svc.setAsyncExecutorService(mockExecutor);
+        svc = new UploadValidationService();
+        svc.setScheduler(mockScheduler);
         svc.setTaskFactory(mockTaskFactory);
+    }
 
-        // execute
+    @Test
+    public void test() {
         svc.validateUpload(study, upload);
+        verify(mockScheduler).submit(UploadValidationScheduler.Lane.INTERACTIVE, mockTask);
+    }
+
+    @Test
+    public void revalidateUsesBackfillLane() {
+        svc.revalidateUpload(study, upload);
+        verify(mockScheduler).submit(UploadValidationScheduler.Lane.BACKFILL, mockTask);
+    }
 
-        // validate
-        verify(mockExecutor).execute(mockTask);
+    @Test
+    public void getValidationStats() {
+        Map<String, Object> stats = ImmutableMap.of("lanes", ImmutableMap.of());
+        when(mockScheduler.getStats()).thenReturn(stats);
+        assertSame(stats, svc.getValidationStats());
     }
 }
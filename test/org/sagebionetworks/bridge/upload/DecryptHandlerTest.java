@@ -1,6 +1,7 @@
 package org.sagebionetworks.bridge.upload;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -35,5 +36,6 @@ public class DecryptHandlerTest {
         // execute and validate
         handler.handle(ctx);
         assertEquals("decrypted test data", new String(ctx.getDecryptedData(), Charsets.UTF_8));
+        assertNull(ctx.getData());
     }
 }
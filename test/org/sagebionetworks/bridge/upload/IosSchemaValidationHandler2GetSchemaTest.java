@@ -37,14 +37,14 @@ public class IosSchemaValidationHandler2GetSchemaTest {
         survey.setSchemaRevision(4);
 
         SurveyService mockSurveyService = mock(SurveyService.class);
-        when(mockSurveyService.getSurvey(
+        when(mockSurveyService.getCachedSurvey(
                 eq(new GuidCreatedOnVersionHolderImpl("test-guid", TEST_SURVEY_CREATED_ON_MILLIS))))
                 .thenReturn(survey);
 
         // mock upload schema service
         UploadSchema dummySchema = UploadSchema.create();
         UploadSchemaService mockSchemaSvc = mock(UploadSchemaService.class);
-        when(mockSchemaSvc.getUploadSchemaByIdAndRev(TEST_STUDY, "test-survey", 4)).thenReturn(
+        when(mockSchemaSvc.getCachedUploadSchemaByIdAndRev(TEST_STUDY, "test-survey", 4)).thenReturn(
                 dummySchema);
 
         // set up test handler
@@ -71,7 +71,7 @@ public class IosSchemaValidationHandler2GetSchemaTest {
         survey.setSchemaRevision(4);
 
         SurveyService mockSurveyService = mock(SurveyService.class);
-        when(mockSurveyService.getSurvey(
+        when(mockSurveyService.getCachedSurvey(
                 eq(new GuidCreatedOnVersionHolderImpl("test-guid", TEST_SURVEY_CREATED_ON_MILLIS))))
                 .thenReturn(survey);
 
@@ -97,7 +97,7 @@ public class IosSchemaValidationHandler2GetSchemaTest {
         survey.setIdentifier("test-survey");
 
         SurveyService mockSurveyService = mock(SurveyService.class);
-        when(mockSurveyService.getSurvey(
+        when(mockSurveyService.getCachedSurvey(
                 eq(new GuidCreatedOnVersionHolderImpl("test-guid", TEST_SURVEY_CREATED_ON_MILLIS))))
                 .thenReturn(survey);
 
@@ -120,7 +120,7 @@ public class IosSchemaValidationHandler2GetSchemaTest {
         // mock upload schema service
         UploadSchema dummySchema = UploadSchema.create();
         UploadSchemaService mockSchemaSvc = mock(UploadSchemaService.class);
-        when(mockSchemaSvc.getUploadSchemaByIdAndRev(TEST_STUDY, "test-schema", 1)).thenReturn(
+        when(mockSchemaSvc.getCachedUploadSchemaByIdAndRev(TEST_STUDY, "test-schema", 1)).thenReturn(
                 dummySchema);
 
         // set up test handler
@@ -142,7 +142,7 @@ public class IosSchemaValidationHandler2GetSchemaTest {
         // mock upload schema service
         UploadSchema dummySchema = UploadSchema.create();
         UploadSchemaService mockSchemaSvc = mock(UploadSchemaService.class);
-        when(mockSchemaSvc.getUploadSchemaByIdAndRev(TEST_STUDY, "schema-rev-test", 2)).thenReturn(
+        when(mockSchemaSvc.getCachedUploadSchemaByIdAndRev(TEST_STUDY, "schema-rev-test", 2)).thenReturn(
                 dummySchema);
 
         // set up test handler
@@ -164,7 +164,7 @@ public class IosSchemaValidationHandler2GetSchemaTest {
         // mock upload schema service
         UploadSchema dummySchema = UploadSchema.create();
         UploadSchemaService mockSchemaSvc = mock(UploadSchemaService.class);
-        when(mockSchemaSvc.getUploadSchemaByIdAndRev(TEST_STUDY, "schema-rev-test", 3)).thenReturn(
+        when(mockSchemaSvc.getCachedUploadSchemaByIdAndRev(TEST_STUDY, "schema-rev-test", 3)).thenReturn(
                 dummySchema);
 
         // set up test handler
@@ -187,7 +187,7 @@ public class IosSchemaValidationHandler2GetSchemaTest {
         // mock upload schema service
         UploadSchema dummySchema = UploadSchema.create();
         UploadSchemaService mockSchemaSvc = mock(UploadSchemaService.class);
-        when(mockSchemaSvc.getUploadSchemaByIdAndRev(TEST_STUDY, "test-schema", 1)).thenReturn(
+        when(mockSchemaSvc.getCachedUploadSchemaByIdAndRev(TEST_STUDY, "test-schema", 1)).thenReturn(
                 dummySchema);
 
         // set up test handler
@@ -189,13 +189,14 @@ public class IosSchemaValidationHandler2Test {
 
         // mock upload schema service
         UploadSchemaService mockSchemaService = mock(UploadSchemaService.class);
-        when(mockSchemaService.getUploadSchemaByIdAndRev(study, "test-survey", 1)).thenReturn(surveySchema);
-        when(mockSchemaService.getUploadSchemaByIdAndRev(study, "json-data", 1)).thenReturn(jsonDataSchema);
-        when(mockSchemaService.getUploadSchemaByIdAndRev(study, "non-json-data", 1)).thenReturn(nonJsonDataSchema);
-        when(mockSchemaService.getUploadSchemaByIdAndRev(study, "mixed-data", 1)).thenReturn(mixedSchema);
-        when(mockSchemaService.getUploadSchemaByIdAndRev(study, "schema-rev-test", 2)).thenReturn(schemaRevTest2);
-        when(mockSchemaService.getUploadSchemaByIdAndRev(study, "schema-rev-test", 3)).thenReturn(schemaRevTest3);
-        when(mockSchemaService.getUploadSchemaByIdAndRev(study, "simple-attachment-schema", 1)).thenReturn(
+        when(mockSchemaService.getCachedUploadSchemaByIdAndRev(study, "test-survey", 1)).thenReturn(surveySchema);
+        when(mockSchemaService.getCachedUploadSchemaByIdAndRev(study, "json-data", 1)).thenReturn(jsonDataSchema);
+        when(mockSchemaService.getCachedUploadSchemaByIdAndRev(study, "non-json-data", 1)).thenReturn(
+                nonJsonDataSchema);
+        when(mockSchemaService.getCachedUploadSchemaByIdAndRev(study, "mixed-data", 1)).thenReturn(mixedSchema);
+        when(mockSchemaService.getCachedUploadSchemaByIdAndRev(study, "schema-rev-test", 2)).thenReturn(schemaRevTest2);
+        when(mockSchemaService.getCachedUploadSchemaByIdAndRev(study, "schema-rev-test", 3)).thenReturn(schemaRevTest3);
+        when(mockSchemaService.getCachedUploadSchemaByIdAndRev(study, "simple-attachment-schema", 1)).thenReturn(
                 simpleAttachmentSchema);
 
         // set up handler
@@ -369,7 +370,7 @@ public class IosSchemaValidationHandler2Test {
         survey.setSchemaRevision(1);
 
         SurveyService mockSurveyService = mock(SurveyService.class);
-        when(mockSurveyService.getSurvey(eq(new GuidCreatedOnVersionHolderImpl("test-guid", expectedCreatedOn))))
+        when(mockSurveyService.getCachedSurvey(eq(new GuidCreatedOnVersionHolderImpl("test-guid", expectedCreatedOn))))
                 .thenReturn(survey);
         handler.setSurveyService(mockSurveyService);
 
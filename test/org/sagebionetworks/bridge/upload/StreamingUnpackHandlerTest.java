@@ -0,0 +1,74 @@
+package org.sagebionetworks.bridge.upload;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Map;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.S3Object;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import org.sagebionetworks.bridge.TestConstants;
+import org.sagebionetworks.bridge.TestUtils;
+import org.sagebionetworks.bridge.dynamodb.DynamoStudy;
+import org.sagebionetworks.bridge.dynamodb.DynamoUpload2;
+import org.sagebionetworks.bridge.services.UploadArchiveService;
+
+public class StreamingUnpackHandlerTest {
+    @Test
+    public void test() throws Exception {
+        // The handler is a pass-through from the S3 client to the UploadArchiveService, so just test that the S3
+        // stream flows through decrypt and unzip as expected.
+
+        // inputs
+        DynamoStudy study = TestUtils.getValidStudy(StreamingUnpackHandlerTest.class);
+        DynamoUpload2 upload2 = new DynamoUpload2();
+        upload2.setUploadId("test-upload-id");
+
+        UploadValidationContext ctx = new UploadValidationContext();
+        ctx.setStudy(study);
+        ctx.setUpload(upload2);
+
+        // mock S3 client
+        InputStream s3Stream = new ByteArrayInputStream("encrypted test data".getBytes(Charsets.UTF_8));
+        S3Object s3Object = new S3Object();
+        s3Object.setObjectContent(s3Stream);
+
+        AmazonS3 mockS3Client = mock(AmazonS3.class);
+        when(mockS3Client.getObject(TestConstants.UPLOAD_BUCKET, "test-upload-id")).thenReturn(s3Object);
+
+        // mock UploadArchiveService
+        InputStream decryptedStream = new ByteArrayInputStream("zipped test data".getBytes(Charsets.UTF_8));
+        Map<String, byte[]> mockUnzippedDataMap = ImmutableMap.of(
+                "foo", "foo data".getBytes(Charsets.UTF_8),
+                "bar", "bar data".getBytes(Charsets.UTF_8));
+
+        UploadArchiveService mockSvc = mock(UploadArchiveService.class);
+        when(mockSvc.decrypt(study.getIdentifier(), s3Object.getObjectContent())).thenReturn(decryptedStream);
+        when(mockSvc.unzip(decryptedStream)).thenReturn(mockUnzippedDataMap);
+
+        // set up test handler
+        StreamingUnpackHandler handler = new StreamingUnpackHandler();
+        handler.setS3Client(mockS3Client);
+        handler.setUploadArchiveService(mockSvc);
+
+        // execute and validate
+        handler.handle(ctx);
+        Map<String, byte[]> retVal = ctx.getUnzippedDataMap();
+        assertEquals(2, retVal.size());
+        assertArrayEquals(mockUnzippedDataMap.get("foo"), retVal.get("foo"));
+        assertArrayEquals(mockUnzippedDataMap.get("bar"), retVal.get("bar"));
+
+        // Nothing is downloaded into or decrypted into the context as a whole.
+        assertNull(ctx.getData());
+        assertNull(ctx.getDecryptedData());
+    }
+}
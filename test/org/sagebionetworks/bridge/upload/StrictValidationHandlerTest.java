@@ -68,7 +68,7 @@ public class StrictValidationHandlerTest {
 
         // mock schema service
         UploadSchemaService mockSchemaService = mock(UploadSchemaService.class);
-        when(mockSchemaService.getUploadSchemaByIdAndRev(TEST_STUDY, "test-schema", 1)).thenReturn(
+        when(mockSchemaService.getCachedUploadSchemaByIdAndRev(TEST_STUDY, "test-schema", 1)).thenReturn(
                 testSchema);
         handler.setUploadSchemaService(mockSchemaService);
 
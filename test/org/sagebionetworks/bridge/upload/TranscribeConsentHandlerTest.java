@@ -3,7 +3,11 @@ package org.sagebionetworks.bridge.upload;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.google.common.collect.ImmutableMap;
@@ -28,7 +32,7 @@ public class TranscribeConsentHandlerTest {
     public void test() {
         // mock options service
         ParticipantOptionsService mockOptionsService = mock(ParticipantOptionsService.class);
-        when(mockOptionsService.getOptions(TEST_HEALTHCODE)).thenReturn(new ParticipantOptionsLookup(
+        when(mockOptionsService.getOptionsUncached(TEST_HEALTHCODE)).thenReturn(new ParticipantOptionsLookup(
             ImmutableMap.of(
                 ParticipantOption.SHARING_SCOPE.name(), ParticipantOption.SharingScope.SPONSORS_AND_PARTNERS.name(),
                 ParticipantOption.EXTERNAL_IDENTIFIER.name(), TEST_EXTERNAL_ID,
@@ -49,7 +53,8 @@ public class TranscribeConsentHandlerTest {
     public void testNoParticipantOptions() {
         // mock options service
         ParticipantOptionsService mockOptionsService = mock(ParticipantOptionsService.class);
-        when(mockOptionsService.getOptions(TEST_HEALTHCODE)).thenReturn(new ParticipantOptionsLookup(Maps.newHashMap()));
+        when(mockOptionsService.getOptionsUncached(TEST_HEALTHCODE)).thenReturn(new ParticipantOptionsLookup(
+                Maps.newHashMap()));
 
         HealthDataRecordBuilder recordBuilder = new DynamoHealthDataRecord.Builder();
         HealthDataRecordBuilder outputRecordBuilder = setupContextAndRunHandler(recordBuilder, mockOptionsService);
@@ -63,7 +68,7 @@ public class TranscribeConsentHandlerTest {
     @Test
     public void emptyStringSetConvertedCorrectly() {
         ParticipantOptionsService mockOptionsService = mock(ParticipantOptionsService.class);
-        when(mockOptionsService.getOptions(TEST_HEALTHCODE)).thenReturn(new ParticipantOptionsLookup(ImmutableMap.of(
+        when(mockOptionsService.getOptionsUncached(TEST_HEALTHCODE)).thenReturn(new ParticipantOptionsLookup(ImmutableMap.of(
                 ParticipantOption.DATA_GROUPS.name(), "")));
         
         HealthDataRecordBuilder recordBuilder = new DynamoHealthDataRecord.Builder();
@@ -75,7 +80,7 @@ public class TranscribeConsentHandlerTest {
     @Test
     public void setOfOneStringConvertedCorrectly() {
         ParticipantOptionsService mockOptionsService = mock(ParticipantOptionsService.class);
-        when(mockOptionsService.getOptions(TEST_HEALTHCODE)).thenReturn(new ParticipantOptionsLookup(
+        when(mockOptionsService.getOptionsUncached(TEST_HEALTHCODE)).thenReturn(new ParticipantOptionsLookup(
                 ImmutableMap.of(ParticipantOption.DATA_GROUPS.name(), "group1")));
         
         HealthDataRecordBuilder recordBuilder = new DynamoHealthDataRecord.Builder();
@@ -84,6 +89,31 @@ public class TranscribeConsentHandlerTest {
         assertEquals(Sets.newHashSet("group1"), outputRecordBuilder.getUserDataGroups());
     }
     
+    @Test
+    public void optionsReadOncePerUpload() {
+        ParticipantOptionsService mockOptionsService = mock(ParticipantOptionsService.class);
+        ParticipantOptionsLookup lookup = new ParticipantOptionsLookup(ImmutableMap.of(
+                ParticipantOption.EXTERNAL_IDENTIFIER.name(), TEST_EXTERNAL_ID));
+        when(mockOptionsService.getOptionsUncached(TEST_HEALTHCODE)).thenReturn(lookup);
+
+        TranscribeConsentHandler handler = new TranscribeConsentHandler();
+        handler.setOptionsService(mockOptionsService);
+
+        DynamoUpload2 upload = new DynamoUpload2();
+        upload.setHealthCode(TEST_HEALTHCODE);
+        UploadValidationContext context = new UploadValidationContext();
+        context.setUpload(upload);
+        context.setHealthDataRecordBuilder(new DynamoHealthDataRecord.Builder());
+
+        // The lookup is kept on the context, so handling the upload again doesn't read the options again.
+        handler.handle(context);
+        handler.handle(context);
+        assertSame(lookup, context.getParticipantOptionsLookup());
+        assertEquals(TEST_EXTERNAL_ID, context.getHealthDataRecordBuilder().getUserExternalId());
+        verify(mockOptionsService, times(1)).getOptionsUncached(TEST_HEALTHCODE);
+        verify(mockOptionsService, never()).getOptions(any());
+    }
+
     private HealthDataRecordBuilder setupContextAndRunHandler(HealthDataRecordBuilder recordBuilder,
             ParticipantOptionsService optsService) {
         TranscribeConsentHandler handler = new TranscribeConsentHandler();
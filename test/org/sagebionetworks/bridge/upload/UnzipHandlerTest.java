@@ -2,6 +2,7 @@ package org.sagebionetworks.bridge.upload;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -43,5 +44,6 @@ public class UnzipHandlerTest {
         assertArrayEquals(mockUnzippedDataMap.get("foo"), retVal.get("foo"));
         assertArrayEquals(mockUnzippedDataMap.get("bar"), retVal.get("bar"));
         assertArrayEquals(mockUnzippedDataMap.get("baz"), retVal.get("baz"));
+        assertNull(ctx.getDecryptedData());
     }
 }
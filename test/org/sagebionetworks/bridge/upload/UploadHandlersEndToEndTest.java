@@ -3,25 +3,32 @@ package org.sagebionetworks.bridge.upload;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
-import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.S3Object;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeUtils;
 import org.joda.time.LocalDate;
@@ -62,11 +69,9 @@ import org.sagebionetworks.bridge.util.Zipper;
 
 @SuppressWarnings({ "rawtypes", "unchecked" })
 public class UploadHandlersEndToEndTest {
-    private static final String ATTACHMENT_ID_PREFIX = "attachment-";
     private static final Set<String> DATA_GROUP_SET = ImmutableSet.of("parkinson", "test_user");
     private static final String EXTERNAL_ID = "external-id";
     private static final String HEALTH_CODE = "health-code";
-    private static final String RECORD_ID = "record-id";
     private static final String UPLOAD_ID = "upload-id";
     private static final Zipper ZIPPER = new Zipper(1000000, 1000000);
 
@@ -98,14 +103,8 @@ public class UploadHandlersEndToEndTest {
     }
 
     // The following handlers have no external dependencies. We can use real handlers with real helper class objects.
-    private static final UnzipHandler UNZIP_HANDLER = new UnzipHandler();
-    static {
-        UNZIP_HANDLER.setUploadArchiveService(new UploadArchiveService());
-    }
-
     private static final ParseJsonHandler PARSE_JSON_HANDLER = new ParseJsonHandler();
 
-    private int numAttachments;
     private HealthDataService mockHealthDataService;
     private UploadDao mockUploadDao;
     private S3Helper mockS3UploadHelper;
@@ -119,7 +118,6 @@ public class UploadHandlersEndToEndTest {
     @Before
     public void before() {
         // Reset all member vars, because JUnit doesn't.
-        numAttachments = 0;
         mockHealthDataService = mock(HealthDataService.class);
         mockUploadDao = mock(UploadDao.class);
         mockS3UploadHelper = mock(S3Helper.class);
@@ -143,24 +141,26 @@ public class UploadHandlersEndToEndTest {
         // zip file
         byte[] zippedFile = ZIPPER.zip(fileBytesMap);
 
-        // set up S3DownloadHandler - mock S3 Helper
+        // set up StreamingUnpackHandler - mock S3 client
         // "S3" returns file unencrypted for simplicity of testing
-        S3Helper mockS3DownloadHelper = mock(S3Helper.class);
-        when(mockS3DownloadHelper.readS3FileAsBytes(TestConstants.UPLOAD_BUCKET, UPLOAD_ID)).thenReturn(zippedFile);
+        S3Object s3Object = new S3Object();
+        s3Object.setObjectContent(new ByteArrayInputStream(zippedFile));
 
-        S3DownloadHandler s3DownloadHandler = new S3DownloadHandler();
-        s3DownloadHandler.setS3Helper(mockS3DownloadHelper);
+        AmazonS3 mockS3Client = mock(AmazonS3.class);
+        when(mockS3Client.getObject(TestConstants.UPLOAD_BUCKET, UPLOAD_ID)).thenReturn(s3Object);
 
-        // set up DecryptHandler - For ease of tests, this will just return the input verbatim.
-        UploadArchiveService mockUploadArchiveService = mock(UploadArchiveService.class);
-        when(mockUploadArchiveService.decrypt(TestConstants.TEST_STUDY_IDENTIFIER, zippedFile)).thenReturn(zippedFile);
+        // For ease of tests, decrypt will just return the input verbatim. Unzip is real.
+        UploadArchiveService uploadArchiveService = spy(new UploadArchiveService());
+        doAnswer(invocation -> invocation.getArgumentAt(1, InputStream.class)).when(uploadArchiveService).decrypt(
+                eq(TestConstants.TEST_STUDY_IDENTIFIER), any(InputStream.class));
 
-        DecryptHandler decryptHandler = new DecryptHandler();
-        decryptHandler.setUploadArchiveService(mockUploadArchiveService);
+        StreamingUnpackHandler streamingUnpackHandler = new StreamingUnpackHandler();
+        streamingUnpackHandler.setS3Client(mockS3Client);
+        streamingUnpackHandler.setUploadArchiveService(uploadArchiveService);
 
         // mock schema service
         UploadSchemaService mockUploadSchemaService = mock(UploadSchemaService.class);
-        when(mockUploadSchemaService.getUploadSchemaByIdAndRev(TestConstants.TEST_STUDY, schema.getSchemaId(),
+        when(mockUploadSchemaService.getCachedUploadSchemaByIdAndRev(TestConstants.TEST_STUDY, schema.getSchemaId(),
                 schema.getRevision())).thenReturn(schema);
 
         // set up IosSchemaValidationHandler
@@ -169,7 +169,7 @@ public class UploadHandlersEndToEndTest {
 
         if (survey != null) {
             SurveyService mockSurveyService = mock(SurveyService.class);
-            when(mockSurveyService.getSurvey(new GuidCreatedOnVersionHolderImpl(survey.getGuid(),
+            when(mockSurveyService.getCachedSurvey(new GuidCreatedOnVersionHolderImpl(survey.getGuid(),
                     survey.getCreatedOn()))).thenReturn(survey);
             iosSchemaValidationHandler.setSurveyService(mockSurveyService);
         }
@@ -187,20 +187,16 @@ public class UploadHandlersEndToEndTest {
 
         // set up TranscribeConsentHandler
         ParticipantOptionsService mockOptionsService = mock(ParticipantOptionsService.class);
-        when(mockOptionsService.getOptions(HEALTH_CODE)).thenReturn(PARTICIPANT_OPTIONS_LOOKUP);
+        when(mockOptionsService.getOptionsUncached(HEALTH_CODE)).thenReturn(PARTICIPANT_OPTIONS_LOOKUP);
 
         TranscribeConsentHandler transcribeConsentHandler = new TranscribeConsentHandler();
         transcribeConsentHandler.setOptionsService(mockOptionsService);
 
         // mock HealthDataService for UploadArtifactsHandler
-        when(mockHealthDataService.createOrUpdateAttachment(any(HealthDataAttachment.class))).thenAnswer(
-                invocation -> ATTACHMENT_ID_PREFIX + (++numAttachments));
-
         when(mockHealthDataService.createOrUpdateRecord(any(HealthDataRecord.class))).thenAnswer(invocation -> {
-            // add record ID to record
-            HealthDataRecord submittedRecord = invocation.getArgumentAt(0, HealthDataRecord.class);
-            savedRecord = new DynamoHealthDataRecord.Builder().copyOf(submittedRecord).withId(RECORD_ID).build();
-            return RECORD_ID;
+            // UploadArtifactsHandler assigns the record ID before writing the record.
+            savedRecord = invocation.getArgumentAt(0, HealthDataRecord.class);
+            return savedRecord.getId();
         });
 
         when(mockHealthDataService.getAttachmentBuilder()).thenAnswer(
@@ -208,8 +204,6 @@ public class UploadHandlersEndToEndTest {
 
         when(mockHealthDataService.getRecordBuilder()).thenAnswer(invocation -> new DynamoHealthDataRecord.Builder());
 
-        when(mockHealthDataService.getRecordById(RECORD_ID)).thenAnswer(invocation -> savedRecord);
-
         // mock HealthDataService should return empty list for getRecordsByHealthcodeCreatedOnSchemaId(), so dedupe
         // logic doesn't crash
         when(mockHealthDataService.getRecordsByHealthcodeCreatedOnSchemaId(HEALTH_CODE, CREATED_ON_MILLIS,
@@ -217,13 +211,13 @@ public class UploadHandlersEndToEndTest {
 
         // set up UploadArtifactsHandler
         UploadArtifactsHandler uploadArtifactsHandler = new UploadArtifactsHandler();
+        uploadArtifactsHandler.setAttachmentExecutorService(MoreExecutors.newDirectExecutorService());
         uploadArtifactsHandler.setHealthDataService(mockHealthDataService);
         uploadArtifactsHandler.setS3Helper(mockS3UploadHelper);
 
         // set up task factory
-        List<UploadValidationHandler> handlerList = ImmutableList.of(s3DownloadHandler, decryptHandler, UNZIP_HANDLER,
-                PARSE_JSON_HANDLER, iosSchemaValidationHandler, strictValidationHandler, transcribeConsentHandler,
-                uploadArtifactsHandler);
+        List<UploadValidationHandler> handlerList = ImmutableList.of(streamingUnpackHandler, PARSE_JSON_HANDLER,
+                iosSchemaValidationHandler, strictValidationHandler, transcribeConsentHandler, uploadArtifactsHandler);
 
         UploadValidationTaskFactory taskFactory = new UploadValidationTaskFactory();
         taskFactory.setHandlerList(handlerList);
@@ -362,10 +356,11 @@ public class UploadHandlersEndToEndTest {
         verifyZeroInteractions(mockS3UploadHelper);
 
         // verify no attachments
-        verify(mockHealthDataService, never()).createOrUpdateAttachment(any(HealthDataAttachment.class));
+        verify(mockHealthDataService, never()).createOrUpdateAttachments(anyListOf(HealthDataAttachment.class));
 
         // verify upload dao write validation status
-        verify(mockUploadDao).writeValidationStatus(UPLOAD, UploadStatus.SUCCEEDED, ImmutableList.of(), RECORD_ID);
+        verify(mockUploadDao).writeValidationStatus(UPLOAD, UploadStatus.SUCCEEDED, ImmutableList.of(),
+                savedRecord.getId());
     }
 
     @Test
@@ -534,14 +529,17 @@ public class UploadHandlersEndToEndTest {
 
         // verify attachments in HealthDataAttachments - Of all the attributes, the only one that actually matters is
         // the record ID
-        ArgumentCaptor<HealthDataAttachment> attachmentCaptor = ArgumentCaptor.forClass(HealthDataAttachment.class);
-        verify(mockHealthDataService, times(6)).createOrUpdateAttachment(attachmentCaptor.capture());
-        for (HealthDataAttachment oneAttachment : attachmentCaptor.getAllValues()) {
-            assertEquals(RECORD_ID, oneAttachment.getRecordId());
+        ArgumentCaptor<List> attachmentListCaptor = ArgumentCaptor.forClass(List.class);
+        verify(mockHealthDataService).createOrUpdateAttachments(attachmentListCaptor.capture());
+        List<HealthDataAttachment> attachmentList = attachmentListCaptor.getValue();
+        assertEquals(6, attachmentList.size());
+        for (HealthDataAttachment oneAttachment : attachmentList) {
+            assertEquals(savedRecord.getId(), oneAttachment.getRecordId());
         }
 
         // verify upload dao write validation status
-        verify(mockUploadDao).writeValidationStatus(UPLOAD, UploadStatus.SUCCEEDED, ImmutableList.of(), RECORD_ID);
+        verify(mockUploadDao).writeValidationStatus(UPLOAD, UploadStatus.SUCCEEDED, ImmutableList.of(),
+                savedRecord.getId());
     }
 
     private void validateTextAttachment(String expected, String attachmentId) throws Exception {
@@ -15,6 +15,7 @@ import org.sagebionetworks.bridge.TestUtils;
 import org.sagebionetworks.bridge.dynamodb.DynamoHealthDataRecord;
 import org.sagebionetworks.bridge.dynamodb.DynamoUpload2;
 import org.sagebionetworks.bridge.json.BridgeObjectMapper;
+import org.sagebionetworks.bridge.models.accounts.ParticipantOptionsLookup;
 import org.sagebionetworks.bridge.models.healthdata.HealthDataRecordBuilder;
 import org.sagebionetworks.bridge.models.studies.Study;
 import org.sagebionetworks.bridge.models.upload.Upload;
@@ -32,6 +33,7 @@ public class UploadValidationContextTest {
                 BridgeObjectMapper.get().createObjectNode());
         HealthDataRecordBuilder recordBuilder = new DynamoHealthDataRecord.Builder();
         Map<String, byte[]> attachmentMap = ImmutableMap.of("test-field", "test attachment".getBytes(Charsets.UTF_8));
+        ParticipantOptionsLookup optionsLookup = new ParticipantOptionsLookup(ImmutableMap.of());
 
         // create original
         UploadValidationContext original = new UploadValidationContext();
@@ -46,6 +48,7 @@ public class UploadValidationContextTest {
         original.setHealthDataRecordBuilder(recordBuilder);
         original.setAttachmentsByFieldName(attachmentMap);
         original.setRecordId("test-record");
+        original.setParticipantOptionsLookup(optionsLookup);
 
         // copy and validate
         UploadValidationContext copy = original.shallowCopy();
@@ -59,6 +62,7 @@ public class UploadValidationContextTest {
         assertSame(recordBuilder, copy.getHealthDataRecordBuilder());
         assertSame(attachmentMap, copy.getAttachmentsByFieldName());
         assertEquals("test-record", copy.getRecordId());
+        assertSame(optionsLookup, copy.getParticipantOptionsLookup());
 
         assertEquals(1, copy.getMessageList().size());
         assertEquals("common message", copy.getMessageList().get(0));
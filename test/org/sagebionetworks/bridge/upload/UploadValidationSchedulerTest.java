@@ -0,0 +1,179 @@
+package org.sagebionetworks.bridge.upload;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.sagebionetworks.bridge.exceptions.ServiceUnavailableException;
+import org.sagebionetworks.bridge.upload.UploadValidationScheduler.Lane;
+import org.sagebionetworks.bridge.upload.UploadValidationScheduler.LaneConfig;
+import org.sagebionetworks.bridge.upload.UploadValidationScheduler.RejectionPolicy;
+
+import com.google.common.collect.ImmutableMap;
+
+@SuppressWarnings("unchecked")
+public class UploadValidationSchedulerTest {
+    private UploadValidationMetrics metrics;
+    private UploadValidationScheduler scheduler;
+    private CountDownLatch release;
+
+    @Before
+    public void before() {
+        metrics = new UploadValidationMetrics();
+        release = new CountDownLatch(1);
+    }
+
+    @After
+    public void after() {
+        release.countDown();
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void runsTaskAndRecordsQueueWait() throws Exception {
+        scheduler = makeScheduler(RejectionPolicy.ABORT);
+        CountDownLatch ran = new CountDownLatch(1);
+
+        scheduler.submit(Lane.INTERACTIVE, makeTask(() -> ran.countDown()));
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+
+        assertEquals(1L, metrics.getQueueWaitStats(Lane.INTERACTIVE).get("count").longValue());
+        assertEquals(0L, metrics.getQueueWaitStats(Lane.BACKFILL).get("count").longValue());
+    }
+
+    @Test
+    public void abortPolicyRejectsWhenQueueIsFull() throws Exception {
+        scheduler = makeScheduler(RejectionPolicy.ABORT);
+        fillLane(Lane.INTERACTIVE);
+
+        try {
+            scheduler.submit(Lane.INTERACTIVE, makeTask(() -> {}));
+            fail("expected exception");
+        } catch (ServiceUnavailableException ex) {
+            // expected exception
+        }
+        assertEquals(1L, getLaneStats(Lane.INTERACTIVE).get("rejectedCount"));
+        assertEquals(1, getLaneStats(Lane.INTERACTIVE).get("queueDepth"));
+    }
+
+    @Test
+    public void callerRunsPolicyRunsOnSubmittingThread() throws Exception {
+        scheduler = makeScheduler(RejectionPolicy.CALLER_RUNS);
+        fillLane(Lane.INTERACTIVE);
+
+        AtomicReference<Thread> ranOn = new AtomicReference<>();
+        scheduler.submit(Lane.INTERACTIVE, makeTask(() -> ranOn.set(Thread.currentThread())));
+        assertEquals(Thread.currentThread(), ranOn.get());
+        assertEquals(1L, getLaneStats(Lane.INTERACTIVE).get("rejectedCount"));
+    }
+
+    @Test
+    public void blockPolicyWaitsForRoom() throws Exception {
+        scheduler = makeScheduler(RejectionPolicy.BLOCK);
+        fillLane(Lane.BACKFILL);
+
+        CountDownLatch ran = new CountDownLatch(1);
+        Thread submitter = new Thread(() -> scheduler.submit(Lane.BACKFILL, makeTask(() -> ran.countDown())));
+        submitter.start();
+
+        // The submitter is blocked until the running task finishes and makes room in the queue.
+        assertEquals(1, ran.getCount());
+        release.countDown();
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        submitter.join(5000);
+    }
+
+    @Test
+    public void blockPolicyTimesOut() throws Exception {
+        scheduler = makeScheduler(RejectionPolicy.BLOCK, 50L);
+        fillLane(Lane.INTERACTIVE);
+
+        try {
+            scheduler.submit(Lane.INTERACTIVE, makeTask(() -> {}));
+            fail("expected exception");
+        } catch (ServiceUnavailableException ex) {
+            // expected exception
+        }
+        assertEquals(1L, getLaneStats(Lane.INTERACTIVE).get("rejectedCount"));
+        assertEquals(1, getLaneStats(Lane.INTERACTIVE).get("queueDepth"));
+    }
+
+    @Test
+    public void lanesAreIndependent() throws Exception {
+        scheduler = makeScheduler(RejectionPolicy.ABORT);
+        fillLane(Lane.BACKFILL);
+
+        // A full backfill lane doesn't hold up interactive uploads.
+        CountDownLatch ran = new CountDownLatch(1);
+        scheduler.submit(Lane.INTERACTIVE, makeTask(() -> ran.countDown()));
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void statsIncludeHandlerLatency() {
+        scheduler = makeScheduler(RejectionPolicy.ABORT);
+        metrics.recordHandlerLatency("DecryptHandler", 10);
+        metrics.recordHandlerLatency("DecryptHandler", 30);
+
+        Map<String, Map<String, Long>> handlerStats = (Map<String, Map<String, Long>>) scheduler.getStats()
+                .get("handlers");
+        assertEquals(ImmutableMap.of("count", 2L, "avgMillis", 20L, "maxMillis", 30L),
+                handlerStats.get("DecryptHandler"));
+    }
+
+    private UploadValidationScheduler makeScheduler(RejectionPolicy policy) {
+        return makeScheduler(policy, 0L);
+    }
+
+    private UploadValidationScheduler makeScheduler(RejectionPolicy policy, long blockTimeoutMillis) {
+        LaneConfig config = new LaneConfig(1, 1, policy, blockTimeoutMillis);
+        return new UploadValidationScheduler(ImmutableMap.of(Lane.INTERACTIVE, config, Lane.BACKFILL, config),
+                metrics);
+    }
+
+    // Occupies the lane's one thread until the test releases it, then fills the lane's one queue slot.
+    private void fillLane(Lane lane) throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        scheduler.submit(lane, makeTask(() -> {
+            started.countDown();
+            awaitRelease();
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        scheduler.submit(lane, makeTask(() -> {}));
+    }
+
+    private void awaitRelease() {
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Map<String, Object> getLaneStats(Lane lane) {
+        Map<String, Object> lanes = (Map<String, Object>) scheduler.getStats().get("lanes");
+        return (Map<String, Object>) lanes.get(lane.name().toLowerCase());
+    }
+
+    private static UploadValidationTask makeTask(Runnable body) {
+        UploadValidationTask task = mock(UploadValidationTask.class);
+        doAnswer(invocation -> {
+            body.run();
+            return null;
+        }).when(task).run();
+        return task;
+    }
+}
@@ -19,12 +19,14 @@ public class UploadValidationTaskFactoryTest {
         List<UploadValidationHandler> handlerList = Collections.emptyList();
         DynamoUploadDao dao = new DynamoUploadDao();
         HealthDataService healthDataService = new HealthDataService();
+        UploadValidationMetrics metrics = new UploadValidationMetrics();
 
         // set up task factory
         UploadValidationTaskFactory taskFactory = new UploadValidationTaskFactory();
         taskFactory.setHandlerList(handlerList);
         taskFactory.setUploadDao(dao);
         taskFactory.setHealthDataService(healthDataService);
+        taskFactory.setMetrics(metrics);
 
         // inputs
         DynamoStudy study = TestUtils.getValidStudy(UploadValidationTaskFactoryTest.class);
@@ -37,5 +39,6 @@ public class UploadValidationTaskFactoryTest {
         assertSame(handlerList, task.getHandlerList());
         assertSame(dao, task.getUploadDao());
         assertSame(healthDataService, task.getHealthDataService());
+        assertSame(metrics, task.getMetrics());
     }
 }
@@ -69,8 +69,12 @@ public class UploadValidationTaskTest {
 
     private HealthDataService healthDataService;
 
+    private UploadValidationMetrics metrics;
+
     @Before
     public void setup() throws IOException {
+        metrics = new UploadValidationMetrics();
+
         testRecord = new DynamoHealthDataRecord.Builder()
                 .withCreatedOn(CREATED_ON)
                 .withHealthCode(HEALTH_CODE)
@@ -145,6 +149,10 @@ public class UploadValidationTaskTest {
         assertEquals("foo was here", messageList.get(0));
         assertEquals("bar was here", messageList.get(1));
         assertEquals("kilroy was here", messageList.get(2));
+
+        // validate that handler latency was recorded for every handler
+        assertEquals(3L, metrics.getHandlerLatencyStats().get("MessageHandler").get("count").longValue());
+        assertEquals(1L, metrics.getHandlerLatencyStats().get("RecordIdHandler").get("count").longValue());
     }
 
     @Test
@@ -211,6 +219,7 @@ public class UploadValidationTaskTest {
         task.setHandlerList(handlerList);
         task.setUploadDao(mockDao);
         task.setHealthDataService(healthDataService);
+        task.setMetrics(metrics);
 
         // execute
         task.run();
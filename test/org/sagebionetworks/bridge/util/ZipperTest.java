@@ -1,10 +1,17 @@
 package org.sagebionetworks.bridge.util;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import org.junit.Test;
 
@@ -31,6 +38,112 @@ public class ZipperTest {
         zipper.unzip(zipped);
     }
 
+    @Test
+    public void testLargeEntriesOfUnknownSize() throws Exception {
+        // Entries from zip() are deflated, so their size isn't in the zip header. These are bigger than the initial
+        // scratch buffer, and the second is read with the buffer grown by the first.
+        Zipper zipper = new Zipper(200000, 20);
+        Map<String, byte[]> dataMap = new HashMap<>();
+        dataMap.put("big", randomBytes(100000));
+        dataMap.put("bigger", randomBytes(200000));
+        dataMap.put("small", randomBytes(10));
+
+        Map<String, byte[]> unzipped = zipper.unzip(zipper.zip(dataMap));
+        assertEquals(3, unzipped.size());
+        for (Map.Entry<String, byte[]> oneEntry : dataMap.entrySet()) {
+            assertArrayEquals(oneEntry.getValue(), unzipped.get(oneEntry.getKey()));
+        }
+    }
+
+    @Test
+    public void testEntriesOfKnownSize() throws Exception {
+        Zipper zipper = new Zipper(1000, 20);
+        byte[] foo = randomBytes(1000);
+        byte[] empty = new byte[0];
+
+        Map<String, byte[]> unzipped = zipper.unzip(zipStored("foo", foo, "empty", empty));
+        assertEquals(2, unzipped.size());
+        assertArrayEquals(foo, unzipped.get("foo"));
+        assertArrayEquals(empty, unzipped.get("empty"));
+    }
+
+    @Test
+    public void testUnzipStream() throws Exception {
+        Zipper zipper = new Zipper(1000, 20);
+        Map<String, byte[]> dataMap = new HashMap<>();
+        dataMap.put("foo", randomBytes(1000));
+        dataMap.put("bar", randomBytes(10));
+
+        Map<String, byte[]> unzipped = zipper.unzip(new ByteArrayInputStream(zipper.zip(dataMap)));
+        assertEquals(2, unzipped.size());
+        assertArrayEquals(dataMap.get("foo"), unzipped.get("foo"));
+        assertArrayEquals(dataMap.get("bar"), unzipped.get("bar"));
+    }
+
+    @Test(expected=ZipOverflowException.class)
+    public void testZipEntryOfKnownSizeTooBig() throws Exception {
+        Zipper zipper = new Zipper(2, 20);
+        zipper.unzip(zipStored("testZipEntryTooBig", "aaa".getBytes()));
+    }
+
+    @Test(expected=ZipOverflowException.class)
+    public void testZipEntriesOfUnknownSizeTooBigInTotal() throws Exception {
+        // Each entry is under the per-entry max, but together they're over the total.
+        Zipper zipper = new Zipper(1000, 20, 1500);
+        Map<String, byte[]> dataMap = new HashMap<>();
+        dataMap.put("foo", randomBytes(1000));
+        dataMap.put("bar", randomBytes(1000));
+        zipper.unzip(zipper.zip(dataMap));
+    }
+
+    @Test(expected=ZipOverflowException.class)
+    public void testZipEntriesOfKnownSizeTooBigInTotal() throws Exception {
+        Zipper zipper = new Zipper(1000, 20, 1500);
+        zipper.unzip(zipStored("foo", randomBytes(1000), "bar", randomBytes(1000)));
+    }
+
+    @Test
+    public void testZipEntriesAtMaxTotalSize() throws Exception {
+        Zipper zipper = new Zipper(1000, 20, 1500);
+        Map<String, byte[]> dataMap = new HashMap<>();
+        dataMap.put("foo", randomBytes(1000));
+        dataMap.put("bar", randomBytes(500));
+        dataMap.put("empty", new byte[0]);
+
+        Map<String, byte[]> unzipped = zipper.unzip(zipper.zip(dataMap));
+        assertEquals(3, unzipped.size());
+        assertArrayEquals(dataMap.get("foo"), unzipped.get("foo"));
+        assertArrayEquals(dataMap.get("bar"), unzipped.get("bar"));
+    }
+
+    // Makes a zip with stored (uncompressed) entries, which have their size in the zip header. Args alternate between
+    // entry name and entry data.
+    private static byte[] zipStored(Object... entryNamesAndData) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(baos)) {
+            for (int i = 0; i < entryNamesAndData.length; i += 2) {
+                byte[] data = (byte[]) entryNamesAndData[i + 1];
+                CRC32 crc = new CRC32();
+                crc.update(data);
+
+                ZipEntry zipEntry = new ZipEntry((String) entryNamesAndData[i]);
+                zipEntry.setMethod(ZipEntry.STORED);
+                zipEntry.setSize(data.length);
+                zipEntry.setCrc(crc.getValue());
+                zos.putNextEntry(zipEntry);
+                zos.write(data);
+                zos.closeEntry();
+            }
+        }
+        return baos.toByteArray();
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random().nextBytes(bytes);
+        return bytes;
+    }
+
     private void zipUnzip(final Zipper zipper, final int numEntries) throws Exception {
         Map<String, byte[]> dataMap = new HashMap<>();
         for (int i = 0; i < numEntries; i++) {